@@ -15,6 +15,7 @@
 
 package org.phalanxdev.hop.pipeline.transforms.pmi;
 
+import org.apache.hop.core.IRowSet;
 import org.apache.hop.core.exception.HopException;
 import org.apache.hop.core.row.IValueMeta;
 import org.apache.hop.core.row.RowMeta;
@@ -26,14 +27,15 @@ import org.apache.hop.pipeline.PipelineMeta;
 import org.apache.hop.pipeline.transform.BaseTransform;
 import org.apache.hop.pipeline.transform.ITransform;
 import org.apache.hop.pipeline.transform.TransformMeta;
-import org.phalanxdev.hop.pipeline.transforms.reservoirsampling.ReservoirSamplingData;
 import org.phalanxdev.mi.Evaluator;
 import org.phalanxdev.mi.PMIEngine;
 import weka.core.Utils;
 
+import java.io.File;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Random;
 
 /**
  * Base class for PMI supervised classification/regression-based steps. Provides all the step logic for establishing the
@@ -51,6 +53,16 @@ public class BaseSupervisedPMI extends BaseTransform<BaseSupervisedPMIMeta, Base
   protected boolean m_trainingDone;
   protected boolean m_testingDone;
 
+  /**
+   * True if the separate test stream was exhausted while training was still in progress
+   */
+  protected boolean m_testInputDone;
+
+  /**
+   * How long to wait (ms) when neither the training nor the separate test stream has a row ready
+   */
+  protected static final long INPUT_POLL_INTERVAL = 1;
+
   public BaseSupervisedPMI( TransformMeta transformMeta, BaseSupervisedPMIMeta meta, BaseSupervisedPMIData data,
       int copyNr, PipelineMeta pipelineMeta, Pipeline pipeline ) {
     super( transformMeta, meta, data, copyNr, pipelineMeta, pipeline );
@@ -69,6 +81,7 @@ public class BaseSupervisedPMI extends BaseTransform<BaseSupervisedPMIMeta, Base
 
       m_trainingDone = false;
       m_testingDone = true;
+      m_testInputDone = false;
 
       try {
         if ( org.apache.hop.core.util.Utils.isEmpty( m_meta.getEngineName() ) ) {
@@ -204,6 +217,11 @@ public class BaseSupervisedPMI extends BaseTransform<BaseSupervisedPMIMeta, Base
               trainingFieldNames
                   .indexOf( m_data.m_classArffMeta.getFieldName() ); // assume class is last in list of *ArffMetas*
         }
+        if ( m_data.m_classArffMeta.getArffType() == ArffMeta.HASHED_NOMINAL ) {
+          // bucket labels are meaningless as predictions
+          throw new HopException( BaseMessages.getString( PKG, "BasePMIStep.Error.ClassCannotBeHashedNominal",
+              m_data.m_classArffMeta.getFieldName() ) );
+        }
 
         if ( m_meta.getEvalMode() == Evaluator.EvalMode.SEPARATE_TEST_SET && m_data.m_testStream != null ) {
           // does the class field from the training data exist in the test data?
@@ -297,7 +315,6 @@ public class BaseSupervisedPMI extends BaseTransform<BaseSupervisedPMIMeta, Base
           if ( m_data.m_batchSize <= 0 ) {
             throw new HopException( BaseMessages.getString( PKG, "BasePMIStep.Error.BatchSizeMustBeGreaterThanZero" ) );
           }
-          m_data.m_trainingRows = new ArrayList<>( m_data.m_batchSize );
         } else if ( m_data.m_rowHandlingMode == BaseSupervisedPMIData.RowHandlingMode.Stratified ) {
           if ( org.apache.hop.core.util.Utils.isEmpty( m_meta.getStratificationFieldName() ) ) {
             throw new HopException( BaseMessages.getString( PKG, "BasePMIStep.Error.NoStratificationFieldSpecified" ) );
@@ -330,6 +347,58 @@ public class BaseSupervisedPMI extends BaseTransform<BaseSupervisedPMIMeta, Base
           }
         }
 
+        if ( m_data.m_rowHandlingMode == BaseSupervisedPMIData.RowHandlingMode.Stratified && m_meta
+            .getUnsortedStratification() ) {
+          m_data.m_unsortedStratification = true;
+          if ( !org.apache.hop.core.util.Utils.isEmpty( m_meta.getStrataMemoryBudget() ) ) {
+            long budgetMB = Long.parseLong( resolve( m_meta.getStrataMemoryBudget() ) );
+            if ( budgetMB < 0 ) {
+              throw new HopException(
+                  BaseMessages.getString( PKG, "BasePMIStep.Error.StrataMemoryBudgetMustNotBeNegative" ) );
+            }
+            m_data.m_strataMemoryBudget = budgetMB * 1024L * 1024L;
+          }
+        }
+        m_data.m_strataSpillDirectory = resolve( m_meta.getStrataSpillDirectory() );
+
+        if ( m_data.m_rowHandlingMode == BaseSupervisedPMIData.RowHandlingMode.All && !org.apache.hop.core.util.Utils
+            .isEmpty( m_meta.getTrainingMemoryBudget() ) ) {
+          long budgetMB = Long.parseLong( resolve( m_meta.getTrainingMemoryBudget() ) );
+          if ( budgetMB < 0 ) {
+            throw new HopException(
+                BaseMessages.getString( PKG, "BasePMIStep.Error.TrainingMemoryBudgetMustNotBeNegative" ) );
+          }
+          m_data.m_trainingMemoryBudget = budgetMB * 1024L * 1024L;
+          if ( m_meta.getMemoryBudgetPolicy() != null ) {
+            m_data.m_memoryBudgetPolicy = m_meta.getMemoryBudgetPolicy();
+          }
+        }
+
+        if ( m_data.m_rowHandlingMode == BaseSupervisedPMIData.RowHandlingMode.All && (
+            !org.apache.hop.core.util.Utils.isEmpty( m_meta.getClassBalanceMaxRows() ) || !org.apache.hop.core.util.Utils
+                .isEmpty( m_meta.getClassBalanceMaxRatio() ) ) ) {
+          if ( m_data.m_classArffMeta.getArffType() != ArffMeta.NOMINAL ) {
+            throw new HopException( BaseMessages
+                .getString( PKG, "BasePMIStep.Error.ClassBalancingRequestedButClassNotNominal",
+                    m_data.m_classArffMeta.getFieldName() ) );
+          }
+          if ( !org.apache.hop.core.util.Utils.isEmpty( m_meta.getClassBalanceMaxRows() ) ) {
+            m_data.m_classBalanceMaxRows = Integer.parseInt( resolve( m_meta.getClassBalanceMaxRows() ) );
+            if ( m_data.m_classBalanceMaxRows < 0 ) {
+              throw new HopException(
+                  BaseMessages.getString( PKG, "BasePMIStep.Error.ClassBalanceMaxRowsMustNotBeNegative" ) );
+            }
+          }
+          if ( !org.apache.hop.core.util.Utils.isEmpty( m_meta.getClassBalanceMaxRatio() ) ) {
+            m_data.m_classBalanceMaxRatio = Double.parseDouble( resolve( m_meta.getClassBalanceMaxRatio() ) );
+            if ( m_data.m_classBalanceMaxRatio != 0 && m_data.m_classBalanceMaxRatio < 1 ) {
+              throw new HopException(
+                  BaseMessages.getString( PKG, "BasePMIStep.Error.ClassBalanceMaxRatioMustBeAtLeastOne" ) );
+            }
+          }
+          m_data.m_classBalanceReweight = m_meta.getClassBalanceReweight();
+        }
+
         if ( !org.apache.hop.core.util.Utils.isEmpty( m_meta.getRandomSeed() ) ) {
           m_data.m_randomSeed = Integer.parseInt( resolve( m_meta.getRandomSeed() ) );
         }
@@ -352,14 +421,8 @@ public class BaseSupervisedPMI extends BaseTransform<BaseSupervisedPMIMeta, Base
                 BaseMessages.getString( PKG, "BasePMIStep.Error.ReservoirSizeMustBeGreaterThanZero" ) );
           }
 
-          if ( m_data.m_rowHandlingMode != BaseSupervisedPMIData.RowHandlingMode.Stratified ) {
-            m_data.m_trainingSampler = new ReservoirSamplingData();
-            m_data.m_trainingSampler.setProcessingMode( ReservoirSamplingData.PROC_MODE.SAMPLING );
-            m_data.m_trainingSampler.initialize( m_data.m_reservoirSize, m_data.m_randomSeed );
-          } else {
-            // can't pre-initialize the stratified samplers as we won't know the stratification values until
-            // actually processing rows at runtime
-          }
+          // reservoirs (one per stratification value in stratified mode) are created as rows are seen at
+          // runtime
         }
 
         // evaluation-related stuff
@@ -376,14 +439,25 @@ public class BaseSupervisedPMI extends BaseTransform<BaseSupervisedPMIMeta, Base
               throw new HopException( BaseMessages
                   .getString( PKG, "BasePMIStep.Error.SeparateTestSetEvalCantBeUsedWithBatchRowHandling" ) );
             }
+
+            if ( !org.apache.hop.core.util.Utils.isEmpty( m_meta.getTestRowsMemoryBudget() ) ) {
+              long budgetMB = Long.parseLong( resolve( m_meta.getTestRowsMemoryBudget() ) );
+              if ( budgetMB < 0 ) {
+                throw new HopException(
+                    BaseMessages.getString( PKG, "BasePMIStep.Error.TestRowsMemoryBudgetMustNotBeNegative" ) );
+              }
+              m_data.m_testRowsMemoryBudget = budgetMB * 1024L * 1024L;
+            }
           } else if ( m_meta.getEvalMode() == Evaluator.EvalMode.CROSS_VALIDATION ) {
             if ( !org.apache.hop.core.util.Utils.isEmpty( m_meta.getXValFolds() ) ) {
               m_data.m_xValFolds = Integer.parseInt( resolve( m_meta.getXValFolds() ) );
             }
+            m_data.m_streamCrossValidation = m_meta.getStreamCrossValidation();
           } else if ( m_meta.getEvalMode() == Evaluator.EvalMode.PERCENTAGE_SPLIT ) {
             if ( !org.apache.hop.core.util.Utils.isEmpty( m_meta.getPercentageSplit() ) ) {
               m_data.m_percentageSplit = Integer.parseInt( resolve( m_meta.getPercentageSplit() ) );
             }
+            m_data.m_streamPercentageSplit = m_meta.getStreamPercentageSplit();
           }
 
           // check for AUC/IR and whether user has specified legal class labels
@@ -415,15 +489,161 @@ public class BaseSupervisedPMI extends BaseTransform<BaseSupervisedPMIMeta, Base
           m_data.m_modelFileName = resolve( m_meta.getModelFileName() );
         }
 
+        // concurrency
+        if ( !org.apache.hop.core.util.Utils.isEmpty( m_meta.getNumExecutionSlots() ) ) {
+          m_data.m_numExecutionSlots = Integer.parseInt( resolve( m_meta.getNumExecutionSlots() ) );
+          if ( m_data.m_numExecutionSlots <= 0 ) {
+            throw new HopException(
+                BaseMessages.getString( PKG, "BasePMIStep.Error.ExecutionSlotsMustBeGreaterThanZero" ) );
+          }
+        }
+        m_data.m_maxFoldsInFlight = m_data.m_numExecutionSlots;
+        if ( !org.apache.hop.core.util.Utils.isEmpty( m_meta.getMaxFoldsInFlight() ) ) {
+          m_data.m_maxFoldsInFlight = Integer.parseInt( resolve( m_meta.getMaxFoldsInFlight() ) );
+          if ( m_data.m_maxFoldsInFlight <= 0 ) {
+            throw new HopException(
+                BaseMessages.getString( PKG, "BasePMIStep.Error.MaxFoldsInFlightMustBeGreaterThanZero" ) );
+          }
+        }
+        m_data.m_maxStrataInFlight = m_data.m_numExecutionSlots * 2;
+        if ( !org.apache.hop.core.util.Utils.isEmpty( m_meta.getMaxStrataInFlight() ) ) {
+          m_data.m_maxStrataInFlight = Integer.parseInt( resolve( m_meta.getMaxStrataInFlight() ) );
+          if ( m_data.m_maxStrataInFlight <= 0 ) {
+            throw new HopException(
+                BaseMessages.getString( PKG, "BasePMIStep.Error.MaxStrataInFlightMustBeGreaterThanZero" ) );
+          }
+        }
+        if ( !org.apache.hop.core.util.Utils.isEmpty( m_meta.getMaxBatchesInFlight() ) ) {
+          m_data.m_maxBatchesInFlight = Integer.parseInt( resolve( m_meta.getMaxBatchesInFlight() ) );
+          if ( m_data.m_maxBatchesInFlight < 0 ) {
+            throw new HopException(
+                BaseMessages.getString( PKG, "BasePMIStep.Error.MaxBatchesInFlightMustNotBeNegative" ) );
+          }
+        }
+        if ( !org.apache.hop.core.util.Utils.isEmpty( m_meta.getIncrementalBlockSize() ) ) {
+          m_data.m_incrementalBlockSize = Integer.parseInt( resolve( m_meta.getIncrementalBlockSize() ) );
+          if ( m_data.m_incrementalBlockSize <= 0 ) {
+            throw new HopException(
+                BaseMessages.getString( PKG, "BasePMIStep.Error.IncrementalBlockSizeMustBeGreaterThanZero" ) );
+          }
+        }
+        m_data.m_incrementalBlockEvaluation = m_meta.getIncrementalBlockEvaluation();
+        if ( m_meta.getInstanceRepresentation() != null ) {
+          m_data.m_instanceRepresentation = m_meta.getInstanceRepresentation();
+        }
+        m_data.m_compactDuplicateRows = m_meta.getCompactDuplicateRows();
+
         // incremental scheme?
         m_data.checkForIncrementalTraining( m_meta, getLogChannel() );
 
+        // balancing by ratio alone buffers every row until the end of the stream, so it can't
+        // take the place of the training memory budget
+        if ( m_data.isClassBalancing( m_meta ) && m_data.m_classBalanceMaxRows == 0
+            && m_data.m_trainingMemoryBudget > 0 ) {
+          throw new HopException(
+              BaseMessages.getString( PKG, "BasePMIStep.Error.ClassBalanceRatioOnlyWithMemoryBudget" ) );
+        }
+
         // Load resumable?
         if ( m_data.m_scheme.supportsResumableTraining() && !org.apache.hop.core.util.Utils
             .isEmpty( m_meta.getResumableModelPath() ) && ( m_meta.getEvalMode() == Evaluator.EvalMode.NONE
             || m_meta.getEvalMode() == Evaluator.EvalMode.SEPARATE_TEST_SET ) ) {
           String modelPath = resolve( m_meta.getResumableModelPath() );
-          // TODO
+          if ( m_data.m_rowHandlingMode != BaseSupervisedPMIData.RowHandlingMode.All ) {
+            // checkpoints are written per stratum/batch, so a single model can't be continued for
+            // each of them
+            throw new HopException( BaseMessages
+                .getString( PKG, "BasePMIStep.Error.ResumingOnlySupportedForAllRows", modelPath,
+                    m_data.m_rowHandlingMode.toString() ) );
+          }
+          if ( new File( modelPath ).isFile() ) {
+            m_data.m_resumableModelPath = modelPath;
+            logBasic( BaseMessages.getString( PKG, "BasePMIStep.Info.ContinuingTrainingFromModel", modelPath ) );
+          } else {
+            // nothing to resume from yet (e.g. the first run of a checkpointed pipeline)
+            logBasic( BaseMessages.getString( PKG, "BasePMIStep.Info.NoResumableModelFound", modelPath ) );
+          }
+        }
+
+        // checkpointing and early stopping of resumable models
+        if ( m_data.m_scheme.supportsResumableTraining() ) {
+          if ( !org.apache.hop.core.util.Utils.isEmpty( m_meta.getCheckpointIterations() ) ) {
+            m_data.m_checkpointIterations = Integer.parseInt( resolve( m_meta.getCheckpointIterations() ) );
+            if ( m_data.m_checkpointIterations < 0 ) {
+              throw new HopException(
+                  BaseMessages.getString( PKG, "BasePMIStep.Error.CheckpointIterationsMustNotBeNegative" ) );
+            }
+          }
+          if ( !org.apache.hop.core.util.Utils.isEmpty( m_meta.getCheckpointInterval() ) ) {
+            long seconds = Long.parseLong( resolve( m_meta.getCheckpointInterval() ) );
+            if ( seconds < 0 ) {
+              throw new HopException(
+                  BaseMessages.getString( PKG, "BasePMIStep.Error.CheckpointIntervalMustNotBeNegative" ) );
+            }
+            m_data.m_checkpointIntervalMillis = seconds * 1000L;
+          }
+          if ( ( m_data.m_checkpointIterations > 0 || m_data.m_checkpointIntervalMillis > 0 )
+              && org.apache.hop.core.util.Utils.isEmpty( m_data.m_modelOutputPath ) ) {
+            logBasic( BaseMessages.getString( PKG, "BasePMIStep.Warning.CheckpointsNeedModelOutputPath" ) );
+          }
+
+          // early stopping
+          if ( m_meta.getEarlyStopping() ) {
+            m_data.m_earlyStoppingValidationPercent =
+                Integer.parseInt( resolve( m_meta.getEarlyStoppingValidationPercent() ) );
+            if ( m_data.m_earlyStoppingValidationPercent <= 0 || m_data.m_earlyStoppingValidationPercent >= 100 ) {
+              throw new HopException(
+                  BaseMessages.getString( PKG, "BasePMIStep.Error.EarlyStoppingValidationPercentOutOfRange" ) );
+            }
+            if ( !org.apache.hop.core.util.Utils.isEmpty( m_meta.getEarlyStoppingInterval() ) ) {
+              m_data.m_earlyStoppingInterval = Integer.parseInt( resolve( m_meta.getEarlyStoppingInterval() ) );
+              if ( m_data.m_earlyStoppingInterval <= 0 ) {
+                throw new HopException(
+                    BaseMessages.getString( PKG, "BasePMIStep.Error.EarlyStoppingIntervalMustBeGreaterThanZero" ) );
+              }
+            }
+            if ( !org.apache.hop.core.util.Utils.isEmpty( m_meta.getEarlyStoppingPatience() ) ) {
+              m_data.m_earlyStoppingPatience = Integer.parseInt( resolve( m_meta.getEarlyStoppingPatience() ) );
+              if ( m_data.m_earlyStoppingPatience <= 0 ) {
+                throw new HopException(
+                    BaseMessages.getString( PKG, "BasePMIStep.Error.EarlyStoppingPatienceMustBeGreaterThanZero" ) );
+              }
+            }
+          }
+        }
+
+        // phase metrics are measured if they are output or if the log channel is gathering metrics
+        m_data.m_outputPhaseMetrics = m_meta.getOutputPhaseMetrics();
+        m_data.m_collectPhaseMetrics = m_data.m_outputPhaseMetrics || getLogChannel().isGatheringMetrics();
+
+        // hyperparameter search
+        String searchSpec = resolve( m_meta.getSearchSpace() );
+        if ( !org.apache.hop.core.util.Utils.isEmpty( searchSpec ) && searchSpec.trim().length() > 0 ) {
+          if ( m_data.m_rowHandlingMode != BaseSupervisedPMIData.RowHandlingMode.All ) {
+            throw new HopException( BaseMessages.getString( PKG, "BasePMIStep.Error.SearchRequiresAllRows" ) );
+          }
+          if ( m_meta.getEvalMode() != Evaluator.EvalMode.CROSS_VALIDATION
+              && m_meta.getEvalMode() != Evaluator.EvalMode.PERCENTAGE_SPLIT ) {
+            throw new HopException( BaseMessages.getString( PKG, "BasePMIStep.Error.SearchRequiresEvaluation" ) );
+          }
+          if ( m_data.m_trainingIncrementally ) {
+            throw new HopException( BaseMessages.getString( PKG, "BasePMIStep.Error.SearchNotSupportedIncremental" ) );
+          }
+          SearchSpace space = SearchSpace.parse( searchSpec );
+          String[] baseOptions = m_data.m_scheme.getSchemeOptions();
+          if ( SearchSpace.SearchMode.Random.toString().equalsIgnoreCase( resolve( m_meta.getSearchMode() ) ) ) {
+            int numCandidates = Integer.parseInt( resolve( m_meta.getSearchCandidates() ) );
+            if ( numCandidates <= 0 ) {
+              throw new HopException(
+                  BaseMessages.getString( PKG, "BasePMIStep.Error.SearchCandidatesMustBeGreaterThanZero" ) );
+            }
+            m_data.m_searchCandidates =
+                space.randomCandidates( baseOptions, numCandidates, new Random( m_data.m_randomSeed ) );
+          } else {
+            m_data.m_searchCandidates = space.gridCandidates( baseOptions );
+          }
+          logBasic( BaseMessages.getString( PKG, "BasePMIStep.Info.SearchCandidates", m_data.m_searchCandidates.size(),
+              space.numCombinations() ) );
         }
       } catch ( Exception ex ) {
         logError( ex.getMessage(), ex );
@@ -434,6 +654,34 @@ public class BaseSupervisedPMI extends BaseTransform<BaseSupervisedPMIMeta, Base
     return false;
   }
 
+  @Override public void dispose() {
+    m_data.shutdownExecutor();
+    m_data.shutdownModelWriter();
+    m_data.deleteSpillFiles();
+    super.dispose();
+  }
+
+  /**
+   * Check whether getting a row from a row set would return without waiting
+   *
+   * @param rowSet the row set to check
+   * @return true if the row set has a row ready or has been finished by its producer
+   */
+  protected boolean rowAvailable( IRowSet rowSet ) {
+    return rowSet.size() > 0 || rowSet.isDone();
+  }
+
+  /**
+   * Wait briefly for a row to arrive on either input
+   */
+  protected void waitForInput() {
+    try {
+      Thread.sleep( INPUT_POLL_INTERVAL );
+    } catch ( InterruptedException ex ) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
   /**
    * Row processing logic
    *
@@ -458,6 +706,27 @@ public class BaseSupervisedPMI extends BaseTransform<BaseSupervisedPMIMeta, Base
     }
 
     if ( !m_trainingDone ) {
+      if ( !m_testingDone && !m_testInputDone && m_data.m_testRowSet != null ) {
+        // consume the separate test stream while training so that an upstream transform feeding
+        // both streams can't block forever on a full test row set
+        boolean readTestRow = false;
+        if ( rowAvailable( m_data.m_testRowSet ) ) {
+          Object[] testRow = getRowFrom( m_data.m_testRowSet );
+          if ( testRow == null ) {
+            m_testInputDone = true;
+          } else {
+            m_data.bufferSeparateTestRow( testRow, m_data.m_testRowSet.getRowMeta() );
+          }
+          readTestRow = true;
+        }
+        if ( !rowAvailable( m_data.m_trainingRowSet ) ) {
+          if ( !readTestRow ) {
+            waitForInput();
+          }
+          return true;
+        }
+      }
+
       Object[] row = getRowFrom( m_data.m_trainingRowSet );
       if ( row == null ) {
         m_trainingDone = true;
@@ -466,25 +735,35 @@ public class BaseSupervisedPMI extends BaseTransform<BaseSupervisedPMIMeta, Base
       if ( outputRow != null ) {
         for ( int i = 0; i < outputRow.length; i++ ) {
           if ( outputRow[i] != null ) {
-            putRow( m_data.m_outputRowMeta, outputRow[i] );
+            putRow( m_data.m_outputRowMeta, m_data.padOutputRow( outputRow[i] ) );
           }
         }
       }
+      if ( m_trainingDone && !m_testingDone ) {
+        // the final models are used for testing next, so they must not still be being serialized
+        m_data.awaitModelWrites();
+      }
     } else {
       // separate test set?
       if ( !m_testingDone && m_data.m_testRowSet != null ) {
-        Object[] testRow = getRowFrom( m_data.m_testRowSet );
+        // test rows that arrived during training come first
+        Object[] testRow = m_data.nextBufferedSeparateTestRow();
+        if ( testRow == null && !m_testInputDone ) {
+          testRow = getRowFrom( m_data.m_testRowSet );
+        }
         if ( testRow == null ) {
           m_testingDone = true;
         }
         List<Object[]> outputRows = m_data.handleSeparateTestRow( testRow, m_meta, getLogChannel(), this );
         for ( Object[] r : outputRows ) {
-          putRow( m_data.m_outputRowMeta, r );
+          putRow( m_data.m_outputRowMeta, m_data.padOutputRow( r ) );
         }
       }
     }
 
     if ( m_trainingDone && m_testingDone ) {
+      // report any models that could not be saved before signalling that we are done
+      m_data.awaitModelWrites();
       m_data.cleanup();
       setOutputDone();
       return false;
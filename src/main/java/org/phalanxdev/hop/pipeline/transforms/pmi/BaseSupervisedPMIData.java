@@ -29,7 +29,6 @@ import org.apache.hop.core.row.value.ValueMetaFactory;
 import org.apache.hop.core.variables.IVariables;
 import org.apache.hop.i18n.BaseMessages;
 import org.apache.hop.pipeline.transform.stream.IStream;
-import org.phalanxdev.hop.pipeline.transforms.reservoirsampling.ReservoirSamplingData;
 import org.phalanxdev.hop.utils.ArffMeta;
 import org.phalanxdev.hop.utils.BaseMessagesAdapter;
 import org.phalanxdev.hop.utils.LogAdapter;
@@ -39,26 +38,38 @@ import org.phalanxdev.mi.PMIEngine;
 import org.phalanxdev.mi.Scheme;
 import weka.classifiers.Classifier;
 import weka.classifiers.IterativeClassifier;
-import weka.classifiers.UpdateableClassifier;
 import weka.classifiers.evaluation.Evaluation;
 import weka.core.Attribute;
 import weka.core.BatchPredictor;
-import weka.core.DenseInstance;
 import weka.core.Instance;
 import weka.core.Instances;
 import weka.core.OptionHandler;
 import weka.core.SerializationHelper;
 import weka.core.Utils;
+import weka.core.WeightedInstancesHandler;
 
 import java.io.File;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Deque;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Random;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.phalanxdev.hop.pipeline.transforms.pmi.BaseSupervisedPMIData.RowHandlingMode.All;
 import static org.phalanxdev.hop.pipeline.transforms.pmi.BaseSupervisedPMIData.RowHandlingMode.Batch;
@@ -74,6 +85,12 @@ public class BaseSupervisedPMIData extends BaseTransformData implements ITransfo
 
   protected enum RowHandlingMode {All, Batch, Stratified}
 
+  /**
+   * What to do when the training data buffered in "All" mode is projected to exceed the training
+   * memory budget
+   */
+  public enum MemoryBudgetPolicy {DOWNSAMPLE, FAIL}
+
   protected PMIEngine m_engine;
   protected Scheme m_scheme;
 
@@ -133,24 +150,51 @@ public class BaseSupervisedPMIData extends BaseTransformData implements ITransfo
    */
   protected int m_xValFolds = 10;
 
+  /**
+   * True if cross-validation of an incrementally trainable scheme is performed on the stream, with
+   * one incrementally updated model per fold, rather than by buffering all the data
+   */
+  protected boolean m_streamCrossValidation;
+
   /**
    * Default 2/3 1/3
    */
   protected int m_percentageSplit = 66;
 
   /**
-   * training batch or sampling. We assume sorted data (by stratification field) for stratified
-   * mode
+   * training batch (column-oriented, model fields only). We assume sorted data (by stratification
+   * field) for stratified mode
+   */
+  protected ColumnarTrainingBuffer m_trainingBuffer;
+
+  /**
+   * True if a percentage split is routed into training and test splits as rows arrive, rather
+   * than by splitting the buffered data after the fact (see {@code isStreamingSplit()})
+   */
+  protected boolean m_streamPercentageSplit;
+
+  /**
+   * Test split of the current batch/stratum when streaming a percentage split
    */
-  protected List<Object[]> m_trainingRows = new ArrayList<>();
+  protected ColumnarTrainingBuffer m_splitTestBuffer;
+
+  /**
+   * Random draws for routing rows to the training or test split. Reseeded for each batch/stratum,
+   * so that the routing of a batch/stratum's rows does not depend on those that came before
+   */
+  protected Random m_splitRandom;
 
   /**
    * Initial rows for incremental classifiers (stratified mode primarily) when a global header
-   * cannot be determined at the outset from field metadata.
+   * cannot be determined at the outset from field metadata. Nominal dictionaries are built as the
+   * rows are cached.
    */
-  protected Map<String, List<Object[]>> m_initialIncrementalRows = new HashMap<>();
+  protected Map<String, ColumnarTrainingBuffer> m_initialIncrementalRows = new HashMap<>();
 
-  protected ReservoirSamplingData m_trainingSampler;
+  /**
+   * Key for the (single) reservoir when sampling in All mode
+   */
+  protected static final String NON_STRATIFIED_KEY = "--Not stratified--";
 
   /**
    * Rows for BatchPredictors when doing separate test set evaluation
@@ -167,41 +211,806 @@ public class BaseSupervisedPMIData extends BaseTransformData implements ITransfo
    */
   protected String m_currentStratificationValue = "";
 
+  /**
+   * True if the input is not sorted by the stratification field. Rows are partitioned by
+   * stratification value as they arrive and all strata are trained at the end of the stream
+   */
+  protected boolean m_unsortedStratification;
+
+  /**
+   * Memory budget (in bytes) for buffered strata when the input is unsorted, or the ceiling across
+   * all reservoirs when reservoir sampling in stratified mode. Zero or less means no limit
+   */
+  protected long m_strataMemoryBudget;
+
+  /**
+   * Number of rows between checks of the training buffer's projected memory usage
+   */
+  protected static final int TRAINING_MEMORY_CHECK_INTERVAL = 1024;
+
+  /**
+   * Memory budget (in bytes) for training rows buffered in "All" mode. Zero or less means no limit
+   */
+  protected long m_trainingMemoryBudget;
+
+  /**
+   * What to do when the training memory budget would be exceeded
+   */
+  protected MemoryBudgetPolicy m_memoryBudgetPolicy = MemoryBudgetPolicy.DOWNSAMPLE;
+
+  /**
+   * Size of the reservoir that the training buffer was reduced to when the memory budget was
+   * reached. Zero if the buffer has not been down-sampled
+   */
+  protected int m_governedSampleSize;
+
+  /**
+   * Number of training rows seen so far when the training memory budget applies
+   */
+  protected long m_governedRowsSeen;
+
+  /**
+   * Number of training rows seen so far when training incrementally on all rows (reported in the
+   * training rows seen/used output fields)
+   */
+  protected long m_incrementalRowsSeen;
+
+  /**
+   * Random draws for replacing rows in the down-sampled training buffer
+   */
+  protected Random m_governorRandom;
+
+  /**
+   * Maximum number of training rows held per class value when balancing classes in "All" mode.
+   * Zero or less means no limit
+   */
+  protected int m_classBalanceMaxRows;
+
+  /**
+   * Maximum number of training rows held per class value, as a multiple of the number held for the
+   * rarest class, when balancing classes in "All" mode. Zero or less means no limit
+   */
+  protected double m_classBalanceMaxRatio;
+
+  /**
+   * True if instances are re-weighted by the inverse of their class's sampling rate when classes
+   * have been balanced
+   */
+  protected boolean m_classBalanceReweight;
+
+  /**
+   * Per-class reservoirs over the training buffer, when balancing classes
+   */
+  protected ClassBalancedSampler m_classSampler;
+
+  /**
+   * Directory to spill cold strata to when the memory budget is exceeded
+   */
+  protected String m_strataSpillDirectory = "";
+
+  /**
+   * Per-stratum buffers when the input is unsorted
+   */
+  protected StrataPartitionStore m_strataStore;
+
+  /**
+   * Default memory budget (in bytes) for separate test rows buffered while training
+   */
+  protected static final long DEFAULT_TEST_ROWS_MEMORY_BUDGET = 64L * 1024L * 1024L;
+
+  /**
+   * Memory budget (in bytes) for separate test rows that arrive while training is still in
+   * progress. Zero or less means no limit
+   */
+  protected long m_testRowsMemoryBudget = DEFAULT_TEST_ROWS_MEMORY_BUDGET;
+
+  /**
+   * Separate test rows read while training, in arrival order
+   */
+  protected SpillableRowBuffer m_bufferedTestRows;
+
+  /**
+   * Per-stratum reservoirs when reservoir sampling in stratified mode
+   */
+  protected StratifiedReservoirSampler m_strataSampler;
+
+  /**
+   * Separate test rows for BatchPredictors, per stratum, when the input is unsorted
+   */
+  protected Map<String, List<Object[]>> m_separateTestStrataRows = new LinkedHashMap<>();
+
   protected IRowMeta m_outputRowMeta;
 
   protected Map<String, Evaluator> m_evaluation = new HashMap<>();
-  protected Map<String, Classifier> m_finalModels = new HashMap<>();
+
+  /**
+   * Final models. Written from worker threads when strata are trained concurrently
+   */
+  protected Map<String, Classifier> m_finalModels = new ConcurrentHashMap<>();
   protected Map<String, Instances> m_trainingHeaders = new HashMap<>();
 
+  /**
+   * Compiled row to instance converters, keyed by header
+   */
+  protected Map<Instances, RowCodec> m_rowCodecs = new IdentityHashMap<>();
+
   protected String m_modelOutputPath = "";
   protected String m_modelFileName = "";
 
   /**
-   * -1 means process all rows as one batch when predicting
+   * Resumable model to continue training from (null if training starts from scratch)
+   */
+  protected String m_resumableModelPath;
+
+  /**
+   * Number of iterations between checkpoints of resumable models (0 for none)
+   */
+  protected int m_checkpointIterations;
+
+  /**
+   * Minimum number of milliseconds between checkpoints of resumable models (0 for none)
+   */
+  protected long m_checkpointIntervalMillis;
+
+  /**
+   * Percentage of the training data to hold out for early stopping of iterative models (0 for no
+   * early stopping)
+   */
+  protected int m_earlyStoppingValidationPercent;
+
+  /**
+   * Number of iterations between early stopping evaluations
+   */
+  protected int m_earlyStoppingInterval = 1;
+
+  /**
+   * Number of evaluations without improvement after which an iterative model stops training
+   */
+  protected int m_earlyStoppingPatience = 1;
+
+  /**
+   * Scheme options for each candidate when performing a hyperparameter search (null if no search)
+   */
+  protected List<String[]> m_searchCandidates;
+
+  /**
+   * -1 means process all rows as one batch when predicting
+   */
+  protected int m_batchPredictorPreferredBatchSize = -1;
+
+  protected boolean m_schemeIsMoreEfficientBatchPredictor;
+
+  /**
+   * The number of instances to batch up for determining header info when incrementally training
+   */
+  protected int m_numInstancesForStreamingHeaderDetermination = 100;
+
+  protected boolean m_trainingIncrementally;
+  protected boolean m_incrementalHeaderDetermined;
+
+  /**
+   * Headers primarily for stratified mode. If a global header can be determined prior to seeing
+   * data, then each stratified header will be identical; otherwise, each stratified dataset may
+   * contain different sets of values for nominal attributes.
+   */
+  protected Map<String, Instances> m_incrementalHeaders;
+  protected Instances m_incrementalHeader;
+
+  /**
+   * Prequential (or streaming cross-validation) evaluators, keyed by stratification value
+   */
+  protected Map<String, Evaluator> m_prequentialEvaluator;
+  // protected Evaluator m_prequentialEvaluator;
+  protected Map<String, Classifier> m_incrementalClassifier;
+  // protected Classifier m_incrementalClassifier;
+
+  /**
+   * Per-stratum incremental training contexts, for strata whose header has been determined
+   */
+  protected Map<String, IncrementalStratum> m_incrementalStrata;
+
+  /**
+   * The context for the stratification value of the most recent training row
+   */
+  protected IncrementalStratum m_currentIncrementalStratum;
+
+  /**
+   * The (raw) stratification value of the most recent training row
+   */
+  protected Object m_currentIncrementalStratValue;
+
+  /**
+   * Number of rows to accumulate before evaluating/updating an incremental model (1 to process
+   * each row as it arrives)
+   */
+  protected int m_incrementalBlockSize = 1;
+
+  /**
+   * True if whole blocks are tested against the model before it is updated with them
+   */
+  protected boolean m_incrementalBlockEvaluation;
+
+  /**
+   * How training and test rows are represented as instances. Training rows are also buffered
+   * sparsely when this is sparse.
+   */
+  protected RowCodec.Representation m_instanceRepresentation = RowCodec.Representation.DENSE;
+
+  /**
+   * True if identical training rows are merged into weighted instances as they are buffered (see
+   * {@code CompactingTrainingBuffer})
+   */
+  protected boolean m_compactDuplicateRows;
+
+  /**
+   * Number of worker threads to use for concurrent model building/evaluation
+   */
+  protected int m_numExecutionSlots = 1;
+
+  /**
+   * Maximum number of cross-validation folds that can be training/testing concurrently
+   */
+  protected int m_maxFoldsInFlight = 1;
+
+  /**
+   * Worker pool (created on demand when more than one execution slot is configured)
+   */
+  protected ExecutorService m_executor;
+
+  /**
+   * Pool that final models are built on while their evaluation runs (created on demand)
+   */
+  protected ExecutorService m_finalModelExecutor;
+
+  /**
+   * Maximum number of strata (stratified mode) that can be queued or training concurrently
+   */
+  protected int m_maxStrataInFlight = 1;
+
+  /**
+   * Maximum number of completed batches (batch mode) that can be queued or training in the
+   * background while the next batch is read (0 to train each batch before reading further rows)
+   */
+  protected int m_maxBatchesInFlight;
+
+  /**
+   * The evaluator for the most recent batch (batch mode). Batches trained in the background can
+   * finish out of order, so only this batch's final model is kept for testing. Guarded by the
+   * lock on {@code m_finalModels}.
+   */
+  protected Evaluator m_latestBatchEvaluator;
+
+  /**
+   * Pending results for strata (or batches) submitted to the worker pool, in order of submission
+   */
+  protected Deque<Future<Object[]>> m_strataInFlight = new ArrayDeque<>();
+
+  /**
+   * Background writer for saving models (created on demand)
+   */
+  protected ModelWriter m_modelWriter;
+
+  /**
+   * True if wall time, CPU time and allocations are measured for each training phase
+   */
+  protected boolean m_collectPhaseMetrics;
+
+  /**
+   * True if phase metrics are appended to the evaluation output rows
+   */
+  protected boolean m_outputPhaseMetrics;
+
+  /**
+   * Phase metrics (row buffering) for the batch or stratum that is currently being buffered
+   */
+  protected PhaseMetrics m_pendingPhaseMetrics;
+
+  /**
+   * Returns true if completed strata are trained on the worker pool while ingestion continues
+   *
+   * @return true if strata are trained concurrently
+   */
+  protected boolean trainStrataConcurrently() {
+    return m_rowHandlingMode == Stratified && m_numExecutionSlots > 1 && m_maxStrataInFlight > 1;
+  }
+
+  /**
+   * Returns true if completed batches are trained on the worker pool while the next batch is read
+   *
+   * @return true if batches are trained in the background
+   */
+  protected boolean trainBatchesInBackground() {
+    return m_rowHandlingMode == Batch && m_maxBatchesInFlight > 0;
+  }
+
+  /**
+   * Add a training row to the training buffer (or the reservoir, if sampling, or the strata store,
+   * if stratifying unsorted input), recording the time taken against the batch or stratum being
+   * buffered when phase metrics are being collected
+   *
+   * @param stratum the stratum that the row belongs to (ignored when buffering a single stratum)
+   * @param row the row to add
+   * @param stepMeta the step metadata
+   * @throws HopException if a problem occurs
+   */
+  protected void bufferTrainingRow(String stratum, Object[] row, BaseSupervisedPMIMeta stepMeta)
+      throws HopException {
+    if (m_collectPhaseMetrics && m_pendingPhaseMetrics == null) {
+      m_pendingPhaseMetrics = new PhaseMetrics();
+    }
+    long[] start = m_collectPhaseMetrics ? m_pendingPhaseMetrics.begin() : null;
+    if (stepMeta.getUseReservoirSampling()) {
+      getStrataSampler(stepMeta).add(stratum, row);
+    } else if (m_unsortedStratification) {
+      m_strataStore.add(stratum, row);
+    } else if (isStreamingSplit(stepMeta)) {
+      routeSplitRow(row, stepMeta);
+    } else if (isClassBalancing(stepMeta)) {
+      if (m_classSampler == null) {
+        m_classSampler = new ClassBalancedSampler(m_trainingBuffer,
+            m_trainingRowMeta.getValueMeta(m_classIndex), m_classIndex, m_classBalanceMaxRows,
+            m_classBalanceMaxRatio, m_randomSeed);
+      }
+      m_classSampler.add(row);
+    } else if (m_governedSampleSize > 0) {
+      // memory budget reached - the training buffer is now a reservoir
+      long slot = (long) (m_governorRandom.nextDouble() * (m_governedRowsSeen + 1));
+      if (slot < m_trainingBuffer.size()) {
+        m_trainingBuffer.set((int) slot, row);
+      }
+    } else {
+      m_trainingBuffer.add(row);
+    }
+    if (isMemoryGoverned(stepMeta)) {
+      m_governedRowsSeen++;
+    }
+    if (start != null) {
+      m_pendingPhaseMetrics.end(PhaseMetrics.Phase.Buffering, start);
+    }
+  }
+
+  /**
+   * Returns true if a percentage split is routed into training and test splits as rows arrive.
+   * Only applies when rows are buffered in arrival order - reservoir sampling, unsorted
+   * stratification and hyperparameter search all split the data after it has been buffered.
+   *
+   * @param stepMeta the step metadata
+   * @return true if the percentage split is streamed
+   */
+  protected boolean isStreamingSplit(BaseSupervisedPMIMeta stepMeta) {
+    return m_streamPercentageSplit && stepMeta.getEvalMode() == Evaluator.EvalMode.PERCENTAGE_SPLIT
+        && !m_trainingIncrementally && !stepMeta.getUseReservoirSampling()
+        && !m_unsortedStratification && m_searchCandidates == null && !isMemoryGoverned(stepMeta)
+        && !isClassBalancing(stepMeta);
+  }
+
+  /**
+   * Returns true if training rows are down-sampled per class value as they arrive. This is the case
+   * when all rows are buffered for a single model (i.e. "All" row handling without reservoir
+   * sampling) and a per-class limit or ratio has been set
+   *
+   * @param stepMeta the step metadata
+   * @return true if classes are balanced
+   */
+  protected boolean isClassBalancing(BaseSupervisedPMIMeta stepMeta) {
+    return (m_classBalanceMaxRows > 0 || m_classBalanceMaxRatio > 0) && m_rowHandlingMode == All
+        && !m_trainingIncrementally && !stepMeta.getUseReservoirSampling();
+  }
+
+  /**
+   * Returns true if the training memory budget applies. This is the case when all rows are
+   * buffered for a single model (i.e. "All" row handling without reservoir sampling)
+   *
+   * @param stepMeta the step metadata
+   * @return true if the training memory budget applies
+   */
+  protected boolean isMemoryGoverned(BaseSupervisedPMIMeta stepMeta) {
+    return m_trainingMemoryBudget > 0 && m_rowHandlingMode == All && !m_trainingIncrementally
+        && !stepMeta.getUseReservoirSampling() && !isClassBalancing(stepMeta);
+  }
+
+  /**
+   * Check the projected memory usage of the training buffer against the training memory budget
+   * (every {@code TRAINING_MEMORY_CHECK_INTERVAL} rows). If the budget would be exceeded then
+   * either fail, or down-sample the buffer to the number of rows that can be afforded and treat it
+   * as a reservoir for the remainder of the stream.
+   *
+   * @param stepMeta the step metadata
+   * @param log the log to use
+   * @throws HopException if the budget would be exceeded and the policy is to fail
+   */
+  protected void checkTrainingMemoryBudget(BaseSupervisedPMIMeta stepMeta, ILogChannel log)
+      throws HopException {
+    if (!isMemoryGoverned(stepMeta) || m_governedSampleSize > 0
+        || m_trainingBuffer.size() % TRAINING_MEMORY_CHECK_INTERVAL != 0) {
+      return;
+    }
+
+    // the buffer is converted to Instances for training, which needs about as much again
+    long projected = m_trainingBuffer.estimateMemoryUsage() * 2;
+    if (projected <= m_trainingMemoryBudget) {
+      return;
+    }
+    int numRows = m_trainingBuffer.size();
+    long projectedMB = projected / (1024L * 1024L);
+    long budgetMB = m_trainingMemoryBudget / (1024L * 1024L);
+    if (m_memoryBudgetPolicy == MemoryBudgetPolicy.FAIL) {
+      throw new HopException(BaseMessages
+          .getString(PKG, "BasePMIStep.Error.TrainingMemoryBudgetExceeded", projectedMB, numRows,
+              budgetMB));
+    }
+
+    int affordable = (int) Math.max(1, numRows * m_trainingMemoryBudget / projected);
+    m_governorRandom = new Random(m_randomSeed);
+
+    // partial Fisher-Yates shuffle to select a random subset
+    for (int i = 0; i < affordable; i++) {
+      m_trainingBuffer.swap(i, i + m_governorRandom.nextInt(numRows - i));
+    }
+    m_trainingBuffer.truncate(affordable);
+    m_governedSampleSize = affordable;
+    log.logBasic(BaseMessages
+        .getString(PKG, "BasePMIStepData.TrainingDownsampledByMemoryBudget", projectedMB, numRows,
+            budgetMB, affordable));
+  }
+
+  /**
+   * Record the number of training rows seen and used in the output rows, if the output has fields
+   * for them (i.e. a training memory budget has been set). These are filled in even when the
+   * budget turns out not to apply at runtime (e.g. the scheme trains incrementally), in which case
+   * every row seen is used
+   *
+   * @param outputRows the output rows (may be null)
+   * @param rowsSeen the number of rows seen
+   * @param rowsUsed the number of rows that the model was trained on
+   */
+  protected void reportTrainingMemoryBudget(Object[][] outputRows, long rowsSeen, long rowsUsed) {
+    if (outputRows == null) {
+      return;
+    }
+    int seenIndex = m_outputRowMeta.indexOfValue(
+        BaseMessages.getString(PKG, "BasePMIStepData.TrainingRowsSeenFieldName"));
+    int usedIndex = m_outputRowMeta.indexOfValue(
+        BaseMessages.getString(PKG, "BasePMIStepData.TrainingRowsUsedFieldName"));
+    for (int i = 0; i < outputRows.length; i++) {
+      if (outputRows[i] != null && seenIndex >= 0 && usedIndex >= 0) {
+        outputRows[i] = padOutputRow(outputRows[i]);
+        outputRows[i][seenIndex] = rowsSeen;
+        outputRows[i][usedIndex] = rowsUsed;
+      }
+    }
+  }
+
+  /**
+   * Record the per-class sampling rates in the output rows, if classes have been balanced
+   *
+   * @param outputRows the output rows (may be null)
+   * @param stepMeta the step metadata
+   */
+  protected void reportClassSamplingRates(Object[][] outputRows, BaseSupervisedPMIMeta stepMeta) {
+    if (outputRows == null || m_classSampler == null || !isClassBalancing(stepMeta)) {
+      return;
+    }
+    int ratesIndex = m_outputRowMeta.indexOfValue(
+        BaseMessages.getString(PKG, "BasePMIStepData.ClassSamplingRatesFieldName"));
+    String rates = m_classSampler.describeSamplingRates();
+    for (int i = 0; i < outputRows.length; i++) {
+      if (outputRows[i] != null && ratesIndex >= 0) {
+        outputRows[i] = padOutputRow(outputRows[i]);
+        outputRows[i][ratesIndex] = rates;
+      }
+    }
+  }
+
+  /**
+   * Route a row to the training or the test split of the current batch/stratum by a seeded random
+   * draw
+   *
+   * @param row the row to route
+   * @param stepMeta the step metadata
+   * @throws HopException if a problem occurs
+   */
+  protected void routeSplitRow(Object[] row, BaseSupervisedPMIMeta stepMeta) throws HopException {
+    if (m_splitTestBuffer == null) {
+      m_splitTestBuffer = newTrainingBuffer(stepMeta, ColumnarTrainingBuffer.DEFAULT_INITIAL_CAPACITY);
+    }
+    if (m_splitRandom == null) {
+      m_splitRandom = new Random(m_randomSeed);
+    }
+    if (m_splitRandom.nextDouble() * 100 < m_percentageSplit) {
+      m_trainingBuffer.add(row);
+    } else {
+      m_splitTestBuffer.add(row);
+    }
+  }
+
+  /**
+   * Get the number of rows buffered for the current batch/stratum (including any routed to the
+   * test split)
+   *
+   * @return the number of buffered rows
+   */
+  protected int bufferedTrainingRows() {
+    return m_trainingBuffer.size() + (m_splitTestBuffer != null ? m_splitTestBuffer.size() : 0);
+  }
+
+  /**
+   * Take the phase metrics for the batch or stratum that has just finished buffering
+   *
+   * @return the phase metrics, or null if phase metrics are not being collected
+   */
+  protected PhaseMetrics takePhaseMetrics() {
+    if (!m_collectPhaseMetrics) {
+      return null;
+    }
+    PhaseMetrics metrics =
+        m_pendingPhaseMetrics != null ? m_pendingPhaseMetrics : new PhaseMetrics();
+    m_pendingPhaseMetrics = null;
+
+    return metrics;
+  }
+
+  /**
+   * Report the phase metrics for a batch or stratum to the log channel and, if configured, append
+   * them to its output row
+   *
+   * @param outputRow the output row for the batch or stratum (may be null)
+   * @param metrics the phase metrics (may be null)
+   * @param subject the name of the batch or stratum
+   * @param log the log to use
+   * @return the output row
+   */
+  protected Object[] reportPhaseMetrics(Object[] outputRow, PhaseMetrics metrics, String subject,
+      ILogChannel log) {
+    if (metrics == null) {
+      return outputRow;
+    }
+    metrics.logTo(log, subject);
+    if (m_outputPhaseMetrics && outputRow != null) {
+      Object[] values = metrics.toRowValues();
+      outputRow = padOutputRow(outputRow);
+      System.arraycopy(values, 0, outputRow, m_outputRowMeta.size() - values.length,
+          values.length);
+    }
+
+    return outputRow;
+  }
+
+  /**
+   * Make sure that an output row has room for all the output fields (rows that do not carry phase
+   * metrics are shorter than the output row metadata)
+   *
+   * @param outputRow the output row
+   * @return the output row, resized if necessary
+   */
+  protected Object[] padOutputRow(Object[] outputRow) {
+    return RowDataUtil.resizeArray(outputRow, m_outputRowMeta.size());
+  }
+
+  protected static String phaseMetricsSubject(String stratificationValue, int batchNumber) {
+    if (stratificationValue != null) {
+      return stratificationValue;
+    }
+    return batchNumber >= 0 ?
+        BaseMessages.getString(PKG, "BasePMIStepData.PhaseMetricsSubject.Batch", "" + batchNumber) :
+        BaseMessages.getString(PKG, "BasePMIStepData.PhaseMetricsSubject.AllRows");
+  }
+
+  /**
+   * Train a completed stratum. If strata are being trained concurrently the stratum is prepared on
+   * the calling thread and then handed to the worker pool, blocking first if the maximum number of
+   * strata are already in flight. Any output rows for strata that have finished (in stratum order)
+   * are returned.
+   *
+   * @param data the training data for the stratum
+   * @param stratificationValue the stratification value
+   * @param stepMeta the step metadata
+   * @param relationName the relation name to use for the training data
+   * @param log the log to use
+   * @param vars variables
+   * @return output rows for finished strata (may be null)
+   * @throws HopException if a problem occurs
+   */
+  protected Object[][] processStratum(ColumnarTrainingBuffer data, String stratificationValue,
+      BaseSupervisedPMIMeta stepMeta, String relationName, ILogChannel log, IVariables vars)
+      throws HopException {
+    if (!trainStrataConcurrently()) {
+      return new Object[][]{
+          processTrainingBatch(data, stratificationValue, stepMeta, relationName, log, vars)};
+    }
+
+    return submitTrainingBatch(data, stratificationValue, stepMeta, relationName, log, vars,
+        m_maxStrataInFlight);
+  }
+
+  /**
+   * Prepare a batch of training data on the calling thread and hand it to the worker pool, blocking
+   * first while the maximum number of batches/strata are already in flight
+   *
+   * @param data the training data (can be reused as soon as this method returns)
+   * @param stratificationValue the stratification value (or null if not stratifying)
+   * @param stepMeta the step metadata
+   * @param relationName the relation name to use for the training data
+   * @param log the log to use
+   * @param vars variables
+   * @param maxInFlight the maximum number of batches/strata that can be in flight
+   * @return output rows for batches/strata that have finished, in order of submission (may be
+   * null)
+   * @throws HopException if a problem occurs
+   */
+  protected Object[][] submitTrainingBatch(ColumnarTrainingBuffer data, String stratificationValue,
+      BaseSupervisedPMIMeta stepMeta, String relationName, ILogChannel log, IVariables vars,
+      int maxInFlight) throws HopException {
+    List<Object[]> finished = new ArrayList<>();
+    while (m_strataInFlight.size() >= maxInFlight) {
+      finished.add(waitForStratum(m_strataInFlight.poll()));
+    }
+    Callable<Object[]> training =
+        prepareTrainingBatch(data, stratificationValue, stepMeta, relationName, log, vars, false);
+    if (training != null) {
+      m_strataInFlight.add(getExecutor().submit(training));
+    }
+
+    return collectFinishedStrata(finished, false);
+  }
+
+  /**
+   * Collect output rows from strata that have finished training, preserving stratum order
+   *
+   * @param finished list to add output rows to
+   * @param waitForAll true to wait for all strata in flight to finish
+   * @return the output rows (or null if there are none)
+   * @throws HopException if a problem occurs
+   */
+  protected Object[][] collectFinishedStrata(List<Object[]> finished, boolean waitForAll)
+      throws HopException {
+    while (!m_strataInFlight.isEmpty() && (waitForAll || m_strataInFlight.peek().isDone())) {
+      finished.add(waitForStratum(m_strataInFlight.poll()));
+    }
+
+    return finished.size() > 0 ? finished.toArray(new Object[finished.size()][]) : null;
+  }
+
+  protected Object[] waitForStratum(Future<Object[]> stratum) throws HopException {
+    try {
+      return stratum.get();
+    } catch (Exception ex) {
+      for (Future<Object[]> f : m_strataInFlight) {
+        f.cancel(true);
+      }
+      m_strataInFlight.clear();
+      if (ex instanceof ExecutionException && ex.getCause() instanceof HopException) {
+        throw (HopException) ex.getCause();
+      }
+      throw new HopException(ex instanceof ExecutionException ? ex.getCause() : ex);
+    }
+  }
+
+  /**
+   * Get the worker pool, creating it if necessary
+   *
+   * @return the worker pool
+   */
+  protected synchronized ExecutorService getExecutor() {
+    if (m_executor == null) {
+      final AtomicInteger threadCount = new AtomicInteger();
+      m_executor = Executors.newFixedThreadPool(m_numExecutionSlots, r -> {
+        Thread t = new Thread(r, "PMI worker " + threadCount.incrementAndGet());
+        t.setDaemon(true);
+        return t;
+      });
+    }
+    return m_executor;
+  }
+
+  /**
+   * Get the pool that final models are built on while their evaluation runs, creating it if
+   * necessary. This is separate from the worker pool because evaluations may themselves be running
+   * on the worker pool (and would deadlock waiting for a slot there), but is bounded in the same
+   * way.
+   *
+   * @return the final model pool
+   */
+  protected synchronized ExecutorService getFinalModelExecutor() {
+    if (m_finalModelExecutor == null) {
+      final AtomicInteger threadCount = new AtomicInteger();
+      m_finalModelExecutor = Executors.newFixedThreadPool(m_numExecutionSlots, r -> {
+        Thread t = new Thread(r, "PMI final model " + threadCount.incrementAndGet());
+        t.setDaemon(true);
+        return t;
+      });
+    }
+    return m_finalModelExecutor;
+  }
+
+  /**
+   * Shut down the worker pool and the final model pool (if they have been created)
+   */
+  protected synchronized void shutdownExecutor() {
+    if (m_executor != null) {
+      m_executor.shutdownNow();
+      m_executor = null;
+    }
+    if (m_finalModelExecutor != null) {
+      m_finalModelExecutor.shutdownNow();
+      m_finalModelExecutor = null;
+    }
+  }
+
+  /**
+   * Get the background model writer, creating it if necessary. The queue allows one finished model
+   * per execution slot (minimum of two) to be waiting to be written.
+   *
+   * @return the model writer
    */
-  protected int m_batchPredictorPreferredBatchSize = -1;
+  protected synchronized ModelWriter getModelWriter() {
+    if (m_modelWriter == null) {
+      m_modelWriter = new ModelWriter(Math.max(2, m_numExecutionSlots));
+    }
+    return m_modelWriter;
+  }
 
-  protected boolean m_schemeIsMoreEfficientBatchPredictor;
+  /**
+   * Wait for any models queued for saving to be written
+   *
+   * @throws HopException if a model could not be saved
+   */
+  protected void awaitModelWrites() throws HopException {
+    ModelWriter writer;
+    synchronized (this) {
+      writer = m_modelWriter;
+    }
+    if (writer != null) {
+      writer.awaitCompletion();
+    }
+  }
 
   /**
-   * The number of instances to batch up for determining header info when incrementally training
+   * Stop the background model writer (if it has been created)
    */
-  protected int m_numInstancesForStreamingHeaderDetermination = 100;
+  protected synchronized void shutdownModelWriter() {
+    if (m_modelWriter != null) {
+      m_modelWriter.close();
+      m_modelWriter = null;
+    }
+  }
 
-  protected boolean m_trainingIncrementally;
-  protected boolean m_incrementalHeaderDetermined;
+  /**
+   * Discard any rows spilled to disk (strata and buffered test rows), deleting their spill files
+   */
+  protected void deleteSpillFiles() {
+    if (m_strataStore != null) {
+      m_strataStore.clear();
+      m_strataStore = null;
+    }
+    if (m_bufferedTestRows != null) {
+      m_bufferedTestRows.clear();
+      m_bufferedTestRows = null;
+    }
+  }
 
   /**
-   * Headers primarily for stratified mode. If a global header can be determined prior to seeing
-   * data, then each stratified header will be identical; otherwise, each stratified dataset may
-   * contain different sets of values for nominal attributes.
+   * Create a new evaluator. Cross-validation folds are run concurrently if more than one execution
+   * slot is available and the caller allows it. Folds are not run on the pool when the evaluation
+   * itself will execute on a worker thread (e.g. concurrent strata), as waiting on the pool from
+   * within the pool could exhaust it.
+   *
+   * @param stepMeta the step metadata
+   * @param concurrentFolds true if folds can be run on the worker pool
+   * @return a new evaluator
    */
-  protected Map<String, Instances> m_incrementalHeaders;
-  protected Instances m_incrementalHeader;
-  protected Map<String, Evaluator> m_prequentialEvaluator;
-  // protected Evaluator m_prequentialEvaluator;
-  protected Map<String, Classifier> m_incrementalClassifier;
-  // protected Classifier m_incrementalClassifier;
+  protected Evaluator newEvaluator(BaseSupervisedPMIMeta stepMeta, boolean concurrentFolds) {
+    ParallelEvaluator evaluator =
+        new ParallelEvaluator(stepMeta.getEvalMode(), m_randomSeed, stepMeta.getOutputAUCMetrics(),
+            stepMeta.getOutputIRMetrics(), new BaseMessagesAdapter(BaseSupervisedPMIMeta.class));
+    if (concurrentFolds && stepMeta.getEvalMode() == Evaluator.EvalMode.CROSS_VALIDATION
+        && m_numExecutionSlots > 1 && m_maxFoldsInFlight > 1) {
+      evaluator.setExecutor(getExecutor());
+      evaluator.setMaxFoldsInFlight(m_maxFoldsInFlight);
+    }
+
+    return evaluator;
+  }
 
   protected void cleanup() {
     if (m_evaluation != null) {
@@ -213,17 +1022,33 @@ public class BaseSupervisedPMIData extends BaseTransformData implements ITransfo
     if (m_trainingHeaders != null) {
       m_trainingHeaders.clear();
     }
+    if (m_rowCodecs != null) {
+      m_rowCodecs.clear();
+    }
     if (m_separateTestSetBatchPredictorRows != null) {
       m_separateTestSetBatchPredictorRows.clear();
     }
     if (m_initialIncrementalRows != null) {
       m_initialIncrementalRows.clear();
     }
-    m_trainingSampler = null;
 
-    if (m_trainingRows != null) {
-      m_trainingRows.clear();
+    m_trainingBuffer = null;
+    m_splitTestBuffer = null;
+    m_splitRandom = null;
+    m_governorRandom = null;
+    m_classSampler = null;
+    deleteSpillFiles();
+    if (m_strataSampler != null) {
+      m_strataSampler.clear();
+      m_strataSampler = null;
     }
+    if (m_separateTestStrataRows != null) {
+      m_separateTestStrataRows.clear();
+    }
+    m_strataInFlight.clear();
+    m_latestBatchEvaluator = null;
+    shutdownExecutor();
+    shutdownModelWriter();
     if (m_trainingFieldIndexes != null) {
       m_trainingFieldIndexes.clear();
     }
@@ -234,7 +1059,8 @@ public class BaseSupervisedPMIData extends BaseTransformData implements ITransfo
     m_trainingIncrementally =
         m_scheme.supportsIncrementalTraining() && (stepMeta.getEvalMode() == Evaluator.EvalMode.NONE
             || stepMeta.getEvalMode() == Evaluator.EvalMode.SEPARATE_TEST_SET
-            || stepMeta.getEvalMode() == Evaluator.EvalMode.PREQUENTIAL);
+            || stepMeta.getEvalMode() == Evaluator.EvalMode.PREQUENTIAL
+            || isStreamingCrossValidation(stepMeta));
 
     if (m_trainingIncrementally) {
       log.logBasic(BaseMessages.getString(PKG, "BasePMIStepData.TrainingIncrementally"));
@@ -246,6 +1072,8 @@ public class BaseSupervisedPMIData extends BaseTransformData implements ITransfo
       m_incrementalClassifier = new HashMap<>();
       m_incrementalHeaders = new HashMap<>();
       m_prequentialEvaluator = new HashMap<>();
+      m_incrementalStrata = new HashMap<>();
+      m_currentIncrementalStratum = null;
 
       try {
         m_numInstancesForStreamingHeaderDetermination =
@@ -263,13 +1091,26 @@ public class BaseSupervisedPMIData extends BaseTransformData implements ITransfo
     }
   }
 
+  /**
+   * Returns true if cross-validation is performed on the stream, with one incrementally updated
+   * model per fold
+   *
+   * @param stepMeta the step metadata
+   * @return true if performing a streaming cross-validation
+   */
+  protected boolean isStreamingCrossValidation(BaseSupervisedPMIMeta stepMeta) {
+    return m_streamCrossValidation && m_scheme.supportsIncrementalTraining()
+        && stepMeta.getEvalMode() == Evaluator.EvalMode.CROSS_VALIDATION;
+  }
+
   protected void initializeIncrementalClassifierAndEval(BaseSupervisedPMIMeta stepMeta,
       ILogChannel log,
       String stratVal) throws Exception {
 
     // construct global header?
     if (m_incrementalHeader == null && m_incrementalHeaderDetermined) {
-      m_incrementalHeader = determineHeader(m_trainingRows, "incremental training data", stepMeta);
+      m_incrementalHeader =
+          determineHeader(new ArrayList<>(), "incremental training data", stepMeta);
     }
 
     if (stratVal != null) {
@@ -296,40 +1137,66 @@ public class BaseSupervisedPMIData extends BaseTransformData implements ITransfo
                   m_incrementalClassifier.get(stratVal));
         }
       }
+    } else if (isStreamingCrossValidation(stepMeta)) {
+      log.logBasic(BaseMessages
+          .getString(PKG, "BasePMIStepData.PerformingStreamingCrossValidation", m_xValFolds));
+
+      if (stratVal != null) {
+        // collects the results for all folds
+        Evaluator evaluator =
+            new Evaluator(stepMeta.getEvalMode(), m_randomSeed, stepMeta.getOutputAUCMetrics(),
+                stepMeta.getOutputIRMetrics(),
+                new BaseMessagesAdapter(BaseSupervisedPMIMeta.class));
+        evaluator.setXValFolds(m_xValFolds);
+        m_prequentialEvaluator.put(stratVal, evaluator);
+        if (m_incrementalHeaders.get(stratVal) != null) {
+          evaluator.initializeNoPriors(m_incrementalHeaders.get(stratVal),
+              m_incrementalClassifier.get(stratVal));
+        }
+      }
+    }
+
+    if (stratVal != null && m_incrementalHeaders.get(stratVal) != null) {
+      IncrementalStratum stratum =
+          new IncrementalStratum(stratVal, m_incrementalHeaders.get(stratVal),
+              m_incrementalClassifier.get(stratVal), m_prequentialEvaluator.get(stratVal),
+              m_trainingRowMeta, m_trainingFieldIndexes, new LogAdapter(log));
+      stratum.setRepresentation(m_instanceRepresentation);
+      if (m_incrementalBlockSize > 1) {
+        stratum.setBlockSize(m_incrementalBlockSize, m_incrementalBlockEvaluation,
+            stepMeta.getOutputAUCMetrics());
+      }
+      if (isStreamingCrossValidation(stepMeta)) {
+        stratum.setStreamingFolds(m_xValFolds, m_randomSeed, stepMeta.getOutputAUCMetrics());
+      }
+      m_incrementalStrata.put(stratVal, stratum);
+      // force the context to be looked up again for the next row
+      m_currentIncrementalStratum = null;
     }
   }
 
   protected void checkAllIncrementalHeaderCreationAndClearCache(BaseSupervisedPMIMeta stepMeta,
       ILogChannel log) throws Exception {
-    for (Map.Entry<String, List<Object[]>> e : m_initialIncrementalRows.entrySet()) {
+    for (Map.Entry<String, ColumnarTrainingBuffer> e : m_initialIncrementalRows.entrySet()) {
       String stratVal = e.getKey();
-      List<Object[]> rowsForStratVal = e.getValue();
+      ColumnarTrainingBuffer rowsForStratVal = e.getValue();
       checkIncrementalHeaderCreationAndClearCache(stepMeta, log, stratVal, rowsForStratVal);
     }
   }
 
   protected void checkIncrementalHeaderCreationAndClearCache(BaseSupervisedPMIMeta stepMeta,
-      ILogChannel log, String stratVal, List<Object[]> rowsForStratVal) throws Exception {
-    if (rowsForStratVal.size() > 0) {
+      ILogChannel log, String stratVal, ColumnarTrainingBuffer rowsForStratVal) throws Exception {
+    if (rowsForStratVal != null && rowsForStratVal.size() > 0) {
       // clear buffered instances first...
 
-      Instances
-          cached =
-          buildDataset(m_incrementalHeaders.get(stratVal), m_trainingRowMeta, rowsForStratVal,
-              m_trainingFieldIndexes, stepMeta);
+      Instances cached =
+          rowsForStratVal.toInstances(m_incrementalHeaders.get(stratVal), m_instanceRepresentation);
       rowsForStratVal.clear();
       m_incrementalClassifier.get(stratVal).buildClassifier(m_incrementalHeaders.get(stratVal));
       // prequentially evaluate and train
+      IncrementalStratum stratum = m_incrementalStrata.get(stratVal);
       for (int i = 0; i < cached.numInstances(); i++) {
-        Instance current = cached.instance(i);
-
-        if (m_prequentialEvaluator != null && m_prequentialEvaluator.get(stratVal) != null) {
-          // test first
-          m_prequentialEvaluator.get(stratVal)
-              .performEvaluationIncremental(current, new LogAdapter(log));
-        }
-        // then train
-        ((UpdateableClassifier) m_incrementalClassifier.get(stratVal)).updateClassifier(current);
+        stratum.processInstance(cached.instance(i));
       }
     }
   }
@@ -341,18 +1208,7 @@ public class BaseSupervisedPMIData extends BaseTransformData implements ITransfo
     Object[][] result = null;
     if (row != null) {
       // prequentially evaluate (if necessary) and then train
-      Instance
-          toProcess =
-          constructInstance(m_incrementalHeaders.get(stratVal), m_trainingRowMeta, row,
-              m_trainingFieldIndexes,
-              stepMeta);
-      if (m_prequentialEvaluator != null && m_prequentialEvaluator.get(stratVal) != null) {
-        // test first
-        m_prequentialEvaluator.get(stratVal)
-            .performEvaluationIncremental(toProcess, new LogAdapter(log));
-      }
-      // then train
-      ((UpdateableClassifier) m_incrementalClassifier.get(stratVal)).updateClassifier(toProcess);
+      m_incrementalStrata.get(stratVal).processRow(row);
     } else {
       // done so get eval row (if necessary)
       // have to iterate over map and save all models
@@ -366,6 +1222,15 @@ public class BaseSupervisedPMIData extends BaseTransformData implements ITransfo
       IVariables vars) throws HopException {
     Object[][] result = null;
 
+    // process any partially filled blocks
+    try {
+      for (IncrementalStratum stratum : m_incrementalStrata.values()) {
+        stratum.flush();
+      }
+    } catch (Exception ex) {
+      throw new HopException(ex);
+    }
+
     // done so get eval row (if necessary)
     // have to iterate over map and save all models
     result = new Object[m_incrementalClassifier.size()][];
@@ -414,52 +1279,87 @@ public class BaseSupervisedPMIData extends BaseTransformData implements ITransfo
       checkAllIncrementalHeaderCreationAndClearCache(stepMeta, log);
       result = processRowIncremental(null, stepMeta, log, vars, null);
     } else {
-      String currentStratVal = "--Not stratified--";
-      if (m_stratificationIndex > -1) {
-        Object stratVal = row[m_stratificationIndex];
-        IValueMeta stratVM = m_trainingRowMeta.getValueMeta(m_stratificationIndex);
-        currentStratVal = stratVM.getString(stratVal);
+      IncrementalStratum stratum = m_currentIncrementalStratum;
+      Object stratVal = m_stratificationIndex > -1 ? row[m_stratificationIndex] : null;
+      if (stratum == null || (m_stratificationIndex > -1 && (stratVal == null || !stratVal
+          .equals(m_currentIncrementalStratValue)))) {
+        // stratification value has changed (or a new context has been created) - look it up
+        stratum = resolveIncrementalStratum(row, stratVal, stepMeta, log);
+        if (stratum == null) {
+          // still caching rows to determine the header for this stratification value
+          return null;
+        }
       }
-      if (!m_incrementalHeaders.containsKey(currentStratVal)) {
-        if (m_incrementalHeaderDetermined) {
-          // use the global header and initialize a new classifier for this stratification value
-          initializeIncrementalClassifierAndEval(stepMeta, log, currentStratVal);
-        } else {
-          // check the cached rows for this stratification value
-          List<Object[]> stratRows = m_initialIncrementalRows.get(currentStratVal);
-          if (stratRows == null) {
-            stratRows = new ArrayList<>();
-            m_initialIncrementalRows.put(currentStratVal, stratRows);
-          }
-          // m_trainingRows.add( row );
-          stratRows.add(row);
-          if (stratRows.size() == m_numInstancesForStreamingHeaderDetermination) {
-            m_incrementalHeaders
-                .put(currentStratVal,
-                    determineHeader(m_trainingRows, "incremental training data", stepMeta));
-            // m_incrementalHeaderDetermined = true;
-            initializeIncrementalClassifierAndEval(stepMeta, log, currentStratVal);
-          }
+
+      // prequentially evaluate (if necessary) and then train
+      stratum.processRow(row);
+      if (m_rowHandlingMode == Batch && m_rowCount > 1) {
+        if (m_rowCount % m_batchSize == 0) {
+          // Output current model (if necessary) and output eval row (if necessary); then reset classifier for next batch
+          outputRowIncremental(stepMeta, log, vars);
+          m_initialIncrementalRows.get("--Not stratified--")
+              .clear(); // force a new header to be determined (if necessary)
+          initializeIncrementalClassifierAndEval(stepMeta, log, "--Not stratified--");
+          m_rowCount = 1;
         }
+        m_rowCount++;
+      }
+    }
+
+    return result;
+  }
+
+  /**
+   * Look up the incremental training context for a row's stratification value. Called only when
+   * the stratification value differs from that of the previous row, so that the per-row path does
+   * no string conversion or map lookups. If the header for the value has not been determined yet,
+   * the row is cached instead.
+   *
+   * @param row the training row
+   * @param stratVal the raw stratification value of the row (null if not stratifying)
+   * @param stepMeta the step metadata
+   * @param log the log to use
+   * @return the context that the row should be processed with, or null if the row has been cached
+   * @throws Exception if a problem occurs
+   */
+  protected IncrementalStratum resolveIncrementalStratum(Object[] row, Object stratVal,
+      BaseSupervisedPMIMeta stepMeta, ILogChannel log) throws Exception {
+    String currentStratVal = "--Not stratified--";
+    if (m_stratificationIndex > -1) {
+      IValueMeta stratVM = m_trainingRowMeta.getValueMeta(m_stratificationIndex);
+      currentStratVal = stratVM.getString(stratVal);
+    }
+    m_currentIncrementalStratum = null;
+    m_currentIncrementalStratValue = null;
+
+    if (!m_incrementalStrata.containsKey(currentStratVal)) {
+      if (m_incrementalHeaderDetermined) {
+        // use the global header and initialize a new classifier for this stratification value
+        initializeIncrementalClassifierAndEval(stepMeta, log, currentStratVal);
       } else {
-        checkIncrementalHeaderCreationAndClearCache(stepMeta, log, currentStratVal,
-            m_initialIncrementalRows.get(currentStratVal));
-        result = processRowIncremental(row, stepMeta, log, vars, currentStratVal);
-        if (m_rowHandlingMode == Batch && m_rowCount > 1) {
-          if (m_rowCount % m_batchSize == 0) {
-            // Output current model (if necessary) and output eval row (if necessary); then reset classifier for next batch
-            outputRowIncremental(stepMeta, log, vars);
-            m_initialIncrementalRows.get("--Not stratified--")
-                .clear(); // force a new header to be determined (if necessary)
-            initializeIncrementalClassifierAndEval(stepMeta, log, "--Not stratified--");
-            m_rowCount = 1;
-          }
-          m_rowCount++;
+        // check the cached rows for this stratification value
+        ColumnarTrainingBuffer stratRows = m_initialIncrementalRows.get(currentStratVal);
+        if (stratRows == null) {
+          stratRows = newTrainingBuffer(stepMeta, m_numInstancesForStreamingHeaderDetermination);
+          m_initialIncrementalRows.put(currentStratVal, stratRows);
         }
+        stratRows.add(row);
+        if (stratRows.size() == m_numInstancesForStreamingHeaderDetermination) {
+          m_incrementalHeaders.put(currentStratVal,
+              determineHeader(stratRows, "incremental training data", stepMeta));
+          initializeIncrementalClassifierAndEval(stepMeta, log, currentStratVal);
+        }
+        return null;
       }
     }
 
-    return result;
+    // train on any rows that were cached while the header was being determined
+    checkIncrementalHeaderCreationAndClearCache(stepMeta, log, currentStratVal,
+        m_initialIncrementalRows.get(currentStratVal));
+    m_currentIncrementalStratum = m_incrementalStrata.get(currentStratVal);
+    m_currentIncrementalStratValue = stratVal;
+
+    return m_currentIncrementalStratum;
   }
 
   protected Object[][] handleTrainingRow(Object[] row, BaseSupervisedPMIMeta stepMeta,
@@ -470,37 +1370,107 @@ public class BaseSupervisedPMIData extends BaseTransformData implements ITransfo
 
     if (m_trainingIncrementally) {
       try {
-        return handleIncrementalTrainingRow(row, stepMeta, log, vars);
+        if (row != null) {
+          m_incrementalRowsSeen++;
+        }
+        Object[][] outputRows = handleIncrementalTrainingRow(row, stepMeta, log, vars);
+        if (m_rowHandlingMode == All) {
+          reportTrainingMemoryBudget(outputRows, m_incrementalRowsSeen, m_incrementalRowsSeen);
+        }
+        return outputRows;
       } catch (Exception ex) {
         throw new HopException(ex);
       }
     }
 
+    if (m_trainingBuffer == null) {
+      m_trainingBuffer = newTrainingBuffer(stepMeta,
+          m_batchSize > 0 ? m_batchSize : ColumnarTrainingBuffer.DEFAULT_INITIAL_CAPACITY);
+    }
+
     Object[][] evaluationOutputRow = null;
     if (m_rowHandlingMode == All || m_rowHandlingMode == Batch) {
       if (row != null) {
-        if (stepMeta.getUseReservoirSampling()) {
-          m_trainingSampler.processRow(row);
-        } else {
-          m_trainingRows.add(row);
-          if (m_rowHandlingMode == Batch && m_trainingRows.size() == m_batchSize) {
+        // dictionaries are maintained as the reservoir (if sampling) accepts rows
+        bufferTrainingRow(NON_STRATIFIED_KEY, row, stepMeta);
+        checkTrainingMemoryBudget(stepMeta, log);
+        if (!stepMeta.getUseReservoirSampling() && m_rowHandlingMode == Batch
+            && bufferedTrainingRows() == m_batchSize) {
+          if (trainBatchesInBackground()) {
+            // train this batch on a worker while the next one fills
+            evaluationOutputRow =
+                submitTrainingBatch(m_trainingBuffer, null, stepMeta, "Batch training data", log,
+                    vars, m_maxBatchesInFlight);
+          } else {
             evaluationOutputRow = new Object[1][];
             evaluationOutputRow[0] =
-                processTrainingBatch(m_trainingRows, null, stepMeta, "Batch training data", log,
+                processTrainingBatch(m_trainingBuffer, null, stepMeta, "Batch training data", log,
                     vars);
-            m_trainingRows.clear();
           }
+          m_trainingBuffer.clear();
+        } else if (trainBatchesInBackground()) {
+          // pass on the results of any batches that have finished in the meantime
+          evaluationOutputRow = collectFinishedStrata(new ArrayList<>(), false);
         }
       } else {
         // no more rows
-        List<Object[]> data =
-            stepMeta.getUseReservoirSampling() ? m_trainingSampler.getSample() : m_trainingRows;
-        if (data != null && data.size() > 0) {
+        if (stepMeta.getUseReservoirSampling() && m_strataSampler != null) {
+          ColumnarTrainingBuffer sample = m_strataSampler.remove(NON_STRATIFIED_KEY);
+          if (sample != null) {
+            m_trainingBuffer = sample;
+          }
+        }
+        long rowsUsed = m_trainingBuffer instanceof CompactingTrainingBuffer ?
+            ((CompactingTrainingBuffer) m_trainingBuffer).getRowsAdded() : m_trainingBuffer.size();
+        long rowsSeen = isMemoryGoverned(stepMeta) ? m_governedRowsSeen : rowsUsed;
+        if (m_governedSampleSize > 0) {
+          // drop nominal values that only occurred in rows that have since been replaced
+          m_trainingBuffer.compactDictionaries();
+          log.logBasic(BaseMessages
+              .getString(PKG, "BasePMIStepData.TrainingSampleSummary", rowsUsed,
+                  m_governedRowsSeen));
+        }
+        if (m_classSampler != null) {
+          m_classSampler.finish();
+          rowsUsed = m_trainingBuffer.size();
+          Map<String, Long> seen = m_classSampler.getRowsSeen();
+          for (Map.Entry<String, Double> e : m_classSampler.getSamplingRates().entrySet()) {
+            long classSeen = seen.get(e.getKey());
+            log.logBasic(BaseMessages
+                .getString(PKG, "BasePMIStepData.ClassSampleSummary", e.getKey(),
+                    Math.round(classSeen * e.getValue()), classSeen,
+                    Utils.doubleToString(e.getValue(), 4)));
+          }
+        }
+        if (m_trainingBuffer.size() > 0 && m_searchCandidates != null) {
+          evaluationOutputRow =
+              searchHyperparameters(m_trainingBuffer, stepMeta, "Batch training data", log, vars);
+          m_trainingBuffer.clear();
+        } else if (trainBatchesInBackground()) {
+          // all batches must have finished before any separate test set can be processed
+          List<Object[]> finished = new ArrayList<>();
+          if (bufferedTrainingRows() > 0) {
+            Object[][] submitted =
+                submitTrainingBatch(m_trainingBuffer, null, stepMeta, "Batch training data", log,
+                    vars, m_maxBatchesInFlight);
+            if (submitted != null) {
+              finished.addAll(Arrays.asList(submitted));
+            }
+            m_trainingBuffer.clear();
+          }
+          evaluationOutputRow = collectFinishedStrata(finished, true);
+        } else if (bufferedTrainingRows() > 0) {
           evaluationOutputRow = new Object[1][];
-          evaluationOutputRow[0] = processTrainingBatch(data, null, stepMeta, "Batch training data",
-              log, vars);
+          evaluationOutputRow[0] =
+              processTrainingBatch(m_trainingBuffer, null, stepMeta, "Batch training data", log,
+                  vars);
+          m_trainingBuffer.clear();
         }
+        reportTrainingMemoryBudget(evaluationOutputRow, rowsSeen, rowsUsed);
+        reportClassSamplingRates(evaluationOutputRow, stepMeta);
       }
+    } else if (m_unsortedStratification) {
+      evaluationOutputRow = handleUnsortedStratifiedTrainingRow(row, stepMeta, log, vars);
     } else {
       // stratified mode
       if (row != null) {
@@ -511,178 +1481,794 @@ public class BaseSupervisedPMIData extends BaseTransformData implements ITransfo
               BaseMessages.getString(PKG, "BasePMIStep.Warning.NullStratificationFieldValue"));
           // TODO perhaps send this to the error stream?
         } else {
-          if (m_currentStratificationValue.equals(stratVM.getString(stratVal))) {
-            if (stepMeta.getUseReservoirSampling()) {
-              m_trainingSampler.processRow(row);
-            } else {
-              m_trainingRows.add(row);
-            }
-          } else {
+          String stratS = stratVM.getString(stratVal);
+          if (!m_currentStratificationValue.equals(stratS)) {
             if (!org.apache.hop.core.util.Utils.isEmpty(m_currentStratificationValue)) {
-              if (m_stratificationCheck.contains(stratVM.getString(stratVal))) {
+              if (m_stratificationCheck.contains(stratS)) {
                 throw new HopException(BaseMessages
                     .getString(PKG, "BasePMIStep.Error.PreviouslySeenStratificationValue",
-                        stratVM.getString(stratVal)));
+                        stratS));
               }
               if (stepMeta.getUseReservoirSampling()) {
-                List<Object[]> dataToTrainFrom = m_trainingSampler.getSample();
-                if (dataToTrainFrom != null) {
-                  evaluationOutputRow = new Object[1][];
-                  evaluationOutputRow[0] =
-                      processTrainingBatch(dataToTrainFrom, stratVM.getString(stratVal), stepMeta,
-                          "Stratified training sample", log, vars);
-                }
-                m_trainingSampler.cleanUp();
-                m_trainingSampler.initialize(m_reservoirSize, m_randomSeed);
-              } else if (m_trainingRows.size() > 0) {
-                evaluationOutputRow = new Object[1][];
-                evaluationOutputRow[0] =
-                    processTrainingBatch(m_trainingRows, m_currentStratificationValue, stepMeta,
+                evaluationOutputRow =
+                    processSampledStratum(m_currentStratificationValue, stepMeta, log, vars);
+              } else if (bufferedTrainingRows() > 0) {
+                evaluationOutputRow =
+                    processStratum(m_trainingBuffer, m_currentStratificationValue, stepMeta,
                         "Stratified training data", log, vars);
-                m_trainingRows.clear();
+                m_trainingBuffer.clear();
               }
-              m_stratificationCheck.add(stratVM.getString(stratVal));
+              m_stratificationCheck.add(stratS);
             }
-            m_currentStratificationValue = stratVM.getString(stratVal);
-            m_trainingRows.add(row);
+            m_currentStratificationValue = stratS;
           }
+          bufferTrainingRow(stratS, row, stepMeta);
+        }
+        if (evaluationOutputRow == null && trainStrataConcurrently()) {
+          // pass on the results of any strata that have finished in the meantime
+          evaluationOutputRow = collectFinishedStrata(new ArrayList<>(), false);
         }
       } else {
         // no more rows
-        List<Object[]>
-            dataToTrainFrom =
-            stepMeta.getUseReservoirSampling() ? m_trainingSampler.getSample() : m_trainingRows;
         String stratVal = m_rowHandlingMode == Stratified ? m_currentStratificationValue : null;
-        if (dataToTrainFrom != null) {
-          evaluationOutputRow = new Object[1][];
-          evaluationOutputRow[0] =
-              processTrainingBatch(dataToTrainFrom, stratVal, stepMeta,
-                  stepMeta.getUseReservoirSampling() ? "Stratified training sample"
-                      : "Stratified training data", log,
-                  vars);
+        if (stepMeta.getUseReservoirSampling()) {
+          evaluationOutputRow = processSampledStratum(stratVal, stepMeta, log, vars);
+        } else {
+          evaluationOutputRow =
+              processStratum(m_trainingBuffer, stratVal, stepMeta,
+                  "Stratified training data", log, vars);
+        }
+        m_trainingBuffer.clear();
+
+        // all strata must have finished before any separate test set can be processed
+        if (trainStrataConcurrently()) {
+          List<Object[]> finished = new ArrayList<>();
+          if (evaluationOutputRow != null) {
+            finished.addAll(Arrays.asList(evaluationOutputRow));
+          }
+          evaluationOutputRow = collectFinishedStrata(finished, true);
+        }
+
+        // reset current stratification value just in case we have a separate test set
+        m_currentStratificationValue = "";
+        m_stratificationCheck.clear();
+      }
+    }
+    return evaluationOutputRow;
+  }
+
+  /**
+   * Handle a training row in stratified mode when the input is not sorted by the stratification
+   * field. Rows are partitioned into per-stratum buffers (spilling to disk if necessary) and every
+   * stratum is trained once the end of the stream is reached.
+   *
+   * @param row the row to process (null indicates the end of the stream)
+   * @param stepMeta the step metadata
+   * @param log the log to use
+   * @param vars variables
+   * @return output rows (null until the end of the stream)
+   * @throws HopException if a problem occurs
+   */
+  protected Object[][] handleUnsortedStratifiedTrainingRow(Object[] row,
+      BaseSupervisedPMIMeta stepMeta, ILogChannel log, IVariables vars) throws HopException {
+    if (m_strataStore == null) {
+      m_strataStore =
+          new StrataPartitionStore(getModelFieldsInHeaderOrder(stepMeta), m_trainingRowMeta,
+              m_trainingFieldIndexes, m_strataMemoryBudget, getSpillDirectory(),
+              isSparseBuffering());
+    }
+
+    if (row != null) {
+      Object stratVal = row[m_stratificationIndex];
+      IValueMeta stratVM = m_trainingRowMeta.getValueMeta(m_stratificationIndex);
+      if (stratVM.isNull(stratVal)) {
+        log.logDetailed(
+            BaseMessages.getString(PKG, "BasePMIStep.Warning.NullStratificationFieldValue"));
+      } else {
+        bufferTrainingRow(stratVM.getString(stratVal), row, stepMeta);
+      }
+      return null;
+    }
+
+    // no more rows - train each stratum in order of first appearance. Rows for all strata were
+    // buffered before any stratum could be trained, so buffering is reported on its own
+    reportPhaseMetrics(null, takePhaseMetrics(), "all strata", log);
+    List<Object[]> outputRows = new ArrayList<>();
+    try {
+      if (stepMeta.getUseReservoirSampling()) {
+        StratifiedReservoirSampler sampler = getStrataSampler(stepMeta);
+        log.logBasic(BaseMessages
+            .getString(PKG, "BasePMIStepData.TrainingUnsortedStrata", sampler.numStrata()));
+        if (sampler.getEffectiveReservoirSize() < m_reservoirSize) {
+          log.logBasic(BaseMessages
+              .getString(PKG, "BasePMIStepData.ReservoirSizeReducedByMemoryCeiling",
+                  sampler.getEffectiveReservoirSize()));
+        }
+        for (String stratum : sampler.getStrata()) {
+          Object[][] finished = processSampledStratum(stratum, stepMeta, log, vars);
+          if (finished != null) {
+            outputRows.addAll(Arrays.asList(finished));
+          }
+        }
+      } else {
+        log.logBasic(BaseMessages
+            .getString(PKG, "BasePMIStepData.TrainingUnsortedStrata", m_strataStore.numStrata()));
+        for (String stratum : m_strataStore.getStrata()) {
+          Object[][] finished =
+              processStratum(m_strataStore.remove(stratum), stratum, stepMeta,
+                  "Stratified training data", log, vars);
+          if (finished != null) {
+            outputRows.addAll(Arrays.asList(finished));
+          }
+        }
+      }
+    } finally {
+      m_strataStore.clear();
+      m_strataStore = null;
+      if (m_strataSampler != null) {
+        m_strataSampler.clear();
+        m_strataSampler = null;
+      }
+    }
+    if (trainStrataConcurrently()) {
+      return collectFinishedStrata(outputRows, true);
+    }
+
+    return outputRows.size() > 0 ? outputRows.toArray(new Object[outputRows.size()][]) : null;
+  }
+
+  /**
+   * Get the per-stratum reservoir sampler, creating it if necessary
+   *
+   * @param stepMeta the step metadata
+   * @return the sampler
+   */
+  protected StratifiedReservoirSampler getStrataSampler(BaseSupervisedPMIMeta stepMeta) {
+    if (m_strataSampler == null) {
+      m_strataSampler =
+          new StratifiedReservoirSampler(getModelFieldsInHeaderOrder(stepMeta), m_trainingRowMeta,
+              m_trainingFieldIndexes, m_reservoirSize, m_randomSeed, m_strataMemoryBudget,
+              isSparseBuffering());
+    }
+    return m_strataSampler;
+  }
+
+  /**
+   * Train the sample for a stratum and release its reservoir for reuse
+   *
+   * @param stratum the stratification value
+   * @param stepMeta the step metadata
+   * @param log the log to use
+   * @param vars variables
+   * @return output rows for finished strata (may be null)
+   * @throws HopException if a problem occurs
+   */
+  protected Object[][] processSampledStratum(String stratum, BaseSupervisedPMIMeta stepMeta,
+      ILogChannel log, IVariables vars) throws HopException {
+    ColumnarTrainingBuffer sample =
+        m_strataSampler == null ? null : m_strataSampler.remove(stratum);
+    if (sample == null) {
+      return null;
+    }
+    try {
+      return processStratum(sample, stratum, stepMeta, "Stratified training sample", log, vars);
+    } finally {
+      m_strataSampler.recycle(sample);
+    }
+  }
+
+  protected Object[] processTrainingBatch(List<Object[]> data, String stratificationValue,
+      BaseSupervisedPMIMeta stepMeta, String relationName, ILogChannel log, IVariables vars)
+      throws HopException {
+
+    ColumnarTrainingBuffer buffer = newTrainingBuffer(stepMeta, data.size());
+    buffer.addAll(data);
+
+    return processTrainingBatch(buffer, stratificationValue, stepMeta, relationName, log, vars);
+  }
+
+  protected Object[] processTrainingBatch(ColumnarTrainingBuffer data, String stratificationValue,
+      BaseSupervisedPMIMeta stepMeta, String relationName, ILogChannel log, IVariables vars)
+      throws HopException {
+
+    Callable<Object[]> training =
+        prepareTrainingBatch(data, stratificationValue, stepMeta, relationName, log, vars, true);
+    if (training == null) {
+      return null;
+    }
+    try {
+      return training.call();
+    } catch (HopException ex) {
+      throw ex;
+    } catch (Exception ex) {
+      throw new HopException(ex);
+    }
+  }
+
+  /**
+   * Prepare a batch of training data for model building and evaluation. Everything that touches
+   * state shared between batches (header determination, configuring the scheme, registering the
+   * evaluator) is done here, on the calling thread; the returned task only builds/evaluates the
+   * model for this batch and so can be run on a worker thread. The supplied buffer can be reused as
+   * soon as this method returns.
+   *
+   * @param data the training data
+   * @param stratificationValue the stratification value for this batch (or null if not stratifying)
+   * @param stepMeta the step metadata
+   * @param relationName the relation name to use for the training data
+   * @param log the log to use
+   * @param vars variables
+   * @param concurrentFolds true if cross-validation folds can be run on the worker pool
+   * @return a task that trains and evaluates the model and returns the output row, or null if
+   * there is no data
+   * @throws HopException if a problem occurs
+   */
+  protected Callable<Object[]> prepareTrainingBatch(ColumnarTrainingBuffer data,
+      final String stratificationValue, final BaseSupervisedPMIMeta stepMeta, String relationName,
+      final ILogChannel log, final IVariables vars, boolean concurrentFolds) throws HopException {
+
+    // the test split (if streaming a percentage split) is consumed here along with the data
+    ColumnarTrainingBuffer splitTest = null;
+    if (isStreamingSplit(stepMeta) && m_splitTestBuffer != null) {
+      splitTest = m_splitTestBuffer;
+      m_splitTestBuffer = null;
+    }
+    m_splitRandom = null;
+
+    if (data.size() == 0 && splitTest != null && splitTest.size() > 0) {
+      // every row of a small batch/stratum was routed to the test split - train (and evaluate
+      // with a regular percentage split) on those rows rather than discarding them
+      data = splitTest;
+      splitTest = null;
+    }
+    if (data.size() == 0) {
+      return null;
+    }
+    final PhaseMetrics metrics = takePhaseMetrics();
+    long[] start = metrics != null ? metrics.begin() : null;
+    Instances trainingHeader = determineHeader(data, splitTest, relationName, stepMeta);
+    if (metrics != null) {
+      metrics.end(PhaseMetrics.Phase.DetermineHeader, start);
+      start = metrics.begin();
+    }
+
+    // build the training dataset directly from the columnar buffer
+    Instances builtData = data.toInstances(trainingHeader, m_instanceRepresentation);
+    Instances splitTestData = null;
+    if (splitTest != null) {
+      splitTestData = splitTest.toInstances(trainingHeader, m_instanceRepresentation);
+      splitTest.clear();
+    }
+    if (data instanceof CompactingTrainingBuffer) {
+      log.logDetailed(BaseMessages.getString(PKG, "BasePMIStepData.CompactedDuplicateRows",
+          ((CompactingTrainingBuffer) data).getRowsAdded(), data.size()));
+      if (!isStreamingSplit(stepMeta) && (
+          stepMeta.getEvalMode() == Evaluator.EvalMode.PERCENTAGE_SPLIT
+              || stepMeta.getEvalMode() == Evaluator.EvalMode.CROSS_VALIDATION)) {
+        // the evaluation cuts the weighted instances, so all copies of a row land on the same side
+        log.logBasic(BaseMessages
+            .getString(PKG, "BasePMIStepData.Warning.CompactedRowsSplitByInstance"));
+      }
+      if (!schemeHandlesInstanceWeights(trainingHeader)) {
+        // duplicates have to be presented to the scheme individually
+        log.logBasic(BaseMessages
+            .getString(PKG, "BasePMIStepData.Warning.SchemeDoesNotHandleInstanceWeights"));
+        builtData = CompactingTrainingBuffer.expandWeights(builtData);
+        if (splitTestData != null) {
+          splitTestData = CompactingTrainingBuffer.expandWeights(splitTestData);
+        }
+      }
+    }
+    if (m_classBalanceReweight && m_classSampler != null && isClassBalancing(stepMeta)) {
+      // restore the class distribution of the stream
+      m_classSampler.reweight(builtData);
+    }
+    final Instances trainingData = builtData;
+    if (metrics != null) {
+      metrics.end(PhaseMetrics.Phase.BuildDataset, start);
+    }
+    String evalKey = stratificationValue;
+    if (m_rowHandlingMode != Stratified) {
+      m_evaluation.clear();
+      m_trainingHeaders.clear();
+      m_rowCodecs.clear();
+      evalKey = "non-stratified";
+    }
+    final int batchNumber = m_rowHandlingMode == Batch ? m_batchCount++ : -1;
+    final Evaluator evaluator = newEvaluator(stepMeta, concurrentFolds);
+    m_evaluation.put(evalKey, evaluator);
+    m_trainingHeaders.put(evalKey, trainingHeader);
+    if (m_rowHandlingMode == Batch) {
+      synchronized (m_finalModels) {
+        m_latestBatchEvaluator = evaluator;
+      }
+    }
+    if (stepMeta.getEvalMode() == Evaluator.EvalMode.PERCENTAGE_SPLIT) {
+      evaluator.setPercentageSplit(m_percentageSplit);
+    } else if (stepMeta.getEvalMode() == Evaluator.EvalMode.CROSS_VALIDATION) {
+      evaluator.setXValFolds(m_xValFolds);
+    }
+    evaluator.setRandomSeed(m_randomSeed);
+    try {
+      Classifier currentClassifier = (Classifier) m_scheme.getConfiguredScheme(trainingHeader);
+      log.logDebug(
+          "Training current classifier: " + currentClassifier.getClass().getCanonicalName() + " "
+              + Utils
+              .joinOptions(((OptionHandler) currentClassifier).getOptions()));
+      if (currentClassifier instanceof BatchPredictor && ((BatchPredictor) currentClassifier)
+          .implementsMoreEfficientBatchPrediction()) {
+        m_schemeIsMoreEfficientBatchPredictor = true;
+      }
+      evaluator.initialize(trainingData, currentClassifier);
+      if (splitTestData != null) {
+        ((ParallelEvaluator) evaluator).setSplitTestData(splitTestData);
+      }
+
+      // store the preferred batch prediction batch size (if necessary)
+      if (m_schemeIsMoreEfficientBatchPredictor) {
+        String prefBatchS = ((BatchPredictor) evaluator.getClassifierTemplate()).getBatchSize();
+        if (!org.apache.hop.core.util.Utils.isEmpty(prefBatchS)) {
+          m_batchPredictorPreferredBatchSize = Integer
+              .parseInt(vars.resolve(prefBatchS));
+        }
+      }
+    } catch (Exception ex) {
+      throw new HopException(ex);
+    }
+
+    final String finalEvalKey = evalKey;
+    return () -> trainAndEvaluate(evaluator, trainingData, finalEvalKey, stratificationValue,
+        batchNumber, metrics, stepMeta, log, vars);
+  }
+
+  /**
+   * Evaluate each hyperparameter search candidate on the training data and build the final model
+   * (if necessary) using the options of the best candidate. The training data is converted to
+   * Instances once, randomized (and stratified for cross-validation) once, and then shared
+   * read-only between the candidates, so that every candidate sees exactly the same
+   * folds/split. Candidates are evaluated concurrently on the worker pool if more than one
+   * execution slot is available.
+   *
+   * @param data the training data
+   * @param stepMeta the step metadata
+   * @param relationName the relation name to use for the training data
+   * @param log the log to use
+   * @param vars variables
+   * @return one evaluation row per candidate, in candidate order
+   * @throws HopException if a problem occurs
+   */
+  protected Object[][] searchHyperparameters(ColumnarTrainingBuffer data,
+      final BaseSupervisedPMIMeta stepMeta, String relationName, final ILogChannel log,
+      final IVariables vars) throws HopException {
+    // phases shared by all candidates are reported with the best candidate
+    PhaseMetrics sharedMetrics = takePhaseMetrics();
+    long[] start = sharedMetrics != null ? sharedMetrics.begin() : null;
+    Instances trainingHeader = determineHeader(data, relationName, stepMeta);
+    if (sharedMetrics != null) {
+      sharedMetrics.end(PhaseMetrics.Phase.DetermineHeader, start);
+      start = sharedMetrics.begin();
+    }
+    final Instances trainingData = data.toInstances(trainingHeader, m_instanceRepresentation);
+    if (sharedMetrics != null) {
+      sharedMetrics.end(PhaseMetrics.Phase.BuildDataset, start);
+    }
+    m_evaluation.clear();
+    m_trainingHeaders.clear();
+    m_rowCodecs.clear();
+
+    // randomize once (as each evaluator would do for itself) and share
+    trainingData.randomize(new Random(m_randomSeed));
+    if (stepMeta.getEvalMode() == Evaluator.EvalMode.CROSS_VALIDATION && trainingData
+        .classAttribute().isNominal()) {
+      trainingData.stratify(m_xValFolds);
+    }
+
+    log.logBasic(BaseMessages
+        .getString(PKG, "BasePMIStepData.EvaluatingSearchCandidates", m_searchCandidates.size()));
+    String[] baseOptions = m_scheme.getSchemeOptions();
+    List<ParallelEvaluator> evaluators = new ArrayList<>();
+    try {
+      for (String[] options : m_searchCandidates) {
+        // configuring the scheme is not thread safe, so candidate templates are created here
+        m_scheme.setSchemeOptions(options.clone());
+        Classifier template = (Classifier) m_scheme.getConfiguredScheme(trainingHeader);
+        ParallelEvaluator evaluator = (ParallelEvaluator) newEvaluator(stepMeta, false);
+        if (stepMeta.getEvalMode() == Evaluator.EvalMode.PERCENTAGE_SPLIT) {
+          evaluator.setPercentageSplit(m_percentageSplit);
+        } else {
+          evaluator.setXValFolds(m_xValFolds);
+        }
+        evaluator.setRandomSeed(m_randomSeed);
+        evaluator.setPreserveOrder(true);
+        evaluator.initialize(trainingData, template);
+        evaluators.add(evaluator);
+      }
+    } catch (Exception ex) {
+      throw new HopException(ex);
+    } finally {
+      try {
+        m_scheme.setSchemeOptions(baseOptions);
+      } catch (Exception ex) {
+        log.logError(ex.getMessage(), ex);
+      }
+    }
+
+    List<Future<Object[]>> candidateRows = new ArrayList<>();
+    final PhaseMetrics[] candidateMetrics = new PhaseMetrics[evaluators.size()];
+    for (int i = 0; i < evaluators.size(); i++) {
+      final ParallelEvaluator evaluator = evaluators.get(i);
+      final PhaseMetrics metrics = m_collectPhaseMetrics ? new PhaseMetrics() : null;
+      candidateMetrics[i] = metrics;
+      Callable<Object[]> evaluation = () -> {
+        long[] evalStart = metrics != null ? metrics.begin() : null;
+        evaluator.performEvaluation(null, new LogAdapter(log), new VariablesAdapter(vars));
+        if (metrics != null) {
+          metrics.end(PhaseMetrics.Phase.Evaluation, evalStart);
+        }
+        return evaluator.getEvalRow(null, -1, new LogAdapter(log));
+      };
+      if (m_numExecutionSlots > 1) {
+        candidateRows.add(getExecutor().submit(evaluation));
+      } else {
+        FutureTask<Object[]> task = new FutureTask<>(evaluation);
+        task.run();
+        candidateRows.add(task);
+      }
+    }
+
+    Object[][] result = new Object[evaluators.size()][];
+    ParallelEvaluator best = null;
+    int bestIndex = -1;
+    double bestError = Double.MAX_VALUE;
+    for (int i = 0; i < evaluators.size(); i++) {
+      try {
+        result[i] = candidateRows.get(i).get();
+      } catch (Exception ex) {
+        for (Future<Object[]> f : candidateRows) {
+          f.cancel(true);
+        }
+        if (ex instanceof ExecutionException && ex.getCause() instanceof HopException) {
+          throw (HopException) ex.getCause();
         }
+        throw new HopException(ex instanceof ExecutionException ? ex.getCause() : ex);
+      }
 
-        // reset current stratification value just in case we have a separate test set
-        m_currentStratificationValue = "";
-        m_stratificationCheck.clear();
+      // error rate for nominal classes, root mean squared error for numeric ones
+      ParallelEvaluator evaluator = evaluators.get(i);
+      if (evaluator.wasEvaluationPerformed()
+          && evaluator.getEvaluation().errorRate() < bestError) {
+        bestError = evaluator.getEvaluation().errorRate();
+        best = evaluator;
+        bestIndex = i;
       }
     }
-    return evaluationOutputRow;
+
+    if (best != null) {
+      Classifier bestTemplate = best.getClassifierTemplate();
+      log.logBasic(BaseMessages.getString(PKG, "BasePMIStepData.BestSearchCandidate",
+          bestTemplate instanceof OptionHandler ?
+              Utils.joinOptions(((OptionHandler) bestTemplate).getOptions()) : "", bestError));
+      m_evaluation.put("non-stratified", best);
+      m_trainingHeaders.put("non-stratified", trainingHeader);
+      if (bestTemplate instanceof BatchPredictor && ((BatchPredictor) bestTemplate)
+          .implementsMoreEfficientBatchPrediction()) {
+        m_schemeIsMoreEfficientBatchPredictor = true;
+        String prefBatchS = ((BatchPredictor) bestTemplate).getBatchSize();
+        if (!org.apache.hop.core.util.Utils.isEmpty(prefBatchS)) {
+          m_batchPredictorPreferredBatchSize = Integer.parseInt(vars.resolve(prefBatchS));
+        }
+      }
+
+      PhaseMetrics bestMetrics = candidateMetrics[bestIndex];
+      if (bestMetrics != null) {
+        bestMetrics.add(sharedMetrics);
+        sharedMetrics = null;
+      }
+      if (!org.apache.hop.core.util.Utils.isEmpty(m_modelOutputPath)) {
+        try {
+          start = bestMetrics != null ? bestMetrics.begin() : null;
+          IterativeTrainer trainer =
+              m_scheme.supportsResumableTraining() ? newIterativeTrainer(null, -1, log) : null;
+          if (trainer != null && (trainer.isCheckpointing() || trainer.isEarlyStopping())) {
+            best.setIterativeTrainer(trainer);
+          }
+          Classifier bestModel =
+              best.buildFinalModel(new LogAdapter(log), new VariablesAdapter(vars));
+          m_finalModels.put("non-stratified", bestModel);
+          if (bestMetrics != null) {
+            bestMetrics.end(PhaseMetrics.Phase.BuildFinalModel, start);
+            start = bestMetrics.begin();
+          }
+          saveModel(bestModel, trainingData, best.getTrainingPriors(), null, -1, stepMeta, log);
+          if (bestMetrics != null) {
+            bestMetrics.end(PhaseMetrics.Phase.SaveModel, start);
+          }
+        } catch (HopException ex) {
+          throw ex;
+        } catch (Exception ex) {
+          throw new HopException(ex);
+        }
+      }
+    }
+
+    for (int i = 0; i < result.length; i++) {
+      result[i] = reportPhaseMetrics(result[i], candidateMetrics[i], "candidate " + (i + 1), log);
+    }
+    // no candidate could be evaluated, so the shared phases are reported on their own
+    reportPhaseMetrics(null, sharedMetrics, "search", log);
+
+    return result;
   }
 
-  protected Object[] processTrainingBatch(List<Object[]> data, String stratificationValue,
-      BaseSupervisedPMIMeta stepMeta, String relationName, ILogChannel log, IVariables vars)
-      throws HopException {
+  /**
+   * Perform evaluation (if necessary) and build the final model (if necessary) for a batch of
+   * training data that has been prepared by {@code prepareTrainingBatch()}
+   *
+   * @param evaluator the initialized evaluator for the batch
+   * @param trainingData the training data
+   * @param evalKey the key that the evaluator is stored under
+   * @param stratificationValue the stratification value (or null if not stratifying)
+   * @param batchNumber the batch number (or -1 if not in batch mode)
+   * @param metrics the phase metrics for the batch (null if phase metrics are not being collected)
+   * @param stepMeta the step metadata
+   * @param log the log to use
+   * @param vars variables
+   * @return the output row
+   * @throws HopException if a problem occurs
+   */
+  protected Object[] trainAndEvaluate(Evaluator evaluator, Instances trainingData, String evalKey,
+      String stratificationValue, int batchNumber, PhaseMetrics metrics,
+      BaseSupervisedPMIMeta stepMeta, ILogChannel log, IVariables vars) throws HopException {
 
     Object[] outputRow = null;
-    if (data.size() > 0) {
-      Instances trainingHeader = determineHeader(data, relationName, stepMeta);
-
-      // build the training dataset
-      Instances
-          trainingData =
-          buildDataset(trainingHeader, m_trainingRowMeta, data, m_trainingFieldIndexes, stepMeta);
-      String evalKey = stratificationValue;
-      if (m_rowHandlingMode != Stratified) {
-        m_evaluation.clear();
-        m_trainingHeaders.clear();
-        evalKey = "non-stratified";
-      }
-      Evaluator
-          evaluator =
-          new Evaluator(stepMeta.getEvalMode(), m_randomSeed, stepMeta.getOutputAUCMetrics(),
-              stepMeta.getOutputIRMetrics(), new BaseMessagesAdapter(BaseSupervisedPMIMeta.class));
-      m_evaluation.put(evalKey, evaluator);
-      m_trainingHeaders.put(evalKey, trainingHeader);
-      if (stepMeta.getEvalMode() == Evaluator.EvalMode.PERCENTAGE_SPLIT) {
-        evaluator.setPercentageSplit(m_percentageSplit);
-      } else if (stepMeta.getEvalMode() == Evaluator.EvalMode.CROSS_VALIDATION) {
-        evaluator.setXValFolds(m_xValFolds);
+    Future<Classifier> concurrentFinalModel = null;
+    try {
+      // build final model on all the data (but only if it is going to be saved somewhere or separate test set eval or there is no eval being done)
+      boolean finalModelRequired = !org.apache.hop.core.util.Utils.isEmpty(m_modelOutputPath)
+          || stepMeta.getEvalMode() == Evaluator.EvalMode.SEPARATE_TEST_SET
+          || stepMeta.getEvalMode() == Evaluator.EvalMode.NONE;
+
+      // the final model does not depend on the evaluation, so build it on a separate thread while
+      // the evaluation runs (if there is more than one execution slot)
+      if (finalModelRequired && m_numExecutionSlots > 1 && evaluator instanceof ParallelEvaluator
+          && !isStreamingSplit(stepMeta)
+          && (stepMeta.getEvalMode() == Evaluator.EvalMode.CROSS_VALIDATION
+          || stepMeta.getEvalMode() == Evaluator.EvalMode.PERCENTAGE_SPLIT)) {
+        // evaluation reorders the training data in place, so the final model gets its own copy,
+        // reordered as the evaluation will leave the training data (so that the model is the same
+        // as the one built after the evaluation in the sequential case)
+        Instances finalModelData = new Instances(evaluator.getTrainingData());
+        finalModelData.randomize(new Random(m_randomSeed));
+        if (stepMeta.getEvalMode() == Evaluator.EvalMode.CROSS_VALIDATION && finalModelData
+            .classAttribute().isNominal() && finalModelData.numInstances() >= m_xValFolds) {
+          finalModelData.stratify(m_xValFolds);
+        }
+        concurrentFinalModel = getFinalModelExecutor().submit(
+            () -> buildFinalModel(evaluator, finalModelData, true, stratificationValue, batchNumber,
+                metrics, stepMeta, log, vars));
       }
-      evaluator.setRandomSeed(m_randomSeed);
-      try {
-        // perform evaluation (if necessary)
-        Classifier currentClassifier = (Classifier) m_scheme.getConfiguredScheme(trainingHeader);
-        log.logDebug(
-            "Training current classifier: " + currentClassifier.getClass().getCanonicalName() + " "
-                + Utils
-                .joinOptions(((OptionHandler) currentClassifier).getOptions()));
-        if (currentClassifier instanceof BatchPredictor && ((BatchPredictor) currentClassifier)
-            .implementsMoreEfficientBatchPrediction()) {
-          m_schemeIsMoreEfficientBatchPredictor = true;
+
+      // perform evaluation (if necessary)
+      long[] start = metrics != null ? metrics.begin() : null;
+      evaluator.performEvaluation(null, new LogAdapter(log), new VariablesAdapter(vars));
+      if (metrics != null) {
+        metrics.end(PhaseMetrics.Phase.Evaluation, start);
+      }
+
+      outputRow = evaluator.getEvalRow(stratificationValue, batchNumber, new LogAdapter(log));
+
+      if (finalModelRequired) {
+        Classifier trainedFullModel;
+        if (concurrentFinalModel != null) {
+          try {
+            trainedFullModel = concurrentFinalModel.get();
+          } catch (ExecutionException ex) {
+            throw ex.getCause() instanceof Exception ? (Exception) ex.getCause() : ex;
+          }
+          evaluator.setTrainedClassifier(trainedFullModel);
+        } else {
+          trainedFullModel = buildFinalModel(evaluator, trainingData, false, stratificationValue,
+              batchNumber, metrics, stepMeta, log, vars);
         }
-        evaluator.initialize(trainingData, currentClassifier);
-
-        // store the preferred batch prediction batch size (if necessary)
-        if (m_schemeIsMoreEfficientBatchPredictor) {
-          String prefBatchS = ((BatchPredictor) evaluator.getClassifierTemplate()).getBatchSize();
-          if (!org.apache.hop.core.util.Utils.isEmpty(prefBatchS)) {
-            m_batchPredictorPreferredBatchSize = Integer
-                .parseInt(vars.resolve(prefBatchS));
+        synchronized (m_finalModels) {
+          // a batch trained in the background may finish after a later batch has started
+          if (m_rowHandlingMode != Batch || m_latestBatchEvaluator == evaluator) {
+            m_finalModels.put(evalKey, trainedFullModel);
           }
         }
-        evaluator.performEvaluation(null, new LogAdapter(log), new VariablesAdapter(vars));
-
-        outputRow =
-            evaluator
-                .getEvalRow(stratificationValue,
-                    m_rowHandlingMode == Batch ? m_batchCount : -1, new LogAdapter(log));
+        start = metrics != null ? metrics.begin() : null;
+
+        // save model to file (with the training data priors computed when the evaluator was
+        // initialized)
+        Evaluation priors = evaluator instanceof ParallelEvaluator ?
+            ((ParallelEvaluator) evaluator).getTrainingPriors() : null;
+        saveModel(trainedFullModel, evaluator.getTrainingData(), priors, stratificationValue,
+            batchNumber, stepMeta, log);
+        if (metrics != null && !org.apache.hop.core.util.Utils.isEmpty(m_modelOutputPath)) {
+          metrics.end(PhaseMetrics.Phase.SaveModel, start);
+        }
 
-        // build final model on all the data (but only if it is going to be saved somewhere or separate test set eval or there is no eval being done)
-        if (!org.apache.hop.core.util.Utils.isEmpty(m_modelOutputPath)
-            || stepMeta.getEvalMode() == Evaluator.EvalMode.SEPARATE_TEST_SET
-            || stepMeta.getEvalMode() == Evaluator.EvalMode.NONE) {
-
-          Classifier trainedFullModel = null;
-          if (!org.apache.hop.core.util.Utils.isEmpty(stepMeta.getResumableModelPath()) && m_scheme
-              .supportsResumableTraining()) {
-            // TODO load model and perform training iterations with trainingData
-            List<Object> loaded = loadModel(
-                vars.resolve(stepMeta.getResumableModelPath()), log);
-            trainedFullModel = (Classifier) loaded.get(0);
-            Evaluator.enableClassifierLoggingIfSupported(trainedFullModel, log);
-            Evaluator.configureWekaEnvironmentHandler(trainedFullModel, new VariablesAdapter(vars));
-            continueIteratingResumable(trainedFullModel, trainingData, stepMeta);
-            evaluator.setTrainedClassifier(trainedFullModel);
+        // output row is textual model?
+        if (stepMeta.getEvalMode() == Evaluator.EvalMode.NONE) {
+          outputRow = RowDataUtil.allocateRowData(
+              org.apache.hop.core.util.Utils.isEmpty(stratificationValue) ? 1 : 2);
+          if (!org.apache.hop.core.util.Utils.isEmpty(stratificationValue)) {
+            outputRow[0] = stratificationValue;
+            outputRow[1] = trainedFullModel.toString();
           } else {
-            trainedFullModel = evaluator
-                .buildFinalModel(new LogAdapter(log), new VariablesAdapter(vars));
-          }
-          m_finalModels.put(evalKey, trainedFullModel);
-
-          // save model to file
-          saveModel(trainedFullModel, evaluator.getTrainingData(), stepMeta, log);
-
-          // output row is textual model?
-          if (stepMeta.getEvalMode() == Evaluator.EvalMode.NONE) {
-            outputRow = RowDataUtil.allocateRowData(
-                org.apache.hop.core.util.Utils.isEmpty(stratificationValue) ? 1 : 2);
-            if (!org.apache.hop.core.util.Utils.isEmpty(stratificationValue)) {
-              outputRow[0] = stratificationValue;
-              outputRow[1] = trainedFullModel.toString();
-            } else {
-              outputRow[0] = trainedFullModel.toString();
-            }
+            outputRow[0] = trainedFullModel.toString();
           }
         }
-      } catch (Exception ex) {
-        throw new HopException(ex);
+      }
+    } catch (HopException ex) {
+      throw ex;
+    } catch (Exception ex) {
+      throw new HopException(ex);
+    } finally {
+      if (concurrentFinalModel != null && !concurrentFinalModel.isDone()) {
+        // evaluation failed - don't leave the final model building in the background
+        concurrentFinalModel.cancel(true);
       }
     }
-    return outputRow;
+    return reportPhaseMetrics(outputRow, metrics,
+        phaseMetricsSubject(stratificationValue, batchNumber), log);
+  }
+
+  /**
+   * Build the final model on all the training data for a batch. May be called on a separate
+   * thread while the evaluation is running, in which case it must be given its own copy of the
+   * training data and the evaluator's state is left alone.
+   *
+   * @param evaluator the initialized evaluator for the batch
+   * @param trainingData the training data
+   * @param concurrent true if the evaluation is running at the same time
+   * @param stratificationValue the stratification value (or null if not stratifying)
+   * @param batchNumber the batch number (or -1 if not in batch mode)
+   * @param metrics the phase metrics for the batch (null if phase metrics are not being collected)
+   * @param stepMeta the step metadata
+   * @param log the log to use
+   * @param vars variables
+   * @return the trained model
+   * @throws Exception if a problem occurs
+   */
+  protected Classifier buildFinalModel(Evaluator evaluator, Instances trainingData,
+      boolean concurrent, String stratificationValue, int batchNumber, PhaseMetrics metrics,
+      BaseSupervisedPMIMeta stepMeta, ILogChannel log, IVariables vars) throws Exception {
+    long[] start = metrics != null ? metrics.begin() : null;
+    Classifier trainedFullModel;
+    IterativeTrainer trainer = m_scheme.supportsResumableTraining() ?
+        newIterativeTrainer(stratificationValue, batchNumber, log) : null;
+    if (m_resumableModelPath != null && trainer != null) {
+      // load model and perform training iterations with trainingData
+      List<Object> loaded = loadModel(m_resumableModelPath, log);
+      trainedFullModel = (Classifier) loaded.get(0);
+      Evaluator.enableClassifierLoggingIfSupported(trainedFullModel, log);
+      Evaluator.configureWekaEnvironmentHandler(trainedFullModel, new VariablesAdapter(vars));
+      trainedFullModel =
+          continueIteratingResumable(trainedFullModel, trainingData, trainer, stepMeta);
+      if (!concurrent) {
+        evaluator.setTrainedClassifier(trainedFullModel);
+      }
+    } else {
+      if (trainer != null && (trainer.isCheckpointing() || trainer.isEarlyStopping())
+          && evaluator instanceof ParallelEvaluator) {
+        ((ParallelEvaluator) evaluator).setIterativeTrainer(trainer);
+      }
+      trainedFullModel = concurrent ? ((ParallelEvaluator) evaluator)
+          .buildFinalModel(trainingData, new LogAdapter(log), new VariablesAdapter(vars)) :
+          evaluator.buildFinalModel(new LogAdapter(log), new VariablesAdapter(vars));
+    }
+    if (metrics != null) {
+      metrics.end(PhaseMetrics.Phase.BuildFinalModel, start);
+    }
+
+    return trainedFullModel;
   }
 
-  protected void continueIteratingResumable(Classifier classifier, Instances trainingData,
-      BaseSupervisedPMIMeta stepMeta) throws Exception {
+  protected Classifier continueIteratingResumable(Classifier classifier, Instances trainingData,
+      IterativeTrainer trainer, BaseSupervisedPMIMeta stepMeta) throws Exception {
     if (classifier instanceof OptionHandler) {
       String opts = stepMeta.getSchemeCommandLineOptions();
       ((OptionHandler) classifier).setOptions(Utils.splitOptions(opts));
     }
 
-    ((IterativeClassifier) classifier).initializeClassifier(trainingData);
-    while (((IterativeClassifier) classifier).next()) {
+    return (Classifier) trainer.train((IterativeClassifier) classifier, trainingData, true);
+  }
+
+  /**
+   * Create a trainer for an iterative model. Checkpoints are written to the model output directory,
+   * using the name of the model file with a ".checkpoint" extension, if checkpointing has been
+   * configured and a model output directory has been set. Early stopping is applied if configured.
+   *
+   * @param stratificationValue the stratification value (used in stratified mode)
+   * @param batchNumber the batch number (used in batch mode)
+   * @param log the log to use
+   * @return a trainer
+   * @throws HopException if the model output directory can't be created
+   */
+  protected IterativeTrainer newIterativeTrainer(String stratificationValue, int batchNumber,
+      ILogChannel log) throws HopException {
+    String checkpointPath = null;
+    if ((m_checkpointIterations > 0 || m_checkpointIntervalMillis > 0)
+        && !org.apache.hop.core.util.Utils.isEmpty(m_modelOutputPath)) {
+      checkpointPath = getModelOutputDirectory() + File.separator + getModelFileName(
+          stratificationValue, batchNumber) + ".checkpoint";
+    }
+
+    IterativeTrainer trainer =
+        new IterativeTrainer(m_checkpointIterations, m_checkpointIntervalMillis, checkpointPath,
+            log);
+    trainer.setEarlyStopping(m_earlyStoppingValidationPercent, m_earlyStoppingInterval,
+        m_earlyStoppingPatience, m_randomSeed);
+
+    return trainer;
+  }
+
+  /**
+   * Get the directory to spill buffered strata and test rows to
+   *
+   * @return the spill directory
+   */
+  protected File getSpillDirectory() {
+    return new File(org.apache.hop.core.util.Utils.isEmpty(m_strataSpillDirectory)
+        ? System.getProperty("java.io.tmpdir") : m_strataSpillDirectory);
+  }
+
+  /**
+   * Buffer a separate test row that has arrived before training has finished. Test rows are read
+   * as soon as they are available, rather than after the training stream is exhausted, so that an
+   * upstream transform that writes to both the training and test inputs can never block on a full
+   * test row set.
+   *
+   * @param row the test row
+   * @param rowMeta the structure of the test row
+   * @throws HopException if a problem occurs
+   */
+  protected void bufferSeparateTestRow(Object[] row, IRowMeta rowMeta) throws HopException {
+    if (m_bufferedTestRows == null) {
+      m_bufferedTestRows =
+          new SpillableRowBuffer(rowMeta, m_testRowsMemoryBudget, getSpillDirectory());
+    }
+    m_bufferedTestRows.add(row);
+  }
+
+  /**
+   * Get the next separate test row that was buffered while training. The buffer is released once
+   * all rows have been read.
+   *
+   * @return the next buffered test row, or null if there are no more
+   * @throws HopException if a problem occurs
+   */
+  protected Object[] nextBufferedSeparateTestRow() throws HopException {
+    if (m_bufferedTestRows == null) {
+      return null;
+    }
+    Object[] row = m_bufferedTestRows.next();
+    if (row == null) {
+      m_bufferedTestRows.clear();
+      m_bufferedTestRows = null;
+    }
+
+    return row;
+  }
+
+  /**
+   * Get the file name for a model
+   *
+   * @param stratificationValue the stratification value (used in stratified mode)
+   * @param batchNumber the batch number (used in batch mode)
+   * @return the file name
+   */
+  protected String getModelFileName(String stratificationValue, int batchNumber) {
+    String fileName =
+        org.apache.hop.core.util.Utils.isEmpty(m_modelFileName) ? "model" : m_modelFileName;
+    if (m_rowHandlingMode == Stratified) {
+      fileName = stratificationValue + "_" + fileName;
+    } else if (m_rowHandlingMode == Batch) {
+      fileName = "" + batchNumber + "_" + fileName;
     }
-    ((IterativeClassifier) classifier).done();
+
+    return fileName;
   }
 
   protected List<Object[]> handleSeparateTestRow(Object[] row, BaseSupervisedPMIMeta stepMeta,
@@ -758,6 +2344,19 @@ public class BaseSupervisedPMIData extends BaseTransformData implements ITransfo
               Instance toTest = constructInstance(header, m_testingRowMeta, row,
                   m_testingFieldIndexes, stepMeta);
               evaluator.performEvaluationIncremental(toTest, new LogAdapter(log));
+            } else if (m_unsortedStratification) {
+              // test data is not sorted either, so batch up test rows per stratum
+              List<Object[]> stratRows = m_separateTestStrataRows.get(stratS);
+              if (stratRows == null) {
+                stratRows = new ArrayList<>();
+                m_separateTestStrataRows.put(stratS, stratRows);
+              }
+              stratRows.add(row);
+              if (stratRows.size() == m_batchPredictorPreferredBatchSize) {
+                processSeparateTestBatch(stratRows, evaluator, header, stepMeta,
+                    "stratified separate test set", log, vars);
+                stratRows.clear();
+              }
             } else {
               boolean testBatch = false;
               boolean add = false;
@@ -823,7 +2422,18 @@ public class BaseSupervisedPMIData extends BaseTransformData implements ITransfo
           }
         }
 
-        if (!streamingPrediction) {
+        if (!streamingPrediction && m_unsortedStratification) {
+          // remaining rows for each stratum, then an eval row per stratum tested
+          for (Map.Entry<String, List<Object[]>> e : m_separateTestStrataRows.entrySet()) {
+            Evaluator evaluator = m_evaluation.get(e.getKey());
+            processSeparateTestBatch(e.getValue(), evaluator, m_trainingHeaders.get(e.getKey()),
+                stepMeta, "stratified test set", log, vars);
+            if (evaluator.wasEvaluationPerformed()) {
+              evaluationOutputRows.add(evaluator.getEvalRow(e.getKey(), -1, new LogAdapter(log)));
+            }
+          }
+          m_separateTestStrataRows.clear();
+        } else if (!streamingPrediction) {
           // check for any remaining rows for the current stratification value
           if (m_separateTestSetBatchPredictorRows.size() > 0) {
             Evaluator evaluator = m_evaluation.get(m_currentStratificationValue);
@@ -868,6 +2478,69 @@ public class BaseSupervisedPMIData extends BaseTransformData implements ITransfo
       return;
     }
 
+    int batchNumber = -1;
+    if (m_rowHandlingMode == Batch) {
+      batchNumber = m_batchCount++;
+    }
+    saveModel(model, header, null, m_currentStratificationValue, batchNumber, stepMeta, log);
+  }
+
+  /**
+   * Save a model. The stratification value and batch number that determine the file name are
+   * supplied explicitly, so this can be called from worker threads. The model is queued for the
+   * background model writer; callers must not modify it afterwards, and write failures are reported
+   * by {@code awaitModelWrites()} (or a later save).
+   *
+   * @param model the model to save
+   * @param header the training data (or header)
+   * @param priors an Evaluation holding the training data class priors (may be null, in which case
+   * priors are computed from the header if it contains data)
+   * @param stratificationValue the stratification value (used in stratified mode)
+   * @param batchNumber the batch number (used in batch mode)
+   * @param stepMeta the step metadata
+   * @param log the log to use
+   * @throws HopException if a problem occurs
+   */
+  protected void saveModel(Classifier model, Instances header, Evaluation priors,
+      String stratificationValue, int batchNumber, BaseSupervisedPMIMeta stepMeta,
+      ILogChannel log) throws HopException {
+    if (org.apache.hop.core.util.Utils.isEmpty(m_modelOutputPath)) {
+      return;
+    }
+
+    String fileName = getModelFileName(stratificationValue, batchNumber);
+    String modelOutputPath = getModelOutputDirectory();
+    try {
+      log.logBasic(BaseMessages
+          .getString(PKG, "BasePMIStep.Info.SavingModel", model.getClass().getCanonicalName(),
+              modelOutputPath + File.separator + fileName));
+      // if there is actual data, then also serialize an Evaluation object (for training priors)
+      if (header.numInstances() > 0) {
+        if (priors == null) {
+          priors = new Evaluation(header);
+        }
+        header = new Instances(header, 0);
+      }
+      if (priors != null) {
+        log.logDetailed("Storing training data class priors with saved model");
+      }
+      getModelWriter().submit(modelOutputPath + File.separator + fileName,
+          (priors == null ? new Object[]{model, header} : new Object[]{model, header, priors}));
+    } catch (HopException e) {
+      throw e;
+    } catch (Exception e) {
+      throw new HopException(e);
+    }
+  }
+
+  /**
+   * Get the directory to save models to, resolving file URIs and creating the directory if
+   * necessary
+   *
+   * @return the directory to save models to
+   * @throws HopException if the directory can't be created
+   */
+  protected synchronized String getModelOutputDirectory() throws HopException {
     if (m_modelOutputPath.toLowerCase().startsWith("file:")) {
       try {
         m_modelOutputPath = m_modelOutputPath.replace(" ", "%20");
@@ -880,15 +2553,6 @@ public class BaseSupervisedPMIData extends BaseTransformData implements ITransfo
       }
     }
 
-    String fileName =
-        org.apache.hop.core.util.Utils.isEmpty(m_modelFileName) ? "model" : m_modelFileName;
-    if (m_rowHandlingMode == Stratified) {
-      fileName = m_currentStratificationValue + "_" + fileName;
-    } else if (m_rowHandlingMode == Batch) {
-      fileName = "" + m_batchCount + "_" + fileName;
-      m_batchCount++;
-    }
-
     File directory = new File(m_modelOutputPath);
     if (directory.exists() && directory.isFile()) {
       throw new HopException(
@@ -902,22 +2566,8 @@ public class BaseSupervisedPMIData extends BaseTransformData implements ITransfo
                 m_modelOutputPath));
       }
     }
-    try {
-      log.logBasic(BaseMessages
-          .getString(PKG, "BasePMIStep.Info.SavingModel", model.getClass().getCanonicalName(),
-              m_modelOutputPath + File.separator + fileName));
-      // if there is actual data, then also serialize an Evaluation object (for training priors)
-      Evaluation eval = null;
-      if (header.numInstances() > 0) {
-        eval = new Evaluation(header);
-        header = new Instances(header, 0);
-        log.logDetailed("Storing training data class priors with saved model");
-      }
-      SerializationHelper.writeAll(m_modelOutputPath + File.separator + fileName,
-          (eval == null ? new Object[]{model, header} : new Object[]{model, header, eval}));
-    } catch (Exception e) {
-      throw new HopException(e);
-    }
+
+    return m_modelOutputPath;
   }
 
   public static List<Object> loadModel(String modelPath, ILogChannel log) throws HopException {
@@ -949,53 +2599,38 @@ public class BaseSupervisedPMIData extends BaseTransformData implements ITransfo
     return Arrays.asList(loaded);
   }
 
+  /**
+   * Get a row codec for the supplied header and input row structure. Codecs are compiled once and
+   * then cached against the header.
+   *
+   * @param header the header to convert rows for
+   * @param inputRowMeta the incoming row structure
+   * @param streamFieldLookup lookup from field name to index in the incoming row structure
+   * @return a row codec
+   */
+  protected RowCodec getRowCodec(Instances header, IRowMeta inputRowMeta,
+      Map<String, Integer> streamFieldLookup) {
+    RowCodec codec = m_rowCodecs.get(header);
+    if (codec == null || !codec.isCompiledFor(header, inputRowMeta)) {
+      codec = new RowCodec(header, inputRowMeta, streamFieldLookup);
+      codec.setRepresentation(m_instanceRepresentation);
+      m_rowCodecs.put(header, codec);
+    }
+
+    return codec;
+  }
+
   protected Instances buildDataset(Instances header, IRowMeta inputRowMeta, List<Object[]> data,
       Map<String, Integer> streamFieldLookup, BaseSupervisedPMIMeta stepMeta) throws HopException {
 
-    Instances dataset = new Instances(header, data.size());
-    for (Object[] row : data) {
-      if (row != null) {
-        Instance toAdd = constructInstance(dataset, inputRowMeta, row, streamFieldLookup, stepMeta);
-        dataset.add(toAdd);
-      } else {
-        break;
-      }
-    }
-
-    return dataset;
+    return getRowCodec(header, inputRowMeta, streamFieldLookup).toInstances(data);
   }
 
   protected Instance constructInstance(Instances header, IRowMeta inputRowMeta, Object[] row,
       Map<String, Integer> streamFieldLookup, BaseSupervisedPMIMeta stepMeta)
       throws HopValueException {
 
-    double[] vals = new double[header.numAttributes()];
-    for (int i = 0; i < header.numAttributes(); i++) {
-      String fieldName = header.attribute(i).name();
-      if (streamFieldLookup.containsKey(fieldName)) {
-        int streamIndex = streamFieldLookup.get(fieldName);
-        IValueMeta fieldMeta = inputRowMeta.getValueMeta(streamIndex);
-        if (fieldMeta.isNull(row[streamIndex])) {
-          vals[i] = Utils.missingValue();
-        } else {
-          if (header.attribute(i).isNumeric()) {
-            vals[i] = fieldMeta.getNumber(row[streamIndex]);
-          } else if (header.attribute(i).isString()) {
-            vals[i] = header.attribute(i).addStringValue(fieldMeta.getString(row[streamIndex]));
-          } else if (header.attribute(i).isNominal()) {
-            String nomVal = fieldMeta.getString(row[streamIndex]);
-            int nomIndex = header.attribute(i).indexOfValue(nomVal);
-            vals[i] = nomIndex < 0 ? Utils.missingValue() : nomIndex;
-          }
-        }
-      } else {
-        vals[i] = Utils.missingValue();
-      }
-    }
-
-    Instance result = new DenseInstance(1.0, vals);
-    result.setDataset(header);
-    return result;
+    return getRowCodec(header, inputRowMeta, streamFieldLookup).toInstance(row);
   }
 
   /**
@@ -1025,20 +2660,108 @@ public class BaseSupervisedPMIData extends BaseTransformData implements ITransfo
     return result;
   }
 
-  protected Instances determineHeader(List<Object[]> trainingRows, String relationName,
-      BaseSupervisedPMIMeta stepMeta) throws HopException {
-    ArrayList<Attribute> atts = new ArrayList<>();
+  /**
+   * Get the model fields (excluding any stratification field) in the order that they appear in
+   * the header - i.e. with the class last.
+   *
+   * @param stepMeta the step metadata
+   * @return the model fields in header order
+   */
+  protected List<ArffMeta> getModelFieldsInHeaderOrder(BaseSupervisedPMIMeta stepMeta) {
+    List<ArffMeta> result = new ArrayList<>();
 
     List<ArffMeta> arffFields = stepMeta.getFieldMetadata();
     for (int i = 0; i < arffFields.size(); i++) {
       ArffMeta current = arffFields.get(i);
       if (current != m_classArffMeta && !current.getFieldName().equals(m_stratificationFieldName)) {
-        atts.add(constructAttribute(current, trainingRows));
+        result.add(current);
       }
     }
 
     // class as the last attribute
-    atts.add(constructAttribute(m_classArffMeta, trainingRows));
+    result.add(m_classArffMeta);
+
+    return result;
+  }
+
+  /**
+   * Create a new buffer for training rows. Duplicate rows are not merged when the training memory
+   * budget applies, as down-sampling a compacted buffer would treat a merged row as a single row
+   *
+   * @param stepMeta the step metadata
+   * @param initialCapacity the number of rows to initially allocate storage for
+   * @return a new buffer
+   */
+  protected ColumnarTrainingBuffer newTrainingBuffer(BaseSupervisedPMIMeta stepMeta,
+      int initialCapacity) {
+    if (m_compactDuplicateRows && !isSparseBuffering() && !m_trainingIncrementally
+        && !isClassBalancing(stepMeta) && !isMemoryGoverned(stepMeta)) {
+      return new CompactingTrainingBuffer(getModelFieldsInHeaderOrder(stepMeta), m_trainingRowMeta,
+          m_trainingFieldIndexes, initialCapacity);
+    }
+    return ColumnarTrainingBuffer.newBuffer(getModelFieldsInHeaderOrder(stepMeta),
+        m_trainingRowMeta, m_trainingFieldIndexes, initialCapacity, isSparseBuffering());
+  }
+
+  /**
+   * Returns true if the scheme, as configured for the supplied header, honours instance weights
+   *
+   * @param header the header
+   * @return true if the scheme honours instance weights
+   * @throws HopException if a problem occurs
+   */
+  protected boolean schemeHandlesInstanceWeights(Instances header) throws HopException {
+    try {
+      return m_scheme.getConfiguredScheme(header) instanceof WeightedInstancesHandler;
+    } catch (Exception ex) {
+      throw new HopException(ex);
+    }
+  }
+
+  /**
+   * Returns true if training rows are buffered sparsely. This is only the case when sparse
+   * instances have been asked for explicitly - the automatic representation is decided per
+   * instance, after the rows have been buffered.
+   *
+   * @return true if training rows are buffered sparsely
+   */
+  protected boolean isSparseBuffering() {
+    return m_instanceRepresentation == RowCodec.Representation.SPARSE;
+  }
+
+  protected Instances determineHeader(List<Object[]> trainingRows, String relationName,
+      BaseSupervisedPMIMeta stepMeta) throws HopException {
+    ColumnarTrainingBuffer buffer = newTrainingBuffer(stepMeta, trainingRows.size());
+    buffer.addAll(trainingRows);
+
+    return determineHeader(buffer, relationName, stepMeta);
+  }
+
+  protected Instances determineHeader(ColumnarTrainingBuffer trainingData, String relationName,
+      BaseSupervisedPMIMeta stepMeta) throws HopException {
+
+    return determineHeader(trainingData, null, relationName, stepMeta);
+  }
+
+  /**
+   * Determine the header from the values seen in a training buffer and, optionally, a second
+   * buffer holding the rest of the same batch/stratum (e.g. a streamed test split)
+   *
+   * @param trainingData the training data
+   * @param otherData other rows of the batch/stratum (may be null)
+   * @param relationName the relation name to use
+   * @param stepMeta the step metadata
+   * @return the header
+   * @throws HopException if a problem occurs
+   */
+  protected Instances determineHeader(ColumnarTrainingBuffer trainingData,
+      ColumnarTrainingBuffer otherData, String relationName, BaseSupervisedPMIMeta stepMeta)
+      throws HopException {
+    ArrayList<Attribute> atts = new ArrayList<>();
+
+    for (ArffMeta current : getModelFieldsInHeaderOrder(stepMeta)) {
+      atts.add(constructAttribute(current, trainingData, otherData));
+    }
 
     Instances result = new Instances(relationName, atts, 0);
     result.setClassIndex(result.numAttributes() - 1);
@@ -1046,14 +2769,24 @@ public class BaseSupervisedPMIData extends BaseTransformData implements ITransfo
     return result;
   }
 
-  protected Attribute constructAttribute(ArffMeta current, List<Object[]> trainingRows)
+  protected Attribute constructAttribute(ArffMeta current, ColumnarTrainingBuffer trainingData)
       throws HopException {
 
+    return constructAttribute(current, trainingData, null);
+  }
+
+  protected Attribute constructAttribute(ArffMeta current, ColumnarTrainingBuffer trainingData,
+      ColumnarTrainingBuffer otherData) throws HopException {
+
     Attribute result = null;
     if (current.getArffType() == ArffMeta.DATE || current.getArffType() == ArffMeta.NUMERIC) {
       result = new Attribute(current.getFieldName());
     } else if (current.getArffType() == ArffMeta.STRING) {
       result = new Attribute(current.getFieldName(), (List<String>) null);
+    } else if (current.getArffType() == ArffMeta.HASHED_NOMINAL) {
+      // fixed set of bucket labels, whatever values have been seen
+      result = FeatureHasher.createAttribute(current.getFieldName(),
+          Math.max(current.getHashBuckets(), 1));
     } else if (current.getArffType() == ArffMeta.NOMINAL) {
       String legalVals = current.getNominalVals();
       // if legal values supplied, then use the supplied order
@@ -1068,10 +2801,10 @@ public class BaseSupervisedPMIData extends BaseTransformData implements ITransfo
         // }
       } else {
         // check to see if the incoming field has indexed values and sort values
-        IValueMeta
-            inField =
-            m_trainingRowMeta.getValueMeta(m_trainingFieldIndexes.get(current.getFieldName()));
-        if (inField.getStorageType() == IValueMeta.STORAGE_TYPE_INDEXED) {
+        Integer inFieldIndex = m_trainingFieldIndexes.get(current.getFieldName());
+        IValueMeta inField =
+            inFieldIndex == null ? null : m_trainingRowMeta.getValueMeta(inFieldIndex);
+        if (inField != null && inField.getStorageType() == IValueMeta.STORAGE_TYPE_INDEXED) {
           TreeSet<String> ts = new TreeSet<>();
           for (Object o : inField.getIndex()) {
             ts.add(o.toString());
@@ -1079,11 +2812,14 @@ public class BaseSupervisedPMIData extends BaseTransformData implements ITransfo
           ArrayList<String> sortedVals = new ArrayList<>(ts);
           result = new Attribute(current.getFieldName(), sortedVals);
         } else {
-          // we have to iterate over the actual data and collect values
-          result =
-              new Attribute(current.getFieldName(),
-                  getNominalValsFromData(trainingRows, m_trainingRowMeta,
-                      m_trainingFieldIndexes.get(current.getFieldName())));
+          // values seen in the data (dictionary built as rows were buffered)
+          ArrayList<String> seenVals = trainingData.getNominalValues(current.getFieldName());
+          if (otherData != null) {
+            TreeSet<String> ts = new TreeSet<>(seenVals);
+            ts.addAll(otherData.getNominalValues(current.getFieldName()));
+            seenVals = new ArrayList<>(ts);
+          }
+          result = new Attribute(current.getFieldName(), seenVals);
         }
       }
     } else {
@@ -1095,24 +2831,6 @@ public class BaseSupervisedPMIData extends BaseTransformData implements ITransfo
     return result;
   }
 
-  protected ArrayList<String> getNominalValsFromData(List<Object[]> data, IRowMeta rowMetaInterface,
-      int fieldIndex) throws HopValueException {
-    TreeSet<String> sortedVals = new TreeSet<>();
-
-    IValueMeta vm = rowMetaInterface.getValueMeta(fieldIndex);
-    for (Object[] row : data) {
-      if (row != null) {
-        if (!vm.isNull(row[fieldIndex])) {
-          sortedVals.add(vm.getString(row[fieldIndex]));
-        }
-      } else {
-        break;
-      }
-    }
-
-    return new ArrayList<String>(sortedVals);
-  }
-
   public static List<ArffMeta> fieldsToArffMetas(IRowMeta rmi) {
     List<ArffMeta> arffMetas = new ArrayList<>();
     if (rmi != null) {
@@ -1158,6 +2876,52 @@ public class BaseSupervisedPMIData extends BaseTransformData implements ITransfo
 
   protected static void establishOutputRowMeta(IRowMeta outRowMeta, IVariables vars,
       BaseSupervisedPMIMeta stepMeta) throws HopPluginException {
+    establishResultRowMeta(outRowMeta, vars, stepMeta);
+
+    boolean classBalancing = stepMeta.getRowsToProcess().equals(All.toString())
+        && !stepMeta.getUseReservoirSampling() && (
+        !org.apache.hop.core.util.Utils.isEmpty(stepMeta.getClassBalanceMaxRows())
+            || !org.apache.hop.core.util.Utils.isEmpty(stepMeta.getClassBalanceMaxRatio()));
+
+    // rows seen and rows actually trained on when a training memory budget has been set (filled in
+    // even if the budget turns out not to apply). Per-class reservoirs take the place of the
+    // budget, but balancing by ratio alone does not
+    if (stepMeta.getRowsToProcess().equals(All.toString())
+        && !org.apache.hop.core.util.Utils.isEmpty(stepMeta.getTrainingMemoryBudget())
+        && !stepMeta.getUseReservoirSampling() && !(classBalancing && !org.apache.hop.core.util.Utils
+        .isEmpty(stepMeta.getClassBalanceMaxRows()))) {
+      outRowMeta.addValueMeta(ValueMetaFactory.createValueMeta(
+          BaseMessages.getString(PKG, "BasePMIStepData.TrainingRowsSeenFieldName"),
+          IValueMeta.TYPE_INTEGER));
+      outRowMeta.addValueMeta(ValueMetaFactory.createValueMeta(
+          BaseMessages.getString(PKG, "BasePMIStepData.TrainingRowsUsedFieldName"),
+          IValueMeta.TYPE_INTEGER));
+    }
+
+    // per-class sampling rates when classes are balanced
+    if (classBalancing) {
+      outRowMeta.addValueMeta(ValueMetaFactory.createValueMeta(
+          BaseMessages.getString(PKG, "BasePMIStepData.ClassSamplingRatesFieldName"),
+          IValueMeta.TYPE_STRING));
+    }
+
+    // wall time, CPU time and allocated bytes for each phase
+    if (stepMeta.getOutputPhaseMetrics()) {
+      String[] suffixes = {
+          BaseMessages.getString(PKG, "BasePMIStepData.PhaseWallTimeFieldName"),
+          BaseMessages.getString(PKG, "BasePMIStepData.PhaseCPUTimeFieldName"),
+          BaseMessages.getString(PKG, "BasePMIStepData.PhaseAllocatedBytesFieldName")};
+      for (PhaseMetrics.Phase phase : PhaseMetrics.Phase.values()) {
+        for (String suffix : suffixes) {
+          outRowMeta.addValueMeta(ValueMetaFactory
+              .createValueMeta(phase.getCode() + "_" + suffix, IValueMeta.TYPE_INTEGER));
+        }
+      }
+    }
+  }
+
+  protected static void establishResultRowMeta(IRowMeta outRowMeta, IVariables vars,
+      BaseSupervisedPMIMeta stepMeta) throws HopPluginException {
     outRowMeta.clear();
     if (stepMeta.getEvalMode() == Evaluator.EvalMode.NONE) {
       // TODO add an option to just pass input rows through?
@@ -1409,6 +3173,9 @@ public class BaseSupervisedPMIData extends BaseTransformData implements ITransfo
       case 3:
         result = "String";
         break;
+      case 4:
+        result = "Hashed nominal";
+        break;
     }
 
     return result;
@@ -69,6 +69,15 @@ public abstract class BaseSupervisedPMIMeta extends BaseTransformMeta<BaseSuperv
   protected static final String USE_RESERVOIR_SAMPLING_TAG = "use_reservoir_sampling";
   protected static final String RESERVOIR_SAMPLING_SIZE_TAG = "reservoir_size";
   protected static final String RESERVOIR_SAMPLING_RANDOM_SEED_TAG = "reservoir_seed";
+  protected static final String UNSORTED_STRATIFICATION_TAG = "unsorted_stratification";
+  protected static final String STRATA_MEMORY_BUDGET_TAG = "strata_memory_budget";
+  protected static final String STRATA_SPILL_DIRECTORY_TAG = "strata_spill_directory";
+  protected static final String TEST_ROWS_MEMORY_BUDGET_TAG = "test_rows_memory_budget";
+  protected static final String TRAINING_MEMORY_BUDGET_TAG = "training_memory_budget";
+  protected static final String MEMORY_BUDGET_POLICY_TAG = "memory_budget_policy";
+  protected static final String CLASS_BALANCE_MAX_ROWS_TAG = "class_balance_max_rows";
+  protected static final String CLASS_BALANCE_MAX_RATIO_TAG = "class_balance_max_ratio";
+  protected static final String CLASS_BALANCE_REWEIGHT_TAG = "class_balance_reweight";
   protected static final String STRATIFICATION_FIELD_NAME_TAG = "stratification_field_name";
   protected static final String INCOMING_FIELD_META_TAG = "incoming_field_meta";
   protected static final String CLASS_FIELD_TAG = "class_attribute";
@@ -80,14 +89,34 @@ public abstract class BaseSupervisedPMIMeta extends BaseTransformMeta<BaseSuperv
   protected static final String SINGLE_PREPROCESSING_CONFIG_TAG = "preprocessing_config";
   protected static final String EVAL_MODE_TAG = "evaluation_mode";
   protected static final String SPLIT_PERCENTAGE_TAG = "split_percentage";
+  protected static final String STREAM_PERCENTAGE_SPLIT_TAG = "stream_percentage_split";
   protected static final String X_VAL_FOLDS_TAG = "x_val_folds";
+  protected static final String STREAM_CROSS_VALIDATION_TAG = "stream_cross_validation";
   protected static final String RANDOM_SEED_TAG = "random_seed";
   protected static final String MODEL_OUTPUT_DIRECTORY_TAG = "model_output_path";
   protected static final String MODEL_FILE_NAME_TAG = "model_file_name";
   protected static final String RESUMABLE_MODEL_LOAD_PATH_TAG = "resumable_model_load_path";
+  protected static final String CHECKPOINT_ITERATIONS_TAG = "checkpoint_iterations";
+  protected static final String CHECKPOINT_INTERVAL_TAG = "checkpoint_interval";
+  protected static final String EARLY_STOPPING_TAG = "early_stopping";
+  protected static final String EARLY_STOPPING_VALIDATION_PERCENT_TAG = "early_stopping_validation_percent";
+  protected static final String EARLY_STOPPING_INTERVAL_TAG = "early_stopping_interval";
+  protected static final String EARLY_STOPPING_PATIENCE_TAG = "early_stopping_patience";
+  protected static final String SEARCH_SPACE_TAG = "search_space";
+  protected static final String SEARCH_MODE_TAG = "search_mode";
+  protected static final String SEARCH_CANDIDATES_TAG = "search_candidates";
   protected static final String OUTPUT_AUC_METRICS_TAG = "output_auc_metrics";
   protected static final String OUTPUT_IR_METRICS_TAG = "output_ir_metrics";
+  protected static final String OUTPUT_PHASE_METRICS_TAG = "output_phase_metrics";
   protected static final String INCREMENTAL_TRAININ_INITIAL_ROW_CACHE_SIZE_TAG = "incremental_initial_cache";
+  protected static final String NUM_EXECUTION_SLOTS_TAG = "execution_slots";
+  protected static final String MAX_FOLDS_IN_FLIGHT_TAG = "max_folds_in_flight";
+  protected static final String MAX_STRATA_IN_FLIGHT_TAG = "max_strata_in_flight";
+  protected static final String MAX_BATCHES_IN_FLIGHT_TAG = "max_batches_in_flight";
+  protected static final String INCREMENTAL_BLOCK_SIZE_TAG = "incremental_block_size";
+  protected static final String INCREMENTAL_BLOCK_EVALUATION_TAG = "incremental_block_evaluation";
+  protected static final String INSTANCE_REPRESENTATION_TAG = "instance_representation";
+  protected static final String COMPACT_DUPLICATE_ROWS_TAG = "compact_duplicate_rows";
 
   /**
    * Default row handling strategy
@@ -135,6 +164,55 @@ public abstract class BaseSupervisedPMIMeta extends BaseTransformMeta<BaseSuperv
    */
   protected String m_reservoirSize = "";
 
+  /**
+   * True if the training data is not sorted on the stratification field (stratified row handling)
+   */
+  protected boolean m_unsortedStratification;
+
+  /**
+   * Memory budget (MB) for buffered strata when the input is unsorted. Empty means no limit
+   */
+  protected String m_strataMemoryBudget = "";
+
+  /**
+   * Directory to spill buffered strata to when the memory budget is exceeded. Empty means the system temporary
+   * directory
+   */
+  protected String m_strataSpillDirectory = "";
+
+  /**
+   * Memory budget (MB) for separate test set rows that arrive while training is still in progress. Rows beyond the
+   * budget are spilled to the spill directory. Empty means the default budget
+   */
+  protected String m_testRowsMemoryBudget = "";
+
+  /**
+   * Memory budget (MB) for training rows buffered when processing all rows in one go. Empty means no limit
+   */
+  protected String m_trainingMemoryBudget = "";
+
+  /**
+   * What to do when the training memory budget would be exceeded
+   */
+  protected BaseSupervisedPMIData.MemoryBudgetPolicy m_memoryBudgetPolicy =
+      BaseSupervisedPMIData.MemoryBudgetPolicy.DOWNSAMPLE;
+
+  /**
+   * Maximum number of training rows to hold per class value when processing all rows in one go. Empty means no limit
+   */
+  protected String m_classBalanceMaxRows = "";
+
+  /**
+   * Maximum number of training rows per class value, as a multiple of the number held for the rarest class. Empty
+   * means no limit
+   */
+  protected String m_classBalanceMaxRatio = "";
+
+  /**
+   * Whether to re-weight balanced training instances by the inverse of their class's sampling rate
+   */
+  protected boolean m_classBalanceReweight;
+
   /**
    * Info on incoming fields and how they should be treated for the modeling process
    */
@@ -170,11 +248,22 @@ public abstract class BaseSupervisedPMIMeta extends BaseTransformMeta<BaseSuperv
    */
   protected String m_percentageSplit = "66";
 
+  /**
+   * True if rows are routed to the training or test split as they arrive when doing a percentage split evaluation
+   */
+  protected boolean m_streamPercentageSplit;
+
   /**
    * Number of folds to use if doing a cross-validation evaluation
    */
   protected String m_xValFolds = "10";
 
+  /**
+   * True if cross-validation of an incrementally trainable scheme is performed on the stream, with one incrementally
+   * updated model per fold
+   */
+  protected boolean m_streamCrossValidation;
+
   /**
    * Random number seed to use for splitting the data in percentage split or cross-validation
    */
@@ -194,6 +283,13 @@ public abstract class BaseSupervisedPMIMeta extends BaseTransformMeta<BaseSuperv
    */
   protected boolean m_outputIRMetrics;
 
+  /**
+   * True to output wall time, CPU time and allocated bytes for each training phase (row buffering,
+   * header determination, dataset construction, evaluation, final model building and model saving)
+   * with each evaluation row
+   */
+  protected boolean m_outputPhaseMetrics;
+
   /**
    * The name of the class attribute
    */
@@ -222,6 +318,99 @@ public abstract class BaseSupervisedPMIMeta extends BaseTransformMeta<BaseSuperv
    */
   protected String m_resumableModelLoadPath = "";
 
+  /**
+   * For resumable schemes - save a checkpoint of the model being trained every this many iterations. Empty (or zero)
+   * means no iteration-based checkpoints.
+   */
+  protected String m_checkpointIterations = "";
+
+  /**
+   * For resumable schemes - save a checkpoint of the model being trained if at least this many seconds have elapsed
+   * since the last one. Empty (or zero) means no time-based checkpoints.
+   */
+  protected String m_checkpointInterval = "";
+
+  /**
+   * For resumable schemes - hold out some of the training data and stop training when the model's performance on it
+   * stops improving
+   */
+  protected boolean m_earlyStopping;
+
+  /**
+   * Percentage of the training data to hold out for early stopping
+   */
+  protected String m_earlyStoppingValidationPercent = "10";
+
+  /**
+   * Evaluate on the held out data every this many iterations
+   */
+  protected String m_earlyStoppingInterval = "10";
+
+  /**
+   * Number of consecutive evaluations without improvement after which training is stopped
+   */
+  protected String m_earlyStoppingPatience = "5";
+
+  /**
+   * Hyperparameter search space over scheme options (empty for no search)
+   */
+  protected String m_searchSpace = "";
+
+  /**
+   * How to select candidates from the search space - Grid or Random
+   */
+  protected String m_searchMode = SearchSpace.SearchMode.Grid.toString();
+
+  /**
+   * Number of candidates to evaluate for a random search
+   */
+  protected String m_searchCandidates = "10";
+
+  /**
+   * Number of worker threads to use for concurrent model building/evaluation (e.g. cross-validation folds)
+   */
+  protected String m_numExecutionSlots = "1";
+
+  /**
+   * Maximum number of cross-validation folds that can be training/testing at any one time. Each fold in flight holds
+   * its own model and training split in memory. Empty means the same as the number of execution slots.
+   */
+  protected String m_maxFoldsInFlight = "";
+
+  /**
+   * Maximum number of strata (stratified row handling) that can be queued or training at any one time. Each stratum in
+   * flight holds its training data in memory. Empty means twice the number of execution slots.
+   */
+  protected String m_maxStrataInFlight = "";
+
+  /**
+   * Maximum number of completed batches (batch row handling) that can be queued or training in the background while the
+   * next batch is read. Empty or 0 means each batch is trained before any further rows are read.
+   */
+  protected String m_maxBatchesInFlight = "";
+
+  /**
+   * Number of rows to accumulate before evaluating/updating an incrementally trained model over the block. Empty or 1
+   * means each row is processed as it arrives.
+   */
+  protected String m_incrementalBlockSize = "";
+
+  /**
+   * True if each block of rows (incremental training) is evaluated against the model as it was at the start of the
+   * block, rather than each row against the model updated with all preceding rows
+   */
+  protected boolean m_incrementalBlockEvaluation;
+
+  /**
+   * How training and test rows are represented as instances (and whether training rows are buffered sparsely)
+   */
+  protected RowCodec.Representation m_instanceRepresentation = RowCodec.Representation.DENSE;
+
+  /**
+   * True if identical training rows are merged into a single instance whose weight is the number of rows merged
+   */
+  protected boolean m_compactDuplicateRows;
+
   // --------- row handling --------------
 
   /**
@@ -336,6 +525,172 @@ public abstract class BaseSupervisedPMIMeta extends BaseTransformMeta<BaseSuperv
     return m_reservoirSize;
   }
 
+  /**
+   * Set whether the training data is unsorted with respect to the stratification field
+   *
+   * @param unsortedStratification true if the training data is not sorted on the stratification field
+   */
+  public void setUnsortedStratification( boolean unsortedStratification ) {
+    m_unsortedStratification = unsortedStratification;
+  }
+
+  /**
+   * Get whether the training data is unsorted with respect to the stratification field
+   *
+   * @return true if the training data is not sorted on the stratification field
+   */
+  public boolean getUnsortedStratification() {
+    return m_unsortedStratification;
+  }
+
+  /**
+   * Set the memory budget (MB) for buffered strata when the input is unsorted
+   *
+   * @param strataMemoryBudget the memory budget in megabytes
+   */
+  public void setStrataMemoryBudget( String strataMemoryBudget ) {
+    m_strataMemoryBudget = strataMemoryBudget;
+  }
+
+  /**
+   * Get the memory budget (MB) for buffered strata when the input is unsorted
+   *
+   * @return the memory budget in megabytes
+   */
+  public String getStrataMemoryBudget() {
+    return m_strataMemoryBudget;
+  }
+
+  /**
+   * Set the directory to spill buffered strata to
+   *
+   * @param strataSpillDirectory the spill directory
+   */
+  public void setStrataSpillDirectory( String strataSpillDirectory ) {
+    m_strataSpillDirectory = strataSpillDirectory;
+  }
+
+  /**
+   * Get the directory to spill buffered strata to
+   *
+   * @return the spill directory
+   */
+  public String getStrataSpillDirectory() {
+    return m_strataSpillDirectory;
+  }
+
+  /**
+   * Set the memory budget (MB) for separate test set rows buffered while training
+   *
+   * @param testRowsMemoryBudget the memory budget in megabytes
+   */
+  public void setTestRowsMemoryBudget( String testRowsMemoryBudget ) {
+    m_testRowsMemoryBudget = testRowsMemoryBudget;
+  }
+
+  /**
+   * Get the memory budget (MB) for separate test set rows buffered while training
+   *
+   * @return the memory budget in megabytes
+   */
+  public String getTestRowsMemoryBudget() {
+    return m_testRowsMemoryBudget;
+  }
+
+  /**
+   * Set the memory budget (MB) for training rows buffered when processing all rows in one go
+   *
+   * @param trainingMemoryBudget the memory budget in megabytes
+   */
+  public void setTrainingMemoryBudget( String trainingMemoryBudget ) {
+    m_trainingMemoryBudget = trainingMemoryBudget;
+  }
+
+  /**
+   * Get the memory budget (MB) for training rows buffered when processing all rows in one go
+   *
+   * @return the memory budget in megabytes
+   */
+  public String getTrainingMemoryBudget() {
+    return m_trainingMemoryBudget;
+  }
+
+  /**
+   * Set what to do when the training memory budget would be exceeded - down-sample to a reservoir of the affordable
+   * size, or fail
+   *
+   * @param memoryBudgetPolicy the policy to use
+   */
+  public void setMemoryBudgetPolicy( BaseSupervisedPMIData.MemoryBudgetPolicy memoryBudgetPolicy ) {
+    m_memoryBudgetPolicy = memoryBudgetPolicy;
+  }
+
+  /**
+   * Get what to do when the training memory budget would be exceeded
+   *
+   * @return the policy to use
+   */
+  public BaseSupervisedPMIData.MemoryBudgetPolicy getMemoryBudgetPolicy() {
+    return m_memoryBudgetPolicy;
+  }
+
+  /**
+   * Set the maximum number of training rows to hold per class value when processing all rows in one go. Each class
+   * is reservoir sampled down to this many rows as the rows arrive
+   *
+   * @param classBalanceMaxRows the maximum number of rows per class
+   */
+  public void setClassBalanceMaxRows( String classBalanceMaxRows ) {
+    m_classBalanceMaxRows = classBalanceMaxRows;
+  }
+
+  /**
+   * Get the maximum number of training rows to hold per class value when processing all rows in one go
+   *
+   * @return the maximum number of rows per class
+   */
+  public String getClassBalanceMaxRows() {
+    return m_classBalanceMaxRows;
+  }
+
+  /**
+   * Set the maximum number of training rows per class value, as a multiple of the number held for the rarest class.
+   * Applied once all rows have been seen
+   *
+   * @param classBalanceMaxRatio the maximum ratio to the rarest class
+   */
+  public void setClassBalanceMaxRatio( String classBalanceMaxRatio ) {
+    m_classBalanceMaxRatio = classBalanceMaxRatio;
+  }
+
+  /**
+   * Get the maximum number of training rows per class value, as a multiple of the number held for the rarest class
+   *
+   * @return the maximum ratio to the rarest class
+   */
+  public String getClassBalanceMaxRatio() {
+    return m_classBalanceMaxRatio;
+  }
+
+  /**
+   * Set whether to re-weight balanced training instances by the inverse of their class's sampling rate, so that the
+   * weighted data reflects the class distribution of the incoming rows
+   *
+   * @param classBalanceReweight true to re-weight instances
+   */
+  public void setClassBalanceReweight( boolean classBalanceReweight ) {
+    m_classBalanceReweight = classBalanceReweight;
+  }
+
+  /**
+   * Get whether to re-weight balanced training instances by the inverse of their class's sampling rate
+   *
+   * @return true to re-weight instances
+   */
+  public boolean getClassBalanceReweight() {
+    return m_classBalanceReweight;
+  }
+
   /**
    * Set the name of the step that is providing training data. This value can/will be safely ignored
    * in the case where there is only one step connected (assumed to be training data).
@@ -570,6 +925,169 @@ public abstract class BaseSupervisedPMIMeta extends BaseTransformMeta<BaseSuperv
     return m_resumableModelLoadPath;
   }
 
+  /**
+   * Set the number of iterations between checkpoints of a resumable model being trained
+   *
+   * @param checkpointIterations the number of iterations between checkpoints
+   */
+  public void setCheckpointIterations( String checkpointIterations ) {
+    m_checkpointIterations = checkpointIterations;
+  }
+
+  /**
+   * Get the number of iterations between checkpoints of a resumable model being trained
+   *
+   * @return the number of iterations between checkpoints
+   */
+  public String getCheckpointIterations() {
+    return m_checkpointIterations;
+  }
+
+  /**
+   * Set the minimum number of seconds between checkpoints of a resumable model being trained
+   *
+   * @param checkpointInterval the number of seconds between checkpoints
+   */
+  public void setCheckpointInterval( String checkpointInterval ) {
+    m_checkpointInterval = checkpointInterval;
+  }
+
+  /**
+   * Get the minimum number of seconds between checkpoints of a resumable model being trained
+   *
+   * @return the number of seconds between checkpoints
+   */
+  public String getCheckpointInterval() {
+    return m_checkpointInterval;
+  }
+
+  /**
+   * Set whether to stop training a resumable scheme early when performance on held out data stops improving
+   *
+   * @param earlyStopping true to use early stopping
+   */
+  public void setEarlyStopping( boolean earlyStopping ) {
+    m_earlyStopping = earlyStopping;
+  }
+
+  /**
+   * Get whether to stop training a resumable scheme early when performance on held out data stops improving
+   *
+   * @return true if early stopping is to be used
+   */
+  public boolean getEarlyStopping() {
+    return m_earlyStopping;
+  }
+
+  /**
+   * Set the percentage of the training data to hold out for early stopping
+   *
+   * @param validationPercent the percentage to hold out
+   */
+  public void setEarlyStoppingValidationPercent( String validationPercent ) {
+    m_earlyStoppingValidationPercent = validationPercent;
+  }
+
+  /**
+   * Get the percentage of the training data to hold out for early stopping
+   *
+   * @return the percentage to hold out
+   */
+  public String getEarlyStoppingValidationPercent() {
+    return m_earlyStoppingValidationPercent;
+  }
+
+  /**
+   * Set the number of iterations between evaluations on the held out data
+   *
+   * @param interval the number of iterations between evaluations
+   */
+  public void setEarlyStoppingInterval( String interval ) {
+    m_earlyStoppingInterval = interval;
+  }
+
+  /**
+   * Get the number of iterations between evaluations on the held out data
+   *
+   * @return the number of iterations between evaluations
+   */
+  public String getEarlyStoppingInterval() {
+    return m_earlyStoppingInterval;
+  }
+
+  /**
+   * Set the number of consecutive evaluations without improvement after which training is stopped
+   *
+   * @param patience the number of evaluations without improvement
+   */
+  public void setEarlyStoppingPatience( String patience ) {
+    m_earlyStoppingPatience = patience;
+  }
+
+  /**
+   * Get the number of consecutive evaluations without improvement after which training is stopped
+   *
+   * @return the number of evaluations without improvement
+   */
+  public String getEarlyStoppingPatience() {
+    return m_earlyStoppingPatience;
+  }
+
+  /**
+   * Set the hyperparameter search space. Each line holds a scheme option flag followed by either a
+   * comma-separated list of values or a range in the form min:max:step
+   *
+   * @param searchSpace the search space (empty for no search)
+   */
+  public void setSearchSpace( String searchSpace ) {
+    m_searchSpace = searchSpace;
+  }
+
+  /**
+   * Get the hyperparameter search space
+   *
+   * @return the search space (empty for no search)
+   */
+  public String getSearchSpace() {
+    return m_searchSpace;
+  }
+
+  /**
+   * Set how candidates are selected from the search space - Grid or Random
+   *
+   * @param searchMode the search mode
+   */
+  public void setSearchMode( String searchMode ) {
+    m_searchMode = searchMode;
+  }
+
+  /**
+   * Get how candidates are selected from the search space - Grid or Random
+   *
+   * @return the search mode
+   */
+  public String getSearchMode() {
+    return m_searchMode;
+  }
+
+  /**
+   * Set the number of candidates to evaluate for a random search
+   *
+   * @param searchCandidates the number of candidates
+   */
+  public void setSearchCandidates( String searchCandidates ) {
+    m_searchCandidates = searchCandidates;
+  }
+
+  /**
+   * Get the number of candidates to evaluate for a random search
+   *
+   * @return the number of candidates
+   */
+  public String getSearchCandidates() {
+    return m_searchCandidates;
+  }
+
   // ------------- evaluation opts -------------------
 
   /**
@@ -608,6 +1126,24 @@ public abstract class BaseSupervisedPMIMeta extends BaseTransformMeta<BaseSuperv
     return m_percentageSplit;
   }
 
+  /**
+   * Set whether rows are routed to the training or test split as they arrive, if using percentage split eval.
+   *
+   * @param streamPercentageSplit true to route rows as they arrive
+   */
+  public void setStreamPercentageSplit( boolean streamPercentageSplit ) {
+    m_streamPercentageSplit = streamPercentageSplit;
+  }
+
+  /**
+   * Get whether rows are routed to the training or test split as they arrive, if using percentage split eval.
+   *
+   * @return true if rows are routed as they arrive
+   */
+  public boolean getStreamPercentageSplit() {
+    return m_streamPercentageSplit;
+  }
+
   /**
    * Set the number of cross-validation folds to use ( >= 2)
    *
@@ -626,6 +1162,25 @@ public abstract class BaseSupervisedPMIMeta extends BaseTransformMeta<BaseSuperv
     return m_xValFolds;
   }
 
+  /**
+   * Set whether cross-validation of an incrementally trainable scheme is performed on the stream, with one
+   * incrementally updated model per fold. Ignored for schemes that can't be trained incrementally.
+   *
+   * @param streamCrossValidation true to cross-validate on the stream
+   */
+  public void setStreamCrossValidation( boolean streamCrossValidation ) {
+    m_streamCrossValidation = streamCrossValidation;
+  }
+
+  /**
+   * Get whether cross-validation of an incrementally trainable scheme is performed on the stream
+   *
+   * @return true if cross-validating on the stream
+   */
+  public boolean getStreamCrossValidation() {
+    return m_streamCrossValidation;
+  }
+
   /**
    * Set the random seed used when splitting data via percentage split or into folds
    *
@@ -680,6 +1235,24 @@ public abstract class BaseSupervisedPMIMeta extends BaseTransformMeta<BaseSuperv
     return m_outputIRMetrics;
   }
 
+  /**
+   * Set whether to output timing and memory metrics for each training phase
+   *
+   * @param outputPhaseMetrics true to output phase metrics
+   */
+  public void setOutputPhaseMetrics( boolean outputPhaseMetrics ) {
+    m_outputPhaseMetrics = outputPhaseMetrics;
+  }
+
+  /**
+   * Get whether to output timing and memory metrics for each training phase
+   *
+   * @return true to output phase metrics
+   */
+  public boolean getOutputPhaseMetrics() {
+    return m_outputPhaseMetrics;
+  }
+
   // -- incremental schemes ---
 
   /**
@@ -708,6 +1281,154 @@ public abstract class BaseSupervisedPMIMeta extends BaseTransformMeta<BaseSuperv
     return m_incrementalInitialCache;
   }
 
+  // -- performance ---
+
+  /**
+   * Set the number of worker threads to use for concurrent model building/evaluation
+   *
+   * @param numExecutionSlots the number of execution slots
+   */
+  public void setNumExecutionSlots( String numExecutionSlots ) {
+    m_numExecutionSlots = numExecutionSlots;
+  }
+
+  /**
+   * Get the number of worker threads to use for concurrent model building/evaluation
+   *
+   * @return the number of execution slots
+   */
+  public String getNumExecutionSlots() {
+    return m_numExecutionSlots;
+  }
+
+  /**
+   * Set the maximum number of cross-validation folds that can be training/testing at any one time
+   *
+   * @param maxFoldsInFlight the maximum number of concurrent folds
+   */
+  public void setMaxFoldsInFlight( String maxFoldsInFlight ) {
+    m_maxFoldsInFlight = maxFoldsInFlight;
+  }
+
+  /**
+   * Get the maximum number of cross-validation folds that can be training/testing at any one time
+   *
+   * @return the maximum number of concurrent folds
+   */
+  public String getMaxFoldsInFlight() {
+    return m_maxFoldsInFlight;
+  }
+
+  /**
+   * Set the maximum number of strata that can be queued or training at any one time
+   *
+   * @param maxStrataInFlight the maximum number of concurrent strata
+   */
+  public void setMaxStrataInFlight( String maxStrataInFlight ) {
+    m_maxStrataInFlight = maxStrataInFlight;
+  }
+
+  /**
+   * Get the maximum number of strata that can be queued or training at any one time
+   *
+   * @return the maximum number of concurrent strata
+   */
+  public String getMaxStrataInFlight() {
+    return m_maxStrataInFlight;
+  }
+
+  /**
+   * Set the maximum number of completed batches that can be queued or training in the background
+   *
+   * @param maxBatchesInFlight the maximum number of background batches
+   */
+  public void setMaxBatchesInFlight( String maxBatchesInFlight ) {
+    m_maxBatchesInFlight = maxBatchesInFlight;
+  }
+
+  /**
+   * Get the maximum number of completed batches that can be queued or training in the background
+   *
+   * @return the maximum number of background batches
+   */
+  public String getMaxBatchesInFlight() {
+    return m_maxBatchesInFlight;
+  }
+
+  /**
+   * Set the number of rows to accumulate before evaluating/updating an incrementally trained model
+   *
+   * @param incrementalBlockSize the number of rows per block
+   */
+  public void setIncrementalBlockSize( String incrementalBlockSize ) {
+    m_incrementalBlockSize = incrementalBlockSize;
+  }
+
+  /**
+   * Get the number of rows to accumulate before evaluating/updating an incrementally trained model
+   *
+   * @return the number of rows per block
+   */
+  public String getIncrementalBlockSize() {
+    return m_incrementalBlockSize;
+  }
+
+  /**
+   * Set whether each block of rows is evaluated against the model as it was at the start of the block
+   *
+   * @param incrementalBlockEvaluation true to evaluate whole blocks before updating the model
+   */
+  public void setIncrementalBlockEvaluation( boolean incrementalBlockEvaluation ) {
+    m_incrementalBlockEvaluation = incrementalBlockEvaluation;
+  }
+
+  /**
+   * Get whether each block of rows is evaluated against the model as it was at the start of the block
+   *
+   * @return true if whole blocks are evaluated before updating the model
+   */
+  public boolean getIncrementalBlockEvaluation() {
+    return m_incrementalBlockEvaluation;
+  }
+
+  /**
+   * Set how training and test rows are represented as instances. When sparse, training rows are also buffered
+   * sparsely.
+   *
+   * @param instanceRepresentation the representation to use
+   */
+  public void setInstanceRepresentation( RowCodec.Representation instanceRepresentation ) {
+    m_instanceRepresentation = instanceRepresentation;
+  }
+
+  /**
+   * Get how training and test rows are represented as instances
+   *
+   * @return the representation to use
+   */
+  public RowCodec.Representation getInstanceRepresentation() {
+    return m_instanceRepresentation;
+  }
+
+  /**
+   * Set whether identical training rows are merged into a single instance whose weight is the number of rows merged.
+   * Not applied when training incrementally or when instances are sparse.
+   *
+   * @param compactDuplicateRows true to merge duplicate rows
+   */
+  public void setCompactDuplicateRows( boolean compactDuplicateRows ) {
+    m_compactDuplicateRows = compactDuplicateRows;
+  }
+
+  /**
+   * Get whether identical training rows are merged into a single weighted instance
+   *
+   * @return true if duplicate rows are merged
+   */
+  public boolean getCompactDuplicateRows() {
+    return m_compactDuplicateRows;
+  }
+
   @Override public String getXml() {
     StringBuilder buff = new StringBuilder();
 
@@ -719,21 +1440,50 @@ public abstract class BaseSupervisedPMIMeta extends BaseTransformMeta<BaseSuperv
     buff.append( XmlHandler.addTagValue( USE_RESERVOIR_SAMPLING_TAG, getUseReservoirSampling() ) );
     buff.append( XmlHandler.addTagValue( RESERVOIR_SAMPLING_RANDOM_SEED_TAG, getRandomSeedReservoirSampling() ) );
     buff.append( XmlHandler.addTagValue( RESERVOIR_SAMPLING_SIZE_TAG, getReservoirSize() ) );
+    buff.append( XmlHandler.addTagValue( UNSORTED_STRATIFICATION_TAG, getUnsortedStratification() ) );
+    buff.append( XmlHandler.addTagValue( STRATA_MEMORY_BUDGET_TAG, getStrataMemoryBudget() ) );
+    buff.append( XmlHandler.addTagValue( STRATA_SPILL_DIRECTORY_TAG, getStrataSpillDirectory() ) );
+    buff.append( XmlHandler.addTagValue( TEST_ROWS_MEMORY_BUDGET_TAG, getTestRowsMemoryBudget() ) );
+    buff.append( XmlHandler.addTagValue( TRAINING_MEMORY_BUDGET_TAG, getTrainingMemoryBudget() ) );
+    buff.append( XmlHandler.addTagValue( MEMORY_BUDGET_POLICY_TAG, getMemoryBudgetPolicy().toString() ) );
+    buff.append( XmlHandler.addTagValue( CLASS_BALANCE_MAX_ROWS_TAG, getClassBalanceMaxRows() ) );
+    buff.append( XmlHandler.addTagValue( CLASS_BALANCE_MAX_RATIO_TAG, getClassBalanceMaxRatio() ) );
+    buff.append( XmlHandler.addTagValue( CLASS_BALANCE_REWEIGHT_TAG, getClassBalanceReweight() ) );
     buff.append( XmlHandler.addTagValue( STRATIFICATION_FIELD_NAME_TAG, getStratificationFieldName() ) );
     buff.append( XmlHandler.addTagValue( CLASS_FIELD_TAG, getClassField() ) );
     buff.append( XmlHandler.addTagValue( TRAINING_STEP_INPUT_NAME_TAG, getTrainingStepInputName() ) );
     buff.append( XmlHandler.addTagValue( TEST_STEP_INPUT_NAME_TAG, getTestingStepInputName() ) );
     buff.append( XmlHandler.addTagValue( EVAL_MODE_TAG, getEvalMode().toString() ) );
     buff.append( XmlHandler.addTagValue( SPLIT_PERCENTAGE_TAG, getPercentageSplit() ) );
+    buff.append( XmlHandler.addTagValue( STREAM_PERCENTAGE_SPLIT_TAG, getStreamPercentageSplit() ) );
     buff.append( XmlHandler.addTagValue( X_VAL_FOLDS_TAG, getXValFolds() ) );
+    buff.append( XmlHandler.addTagValue( STREAM_CROSS_VALIDATION_TAG, getStreamCrossValidation() ) );
     buff.append( XmlHandler.addTagValue( RANDOM_SEED_TAG, getRandomSeed() ) );
     buff.append( XmlHandler.addTagValue( MODEL_OUTPUT_DIRECTORY_TAG, getModelOutputPath() ) );
     buff.append( XmlHandler.addTagValue( MODEL_FILE_NAME_TAG, getModelFileName() ) );
     buff.append( XmlHandler.addTagValue( RESUMABLE_MODEL_LOAD_PATH_TAG, getResumableModelPath() ) );
+    buff.append( XmlHandler.addTagValue( CHECKPOINT_ITERATIONS_TAG, getCheckpointIterations() ) );
+    buff.append( XmlHandler.addTagValue( CHECKPOINT_INTERVAL_TAG, getCheckpointInterval() ) );
+    buff.append( XmlHandler.addTagValue( EARLY_STOPPING_TAG, getEarlyStopping() ) );
+    buff.append( XmlHandler.addTagValue( EARLY_STOPPING_VALIDATION_PERCENT_TAG, getEarlyStoppingValidationPercent() ) );
+    buff.append( XmlHandler.addTagValue( EARLY_STOPPING_INTERVAL_TAG, getEarlyStoppingInterval() ) );
+    buff.append( XmlHandler.addTagValue( EARLY_STOPPING_PATIENCE_TAG, getEarlyStoppingPatience() ) );
+    buff.append( XmlHandler.addTagValue( SEARCH_SPACE_TAG, getSearchSpace() ) );
+    buff.append( XmlHandler.addTagValue( SEARCH_MODE_TAG, getSearchMode() ) );
+    buff.append( XmlHandler.addTagValue( SEARCH_CANDIDATES_TAG, getSearchCandidates() ) );
     buff.append( XmlHandler.addTagValue( OUTPUT_AUC_METRICS_TAG, getOutputAUCMetrics() ) );
     buff.append( XmlHandler.addTagValue( OUTPUT_IR_METRICS_TAG, getOutputIRMetrics() ) );
+    buff.append( XmlHandler.addTagValue( OUTPUT_PHASE_METRICS_TAG, getOutputPhaseMetrics() ) );
     buff.append( XmlHandler.addTagValue( INCREMENTAL_TRAININ_INITIAL_ROW_CACHE_SIZE_TAG,
         getInitialRowCacheForNominalValDetermination() ) );
+    buff.append( XmlHandler.addTagValue( NUM_EXECUTION_SLOTS_TAG, getNumExecutionSlots() ) );
+    buff.append( XmlHandler.addTagValue( MAX_FOLDS_IN_FLIGHT_TAG, getMaxFoldsInFlight() ) );
+    buff.append( XmlHandler.addTagValue( MAX_STRATA_IN_FLIGHT_TAG, getMaxStrataInFlight() ) );
+    buff.append( XmlHandler.addTagValue( MAX_BATCHES_IN_FLIGHT_TAG, getMaxBatchesInFlight() ) );
+    buff.append( XmlHandler.addTagValue( INCREMENTAL_BLOCK_SIZE_TAG, getIncrementalBlockSize() ) );
+    buff.append( XmlHandler.addTagValue( INCREMENTAL_BLOCK_EVALUATION_TAG, getIncrementalBlockEvaluation() ) );
+    buff.append( XmlHandler.addTagValue( INSTANCE_REPRESENTATION_TAG, getInstanceRepresentation().toString() ) );
+    buff.append( XmlHandler.addTagValue( COMPACT_DUPLICATE_ROWS_TAG, getCompactDuplicateRows() ) );
 
     // incoming field metadata
     if ( m_fieldMeta.size() > 0 ) {
@@ -784,6 +1534,29 @@ public abstract class BaseSupervisedPMIMeta extends BaseTransformMeta<BaseSuperv
     setReservoirSize( reservoirSize == null ? "" : reservoirSize );
     String reservoirSeed = XmlHandler.getTagValue( transformNode, RESERVOIR_SAMPLING_RANDOM_SEED_TAG );
     setRandomSeedReservoirSampling( reservoirSeed == null ? "1" : reservoirSeed );
+    String unsortedStratification = XmlHandler.getTagValue( transformNode, UNSORTED_STRATIFICATION_TAG );
+    setUnsortedStratification( unsortedStratification != null && unsortedStratification.equalsIgnoreCase( "Y" ) );
+    String strataMemoryBudget = XmlHandler.getTagValue( transformNode, STRATA_MEMORY_BUDGET_TAG );
+    setStrataMemoryBudget( strataMemoryBudget == null ? "" : strataMemoryBudget );
+    String strataSpillDirectory = XmlHandler.getTagValue( transformNode, STRATA_SPILL_DIRECTORY_TAG );
+    setStrataSpillDirectory( strataSpillDirectory == null ? "" : strataSpillDirectory );
+    String testRowsMemoryBudget = XmlHandler.getTagValue( transformNode, TEST_ROWS_MEMORY_BUDGET_TAG );
+    setTestRowsMemoryBudget( testRowsMemoryBudget == null ? "" : testRowsMemoryBudget );
+    String trainingMemoryBudget = XmlHandler.getTagValue( transformNode, TRAINING_MEMORY_BUDGET_TAG );
+    setTrainingMemoryBudget( trainingMemoryBudget == null ? "" : trainingMemoryBudget );
+    String memoryBudgetPolicy = XmlHandler.getTagValue( transformNode, MEMORY_BUDGET_POLICY_TAG );
+    setMemoryBudgetPolicy( BaseSupervisedPMIData.MemoryBudgetPolicy.DOWNSAMPLE );
+    for ( BaseSupervisedPMIData.MemoryBudgetPolicy policy : BaseSupervisedPMIData.MemoryBudgetPolicy.values() ) {
+      if ( policy.toString().equalsIgnoreCase( memoryBudgetPolicy ) ) {
+        setMemoryBudgetPolicy( policy );
+      }
+    }
+    String classBalanceMaxRows = XmlHandler.getTagValue( transformNode, CLASS_BALANCE_MAX_ROWS_TAG );
+    setClassBalanceMaxRows( classBalanceMaxRows == null ? "" : classBalanceMaxRows );
+    String classBalanceMaxRatio = XmlHandler.getTagValue( transformNode, CLASS_BALANCE_MAX_RATIO_TAG );
+    setClassBalanceMaxRatio( classBalanceMaxRatio == null ? "" : classBalanceMaxRatio );
+    String classBalanceReweight = XmlHandler.getTagValue( transformNode, CLASS_BALANCE_REWEIGHT_TAG );
+    setClassBalanceReweight( classBalanceReweight != null && classBalanceReweight.equalsIgnoreCase( "Y" ) );
     String stratificationField = XmlHandler.getTagValue( transformNode, STRATIFICATION_FIELD_NAME_TAG );
     setStratificationFieldName( stratificationField == null ? "" : stratificationField );
     String classField = XmlHandler.getTagValue( transformNode, CLASS_FIELD_TAG );
@@ -801,8 +1574,12 @@ public abstract class BaseSupervisedPMIMeta extends BaseTransformMeta<BaseSuperv
     }
     String splitPercentage = XmlHandler.getTagValue( transformNode, SPLIT_PERCENTAGE_TAG );
     setPercentageSplit( splitPercentage == null ? "" : splitPercentage );
+    String streamPercentageSplit = XmlHandler.getTagValue( transformNode, STREAM_PERCENTAGE_SPLIT_TAG );
+    setStreamPercentageSplit( streamPercentageSplit != null && streamPercentageSplit.equalsIgnoreCase( "Y" ) );
     String xValFolds = XmlHandler.getTagValue( transformNode, X_VAL_FOLDS_TAG );
     setXValFolds( xValFolds == null ? "" : xValFolds );
+    String streamCrossValidation = XmlHandler.getTagValue( transformNode, STREAM_CROSS_VALIDATION_TAG );
+    setStreamCrossValidation( streamCrossValidation != null && streamCrossValidation.equalsIgnoreCase( "Y" ) );
     String randomSeed = XmlHandler.getTagValue( transformNode, RANDOM_SEED_TAG );
     setRandomSeed( randomSeed == null ? "" : randomSeed );
     String modelOutputPath = XmlHandler.getTagValue( transformNode, MODEL_OUTPUT_DIRECTORY_TAG );
@@ -811,10 +1588,52 @@ public abstract class BaseSupervisedPMIMeta extends BaseTransformMeta<BaseSuperv
     setModelFileName( modelFileName == null ? "" : modelFileName );
     String resumeModelLoadPath = XmlHandler.getTagValue( transformNode, RESUMABLE_MODEL_LOAD_PATH_TAG );
     setResumableModelPath( resumeModelLoadPath == null ? "" : resumeModelLoadPath );
+    String checkpointIterations = XmlHandler.getTagValue( transformNode, CHECKPOINT_ITERATIONS_TAG );
+    setCheckpointIterations( checkpointIterations == null ? "" : checkpointIterations );
+    String checkpointInterval = XmlHandler.getTagValue( transformNode, CHECKPOINT_INTERVAL_TAG );
+    setCheckpointInterval( checkpointInterval == null ? "" : checkpointInterval );
+    String earlyStopping = XmlHandler.getTagValue( transformNode, EARLY_STOPPING_TAG );
+    setEarlyStopping( earlyStopping != null && earlyStopping.equalsIgnoreCase( "Y" ) );
+    String validationPercent = XmlHandler.getTagValue( transformNode, EARLY_STOPPING_VALIDATION_PERCENT_TAG );
+    setEarlyStoppingValidationPercent( validationPercent == null ? "10" : validationPercent );
+    String earlyStoppingInterval = XmlHandler.getTagValue( transformNode, EARLY_STOPPING_INTERVAL_TAG );
+    setEarlyStoppingInterval( earlyStoppingInterval == null ? "10" : earlyStoppingInterval );
+    String earlyStoppingPatience = XmlHandler.getTagValue( transformNode, EARLY_STOPPING_PATIENCE_TAG );
+    setEarlyStoppingPatience( earlyStoppingPatience == null ? "5" : earlyStoppingPatience );
+    String searchSpace = XmlHandler.getTagValue( transformNode, SEARCH_SPACE_TAG );
+    setSearchSpace( searchSpace == null ? "" : searchSpace );
+    String searchMode = XmlHandler.getTagValue( transformNode, SEARCH_MODE_TAG );
+    setSearchMode( searchMode == null ? SearchSpace.SearchMode.Grid.toString() : searchMode );
+    String searchCandidates = XmlHandler.getTagValue( transformNode, SEARCH_CANDIDATES_TAG );
+    setSearchCandidates( searchCandidates == null ? "10" : searchCandidates );
     setOutputAUCMetrics( XmlHandler.getTagValue( transformNode, OUTPUT_AUC_METRICS_TAG ).equalsIgnoreCase( "Y" ) );
     setOutputIRMetrics( XmlHandler.getTagValue( transformNode, OUTPUT_IR_METRICS_TAG ).equalsIgnoreCase( "Y" ) );
+    String outputPhaseMetrics = XmlHandler.getTagValue( transformNode, OUTPUT_PHASE_METRICS_TAG );
+    setOutputPhaseMetrics( outputPhaseMetrics != null && outputPhaseMetrics.equalsIgnoreCase( "Y" ) );
     String incrementalCache = XmlHandler.getTagValue( transformNode, INCREMENTAL_TRAININ_INITIAL_ROW_CACHE_SIZE_TAG );
     setInitialRowCacheForNominalValDetermination( incrementalCache == null ? "100" : incrementalCache );
+    String executionSlots = XmlHandler.getTagValue( transformNode, NUM_EXECUTION_SLOTS_TAG );
+    setNumExecutionSlots( executionSlots == null ? "1" : executionSlots );
+    String maxFoldsInFlight = XmlHandler.getTagValue( transformNode, MAX_FOLDS_IN_FLIGHT_TAG );
+    setMaxFoldsInFlight( maxFoldsInFlight == null ? "" : maxFoldsInFlight );
+    String maxStrataInFlight = XmlHandler.getTagValue( transformNode, MAX_STRATA_IN_FLIGHT_TAG );
+    setMaxStrataInFlight( maxStrataInFlight == null ? "" : maxStrataInFlight );
+    String maxBatchesInFlight = XmlHandler.getTagValue( transformNode, MAX_BATCHES_IN_FLIGHT_TAG );
+    setMaxBatchesInFlight( maxBatchesInFlight == null ? "" : maxBatchesInFlight );
+    String incrementalBlockSize = XmlHandler.getTagValue( transformNode, INCREMENTAL_BLOCK_SIZE_TAG );
+    setIncrementalBlockSize( incrementalBlockSize == null ? "" : incrementalBlockSize );
+    String incrementalBlockEvaluation = XmlHandler.getTagValue( transformNode, INCREMENTAL_BLOCK_EVALUATION_TAG );
+    setIncrementalBlockEvaluation(
+        incrementalBlockEvaluation != null && incrementalBlockEvaluation.equalsIgnoreCase( "Y" ) );
+    String instanceRepresentation = XmlHandler.getTagValue( transformNode, INSTANCE_REPRESENTATION_TAG );
+    setInstanceRepresentation( RowCodec.Representation.DENSE );
+    for ( RowCodec.Representation representation : RowCodec.Representation.values() ) {
+      if ( representation.toString().equalsIgnoreCase( instanceRepresentation ) ) {
+        setInstanceRepresentation( representation );
+      }
+    }
+    String compactDuplicateRows = XmlHandler.getTagValue( transformNode, COMPACT_DUPLICATE_ROWS_TAG );
+    setCompactDuplicateRows( compactDuplicateRows != null && compactDuplicateRows.equalsIgnoreCase( "Y" ) );
 
     // incoming field metadata
     Node fields = XmlHandler.getSubNode( transformNode, INCOMING_FIELD_META_TAG );
@@ -0,0 +1,272 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.phalanxdev.hop.pipeline.transforms.pmi;
+
+import org.apache.hop.core.exception.HopValueException;
+import org.apache.hop.core.row.IValueMeta;
+import weka.core.Instance;
+import weka.core.Instances;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Class-aware down-sampling of training rows as they arrive. Each class value gets its own
+ * reservoir, of at most a fixed number of rows, within a single training buffer - so rare classes
+ * are kept in their entirety while the common ones are sampled uniformly and never held in full.
+ * Optionally, once the stream has ended, each class can be cut down further to at most a given
+ * multiple of the number of rows held for the rarest class.
+ * <p>
+ * The rate at which each class was sampled (rows held / rows seen) is recorded, so that instances
+ * can be re-weighted to reflect the original class distribution.
+ *
+ * @author Mark Hall (mhall{[at]}waikato{[dot]}ac{[dot]}nz)
+ * @version $Revision: $
+ */
+public class ClassBalancedSampler {
+
+  /**
+   * The rows held for one class value
+   */
+  protected static class ClassReservoir {
+
+    /**
+     * Positions in the buffer of the rows held
+     */
+    protected int[] m_rows = new int[16];
+
+    /**
+     * Number of rows held
+     */
+    protected int m_held;
+
+    /**
+     * Number of rows seen
+     */
+    protected long m_seen;
+  }
+
+  /**
+   * The buffer that sampled rows are held in
+   */
+  protected ColumnarTrainingBuffer m_buffer;
+
+  /**
+   * Index of the class in the incoming row structure
+   */
+  protected int m_classIndex;
+
+  /**
+   * Value meta of the class in the incoming row structure
+   */
+  protected IValueMeta m_classMeta;
+
+  /**
+   * Maximum number of rows held per class. Zero or less means no limit
+   */
+  protected int m_maxRowsPerClass;
+
+  /**
+   * Maximum number of rows per class, as a multiple of the number held for the rarest class,
+   * applied when the stream has ended. Zero or less means no limit
+   */
+  protected double m_maxRatio;
+
+  protected Random m_random;
+
+  /**
+   * Reservoirs, in order of first appearance of the class value
+   */
+  protected Map<String, ClassReservoir> m_classes = new LinkedHashMap<>();
+
+  /**
+   * Constructor
+   *
+   * @param buffer the (empty) buffer to hold sampled rows in
+   * @param classMeta the value meta of the class in the incoming row structure
+   * @param classIndex the index of the class in the incoming row structure
+   * @param maxRowsPerClass the maximum number of rows to hold per class (zero or less for no limit)
+   * @param maxRatio the maximum number of rows per class as a multiple of the number held for the
+   * rarest class (zero or less for no limit)
+   * @param seed the random seed
+   */
+  public ClassBalancedSampler(ColumnarTrainingBuffer buffer, IValueMeta classMeta, int classIndex,
+      int maxRowsPerClass, double maxRatio, int seed) {
+    m_buffer = buffer;
+    m_classMeta = classMeta;
+    m_classIndex = classIndex;
+    m_maxRowsPerClass = maxRowsPerClass;
+    m_maxRatio = maxRatio;
+    m_random = new Random(seed);
+  }
+
+  /**
+   * Offer a row to the reservoir for its class
+   *
+   * @param row the row
+   * @throws HopValueException if a problem occurs
+   */
+  public void add(Object[] row) throws HopValueException {
+    String classVal = m_classMeta.getString(row[m_classIndex]);
+    ClassReservoir reservoir = m_classes.get(classVal);
+    if (reservoir == null) {
+      reservoir = new ClassReservoir();
+      m_classes.put(classVal, reservoir);
+    }
+
+    if (m_maxRowsPerClass <= 0 || reservoir.m_held < m_maxRowsPerClass) {
+      if (reservoir.m_held == reservoir.m_rows.length) {
+        reservoir.m_rows = Arrays.copyOf(reservoir.m_rows, reservoir.m_rows.length * 2);
+      }
+      reservoir.m_rows[reservoir.m_held++] = m_buffer.size();
+      m_buffer.add(row);
+    } else {
+      long slot = (long) (m_random.nextDouble() * (reservoir.m_seen + 1));
+      if (slot < reservoir.m_held) {
+        m_buffer.set(reservoir.m_rows[(int) slot], row);
+      }
+    }
+    reservoir.m_seen++;
+  }
+
+  /**
+   * Apply the maximum ratio to the rarest class (if set) now that the stream has ended. Rows
+   * beyond the ratio are removed from the buffer; the buffer is not sampled any further after this.
+   */
+  public void finish() {
+    if (m_maxRatio <= 0 || m_classes.isEmpty()) {
+      return;
+    }
+    int rarest = Integer.MAX_VALUE;
+    for (ClassReservoir reservoir : m_classes.values()) {
+      if (reservoir.m_held > 0) {
+        rarest = Math.min(rarest, reservoir.m_held);
+      }
+    }
+    int cap = (int) Math.max(1, Math.ceil(rarest * m_maxRatio));
+
+    boolean[] drop = new boolean[m_buffer.size()];
+    boolean dropped = false;
+    for (ClassReservoir reservoir : m_classes.values()) {
+      if (reservoir.m_held <= cap) {
+        continue;
+      }
+      // partial Fisher-Yates shuffle of the positions to select the rows to keep
+      for (int i = 0; i < cap; i++) {
+        int j = i + m_random.nextInt(reservoir.m_held - i);
+        int tmp = reservoir.m_rows[i];
+        reservoir.m_rows[i] = reservoir.m_rows[j];
+        reservoir.m_rows[j] = tmp;
+      }
+      for (int i = cap; i < reservoir.m_held; i++) {
+        drop[reservoir.m_rows[i]] = true;
+      }
+      reservoir.m_held = cap;
+      dropped = true;
+    }
+
+    if (dropped) {
+      // move the rows that are kept to the front, preserving their order
+      int kept = 0;
+      for (int r = 0; r < drop.length; r++) {
+        if (!drop[r]) {
+          if (r != kept) {
+            m_buffer.swap(kept, r);
+          }
+          kept++;
+        }
+      }
+      m_buffer.truncate(kept);
+      m_buffer.compactDictionaries();
+    }
+  }
+
+  /**
+   * Get the rate at which each class value was sampled (rows held / rows seen)
+   *
+   * @return the sampling rate for each class value, in order of first appearance
+   */
+  public Map<String, Double> getSamplingRates() {
+    Map<String, Double> rates = new LinkedHashMap<>();
+    for (Map.Entry<String, ClassReservoir> e : m_classes.entrySet()) {
+      ClassReservoir reservoir = e.getValue();
+      rates.put(e.getKey(), reservoir.m_seen == 0 ? 1.0 : (double) reservoir.m_held / reservoir.m_seen);
+    }
+
+    return rates;
+  }
+
+  /**
+   * Get the number of rows seen for each class value
+   *
+   * @return the number of rows seen for each class value, in order of first appearance
+   */
+  public Map<String, Long> getRowsSeen() {
+    Map<String, Long> seen = new LinkedHashMap<>();
+    for (Map.Entry<String, ClassReservoir> e : m_classes.entrySet()) {
+      seen.put(e.getKey(), e.getValue().m_seen);
+    }
+
+    return seen;
+  }
+
+  /**
+   * Describe the sampling rates as a comma separated list of class:rate pairs
+   *
+   * @return a description of the sampling rates
+   */
+  public String describeSamplingRates() {
+    StringBuilder b = new StringBuilder();
+    for (Map.Entry<String, Double> e : getSamplingRates().entrySet()) {
+      if (b.length() > 0) {
+        b.append(",");
+      }
+      b.append(e.getKey()).append(":").append(weka.core.Utils.doubleToString(e.getValue(), 6));
+    }
+
+    return b.toString();
+  }
+
+  /**
+   * Multiply the weight of each instance by the inverse of the sampling rate of its class, so that
+   * the weighted data reflects the class distribution of the stream
+   *
+   * @param data the instances built from the sampled rows (class index must be set)
+   */
+  public void reweight(Instances data) {
+    Map<String, Double> rates = getSamplingRates();
+    double[] factors = new double[data.classAttribute().numValues()];
+    for (int i = 0; i < factors.length; i++) {
+      Double rate = rates.get(data.classAttribute().value(i));
+      factors[i] = rate == null || rate <= 0 ? 1.0 : 1.0 / rate;
+    }
+    for (int i = 0; i < data.numInstances(); i++) {
+      Instance inst = data.instance(i);
+      if (!inst.classIsMissing()) {
+        inst.setWeight(inst.weight() * factors[(int) inst.classValue()]);
+      }
+    }
+  }
+
+  /**
+   * Discard all reservoirs (the buffer is left as is)
+   */
+  public void clear() {
+    m_classes.clear();
+  }
+}
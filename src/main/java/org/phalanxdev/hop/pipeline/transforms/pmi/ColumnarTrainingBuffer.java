@@ -0,0 +1,529 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.phalanxdev.hop.pipeline.transforms.pmi;
+
+import org.apache.hop.core.exception.HopValueException;
+import org.apache.hop.core.row.IRowMeta;
+import org.apache.hop.core.row.IValueMeta;
+import org.phalanxdev.hop.utils.ArffMeta;
+import weka.core.Attribute;
+import weka.core.Instances;
+import weka.core.Utils;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Column-oriented buffer for training rows. Only the fields that are selected for modelling (i.e.
+ * those with an {@code ArffMeta}) are retained. Values are encoded into primitive {@code double[]}
+ * columns as rows arrive - numeric and date fields directly, nominal and string fields as integer
+ * codes into a per-field dictionary, and hashed nominal fields as bucket indexes (with no
+ * dictionary). A Weka {@code Instances} object can then be built directly from
+ * the columns once a header has been determined, rather than holding on to the incoming
+ * {@code Object[]} rows in their entirety.
+ *
+ * @author Mark Hall (mhall{[at]}waikato{[dot]}ac{[dot]}nz)
+ * @version $Revision: $
+ */
+public class ColumnarTrainingBuffer {
+
+  /**
+   * Number of rows to allocate column storage for initially when no size hint is available
+   */
+  public static final int DEFAULT_INITIAL_CAPACITY = 1000;
+
+  /**
+   * The model fields held in this buffer, in the order they will appear in the header
+   */
+  protected List<ArffMeta> m_fields;
+
+  /**
+   * Lookup from model field name to column index
+   */
+  protected Map<String, Integer> m_columnLookup = new HashMap<>();
+
+  /**
+   * Index of each model field in the incoming row structure (-1 if not present in the input)
+   */
+  protected int[] m_sourceIndexes;
+
+  /**
+   * Value metas of the incoming fields (null if not present in the input)
+   */
+  protected IValueMeta[] m_valueMetas;
+
+  /**
+   * True for columns that hold dictionary codes (nominal and string fields)
+   */
+  protected boolean[] m_dictionaryCoded;
+
+  /**
+   * Per-column dictionaries (codes assigned in order of first occurrence). Null entries for
+   * numeric/date columns
+   */
+  protected StringInterner[] m_dictionaries;
+
+  /**
+   * Number of buckets for hashed nominal columns (zero for other columns)
+   */
+  protected int[] m_hashBuckets;
+
+  /**
+   * The column storage
+   */
+  protected double[][] m_columns;
+
+  /**
+   * Number of rows currently held
+   */
+  protected int m_numRows;
+
+  /**
+   * Approximate number of bytes held by the dictionaries
+   */
+  protected long m_dictionaryBytes;
+
+  /**
+   * Constructor
+   *
+   * @param fields the model fields to retain, in header order
+   * @param rowMeta the incoming row structure
+   * @param fieldIndexes lookup from model field name to index in the incoming row structure
+   * @param initialCapacity the number of rows to initially allocate storage for
+   */
+  public ColumnarTrainingBuffer(List<ArffMeta> fields, IRowMeta rowMeta,
+      Map<String, Integer> fieldIndexes, int initialCapacity) {
+    this(fields, rowMeta, fieldIndexes, initialCapacity, true);
+  }
+
+  /**
+   * Constructor for subclasses that store rows differently
+   *
+   * @param fields the model fields to retain, in header order
+   * @param rowMeta the incoming row structure
+   * @param fieldIndexes lookup from model field name to index in the incoming row structure
+   * @param initialCapacity the number of rows to initially allocate storage for
+   * @param allocateColumns false if column storage is not used (columns are left null)
+   */
+  protected ColumnarTrainingBuffer(List<ArffMeta> fields, IRowMeta rowMeta,
+      Map<String, Integer> fieldIndexes, int initialCapacity, boolean allocateColumns) {
+    m_fields = new ArrayList<>(fields);
+    int numCols = m_fields.size();
+    m_sourceIndexes = new int[numCols];
+    m_valueMetas = new IValueMeta[numCols];
+    m_dictionaryCoded = new boolean[numCols];
+    m_dictionaries = new StringInterner[numCols];
+    m_hashBuckets = new int[numCols];
+    m_columns = allocateColumns ? new double[numCols][Math.max(initialCapacity, 1)]
+        : new double[numCols][];
+
+    for (int i = 0; i < numCols; i++) {
+      ArffMeta current = m_fields.get(i);
+      m_columnLookup.put(current.getFieldName(), i);
+      Integer sourceIndex = fieldIndexes.get(current.getFieldName());
+      m_sourceIndexes[i] = sourceIndex == null ? -1 : sourceIndex;
+      m_valueMetas[i] = sourceIndex == null ? null : rowMeta.getValueMeta(sourceIndex);
+      m_dictionaryCoded[i] =
+          current.getArffType() == ArffMeta.NOMINAL || current.getArffType() == ArffMeta.STRING;
+      m_dictionaries[i] = m_dictionaryCoded[i] ? new StringInterner() : null;
+      if (current.getArffType() == ArffMeta.HASHED_NOMINAL) {
+        m_hashBuckets[i] = Math.max(current.getHashBuckets(), 1);
+      }
+    }
+  }
+
+  /**
+   * Create a new buffer
+   *
+   * @param fields the model fields to retain, in header order
+   * @param rowMeta the incoming row structure
+   * @param fieldIndexes lookup from model field name to index in the incoming row structure
+   * @param initialCapacity the number of rows to initially allocate storage for
+   * @param sparse true to hold only the non-zero values of each row (see
+   * {@code SparseTrainingBuffer})
+   * @return a new buffer
+   */
+  public static ColumnarTrainingBuffer newBuffer(List<ArffMeta> fields, IRowMeta rowMeta,
+      Map<String, Integer> fieldIndexes, int initialCapacity, boolean sparse) {
+    return sparse ? new SparseTrainingBuffer(fields, rowMeta, fieldIndexes, initialCapacity)
+        : new ColumnarTrainingBuffer(fields, rowMeta, fieldIndexes, initialCapacity);
+  }
+
+  /**
+   * Encode and add a row to the buffer
+   *
+   * @param row the incoming row
+   * @throws HopValueException if a problem occurs
+   */
+  public void add(Object[] row) throws HopValueException {
+    ensureCapacity(m_numRows + 1);
+    for (int i = 0; i < m_columns.length; i++) {
+      m_columns[i][m_numRows] = encode(i, row);
+    }
+    m_numRows++;
+  }
+
+  /**
+   * Encode a row and overwrite the row at the given position
+   *
+   * @param index the position of the row to replace
+   * @param row the incoming row
+   * @throws HopValueException if a problem occurs
+   */
+  public void set(int index, Object[] row) throws HopValueException {
+    for (int i = 0; i < m_columns.length; i++) {
+      m_columns[i][index] = encode(i, row);
+    }
+  }
+
+  /**
+   * Swap two rows
+   *
+   * @param a the position of the first row
+   * @param b the position of the second row
+   */
+  public void swap(int a, int b) {
+    for (double[] column : m_columns) {
+      double tmp = column[a];
+      column[a] = column[b];
+      column[b] = tmp;
+    }
+  }
+
+  /**
+   * Discard all rows beyond the given number and release the storage they occupied
+   *
+   * @param numRows the number of rows to keep
+   */
+  public void truncate(int numRows) {
+    m_numRows = Math.min(m_numRows, numRows);
+    trimToSize();
+  }
+
+  /**
+   * Shrink column storage to the number of rows currently held
+   */
+  public void trimToSize() {
+    for (int i = 0; i < m_columns.length; i++) {
+      m_columns[i] = Arrays.copyOf(m_columns[i], Math.max(m_numRows, 1));
+    }
+  }
+
+  /**
+   * Remove dictionary entries that are no longer referenced by any row (e.g. after rows have been
+   * replaced or truncated). The remaining entries keep their relative order.
+   */
+  public void compactDictionaries() {
+    for (int c = 0; c < m_columns.length; c++) {
+      if (!m_dictionaryCoded[c]) {
+        continue;
+      }
+      StringInterner dictionary = m_dictionaries[c];
+      int[] remap = new int[dictionary.size()];
+      Arrays.fill(remap, -1);
+      double[] column = m_columns[c];
+      int used = 0;
+      for (int r = 0; r < m_numRows; r++) {
+        if (!Utils.isMissingValue(column[r]) && remap[(int) column[r]] < 0) {
+          remap[(int) column[r]] = 0;
+          used++;
+        }
+      }
+      if (used == dictionary.size()) {
+        continue;
+      }
+
+      StringInterner compacted = new StringInterner();
+      for (int code = 0; code < remap.length; code++) {
+        String value = dictionary.get(code);
+        if (remap[code] == 0) {
+          remap[code] = compacted.intern(value);
+        } else {
+          m_dictionaryBytes -= 2L * value.length() + 56;
+        }
+      }
+      m_dictionaries[c] = compacted;
+      for (int r = 0; r < m_numRows; r++) {
+        if (!Utils.isMissingValue(column[r])) {
+          column[r] = remap[(int) column[r]];
+        }
+      }
+    }
+  }
+
+  /**
+   * Encode and add a list of rows to the buffer. Stops at the first null row (reservoir samples
+   * can be padded with nulls).
+   *
+   * @param rows the rows to add
+   * @throws HopValueException if a problem occurs
+   */
+  public void addAll(List<Object[]> rows) throws HopValueException {
+    ensureCapacity(m_numRows + rows.size());
+    for (Object[] row : rows) {
+      if (row == null) {
+        break;
+      }
+      add(row);
+    }
+  }
+
+  protected double encode(int column, Object[] row) throws HopValueException {
+    if (m_sourceIndexes[column] < 0) {
+      return Utils.missingValue();
+    }
+    IValueMeta vm = m_valueMetas[column];
+    Object value = row[m_sourceIndexes[column]];
+    if (vm.isNull(value)) {
+      return Utils.missingValue();
+    }
+
+    if (m_dictionaryCoded[column]) {
+      return intern(column, vm.getString(value));
+    }
+    if (m_hashBuckets[column] > 0) {
+      return FeatureHasher.bucket(vm.getString(value), m_hashBuckets[column]);
+    }
+
+    Double number = vm.getNumber(value);
+    return number == null ? Utils.missingValue() : number;
+  }
+
+  protected int intern(int column, String value) {
+    StringInterner dictionary = m_dictionaries[column];
+    int sizeBefore = dictionary.size();
+    int code = dictionary.intern(value);
+    if (dictionary.size() > sizeBefore) {
+      // string contents plus rough object and table overhead
+      m_dictionaryBytes += 2L * value.length() + 56;
+    }
+
+    return code;
+  }
+
+  protected void ensureCapacity(int required) {
+    if (m_columns.length == 0 || required <= m_columns[0].length) {
+      return;
+    }
+    int newCapacity = Math.max(required, m_columns[0].length + (m_columns[0].length >> 1));
+    for (int i = 0; i < m_columns.length; i++) {
+      m_columns[i] = Arrays.copyOf(m_columns[i], newCapacity);
+    }
+  }
+
+  /**
+   * Get the number of rows in the buffer
+   *
+   * @return the number of rows
+   */
+  public int size() {
+    return m_numRows;
+  }
+
+  /**
+   * Get the distinct values seen so far for the named (nominal or string) field, in sorted order
+   *
+   * @param fieldName the name of the field
+   * @return a sorted list of values
+   */
+  public ArrayList<String> getNominalValues(String fieldName) {
+    Integer column = m_columnLookup.get(fieldName);
+    if (column == null || !m_dictionaryCoded[column]) {
+      return new ArrayList<>();
+    }
+    return m_dictionaries[column].sortedValues();
+  }
+
+  /**
+   * Build an Instances object (of dense instances) directly from the buffered columns. Dictionary
+   * codes are remapped to the value indexes of the corresponding attributes in the supplied header;
+   * values not declared in the header become missing.
+   *
+   * @param header the header to use
+   * @return an Instances object containing the buffered rows
+   */
+  public Instances toInstances(Instances header) {
+    return toInstances(header, RowCodec.Representation.DENSE);
+  }
+
+  /**
+   * Build an Instances object directly from the buffered columns. Dictionary codes are remapped to
+   * the value indexes of the corresponding attributes in the supplied header; values not declared
+   * in the header become missing.
+   *
+   * @param header the header to use
+   * @param representation how the rows are to be represented as instances
+   * @return an Instances object containing the buffered rows
+   */
+  public Instances toInstances(Instances header, RowCodec.Representation representation) {
+    Instances dataset = new Instances(header, m_numRows);
+    int numAtts = dataset.numAttributes();
+    int[] columnForAtt = columnsForAttributes(dataset);
+    int[][] codeRemap = codeRemaps(dataset, columnForAtt);
+
+    double[] vals = new double[numAtts];
+    for (int r = 0; r < m_numRows; r++) {
+      for (int a = 0; a < numAtts; a++) {
+        if (columnForAtt[a] < 0) {
+          vals[a] = Utils.missingValue();
+          continue;
+        }
+        double v = m_columns[columnForAtt[a]][r];
+        if (codeRemap[a] != null && !Utils.isMissingValue(v)) {
+          int index = codeRemap[a][(int) v];
+          v = index < 0 ? Utils.missingValue() : index;
+        }
+        vals[a] = v;
+      }
+      dataset.add(RowCodec.createInstance(vals, representation, true));
+    }
+
+    return dataset;
+  }
+
+  /**
+   * Get the column that holds each attribute of the supplied header
+   *
+   * @param header the header
+   * @return the column index for each attribute (-1 if not held in this buffer)
+   */
+  protected int[] columnsForAttributes(Instances header) {
+    int[] columnForAtt = new int[header.numAttributes()];
+    for (int a = 0; a < columnForAtt.length; a++) {
+      Integer column = m_columnLookup.get(header.attribute(a).name());
+      columnForAtt[a] = column == null ? -1 : column;
+    }
+
+    return columnForAtt;
+  }
+
+  /**
+   * Get, for each attribute of the supplied header held in a dictionary coded column, the mapping
+   * from dictionary code to attribute value index (-1 if the value is not declared). String values
+   * are added to string attributes.
+   *
+   * @param header the header
+   * @param columnForAtt the column index for each attribute
+   * @return the code mapping for each attribute (null for those that are not dictionary coded)
+   */
+  protected int[][] codeRemaps(Instances header, int[] columnForAtt) {
+    int[][] codeRemap = new int[columnForAtt.length][];
+    for (int a = 0; a < columnForAtt.length; a++) {
+      int column = columnForAtt[a];
+      if (column >= 0 && m_dictionaryCoded[column]) {
+        Attribute att = header.attribute(a);
+        StringInterner vals = m_dictionaries[column];
+        codeRemap[a] = new int[vals.size()];
+        for (int j = 0; j < vals.size(); j++) {
+          if (att.isString()) {
+            codeRemap[a][j] = att.addStringValue(vals.get(j));
+          } else if (att.isNominal()) {
+            codeRemap[a][j] = att.indexOfValue(vals.get(j));
+          } else {
+            codeRemap[a][j] = -1;
+          }
+        }
+      }
+    }
+
+    return codeRemap;
+  }
+
+  /**
+   * Get an estimate of the memory (in bytes) used by the buffer's column storage and dictionaries
+   *
+   * @return the approximate number of bytes used
+   */
+  public long estimateMemoryUsage() {
+    long capacity = m_columns.length == 0 ? 0 : m_columns[0].length;
+
+    return capacity * m_columns.length * 8L + m_dictionaryBytes;
+  }
+
+  /**
+   * Write the buffered rows to the supplied output. Dictionary coded values are written as strings
+   * so that the rows can be read back into a buffer with different dictionaries.
+   *
+   * @param out the output to write to
+   * @throws IOException if a problem occurs
+   */
+  public void writeRows(DataOutput out) throws IOException {
+    for (int r = 0; r < m_numRows; r++) {
+      for (int c = 0; c < m_columns.length; c++) {
+        double v = m_columns[c][r];
+        if (!m_dictionaryCoded[c]) {
+          out.writeDouble(v);
+        } else if (Utils.isMissingValue(v)) {
+          out.writeInt(-1);
+        } else {
+          byte[] bytes = m_dictionaries[c].get((int) v).getBytes(StandardCharsets.UTF_8);
+          out.writeInt(bytes.length);
+          out.write(bytes);
+        }
+      }
+    }
+  }
+
+  /**
+   * Read rows previously written by {@code writeRows()} (from a buffer with the same fields) and
+   * add them to this buffer
+   *
+   * @param in the input to read from
+   * @param numRows the number of rows to read
+   * @throws IOException if a problem occurs
+   */
+  public void readRows(DataInput in, int numRows) throws IOException {
+    ensureCapacity(m_numRows + numRows);
+    for (int r = 0; r < numRows; r++) {
+      for (int c = 0; c < m_columns.length; c++) {
+        if (!m_dictionaryCoded[c]) {
+          m_columns[c][m_numRows] = in.readDouble();
+          continue;
+        }
+        int length = in.readInt();
+        if (length < 0) {
+          m_columns[c][m_numRows] = Utils.missingValue();
+          continue;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        m_columns[c][m_numRows] = intern(c, new String(bytes, StandardCharsets.UTF_8));
+      }
+      m_numRows++;
+    }
+  }
+
+  /**
+   * Remove all rows (and dictionary entries) from the buffer. Allocated column storage is retained
+   * for reuse.
+   */
+  public void clear() {
+    m_numRows = 0;
+    m_dictionaryBytes = 0;
+    for (int i = 0; i < m_columns.length; i++) {
+      if (m_dictionaryCoded[i]) {
+        m_dictionaries[i].clear();
+      }
+    }
+  }
+}
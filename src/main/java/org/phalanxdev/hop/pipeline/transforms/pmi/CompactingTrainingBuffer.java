@@ -0,0 +1,333 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.phalanxdev.hop.pipeline.transforms.pmi;
+
+import org.apache.hop.core.exception.HopValueException;
+import org.apache.hop.core.row.IRowMeta;
+import org.phalanxdev.hop.utils.ArffMeta;
+import weka.core.Instance;
+import weka.core.Instances;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Variant of {@code ColumnarTrainingBuffer} that merges duplicate rows as they arrive. Each row is
+ * encoded as usual and then looked up (by a hash of all its encoded values, including the class) in
+ * an open addressing table of the rows held so far. A row identical to one already held just adds
+ * one to that row's weight, so the instances built from the buffer carry summed weights instead of
+ * repeating identical feature vectors. Schemes that honour instance weights learn the same model
+ * from the compacted data.
+ * <p>
+ * Rows that are swapped keep their weights, and a row that is replaced via {@code set()} gets a
+ * weight of one. Sampling the buffer in place therefore picks a merged row as a single row, so
+ * compaction should not be combined with in-place sampling. Modified rows are not merged with
+ * subsequent duplicates until the lookup table is next rebuilt.
+ *
+ * @author Mark Hall (mhall{[at]}waikato{[dot]}ac{[dot]}nz)
+ * @version $Revision: $
+ */
+public class CompactingTrainingBuffer extends ColumnarTrainingBuffer {
+
+  /**
+   * Weight (number of merged rows) of each row held
+   */
+  protected double[] m_weights;
+
+  /**
+   * Hash of the encoded values of each row held
+   */
+  protected int[] m_rowHashes;
+
+  /**
+   * Open addressing lookup table. Each entry is a row index plus one (zero means empty). Always at
+   * least twice the size of the row storage
+   */
+  protected int[] m_table;
+
+  /**
+   * True if rows have been modified in place since the lookup table was built
+   */
+  protected boolean m_tableStale;
+
+  /**
+   * Scratch array that each incoming row is encoded into before being looked up
+   */
+  protected double[] m_encoded;
+
+  /**
+   * Number of rows added, including those merged into existing rows
+   */
+  protected long m_rowsAdded;
+
+  /**
+   * Constructor
+   *
+   * @param fields the model fields to retain, in header order
+   * @param rowMeta the incoming row structure
+   * @param fieldIndexes lookup from model field name to index in the incoming row structure
+   * @param initialCapacity the number of rows to initially allocate storage for
+   */
+  public CompactingTrainingBuffer(List<ArffMeta> fields, IRowMeta rowMeta,
+      Map<String, Integer> fieldIndexes, int initialCapacity) {
+    super(fields, rowMeta, fieldIndexes, initialCapacity);
+    int capacity = Math.max(initialCapacity, 1);
+    m_weights = new double[capacity];
+    m_rowHashes = new int[capacity];
+    m_table = new int[tableSizeFor(capacity)];
+    m_encoded = new double[m_columns.length];
+  }
+
+  protected static int tableSizeFor(int capacity) {
+    int size = 16;
+    while (size < capacity * 2L) {
+      size <<= 1;
+    }
+    return size;
+  }
+
+  protected static int hashValue(int hash, double v) {
+    long bits = Double.doubleToLongBits(v);
+
+    return 31 * hash + (int) (bits ^ (bits >>> 32));
+  }
+
+  protected static int spread(int hash) {
+    return hash ^ (hash >>> 16);
+  }
+
+  /**
+   * Encode a row and either merge it into an identical row already held (adding one to its weight)
+   * or add it to the buffer
+   *
+   * @param row the incoming row
+   * @throws HopValueException if a problem occurs
+   */
+  @Override
+  public void add(Object[] row) throws HopValueException {
+    ensureCapacity(m_numRows + 1);
+    if (m_tableStale) {
+      rebuildTable();
+    }
+    int hash = 1;
+    for (int i = 0; i < m_columns.length; i++) {
+      m_encoded[i] = encode(i, row);
+      hash = hashValue(hash, m_encoded[i]);
+    }
+    hash = spread(hash);
+    m_rowsAdded++;
+
+    int mask = m_table.length - 1;
+    int slot = hash & mask;
+    while (m_table[slot] != 0) {
+      int r = m_table[slot] - 1;
+      if (m_rowHashes[r] == hash && matches(r)) {
+        m_weights[r]++;
+        return;
+      }
+      slot = (slot + 1) & mask;
+    }
+
+    for (int i = 0; i < m_columns.length; i++) {
+      m_columns[i][m_numRows] = m_encoded[i];
+    }
+    m_weights[m_numRows] = 1;
+    m_rowHashes[m_numRows] = hash;
+    m_table[slot] = m_numRows + 1;
+    m_numRows++;
+  }
+
+  protected boolean matches(int r) {
+    for (int i = 0; i < m_columns.length; i++) {
+      if (Double.doubleToLongBits(m_columns[i][r]) != Double.doubleToLongBits(m_encoded[i])) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Rehash the rows held into the lookup table
+   */
+  protected void rebuildTable() {
+    Arrays.fill(m_table, 0);
+    int mask = m_table.length - 1;
+    for (int r = 0; r < m_numRows; r++) {
+      if (m_tableStale) {
+        int hash = 1;
+        for (double[] column : m_columns) {
+          hash = hashValue(hash, column[r]);
+        }
+        m_rowHashes[r] = spread(hash);
+      }
+      int slot = m_rowHashes[r] & mask;
+      while (m_table[slot] != 0) {
+        slot = (slot + 1) & mask;
+      }
+      m_table[slot] = r + 1;
+    }
+    m_tableStale = false;
+  }
+
+  @Override
+  public void set(int index, Object[] row) throws HopValueException {
+    super.set(index, row);
+    m_weights[index] = 1;
+    m_tableStale = true;
+  }
+
+  @Override
+  public void swap(int a, int b) {
+    super.swap(a, b);
+    double tmp = m_weights[a];
+    m_weights[a] = m_weights[b];
+    m_weights[b] = tmp;
+    m_tableStale = true;
+  }
+
+  @Override
+  public void trimToSize() {
+    super.trimToSize();
+    int capacity = Math.max(m_numRows, 1);
+    m_weights = Arrays.copyOf(m_weights, capacity);
+    m_rowHashes = Arrays.copyOf(m_rowHashes, capacity);
+    m_table = new int[tableSizeFor(capacity)];
+    rebuildTable();
+  }
+
+  @Override
+  public void compactDictionaries() {
+    super.compactDictionaries();
+    // codes have changed, so the hashes no longer hold
+    m_tableStale = true;
+  }
+
+  @Override
+  protected void ensureCapacity(int required) {
+    super.ensureCapacity(required);
+    int capacity = m_columns.length == 0 ? required : Math.max(required, m_columns[0].length);
+    if (capacity > m_weights.length) {
+      m_weights = Arrays.copyOf(m_weights, capacity);
+      m_rowHashes = Arrays.copyOf(m_rowHashes, capacity);
+    }
+    if (m_table.length < capacity * 2L) {
+      m_table = new int[tableSizeFor(capacity)];
+      rebuildTable();
+    }
+  }
+
+  /**
+   * Get the number of rows added to the buffer, including those merged into existing rows
+   *
+   * @return the number of rows added
+   */
+  public long getRowsAdded() {
+    return m_rowsAdded;
+  }
+
+  /**
+   * Build an Instances object directly from the buffered columns. Each instance's weight is the
+   * number of identical rows that were merged into it.
+   *
+   * @param header the header to use
+   * @param representation how the rows are to be represented as instances
+   * @return an Instances object containing the buffered rows
+   */
+  @Override
+  public Instances toInstances(Instances header, RowCodec.Representation representation) {
+    Instances dataset = super.toInstances(header, representation);
+    for (int r = 0; r < m_numRows; r++) {
+      if (m_weights[r] != 1) {
+        dataset.instance(r).setWeight(m_weights[r]);
+      }
+    }
+
+    return dataset;
+  }
+
+  /**
+   * Expand weighted instances (as built by {@code toInstances()}) back into unit weight duplicates,
+   * for schemes that do not honour instance weights. The supplied instances are left unchanged
+   *
+   * @param weighted the weighted instances
+   * @return a dataset with one unit weight instance per original row
+   */
+  public static Instances expandWeights(Instances weighted) {
+    Instances expanded = new Instances(weighted, weighted.numInstances());
+    for (int i = 0; i < weighted.numInstances(); i++) {
+      Instance inst = weighted.instance(i);
+      long copies = Math.round(inst.weight());
+      // add() copies the instance, so a single unit weight copy serves for all duplicates
+      Instance unit = (Instance) inst.copy();
+      unit.setWeight(1);
+      for (long j = 0; j < copies; j++) {
+        expanded.add(unit);
+      }
+    }
+
+    return expanded;
+  }
+
+  @Override
+  public long estimateMemoryUsage() {
+    return super.estimateMemoryUsage() + m_weights.length * 12L + m_table.length * 4L;
+  }
+
+  /**
+   * Write the buffered rows, followed by their weights, to the supplied output
+   *
+   * @param out the output to write to
+   * @throws IOException if a problem occurs
+   */
+  @Override
+  public void writeRows(DataOutput out) throws IOException {
+    super.writeRows(out);
+    for (int r = 0; r < m_numRows; r++) {
+      out.writeDouble(m_weights[r]);
+    }
+  }
+
+  /**
+   * Read rows and weights previously written by {@code writeRows()} and add them to this buffer.
+   * The rows are not merged with those already held.
+   *
+   * @param in the input to read from
+   * @param numRows the number of rows to read
+   * @throws IOException if a problem occurs
+   */
+  @Override
+  public void readRows(DataInput in, int numRows) throws IOException {
+    int start = m_numRows;
+    super.readRows(in, numRows);
+    for (int r = start; r < m_numRows; r++) {
+      m_weights[r] = in.readDouble();
+    }
+    m_rowsAdded += numRows;
+    m_tableStale = true;
+  }
+
+  @Override
+  public void clear() {
+    super.clear();
+    Arrays.fill(m_table, 0);
+    m_tableStale = false;
+    m_rowsAdded = 0;
+  }
+}
@@ -0,0 +1,122 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.phalanxdev.hop.pipeline.transforms.pmi;
+
+import weka.core.Attribute;
+import weka.core.Instances;
+import weka.core.ProtectedProperties;
+
+import java.util.ArrayList;
+import java.util.Properties;
+
+/**
+ * Maps the values of hashed nominal fields to a fixed number of buckets. A hashed nominal field
+ * becomes a nominal attribute whose values are the bucket labels, so the header (and any model
+ * built from it) stays the same size however many distinct values the field has, and no
+ * dictionary of the values seen is kept during training or scoring. The number of buckets is
+ * recorded in the attribute's metadata, so that rows can be hashed in the same way at scoring
+ * time from the model's header alone.
+ * <p>
+ * The hash of a value depends only on its string form, so it is stable across JVMs and runs.
+ *
+ * @author Mark Hall (mhall{[at]}waikato{[dot]}ac{[dot]}nz)
+ * @version $Revision: $
+ */
+public class FeatureHasher {
+
+  /**
+   * Attribute metadata property that holds the number of buckets of a hashed nominal attribute
+   */
+  public static final String HASH_BUCKETS_PROPERTY = "hashed_nominal_buckets";
+
+  /**
+   * Prefix of bucket labels
+   */
+  public static final String BUCKET_LABEL_PREFIX = "bucket_";
+
+  /**
+   * Create a hashed nominal attribute
+   *
+   * @param name the name of the attribute
+   * @param numBuckets the number of buckets
+   * @return the attribute
+   */
+  public static Attribute createAttribute(String name, int numBuckets) {
+    ArrayList<String> labels = new ArrayList<>(numBuckets);
+    for (int i = 0; i < numBuckets; i++) {
+      labels.add(BUCKET_LABEL_PREFIX + i);
+    }
+    Properties props = new Properties();
+    props.setProperty(HASH_BUCKETS_PROPERTY, "" + numBuckets);
+
+    return new Attribute(name, labels, new ProtectedProperties(props));
+  }
+
+  /**
+   * Get the number of buckets of a hashed nominal attribute
+   *
+   * @param att the attribute
+   * @return the number of buckets, or zero if the attribute is not a hashed nominal one
+   */
+  public static int getNumBuckets(Attribute att) {
+    if (!att.isNominal() || att.getMetadata() == null) {
+      return 0;
+    }
+    String buckets = att.getMetadata().getProperty(HASH_BUCKETS_PROPERTY);
+    if (buckets == null) {
+      return 0;
+    }
+    try {
+      return Integer.parseInt(buckets);
+    } catch (NumberFormatException ex) {
+      return 0;
+    }
+  }
+
+  /**
+   * Get the number of buckets of each attribute in a header
+   *
+   * @param header the header
+   * @return the number of buckets for each attribute (zero for those that are not hashed nominal)
+   */
+  public static int[] getNumBuckets(Instances header) {
+    int[] buckets = new int[header.numAttributes()];
+    for (int i = 0; i < buckets.length; i++) {
+      buckets[i] = getNumBuckets(header.attribute(i));
+    }
+
+    return buckets;
+  }
+
+  /**
+   * Get the bucket that a value hashes to
+   *
+   * @param value the value
+   * @param numBuckets the number of buckets
+   * @return the index of the bucket
+   */
+  public static int bucket(String value, int numBuckets) {
+    // murmur3 finalizer, so that similar values (e.g. sequential ids) spread over the buckets
+    int h = value.hashCode();
+    h ^= h >>> 16;
+    h *= 0x85ebca6b;
+    h ^= h >>> 13;
+    h *= 0xc2b2ae35;
+    h ^= h >>> 16;
+
+    return Math.floorMod(h, numBuckets);
+  }
+}
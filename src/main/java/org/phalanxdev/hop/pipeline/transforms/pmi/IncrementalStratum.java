@@ -0,0 +1,376 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.phalanxdev.hop.pipeline.transforms.pmi;
+
+import org.apache.hop.core.row.IRowMeta;
+import org.phalanxdev.hop.utils.LogAdapter;
+import org.phalanxdev.mi.Evaluator;
+import weka.classifiers.AbstractClassifier;
+import weka.classifiers.Classifier;
+import weka.classifiers.UpdateableClassifier;
+import weka.classifiers.evaluation.Evaluation;
+import weka.core.BatchPredictor;
+import weka.core.DenseInstance;
+import weka.core.Instance;
+import weka.core.Instances;
+
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Everything needed to prequentially evaluate and update an incrementally trained model for one
+ * stratification value (or for all the data when not stratifying). Looked up once each time the
+ * stratification value changes, rather than once per row per map. Incoming rows are converted
+ * directly into a single reused instance, so the per-row path allocates nothing of its own; this
+ * relies on updateable classifiers copying any instance that they retain (as
+ * {@code Instances.add()} does).
+ * <p>
+ * When sparse instances are requested (or automatically chosen for a mostly zero row), the reused
+ * instance is only used for encoding and a sparse instance holding just the non-zero values is
+ * passed to the model instead.
+ * <p>
+ * Optionally, rows can be accumulated into a reusable fixed-size block and then evaluated and used
+ * for updating in a tight loop. Updates are still applied one row at a time, in arrival order.
+ * <p>
+ * Instead of prequential evaluation, a streaming k-fold cross-validation can be performed. Each row
+ * is assigned to a fold by a seeded random draw, tested against the fold's model and then used to
+ * update the other k - 1 fold models (as well as the model trained on all the data). Memory use is
+ * that of k + 1 models, regardless of the length of the stream.
+ *
+ * @author Mark Hall (mhall{[at]}waikato{[dot]}ac{[dot]}nz)
+ * @version $Revision: $
+ */
+public class IncrementalStratum {
+
+  /**
+   * Instance whose attribute values can be refilled in place. Weka copies the value array when a
+   * value is set, so rows are encoded into whatever array the instance currently holds.
+   */
+  protected static class ReusableInstance extends DenseInstance {
+
+    private static final long serialVersionUID = -3482011582719473105L;
+
+    public ReusableInstance(int numAttributes) {
+      super(numAttributes);
+    }
+
+    protected double[] values() {
+      return m_AttValues;
+    }
+  }
+
+  /**
+   * The stratification value (key) that this context is for
+   */
+  protected String m_stratum;
+
+  /**
+   * The header for the model
+   */
+  protected Instances m_header;
+
+  /**
+   * The model being trained
+   */
+  protected Classifier m_classifier;
+
+  /**
+   * The model, as an updateable classifier
+   */
+  protected UpdateableClassifier m_updateable;
+
+  /**
+   * Prequential evaluator (null if not evaluating)
+   */
+  protected Evaluator m_evaluator;
+
+  /**
+   * Converts incoming rows to instance values for the header
+   */
+  protected RowCodec m_codec;
+
+  /**
+   * The reused instance
+   */
+  protected ReusableInstance m_instance;
+
+  /**
+   * Log adapter passed to the evaluator
+   */
+  protected LogAdapter m_log;
+
+  /**
+   * Reused instances for a block of rows (null if rows are processed as they arrive)
+   */
+  protected ReusableInstance[] m_block;
+
+  /**
+   * The instances (reused or sparse) to process for the rows in the block
+   */
+  protected Instance[] m_blockInstances;
+
+  /**
+   * Number of rows currently in the block
+   */
+  protected int m_blockCount;
+
+  /**
+   * True if the rows in a block are all tested against the model as it was at the start of the
+   * block, before any of them are used for updating
+   */
+  protected boolean m_blockEvaluation;
+
+  /**
+   * True if predictions are recorded during block evaluation (for AUC metrics)
+   */
+  protected boolean m_recordPredictions;
+
+  /**
+   * How encoded rows are represented as instances
+   */
+  protected RowCodec.Representation m_representation = RowCodec.Representation.DENSE;
+
+  /**
+   * Number of folds for streaming cross-validation (zero if not cross-validating)
+   */
+  protected int m_numFolds;
+
+  /**
+   * One model per fold, each trained on the rows that are not in its fold. Created from the
+   * initialized model when the first row arrives
+   */
+  protected Classifier[] m_foldModels;
+
+  /**
+   * The fold models, as updateable classifiers
+   */
+  protected UpdateableClassifier[] m_foldUpdateables;
+
+  /**
+   * Assigns rows to folds
+   */
+  protected Random m_foldRandom;
+
+  /**
+   * Constructor
+   *
+   * @param stratum the stratification value (key)
+   * @param header the header for the model
+   * @param classifier the (initialized) updateable model
+   * @param evaluator the prequential evaluator, or null if not evaluating
+   * @param rowMeta the incoming row structure
+   * @param streamFieldLookup lookup from field name to index in the incoming row structure
+   * @param log the log adapter to pass to the evaluator
+   */
+  public IncrementalStratum(String stratum, Instances header, Classifier classifier,
+      Evaluator evaluator, IRowMeta rowMeta, Map<String, Integer> streamFieldLookup,
+      LogAdapter log) {
+    m_stratum = stratum;
+    m_header = header;
+    m_classifier = classifier;
+    m_updateable = (UpdateableClassifier) classifier;
+    m_evaluator = evaluator;
+    m_codec = new RowCodec(header, rowMeta, streamFieldLookup);
+    m_instance = new ReusableInstance(header.numAttributes());
+    m_instance.setDataset(header);
+    m_log = log;
+  }
+
+  /**
+   * Get the stratification value (key) that this context is for
+   *
+   * @return the stratification value
+   */
+  public String getStratum() {
+    return m_stratum;
+  }
+
+  /**
+   * Set how encoded rows are represented as instances
+   *
+   * @param representation the representation to use
+   */
+  public void setRepresentation(RowCodec.Representation representation) {
+    m_representation = representation;
+  }
+
+  /**
+   * Accumulate rows into blocks rather than processing each row as it arrives
+   *
+   * @param blockSize the number of rows per block
+   * @param blockEvaluation true to test a whole block against the model before updating with it
+   * @param recordPredictions true to record predictions during block evaluation (for AUC)
+   */
+  public void setBlockSize(int blockSize, boolean blockEvaluation, boolean recordPredictions) {
+    m_block = new ReusableInstance[blockSize];
+    m_blockInstances = new Instance[blockSize];
+    for (int i = 0; i < blockSize; i++) {
+      m_block[i] = new ReusableInstance(m_header.numAttributes());
+      m_block[i].setDataset(m_header);
+    }
+    m_blockCount = 0;
+    m_blockEvaluation = blockEvaluation;
+    m_recordPredictions = recordPredictions;
+  }
+
+  /**
+   * Cross-validate with k fold models rather than prequentially evaluating the model. The evaluator
+   * supplied to the constructor collects the results for all folds.
+   *
+   * @param numFolds the number of folds
+   * @param seed the seed for assigning rows to folds
+   * @param recordPredictions true to record predictions (for AUC)
+   */
+  public void setStreamingFolds(int numFolds, int seed, boolean recordPredictions) {
+    m_numFolds = numFolds;
+    m_foldRandom = new Random(seed);
+    m_recordPredictions = recordPredictions;
+    m_foldModels = null;
+  }
+
+  /**
+   * Prequentially evaluate (if necessary) and then update the model with a row. When rows are
+   * being accumulated into blocks this happens when the block is full (or flushed).
+   *
+   * @param row the incoming row
+   * @throws Exception if a problem occurs
+   */
+  public void processRow(Object[] row) throws Exception {
+    if (m_block == null) {
+      m_codec.encode(row, m_instance.values());
+      processInstance(represent(m_instance));
+      return;
+    }
+
+    m_codec.encode(row, m_block[m_blockCount].values());
+    m_blockInstances[m_blockCount] = represent(m_block[m_blockCount]);
+    if (++m_blockCount == m_block.length) {
+      flush();
+    }
+  }
+
+  protected Instance represent(ReusableInstance encoded) {
+    if (m_representation == RowCodec.Representation.DENSE
+        || !RowCodec.isSparse(encoded.values(), m_representation)) {
+      return encoded;
+    }
+    Instance sparse = RowCodec.createSparseInstance(encoded.values());
+    sparse.setDataset(m_header);
+
+    return sparse;
+  }
+
+  /**
+   * Evaluate (if necessary) and update the model with any rows in a partially filled block
+   *
+   * @throws Exception if a problem occurs
+   */
+  public void flush() throws Exception {
+    if (m_blockCount == 0) {
+      return;
+    }
+
+    if (m_blockEvaluation && m_evaluator != null && m_numFolds == 0) {
+      evaluateBlock();
+      for (int i = 0; i < m_blockCount; i++) {
+        m_updateable.updateClassifier(m_blockInstances[i]);
+      }
+    } else {
+      for (int i = 0; i < m_blockCount; i++) {
+        processInstance(m_blockInstances[i]);
+      }
+    }
+    m_blockCount = 0;
+  }
+
+  protected void evaluateBlock() throws Exception {
+    Evaluation eval = m_evaluator.getEvaluation();
+    if (m_classifier instanceof BatchPredictor && ((BatchPredictor) m_classifier)
+        .implementsMoreEfficientBatchPrediction()) {
+      Instances toPredict = new Instances(m_header, m_blockCount);
+      for (int i = 0; i < m_blockCount; i++) {
+        toPredict.add(m_blockInstances[i]);
+        toPredict.instance(i).setClassMissing();
+      }
+      double[][] dists = ((BatchPredictor) m_classifier).distributionsForInstances(toPredict);
+      for (int i = 0; i < m_blockCount; i++) {
+        if (m_recordPredictions) {
+          eval.evaluateModelOnceAndRecordPrediction(dists[i], m_blockInstances[i]);
+        } else {
+          eval.evaluateModelOnce(dists[i], m_blockInstances[i]);
+        }
+      }
+    } else {
+      for (int i = 0; i < m_blockCount; i++) {
+        if (m_recordPredictions) {
+          eval.evaluateModelOnceAndRecordPrediction(m_classifier, m_blockInstances[i]);
+        } else {
+          eval.evaluateModelOnce(m_classifier, m_blockInstances[i]);
+        }
+      }
+    }
+  }
+
+  /**
+   * Prequentially evaluate or cross-validate (if necessary) and then update the model with an
+   * instance
+   *
+   * @param instance the instance to process
+   * @throws Exception if a problem occurs
+   */
+  public void processInstance(Instance instance) throws Exception {
+    if (m_numFolds > 0) {
+      processFolds(instance);
+    } else if (m_evaluator != null) {
+      // test first
+      m_evaluator.performEvaluationIncremental(instance, m_log);
+    }
+    // then train
+    m_updateable.updateClassifier(instance);
+  }
+
+  /**
+   * Test the model for the instance's fold on it and then update the other fold models with it
+   *
+   * @param instance the instance to process
+   * @throws Exception if a problem occurs
+   */
+  protected void processFolds(Instance instance) throws Exception {
+    if (m_foldModels == null) {
+      // copies of the initialized (but not yet updated) model
+      m_foldModels = AbstractClassifier.makeCopies(m_classifier, m_numFolds);
+      m_foldUpdateables = new UpdateableClassifier[m_numFolds];
+      for (int i = 0; i < m_numFolds; i++) {
+        m_foldUpdateables[i] = (UpdateableClassifier) m_foldModels[i];
+      }
+    }
+
+    int fold = m_foldRandom.nextInt(m_numFolds);
+    if (m_evaluator != null) {
+      Evaluation eval = m_evaluator.getEvaluation();
+      if (m_recordPredictions) {
+        eval.evaluateModelOnceAndRecordPrediction(m_foldModels[fold], instance);
+      } else {
+        eval.evaluateModelOnce(m_foldModels[fold], instance);
+      }
+    }
+    for (int i = 0; i < m_numFolds; i++) {
+      if (i != fold) {
+        m_foldUpdateables[i].updateClassifier(instance);
+      }
+    }
+  }
+}
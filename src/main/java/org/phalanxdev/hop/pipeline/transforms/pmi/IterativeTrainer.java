@@ -0,0 +1,261 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.phalanxdev.hop.pipeline.transforms.pmi;
+
+import org.apache.hop.core.logging.ILogChannel;
+import org.apache.hop.i18n.BaseMessages;
+import weka.classifiers.IterativeClassifier;
+import weka.classifiers.evaluation.Evaluation;
+import weka.core.Instances;
+import weka.core.SerializedObject;
+
+import java.util.Random;
+
+/**
+ * Drives the training iterations of an IterativeClassifier, optionally saving a checkpoint of the
+ * in-progress model every n iterations and/or every t milliseconds. Checkpoints are written (via a
+ * temporary file and rename) in the same format as saved models, with the classifier in resumable
+ * mode, so a checkpoint can be supplied as the resumable model to continue training from where it
+ * left off. Training can also be stopped early: a percentage of the training data is held out for
+ * validation and scored (root mean squared error) every k iterations; if the score has not improved
+ * for a number of consecutive evaluations then training stops, and the model from the best scoring
+ * iteration is kept.
+ *
+ * @author Mark Hall (mhall{[at]}waikato{[dot]}ac{[dot]}nz)
+ * @version $Revision: $
+ */
+public class IterativeTrainer {
+
+  private static Class<?> PKG = BaseSupervisedPMIData.class;
+
+  /**
+   * Save a checkpoint every this many iterations (zero or less for no iteration-based checkpoints)
+   */
+  protected int m_checkpointIterations;
+
+  /**
+   * Save a checkpoint if at least this many milliseconds have elapsed since the last one (zero or
+   * less for no time-based checkpoints)
+   */
+  protected long m_checkpointIntervalMillis;
+
+  /**
+   * Path to write checkpoints to (null for no checkpoints)
+   */
+  protected String m_checkpointPath;
+
+  /**
+   * Percentage of the training data to hold out for early stopping (zero or less for no early
+   * stopping)
+   */
+  protected int m_validationPercent;
+
+  /**
+   * Score the validation data every this many iterations
+   */
+  protected int m_evaluationInterval = 1;
+
+  /**
+   * Number of consecutive evaluations without improvement after which training stops
+   */
+  protected int m_patience = 1;
+
+  /**
+   * Seed for randomizing the training data before the validation data is held out
+   */
+  protected int m_seed = 1;
+
+  protected ILogChannel m_log;
+
+  /**
+   * Constructor
+   *
+   * @param checkpointIterations the number of iterations between checkpoints
+   * @param checkpointIntervalMillis the minimum number of milliseconds between checkpoints
+   * @param checkpointPath the path to write checkpoints to (null for no checkpoints)
+   * @param log the log to use
+   */
+  public IterativeTrainer(int checkpointIterations, long checkpointIntervalMillis,
+      String checkpointPath, ILogChannel log) {
+    m_checkpointIterations = checkpointIterations;
+    m_checkpointIntervalMillis = checkpointIntervalMillis;
+    m_checkpointPath = checkpointPath;
+    m_log = log;
+  }
+
+  /**
+   * Configure early stopping
+   *
+   * @param validationPercent the percentage of the training data to hold out for validation (zero
+   * or less for no early stopping)
+   * @param evaluationInterval the number of iterations between evaluations on the validation data
+   * @param patience the number of consecutive evaluations without improvement after which to stop
+   * @param seed the random seed for selecting the validation data
+   */
+  public void setEarlyStopping(int validationPercent, int evaluationInterval, int patience,
+      int seed) {
+    m_validationPercent = validationPercent;
+    m_evaluationInterval = Math.max(1, evaluationInterval);
+    m_patience = Math.max(1, patience);
+    m_seed = seed;
+  }
+
+  /**
+   * Returns true if this trainer will stop training early based on validation data
+   *
+   * @return true if early stopping is enabled
+   */
+  public boolean isEarlyStopping() {
+    return m_validationPercent > 0;
+  }
+
+  /**
+   * Returns true if this trainer will save checkpoints
+   *
+   * @return true if checkpoints will be saved
+   */
+  public boolean isCheckpointing() {
+    return m_checkpointPath != null && (m_checkpointIterations > 0
+        || m_checkpointIntervalMillis > 0);
+  }
+
+  /**
+   * Train a classifier, iterating until it reports that it is finished (or until early stopping
+   * kicks in)
+   *
+   * @param classifier the classifier to train
+   * @param trainingData the training data
+   * @param resume true if the classifier has been loaded and should continue from its current
+   * state, rather than starting again
+   * @return the trained classifier. This is a copy taken at the best scoring iteration if early
+   * stopping determined that an earlier iteration was better than the last one
+   * @throws Exception if a problem occurs
+   */
+  public IterativeClassifier train(IterativeClassifier classifier, Instances trainingData,
+      boolean resume) throws Exception {
+    Instances validationData = null;
+    if (isEarlyStopping()) {
+      trainingData = new Instances(trainingData);
+      trainingData.randomize(new Random(m_seed));
+      int numValidation =
+          (int) Math.round(trainingData.numInstances() * m_validationPercent / 100.0);
+      int numTraining = trainingData.numInstances() - numValidation;
+      if (numValidation > 0 && numTraining > 0) {
+        validationData = new Instances(trainingData, numTraining, numValidation);
+        trainingData = new Instances(trainingData, 0, numTraining);
+      } else {
+        m_log.logBasic(BaseMessages
+            .getString(PKG, "BasePMIStepData.Warning.TooFewRowsForEarlyStopping",
+                trainingData.numInstances()));
+      }
+    }
+
+    boolean checkpointing = isCheckpointing();
+    boolean wasResumable = classifier.getResume();
+    if (resume || checkpointing) {
+      // the classifier needs to retain its training state in order to be continued later
+      try {
+        classifier.setResume(true);
+      } catch (Exception ex) {
+        m_log.logBasic(BaseMessages.getString(PKG, "BasePMIStepData.Warning.SchemeNotResumable",
+            classifier.getClass().getCanonicalName()));
+        checkpointing = false;
+      }
+    }
+
+    classifier.initializeClassifier(trainingData);
+    Instances header = new Instances(trainingData, 0);
+    int iterations = 0;
+    long lastCheckpoint = System.currentTimeMillis();
+    IterativeClassifier best = null;
+    double bestScore = Double.MAX_VALUE;
+    int bestIteration = 0;
+    int evaluationsWithoutImprovement = 0;
+    while (classifier.next()) {
+      iterations++;
+      if (checkpointing && ((m_checkpointIterations > 0 && iterations % m_checkpointIterations == 0)
+          || (m_checkpointIntervalMillis > 0
+          && System.currentTimeMillis() - lastCheckpoint >= m_checkpointIntervalMillis))) {
+        checkpoint(classifier, header, iterations);
+        lastCheckpoint = System.currentTimeMillis();
+      }
+
+      if (validationData != null && iterations % m_evaluationInterval == 0) {
+        double score = score(classifier, validationData);
+        if (score < bestScore) {
+          bestScore = score;
+          bestIteration = iterations;
+          best = (IterativeClassifier) new SerializedObject(classifier).getObject();
+          evaluationsWithoutImprovement = 0;
+        } else if (++evaluationsWithoutImprovement >= m_patience) {
+          m_log.logBasic(BaseMessages.getString(PKG, "BasePMIStepData.StoppingEarly", iterations,
+              m_patience));
+          break;
+        }
+      }
+    }
+
+    if (best != null && bestIteration < iterations
+        && score(classifier, validationData) >= bestScore) {
+      m_log.logBasic(BaseMessages.getString(PKG, "BasePMIStepData.KeepingBestIteration",
+          bestIteration, bestScore));
+      classifier = best;
+    }
+
+    if (checkpointing && !wasResumable) {
+      // allow the classifier to free its training state now that training is complete
+      classifier.setResume(false);
+    }
+    classifier.done();
+
+    return classifier;
+  }
+
+  /**
+   * Score a (partially trained) classifier on the validation data
+   *
+   * @param classifier the classifier
+   * @param validationData the validation data
+   * @return the root mean squared error (lower is better)
+   * @throws Exception if a problem occurs
+   */
+  protected double score(IterativeClassifier classifier, Instances validationData)
+      throws Exception {
+    Evaluation eval = new Evaluation(validationData);
+    eval.evaluateModel(classifier, validationData);
+
+    return eval.rootMeanSquaredError();
+  }
+
+  /**
+   * Save a checkpoint of the classifier. A failure to save a checkpoint is logged, but does not
+   * stop training.
+   *
+   * @param classifier the classifier being trained
+   * @param header the header of the training data
+   * @param iterations the number of iterations performed so far
+   */
+  protected void checkpoint(IterativeClassifier classifier, Instances header, int iterations) {
+    try {
+      ModelWriter.writeAtomically(m_checkpointPath, new Object[]{classifier, header});
+      m_log.logDetailed(BaseMessages.getString(PKG, "BasePMIStepData.SavedCheckpoint", iterations,
+          m_checkpointPath));
+    } catch (Exception ex) {
+      m_log.logError(BaseMessages.getString(PKG, "BasePMIStepData.Error.UnableToSaveCheckpoint",
+          m_checkpointPath), ex);
+    }
+  }
+}
@@ -0,0 +1,190 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.phalanxdev.hop.pipeline.transforms.pmi;
+
+import org.apache.hop.core.exception.HopException;
+import org.apache.hop.i18n.BaseMessages;
+import weka.core.SerializationHelper;
+
+import java.io.File;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Serializes models on a single background thread so that training does not wait on disk I/O. Jobs
+ * are queued in a bounded queue; submitting blocks while the queue is full, which limits the number
+ * of finished models waiting to be written. Each model is written to a temporary file in the target
+ * directory and then renamed, so a partially written model file is never visible under its final
+ * name. Failures are recorded and reported to the transform by {@code submit()} or
+ * {@code awaitCompletion()}.
+ *
+ * @author Mark Hall (mhall{[at]}waikato{[dot]}ac{[dot]}nz)
+ * @version $Revision: $
+ */
+public class ModelWriter {
+
+  private static Class<?> PKG = BaseSupervisedPMIData.class;
+
+  /**
+   * A model (plus header and optional priors) to write
+   */
+  protected static class WriteJob {
+    protected String m_path;
+    protected Object[] m_objects;
+
+    protected WriteJob(String path, Object[] objects) {
+      m_path = path;
+      m_objects = objects;
+    }
+  }
+
+  protected BlockingQueue<WriteJob> m_queue;
+
+  protected Thread m_writerThread;
+
+  /**
+   * Number of jobs submitted but not yet finished
+   */
+  protected int m_pending;
+
+  /**
+   * The first failure that has not yet been reported
+   */
+  protected HopException m_failure;
+
+  /**
+   * Constructor
+   *
+   * @param queueCapacity the maximum number of models that can be waiting to be written
+   */
+  public ModelWriter(int queueCapacity) {
+    m_queue = new ArrayBlockingQueue<>(Math.max(1, queueCapacity));
+    m_writerThread = new Thread(this::writeModels, "PMI model writer");
+    m_writerThread.setDaemon(true);
+    m_writerThread.start();
+  }
+
+  /**
+   * Queue objects to be written to the given path, blocking if the queue is full
+   *
+   * @param path the path of the file to write
+   * @param objects the objects to write
+   * @throws HopException if an earlier write has failed, or if interrupted while waiting
+   */
+  public void submit(String path, Object... objects) throws HopException {
+    synchronized (this) {
+      checkForFailure();
+      m_pending++;
+    }
+    try {
+      m_queue.put(new WriteJob(path, objects));
+    } catch (InterruptedException ex) {
+      synchronized (this) {
+        m_pending--;
+        notifyAll();
+      }
+      Thread.currentThread().interrupt();
+      throw new HopException(ex);
+    }
+  }
+
+  /**
+   * Wait for all queued models to be written
+   *
+   * @throws HopException if any model could not be written, or if interrupted while waiting
+   */
+  public synchronized void awaitCompletion() throws HopException {
+    try {
+      while (m_pending > 0) {
+        wait();
+      }
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      throw new HopException(ex);
+    }
+    checkForFailure();
+  }
+
+  /**
+   * Stop the writer thread. Any models still queued are discarded
+   */
+  public void close() {
+    m_writerThread.interrupt();
+    m_queue.clear();
+  }
+
+  protected void checkForFailure() throws HopException {
+    if (m_failure != null) {
+      HopException failure = m_failure;
+      m_failure = null;
+      throw failure;
+    }
+  }
+
+  protected void writeModels() {
+    while (!Thread.currentThread().isInterrupted()) {
+      WriteJob job;
+      try {
+        job = m_queue.take();
+      } catch (InterruptedException ex) {
+        break;
+      }
+
+      HopException failure = null;
+      try {
+        writeAtomically(job.m_path, job.m_objects);
+      } catch (Exception ex) {
+        failure = new HopException(
+            BaseMessages.getString(PKG, "BasePMIStep.Error.UnableToSaveModel", job.m_path), ex);
+      }
+      synchronized (this) {
+        if (failure != null && m_failure == null) {
+          m_failure = failure;
+        }
+        m_pending--;
+        notifyAll();
+      }
+    }
+  }
+
+  /**
+   * Serialize objects to a temporary file alongside the target and then rename it to the target
+   * (atomically, where the file system supports it)
+   *
+   * @param path the path of the file to write
+   * @param objects the objects to write
+   * @throws Exception if a problem occurs
+   */
+  public static void writeAtomically(String path, Object[] objects) throws Exception {
+    File target = new File(path);
+    File temp = File.createTempFile(target.getName() + ".", ".tmp", target.getAbsoluteFile()
+        .getParentFile());
+    try {
+      SerializationHelper.writeAll(temp.toString(), objects);
+      try {
+        Files.move(temp.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE,
+            StandardCopyOption.REPLACE_EXISTING);
+      } catch (AtomicMoveNotSupportedException ex) {
+        Files.move(temp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+      }
+    } finally {
+      temp.delete();
+    }
+  }
+}
@@ -65,6 +65,12 @@ public class PMIScoring extends BaseTransform<PMIScoringMeta, PMIScoringData> {
   private int m_batchScoringSize = PMIScoringMeta.DEFAULT_BATCH_SCORING_SIZE;
   private List<Object[]> m_batch;
 
+  /**
+   * block of rows waiting to be submitted to the scoring workers (null if rows are scored on this
+   * thread)
+   */
+  private List<Object[]> m_block;
+
   public PMIScoring( TransformMeta transformMeta, PMIScoringMeta meta, PMIScoringData data, int copyNr, PipelineMeta transMeta,
       Pipeline trans ) {
     super( transformMeta, meta, data, copyNr, transMeta, trans );
@@ -167,6 +173,9 @@ public class PMIScoring extends BaseTransform<PMIScoringMeta, PMIScoringData> {
       }
 
       m_data.setOutputRowMeta( getInputRowMeta().clone() );
+      if ( m_meta.getInstanceRepresentation() != null ) {
+        m_data.setInstanceRepresentation( m_meta.getInstanceRepresentation() );
+      }
       if ( m_meta.getFileNameFromField() ) {
         IRowMeta inputRowMeta = getInputRowMeta();
 
@@ -297,9 +306,44 @@ public class PMIScoring extends BaseTransform<PMIScoringMeta, PMIScoringData> {
       if ( m_data.getModel().isBatchPredictor() ) {
         m_batch = new ArrayList<Object[]>();
       }
+
+      if ( !org.apache.hop.core.util.Utils.isEmpty( m_meta.getScoringThreads() ) ) {
+        m_data.m_scoringThreads = Math.max( 1, Integer.parseInt( resolve( m_meta.getScoringThreads() ) ) );
+        if ( !org.apache.hop.core.util.Utils.isEmpty( m_meta.getMaxScoringBlocksInFlight() ) ) {
+          m_data.m_maxScoringBlocksInFlight = Integer.parseInt( resolve( m_meta.getMaxScoringBlocksInFlight() ) );
+        }
+      }
+      if ( m_data.isScoringConcurrently( m_meta ) ) {
+        try {
+          m_data.initScoringWorkers( getInputRowMeta(), log );
+        } catch ( Exception ex ) {
+          throw new HopException( ex );
+        }
+        m_block = new ArrayList<>();
+        logBasic( BaseMessages.getString( PMIScoringMeta.PKG, "PMIScoring.Message.ScoringConcurrently",
+            m_data.m_scoringThreads, m_batchScoringSize, m_data.m_maxScoringBlocksInFlight ) );
+      } else if ( m_data.m_scoringThreads > 1 ) {
+        logBasic( BaseMessages.getString( PMIScoringMeta.PKG, "PMIScoring.Message.ScoringThreadsNotApplicable" ) );
+      }
     } // end (if first)
 
     if ( r == null ) {
+      if ( m_block != null ) {
+        try {
+          if ( m_block.size() > 0 ) {
+            submitScoringBlock();
+          }
+          for ( Object[] row : m_data.finishScoringBlocks() ) {
+            putRow( m_data.getOutputRowMeta(), row );
+          }
+        } catch ( Exception ex ) {
+          throw new HopException(
+              BaseMessages.getString( PMIScoringMeta.PKG, "PMIScoring.Error.ProblemWhileGettingPredictionsForBatch" ),
+              ex ); //$NON-NLS-1$
+        }
+        m_data.shutdownExecutor();
+      }
+
       if ( !m_meta.getEvaluateRatherThanScore() && m_data.getModel().isBatchPredictor() && !m_meta
           .getFileNameFromField() && m_batch.size() > 0 ) {
         try {
@@ -379,7 +423,19 @@ public class PMIScoring extends BaseTransform<PMIScoringMeta, PMIScoringData> {
         setModelFromField( r );
       }
 
-      if ( m_data.getModel().isBatchPredictor() && !m_meta.getFileNameFromField() ) {
+      if ( m_block != null ) {
+        try {
+          // add current row to the block for the workers
+          m_block.add( r );
+
+          if ( m_block.size() == m_batchScoringSize ) {
+            submitScoringBlock();
+          }
+        } catch ( Exception ex ) {
+          throw new HopException(
+              BaseMessages.getString( PMIScoringMeta.PKG, "PMIScoring.Error.ErrorGettingBatchPredictions" ), ex );
+        }
+      } else if ( m_data.getModel().isBatchPredictor() && !m_meta.getFileNameFromField() ) {
         try {
           // add current row to batch
           m_batch.add( r );
@@ -446,6 +502,33 @@ public class PMIScoring extends BaseTransform<PMIScoringMeta, PMIScoringData> {
     m_batch.clear();
   }
 
+  /**
+   * Hand the current block of rows to the scoring workers, and output the rows of any earlier
+   * blocks that had to be completed to keep within the maximum number of blocks in flight
+   *
+   * @throws Exception if a problem occurs
+   */
+  protected void submitScoringBlock() throws Exception {
+    List<Object[]> ready =
+        m_data.submitScoringBlock( m_data.getOutputRowMeta(), m_block, m_meta );
+
+    // the submitted block now belongs to a worker
+    m_block = new ArrayList<>();
+
+    if ( log.isDetailed() ) {
+      logDetailed( BaseMessages.getString( PMIScoringMeta.PKG, "PMIScoring.Message.PredictingBatch" ) );
+    }
+
+    for ( Object[] row : ready ) {
+      putRow( m_data.getOutputRowMeta(), row );
+    }
+  }
+
+  @Override public void dispose() {
+    m_data.shutdownExecutor();
+    super.dispose();
+  }
+
   /**
    * Initialize the step.
    *   * @return a <code>boolean</code> value
@@ -32,10 +32,10 @@ import org.apache.hop.core.row.RowDataUtil;
 import weka.classifiers.Classifier;
 import weka.classifiers.evaluation.Evaluation;
 import weka.core.Attribute;
-import weka.core.DenseInstance;
 import weka.core.Instance;
 import weka.core.Instances;
 import weka.core.SerializationHelper;
+import weka.core.SerializedObject;
 import weka.core.Utils;
 import weka.core.pmml.PMMLFactory;
 import weka.core.pmml.PMMLModel;
@@ -49,10 +49,20 @@ import java.io.InputStream;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Vector;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.zip.GZIPInputStream;
 import java.util.zip.GZIPOutputStream;
 
@@ -80,6 +90,11 @@ public class PMIScoringData extends BaseTransformData implements ITransformData
    */
   private double[] m_vals = null;
 
+  /**
+   * How instances constructed for prediction are represented
+   */
+  protected RowCodec.Representation m_instanceRepresentation = RowCodec.Representation.DENSE;
+
   /**
    * Holds the actual PMI model (classifier, clusterer or PMML) used by this copy of the step
    */
@@ -97,6 +112,11 @@ public class PMIScoringData extends BaseTransformData implements ITransformData
    */
   private int[] m_mappingIndexes;
 
+  /**
+   * number of buckets for each hashed nominal attribute (zero for other attributes)
+   */
+  private int[] m_hashBuckets;
+
   /**
    * whether to update the model (if incremental)
    */
@@ -124,6 +144,39 @@ public class PMIScoringData extends BaseTransformData implements ITransformData
    */
   protected Evaluator m_eval;
 
+  /**
+   * Number of worker threads to score blocks of rows with. One means rows are scored on the step's
+   * own thread
+   */
+  protected int m_scoringThreads = 1;
+
+  /**
+   * Maximum number of blocks of rows submitted to the workers but not yet output
+   */
+  protected int m_maxScoringBlocksInFlight;
+
+  /**
+   * Worker pool for scoring blocks of rows
+   */
+  protected ExecutorService m_executor;
+
+  /**
+   * Scoring contexts (each with its own copy of the model) that workers take while scoring a block
+   */
+  protected BlockingQueue<PMIScoringData> m_scorers;
+
+  /**
+   * This scoring context's own copy of the incoming row structure. Value metas hold conversion
+   * state (formatters, lazy conversion) that is not thread-safe, so each worker converts values
+   * with its own copy
+   */
+  protected IRowMeta m_scoringRowMeta;
+
+  /**
+   * Blocks submitted to the workers, in the order that the rows arrived
+   */
+  protected Deque<Future<Object[][]>> m_scoringBlocksInFlight = new ArrayDeque<>();
+
   /**
    * Set the model for this copy of the step to use
    *
@@ -136,6 +189,15 @@ public class PMIScoringData extends BaseTransformData implements ITransformData
     }
   }
 
+  /**
+   * Set how instances constructed for prediction are represented
+   *
+   * @param instanceRepresentation the representation to use
+   */
+  public void setInstanceRepresentation(RowCodec.Representation instanceRepresentation) {
+    m_instanceRepresentation = instanceRepresentation;
+  }
+
   /**
    * Get the model that this copy of the step is using
    *
@@ -236,6 +298,7 @@ public class PMIScoringData extends BaseTransformData implements ITransformData
       boolean updateIncrementalModel,
       ILogChannel log) {
     m_mappingIndexes = PMIScoringData.findMappings(header, inputRowMeta);
+    m_hashBuckets = FeatureHasher.getNumBuckets(header);
     m_updateIncrementalModel = updateIncrementalModel;
 
     // If updating of incremental models has been selected, then
@@ -410,7 +473,11 @@ public class PMIScoringData extends BaseTransformData implements ITransformData
       if (matchIndex != null) {
         // check for type compatibility
         IValueMeta tempField = inputRowMeta.getValueMeta(matchIndex);
-        if (tempField.isNumeric() || tempField.isBoolean()) {
+        if (FeatureHasher.getNumBuckets(temp) > 0) {
+          // hashed nominal values are hashed from the string form of any type of field
+          ok = true;
+          status = 0;
+        } else if (tempField.isNumeric() || tempField.isBoolean()) {
           if (temp.isNumeric()) {
             ok = true;
             status = 0;
@@ -746,6 +813,11 @@ public class PMIScoringData extends BaseTransformData implements ITransformData
               break;
             case Attribute.NOMINAL:
               String s = tempField.getString(inputVal);
+              if (m_hashBuckets != null && m_hashBuckets[i] > 0) {
+                // hashed nominal - no need to look the value up
+                m_vals[i] = FeatureHasher.bucket(s, m_hashBuckets[i]);
+                break;
+              }
               // now need to look for this value in the attribute
               // in order to get the correct index
               int index = temp.indexOfValue(s);
@@ -779,11 +851,151 @@ public class PMIScoringData extends BaseTransformData implements ITransformData
       }
     }
 
-    Instance newInst = new DenseInstance(1.0, m_vals);
+    // a sparse instance takes a copy of just the non-zero values, so m_vals can still be reused
+    Instance newInst = RowCodec.createInstance(m_vals, m_instanceRepresentation, false);
     newInst.setDataset(header);
     return newInst;
   }
 
+  /**
+   * Returns true if blocks of rows are scored concurrently on the worker pool. Only applies when
+   * scoring (not evaluating) with a single model that is not being updated - otherwise rows have to
+   * see the model in arrival order.
+   *
+   * @param meta the step metadata
+   * @return true if rows are scored concurrently
+   */
+  public boolean isScoringConcurrently(PMIScoringMeta meta) {
+    return m_scoringThreads > 1 && !meta.getEvaluateRatherThanScore() && !meta
+        .getFileNameFromField() && !m_updateIncrementalModel;
+  }
+
+  /**
+   * Set up the scoring contexts for the workers. The first uses this step's model; the others get
+   * their own deserialized copy, so that models that are not thread-safe (e.g. those that reuse
+   * internal buffers when predicting) can be used. Each also gets its own copy of the incoming row
+   * structure to convert values with.
+   *
+   * @param inputRowMeta the incoming row structure
+   * @param log the log to use
+   * @throws Exception if a problem occurs
+   */
+  public void initScoringWorkers(IRowMeta inputRowMeta, ILogChannel log) throws Exception {
+    m_scorers = new ArrayBlockingQueue<>(m_scoringThreads);
+    SerializedObject so = new SerializedObject(m_model);
+    for (int i = 0; i < m_scoringThreads; i++) {
+      PMIScoringData scorer = new PMIScoringData();
+      scorer.setModel(i == 0 ? m_model : (PMIScoringModel) so.getObject());
+      scorer.setInstanceRepresentation(m_instanceRepresentation);
+      scorer.setOutputRowMeta(m_outputRowMeta);
+      scorer.m_scoringRowMeta = inputRowMeta.clone();
+      scorer.mapIncomingRowMetaData(scorer.getModel().getHeader(), scorer.m_scoringRowMeta, false,
+          log);
+      m_scorers.add(scorer);
+    }
+    if (m_maxScoringBlocksInFlight <= 0) {
+      m_maxScoringBlocksInFlight = m_scoringThreads * 2;
+    }
+  }
+
+  /**
+   * Submit a block of rows to be scored on the worker pool. If this takes the number of blocks in
+   * flight over the maximum, then the oldest blocks are waited for and their output rows returned.
+   *
+   * @param outputMeta the meta data for the output rows
+   * @param inputRows the block of rows to score
+   * @param meta the step metadata
+   * @return output rows of completed blocks (in arrival order) that are ready to be passed on
+   * @throws Exception if a problem occurs
+   */
+  public List<Object[]> submitScoringBlock(final IRowMeta outputMeta,
+      final List<Object[]> inputRows, final PMIScoringMeta meta) throws Exception {
+    m_scoringBlocksInFlight.add(getExecutor().submit(() -> {
+      PMIScoringData scorer = m_scorers.take();
+      try {
+        IRowMeta inputMeta = scorer.m_scoringRowMeta;
+        if (scorer.getModel().isBatchPredictor()) {
+          return scorer.generatePredictions(inputMeta, outputMeta, inputRows, meta);
+        }
+        Object[][] result = new Object[inputRows.size()][];
+        for (int i = 0; i < result.length; i++) {
+          result[i] = scorer.generatePrediction(inputMeta, outputMeta, inputRows.get(i), meta);
+        }
+        return result;
+      } finally {
+        m_scorers.put(scorer);
+      }
+    }));
+
+    List<Object[]> ready = new ArrayList<>();
+    while (m_scoringBlocksInFlight.size() > m_maxScoringBlocksInFlight) {
+      collectScoringBlock(ready);
+    }
+
+    return ready;
+  }
+
+  /**
+   * Wait for all blocks in flight to be scored
+   *
+   * @return the output rows of the blocks, in arrival order
+   * @throws Exception if a problem occurs
+   */
+  public List<Object[]> finishScoringBlocks() throws Exception {
+    List<Object[]> ready = new ArrayList<>();
+    while (!m_scoringBlocksInFlight.isEmpty()) {
+      collectScoringBlock(ready);
+    }
+
+    return ready;
+  }
+
+  protected void collectScoringBlock(List<Object[]> ready) throws Exception {
+    try {
+      for (Object[] row : m_scoringBlocksInFlight.poll().get()) {
+        ready.add(row);
+      }
+    } catch (ExecutionException ex) {
+      throw ex.getCause() instanceof Exception ? (Exception) ex.getCause() : ex;
+    }
+  }
+
+  /**
+   * Get the worker pool, creating it if necessary
+   *
+   * @return the worker pool
+   */
+  protected synchronized ExecutorService getExecutor() {
+    if (m_executor == null) {
+      final AtomicInteger threadCount = new AtomicInteger();
+      m_executor = Executors.newFixedThreadPool(m_scoringThreads, r -> {
+        Thread t = new Thread(r, "PMI scoring worker " + threadCount.incrementAndGet());
+        t.setDaemon(true);
+        return t;
+      });
+    }
+    return m_executor;
+  }
+
+  /**
+   * Shut down the worker pool (if it has been created) and release the workers' models
+   */
+  public synchronized void shutdownExecutor() {
+    if (m_executor != null) {
+      m_executor.shutdownNow();
+      m_executor = null;
+    }
+    m_scoringBlocksInFlight.clear();
+    if (m_scorers != null) {
+      for (PMIScoringData scorer : m_scorers) {
+        if (scorer.getModel() != m_model && scorer.getModel() != null) {
+          scorer.getModel().done();
+        }
+      }
+      m_scorers = null;
+    }
+  }
+
   public static boolean modelFileExists(String modelFile, IVariables space) throws Exception {
 
     modelFile = space.resolve(modelFile);
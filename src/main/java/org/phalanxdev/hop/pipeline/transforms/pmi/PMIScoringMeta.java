@@ -58,6 +58,16 @@ public class PMIScoringMeta extends BaseTransformMeta<PMIScoring, PMIScoringData
    */
   protected String m_batchScoringSize = "";
 
+  /**
+   * Number of worker threads to score blocks of rows with
+   */
+  protected String m_scoringThreads = "";
+
+  /**
+   * Maximum number of blocks of rows being scored (or waiting to be output) at any one time
+   */
+  protected String m_maxScoringBlocksInFlight = "";
+
   /**
    * Use a model file specified in an incoming field
    */
@@ -120,6 +130,11 @@ public class PMIScoringMeta extends BaseTransformMeta<PMIScoring, PMIScoringData
    */
   protected boolean m_outputAUCMetrics;
 
+  /**
+   * How incoming rows are represented as instances for the model
+   */
+  protected RowCodec.Representation m_instanceRepresentation = RowCodec.Representation.DENSE;
+
   /**
    * Holds the underlying model
    */
@@ -192,6 +207,25 @@ public class PMIScoringMeta extends BaseTransformMeta<PMIScoring, PMIScoringData
     return m_outputAUCMetrics;
   }
 
+  /**
+   * Set how incoming rows are represented as instances for the model. Sparse instances hold just the non-zero (and
+   * missing) values, which suits wide, mostly zero data.
+   *
+   * @param instanceRepresentation the representation to use
+   */
+  public void setInstanceRepresentation( RowCodec.Representation instanceRepresentation ) {
+    m_instanceRepresentation = instanceRepresentation;
+  }
+
+  /**
+   * Get how incoming rows are represented as instances for the model
+   *
+   * @return the representation to use
+   */
+  public RowCodec.Representation getInstanceRepresentation() {
+    return m_instanceRepresentation;
+  }
+
   /**
    * Set whether to store the serialized model into the step's metadata
    *
@@ -228,6 +262,44 @@ public class PMIScoringMeta extends BaseTransformMeta<PMIScoring, PMIScoringData
     return m_batchScoringSize;
   }
 
+  /**
+   * Set the number of worker threads to score blocks of rows with. Each worker uses its own copy of the model, and rows
+   * are output in the order that they arrived. Empty or 1 scores rows on the step's own thread
+   *
+   * @param scoringThreads the number of worker threads
+   */
+  public void setScoringThreads( String scoringThreads ) {
+    m_scoringThreads = scoringThreads;
+  }
+
+  /**
+   * Get the number of worker threads to score blocks of rows with
+   *
+   * @return the number of worker threads
+   */
+  public String getScoringThreads() {
+    return m_scoringThreads;
+  }
+
+  /**
+   * Set the maximum number of blocks of rows being scored (or waiting to be output) at any one time when scoring with
+   * multiple threads. Reading of input rows pauses when this is reached. Empty means twice the number of threads
+   *
+   * @param maxScoringBlocksInFlight the maximum number of blocks in flight
+   */
+  public void setMaxScoringBlocksInFlight( String maxScoringBlocksInFlight ) {
+    m_maxScoringBlocksInFlight = maxScoringBlocksInFlight;
+  }
+
+  /**
+   * Get the maximum number of blocks of rows being scored (or waiting to be output) at any one time
+   *
+   * @return the maximum number of blocks in flight
+   */
+  public String getMaxScoringBlocksInFlight() {
+    return m_maxScoringBlocksInFlight;
+  }
+
   /**
    * Set whether filename is coming from an incoming field
    *
@@ -477,11 +549,15 @@ public class PMIScoringMeta extends BaseTransformMeta<PMIScoring, PMIScoringData
       retval.append( XmlHandler.addTagValue( "batch_scoring_size", m_batchScoringSize ) );
     }
 
+    retval.append( XmlHandler.addTagValue( "scoring_threads", m_scoringThreads ) );
+    retval.append( XmlHandler.addTagValue( "max_scoring_blocks_in_flight", m_maxScoringBlocksInFlight ) );
+
     retval.append( XmlHandler.addTagValue( "cache_loaded_models", m_cacheLoadedModels ) );
 
     retval.append( XmlHandler.addTagValue( "perform_evaluation", m_evaluateRatherThanScore ) );
     retval.append( XmlHandler.addTagValue( "output_ir_metrics", m_outputIRMetrics ) );
     retval.append( XmlHandler.addTagValue( "output_auc_metrics", m_outputAUCMetrics ) );
+    retval.append( XmlHandler.addTagValue( "instance_representation", m_instanceRepresentation.toString() ) );
 
     PMIScoringModel temp = m_fileNameFromField ? m_defaultModel : m_model;
     if ( temp != null && org.apache.hop.core.util.Utils.isEmpty( getSerializedModelFileName() ) ) {
@@ -539,6 +615,11 @@ public class PMIScoringMeta extends BaseTransformMeta<PMIScoring, PMIScoringData
 
     m_batchScoringSize = XmlHandler.getTagValue( transformNode, "batch_scoring_size" );
 
+    String scoringThreads = XmlHandler.getTagValue( transformNode, "scoring_threads" );
+    m_scoringThreads = scoringThreads == null ? "" : scoringThreads;
+    String maxBlocksInFlight = XmlHandler.getTagValue( transformNode, "max_scoring_blocks_in_flight" );
+    m_maxScoringBlocksInFlight = maxBlocksInFlight == null ? "" : maxBlocksInFlight;
+
     String store = XmlHandler.getTagValue( transformNode, "store_model_in_meta" );
     if ( store != null ) {
       m_storeModelInStepMetaData = store.equalsIgnoreCase( "Y" );
@@ -556,6 +637,13 @@ public class PMIScoringMeta extends BaseTransformMeta<PMIScoring, PMIScoringData
     if ( !org.apache.hop.core.util.Utils.isEmpty( outputAUC ) ) {
       setOutputAUCMetrics( outputAUC.equalsIgnoreCase( "Y" ) );
     }
+    String representation = XmlHandler.getTagValue( transformNode, "instance_representation" );
+    m_instanceRepresentation = RowCodec.Representation.DENSE;
+    for ( RowCodec.Representation r : RowCodec.Representation.values() ) {
+      if ( r.toString().equalsIgnoreCase( representation ) ) {
+        m_instanceRepresentation = r;
+      }
+    }
 
     temp = XmlHandler.getTagValue( transformNode, "cache_loaded_models" );
     if ( temp.equalsIgnoreCase( "N" ) ) {
@@ -0,0 +1,409 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.phalanxdev.hop.pipeline.transforms.pmi;
+
+import org.phalanxdev.mi.Evaluator;
+import org.phalanxdev.mi.utils.IMILogAdapter;
+import org.phalanxdev.mi.utils.IMIMessages;
+import org.phalanxdev.mi.utils.IMIVariableAdaptor;
+import weka.classifiers.Classifier;
+import weka.classifiers.IterativeClassifier;
+import weka.classifiers.evaluation.AggregateableEvaluation;
+import weka.classifiers.evaluation.Evaluation;
+import weka.core.BatchPredictor;
+import weka.core.Instance;
+import weka.core.Instances;
+import weka.core.OptionHandler;
+import weka.core.Utils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Evaluator that trains and tests cross-validation folds concurrently using a supplied executor.
+ * Training/test splits are created on the calling thread, in fold order, so that the use of the
+ * random number generator is identical to that of a sequential cross-validation. Each fold is
+ * evaluated into its own Evaluation object and these are aggregated in fold order once all folds
+ * have completed. The number of folds that are in flight (and hence the number of fold models and
+ * training splits held in memory) at any one time is bounded.
+ * <p>
+ * Percentage split evaluation can also be performed on a test split that was routed away from the
+ * training data as the rows arrived, rather than by randomizing and copying the training data into
+ * training and test subsets. All other evaluation modes are delegated to the superclass.
+ *
+ * @author Mark Hall (mhall{[at]}waikato{[dot]}ac{[dot]}nz)
+ * @version $Revision: $
+ */
+public class ParallelEvaluator extends Evaluator {
+
+  /**
+   * Executor to run folds on. If null, cross-validation is performed sequentially
+   */
+  protected ExecutorService m_executor;
+
+  /**
+   * Maximum number of folds that can be training/testing at any one time
+   */
+  protected int m_maxFoldsInFlight = 1;
+
+  /**
+   * Class priors computed from the full training data when the evaluator is initialized. Kept in a
+   * separate Evaluation object (not sharing any state with the main one) because evaluation (e.g.
+   * cross-validation) resets the priors of the main Evaluation object in place
+   */
+  protected Evaluation m_trainingPriors;
+
+  /**
+   * If set, used to train the final model when the scheme is an IterativeClassifier (e.g. for
+   * checkpointing or early stopping)
+   */
+  protected IterativeTrainer m_iterativeTrainer;
+
+  /**
+   * Test split for a streaming percentage split (null if the training data is to be split)
+   */
+  protected Instances m_splitTestData;
+
+  public ParallelEvaluator(EvalMode evalMode, int randomSeed, boolean computeAUC,
+      boolean outputIRMetrics, IMIMessages messages) {
+    super(evalMode, randomSeed, computeAUC, outputIRMetrics, messages);
+  }
+
+  /**
+   * Set the executor to use for running folds
+   *
+   * @param executor the executor to use
+   */
+  public void setExecutor(ExecutorService executor) {
+    m_executor = executor;
+  }
+
+  /**
+   * Set the maximum number of folds that can be in flight at any one time
+   *
+   * @param maxFoldsInFlight the maximum number of concurrent folds
+   */
+  public void setMaxFoldsInFlight(int maxFoldsInFlight) {
+    m_maxFoldsInFlight = maxFoldsInFlight;
+  }
+
+  /**
+   * Get the maximum number of folds that can be in flight at any one time
+   *
+   * @return the maximum number of concurrent folds
+   */
+  public int getMaxFoldsInFlight() {
+    return m_maxFoldsInFlight;
+  }
+
+  /**
+   * Set whether to preserve the order of the training data. If true, the training data is assumed
+   * to have already been randomized (and stratified, if necessary) so it is not reordered before
+   * splitting into folds or training/test sets. This allows several evaluators to share the same
+   * training data.
+   *
+   * @param preserveOrder true to preserve the order of the training data
+   */
+  public void setPreserveOrder(boolean preserveOrder) {
+    m_preserveOrder = preserveOrder;
+  }
+
+  /**
+   * Set a trainer to use for building the final model when the scheme is an IterativeClassifier
+   *
+   * @param iterativeTrainer the trainer to use (null to use the scheme's buildClassifier())
+   */
+  public void setIterativeTrainer(IterativeTrainer iterativeTrainer) {
+    m_iterativeTrainer = iterativeTrainer;
+  }
+
+  /**
+   * Set the test split for a streaming percentage split. Percentage split evaluation then trains
+   * on all the training data (the training split) and tests on this in a single pass. Afterwards
+   * the test split is appended to the training data, so that the final model is built on all the
+   * data as it would be for a regular percentage split.
+   *
+   * @param splitTestData the test split (must have the same header as the training data)
+   */
+  public void setSplitTestData(Instances splitTestData) {
+    m_splitTestData = splitTestData;
+  }
+
+  @Override public void initialize(Instances trainingData, Classifier classifier)
+      throws Exception {
+    super.initialize(trainingData, classifier);
+    // a copy of m_eval would share its class priors array, which sequential cross-validation
+    // resets for each fold
+    m_trainingPriors = m_eval != null ? new Evaluation(trainingData) : null;
+  }
+
+  /**
+   * Get the class priors computed from the full training data, for storing with the final model
+   *
+   * @return an Evaluation holding the training data priors (or null if the evaluator has not been
+   * initialized with training data)
+   */
+  public Evaluation getTrainingPriors() {
+    return m_trainingPriors;
+  }
+
+  @Override public Classifier buildFinalModel(IMILogAdapter log, IMIVariableAdaptor vars)
+      throws Exception {
+    if (m_iterativeTrainer == null || m_trainingData == null
+        || !(m_templateClassifier instanceof IterativeClassifier)) {
+      return super.buildFinalModel(log, vars);
+    }
+
+    m_classifier = buildFinalModel(m_trainingData, log, vars);
+
+    return m_classifier;
+  }
+
+  /**
+   * Build the final model on the supplied data rather than the evaluator's training data. Unlike
+   * {@code buildFinalModel(IMILogAdapter, IMIVariableAdaptor)}, the evaluator's state is not
+   * touched, so this can run while an evaluation is in progress (on a separate copy of the
+   * training data).
+   *
+   * @param data the data to build the final model on
+   * @param log the log to use
+   * @param vars variables
+   * @return the trained model
+   * @throws Exception if a problem occurs
+   */
+  public Classifier buildFinalModel(Instances data, IMILogAdapter log, IMIVariableAdaptor vars)
+      throws Exception {
+    Classifier classifier = copyClassifierTemplate();
+    if (classifier instanceof OptionHandler) {
+      log.logBasic(m_messages.getString("BasePMIStep.Info.BuildingFinalModel",
+          classifier.getClass().getCanonicalName() + " " + Utils
+              .joinOptions(((OptionHandler) classifier).getOptions())));
+    }
+    enableClassifierLoggingIfSupported(classifier, log);
+    configureWekaEnvironmentHandler(classifier, vars);
+    if (m_iterativeTrainer != null && classifier instanceof IterativeClassifier) {
+      return (Classifier) m_iterativeTrainer.train((IterativeClassifier) classifier, data, false);
+    }
+    classifier.buildClassifier(data);
+
+    return classifier;
+  }
+
+  @Override public void performEvaluation(Instances testData, IMILogAdapter log,
+      IMIVariableAdaptor vars) throws Exception {
+    if (m_evaluationMode == EvalMode.PERCENTAGE_SPLIT && m_splitTestData != null
+        && m_trainingData != null) {
+      evaluateSplitTestData(log, vars);
+      return;
+    }
+    if (m_evaluationMode != EvalMode.CROSS_VALIDATION || m_executor == null
+        || m_maxFoldsInFlight < 2 || m_trainingData == null) {
+      super.performEvaluation(testData, log, vars);
+      return;
+    }
+
+    m_evalWasPerformed = true;
+    Random random = new Random(m_randomSeed);
+    if (!m_preserveOrder) {
+      m_trainingData.randomize(random);
+    }
+
+    if (m_trainingData.numInstances() < m_xValFolds) {
+      log.logBasic(m_messages.getString("Evaluator.Message.UnableToPerformCrossValidation",
+          m_xValFolds, m_trainingData.numInstances()));
+      m_evalWasPerformed = false;
+      return;
+    }
+
+    log.logBasic(m_messages.getString("Evaluator.Message.PerformingCrossValidation", m_xValFolds));
+    if (!m_preserveOrder && m_trainingData.classAttribute().isNominal()) {
+      m_trainingData.stratify(m_xValFolds);
+    }
+
+    Evaluation[] foldEvaluations = new Evaluation[m_xValFolds];
+    CompletionService<Object[]> completionService = new ExecutorCompletionService<>(m_executor);
+    List<Future<Object[]>> submitted = new ArrayList<>();
+    int inFlight = 0;
+    try {
+      for (int i = 0; i < m_xValFolds; i++) {
+        if (inFlight == m_maxFoldsInFlight) {
+          collectFold(completionService.take(), foldEvaluations);
+          inFlight--;
+        }
+
+        log.logDetailed(m_messages.getString("Evaluator.Message.TrainingModelForFold", (i + 1)));
+        final Classifier foldClassifier = copyClassifierTemplate();
+        enableClassifierLoggingIfSupported(foldClassifier, log);
+        configureWekaEnvironmentHandler(foldClassifier, vars);
+        final Instances train = m_trainingData.trainCV(m_xValFolds, i, random);
+        final Instances test = m_trainingData.testCV(m_xValFolds, i);
+        final int fold = i;
+        submitted.add(completionService.submit(
+            () -> new Object[]{fold, evaluateFold(fold, foldClassifier, train, test, log)}));
+        inFlight++;
+      }
+
+      while (inFlight > 0) {
+        collectFold(completionService.take(), foldEvaluations);
+        inFlight--;
+      }
+    } catch (Exception ex) {
+      for (Future<Object[]> f : submitted) {
+        f.cancel(true);
+      }
+      throw ex;
+    }
+
+    // aggregate in fold order so that the result (including any stored predictions) is
+    // independent of the order in which folds finished
+    AggregateableEvaluation aggregated = new AggregateableEvaluation(m_eval);
+    for (Evaluation foldEvaluation : foldEvaluations) {
+      aggregated.aggregate(foldEvaluation);
+    }
+    setEvaluation(aggregated);
+  }
+
+  /**
+   * Train on the training split and test on the streamed test split
+   *
+   * @param log the log to use
+   * @param vars variables
+   * @throws Exception if a problem occurs
+   */
+  protected void evaluateSplitTestData(IMILogAdapter log, IMIVariableAdaptor vars)
+      throws Exception {
+    Instances test = m_splitTestData;
+    m_splitTestData = null;
+
+    // priors come from all the data, as for a regular percentage split. The evaluation and the
+    // saved training priors each hold their own counts, so each test row is added once to each
+    for (int i = 0; i < test.numInstances(); i++) {
+      Instance testInst = test.instance(i);
+      m_eval.updatePriors(testInst);
+      if (m_trainingPriors != null) {
+        m_trainingPriors.updatePriors(testInst);
+      }
+    }
+
+    m_evalWasPerformed = true;
+    if (m_trainingData.numInstances() + test.numInstances() < 10) {
+      log.logBasic(m_messages.getString("Evaluator.Message.UnableToPerformPercentageSplit"));
+      m_evalWasPerformed = false;
+    } else {
+      log.logBasic(
+          m_messages.getString("Evaluator.Message.PerformingPercentageSplit", m_percentageSplit));
+      Classifier splitClassifier = copyClassifierTemplate();
+      enableClassifierLoggingIfSupported(splitClassifier, log);
+      configureWekaEnvironmentHandler(splitClassifier, vars);
+      splitClassifier.buildClassifier(m_trainingData);
+
+      double[][] dists = null;
+      if (m_templateClassifier instanceof BatchPredictor
+          && ((BatchPredictor) m_templateClassifier).implementsMoreEfficientBatchPrediction()) {
+        // hide the class values in place rather than copying the test split
+        double[] classValues = new double[test.numInstances()];
+        for (int j = 0; j < test.numInstances(); j++) {
+          classValues[j] = test.instance(j).classValue();
+          test.instance(j).setClassMissing();
+        }
+        dists = ((BatchPredictor) splitClassifier).distributionsForInstances(test);
+        for (int j = 0; j < test.numInstances(); j++) {
+          test.instance(j).setClassValue(classValues[j]);
+        }
+      }
+      for (int j = 0; j < test.numInstances(); j++) {
+        if (dists != null && m_computeAUC) {
+          m_eval.evaluateModelOnceAndRecordPrediction(dists[j], test.instance(j));
+        } else if (dists != null) {
+          m_eval.evaluateModelOnce(dists[j], test.instance(j));
+        } else if (m_computeAUC) {
+          m_eval.evaluateModelOnceAndRecordPrediction(splitClassifier, test.instance(j));
+        } else {
+          m_eval.evaluateModelOnce(splitClassifier, test.instance(j));
+        }
+      }
+    }
+
+    for (int i = 0; i < test.numInstances(); i++) {
+      m_trainingData.add(test.instance(i));
+    }
+  }
+
+  protected void collectFold(Future<Object[]> completed, Evaluation[] foldEvaluations)
+      throws Exception {
+    try {
+      Object[] result = completed.get();
+      foldEvaluations[(Integer) result[0]] = (Evaluation) result[1];
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof Exception) {
+        throw (Exception) e.getCause();
+      }
+      throw e;
+    }
+  }
+
+  /**
+   * Train and test the model for a single fold
+   *
+   * @param fold the fold number (0-based)
+   * @param classifier a copy of the template classifier to train
+   * @param train the training split for the fold
+   * @param test the test split for the fold
+   * @param log the log to use
+   * @return the evaluation for the fold
+   * @throws Exception if a problem occurs
+   */
+  protected Evaluation evaluateFold(int fold, Classifier classifier, Instances train,
+      Instances test, IMILogAdapter log) throws Exception {
+
+    // priors are computed from the training split, as in the sequential case
+    Evaluation foldEvaluation = new Evaluation(train);
+    classifier.buildClassifier(train);
+
+    log.logDetailed(m_messages.getString("Evaluator.Message.TestingModelForFold", (fold + 1)));
+    if (m_templateClassifier instanceof BatchPredictor
+        && ((BatchPredictor) m_templateClassifier).implementsMoreEfficientBatchPrediction()) {
+      Instances toPredict = new Instances(test);
+      for (int j = 0; j < toPredict.numInstances(); j++) {
+        toPredict.instance(j).setClassMissing();
+      }
+      double[][] dists = ((BatchPredictor) classifier).distributionsForInstances(toPredict);
+      for (int j = 0; j < test.numInstances(); j++) {
+        if (m_computeAUC) {
+          foldEvaluation.evaluateModelOnceAndRecordPrediction(dists[j], test.instance(j));
+        } else {
+          foldEvaluation.evaluateModelOnce(dists[j], test.instance(j));
+        }
+      }
+    } else {
+      for (int j = 0; j < test.numInstances(); j++) {
+        if (m_computeAUC) {
+          foldEvaluation.evaluateModelOnceAndRecordPrediction(classifier, test.instance(j));
+        } else {
+          foldEvaluation.evaluateModelOnce(classifier, test.instance(j));
+        }
+      }
+    }
+
+    return foldEvaluation;
+  }
+}
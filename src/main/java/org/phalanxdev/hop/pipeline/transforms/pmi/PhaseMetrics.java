@@ -0,0 +1,228 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.phalanxdev.hop.pipeline.transforms.pmi;
+
+import org.apache.hop.core.logging.ILogChannel;
+import org.apache.hop.core.metrics.IMetrics;
+import org.apache.hop.core.metrics.Metrics;
+import org.apache.hop.core.metrics.MetricsSnapshotType;
+import org.apache.hop.i18n.BaseMessages;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+/**
+ * Accumulates wall time, CPU time and allocated bytes for each phase of training a batch or
+ * stratum. A phase is measured by taking a {@code begin()} snapshot on the thread that runs it and
+ * passing that snapshot to {@code end()} on the same thread. CPU time and allocations are those of
+ * the measuring thread only, so work that a phase hands off to the worker pool (e.g. concurrent
+ * cross-validation folds) or to the background model writer shows up in wall time alone. Values
+ * that the JVM cannot measure are reported as -1.
+ *
+ * @author Mark Hall (mhall{[at]}waikato{[dot]}ac{[dot]}nz)
+ * @version $Revision: $
+ */
+public class PhaseMetrics {
+
+  private static Class<?> PKG = BaseSupervisedPMIData.class;
+
+  /**
+   * The phases that are measured
+   */
+  public enum Phase {
+    Buffering("buffering"), DetermineHeader("determine_header"), BuildDataset("build_dataset"),
+    Evaluation("evaluation"), BuildFinalModel("build_final_model"), SaveModel("save_model");
+
+    private final String m_code;
+
+    Phase(String code) {
+      m_code = code;
+    }
+
+    /**
+     * Get the code used for output field and metric names
+     *
+     * @return the code for this phase
+     */
+    public String getCode() {
+      return m_code;
+    }
+  }
+
+  /**
+   * Number of output fields (wall time, CPU time and allocated bytes) per phase
+   */
+  public static final int FIELDS_PER_PHASE = 3;
+
+  protected static final IMetrics[] WALL_TIME_METRICS = new IMetrics[Phase.values().length];
+  protected static final IMetrics[] CPU_TIME_METRICS = new IMetrics[Phase.values().length];
+  protected static final IMetrics[] ALLOCATED_BYTES_METRICS = new IMetrics[Phase.values().length];
+
+  static {
+    for (Phase phase : Phase.values()) {
+      String code = "PMI_" + phase.getCode().toUpperCase();
+      WALL_TIME_METRICS[phase.ordinal()] = new Metrics(MetricsSnapshotType.SUM, code + "_WALL_MS",
+          "PMI " + phase.getCode() + " wall time (ms)");
+      CPU_TIME_METRICS[phase.ordinal()] = new Metrics(MetricsSnapshotType.SUM, code + "_CPU_MS",
+          "PMI " + phase.getCode() + " CPU time (ms)");
+      ALLOCATED_BYTES_METRICS[phase.ordinal()] =
+          new Metrics(MetricsSnapshotType.SUM, code + "_ALLOCATED_BYTES",
+              "PMI " + phase.getCode() + " allocated bytes");
+    }
+  }
+
+  protected static final ThreadMXBean THREAD_BEAN = ManagementFactory.getThreadMXBean();
+
+  protected final long[] m_wallNanos = new long[Phase.values().length];
+  protected final long[] m_cpuNanos = new long[Phase.values().length];
+  protected final long[] m_allocatedBytes = new long[Phase.values().length];
+
+  /**
+   * Which phases have been measured at least once
+   */
+  protected final boolean[] m_measured = new boolean[Phase.values().length];
+
+  /**
+   * Take a snapshot of the current thread's clocks at the start of a phase
+   *
+   * @return the snapshot (wall nanos, CPU nanos, allocated bytes)
+   */
+  public long[] begin() {
+    return new long[]{System.nanoTime(), currentThreadCpuTime(), currentThreadAllocatedBytes()};
+  }
+
+  /**
+   * Add the time and allocations since a snapshot to a phase. Must be called on the thread that
+   * took the snapshot.
+   *
+   * @param phase the phase to add to
+   * @param start the snapshot taken by {@code begin()}
+   */
+  public synchronized void end(Phase phase, long[] start) {
+    int i = phase.ordinal();
+    m_wallNanos[i] += System.nanoTime() - start[0];
+    m_cpuNanos[i] = accumulate(m_cpuNanos[i], start[1], currentThreadCpuTime());
+    m_allocatedBytes[i] =
+        accumulate(m_allocatedBytes[i], start[2], currentThreadAllocatedBytes());
+    m_measured[i] = true;
+  }
+
+  /**
+   * Add the measurements of another set of metrics to this one
+   *
+   * @param other the metrics to add
+   */
+  public synchronized void add(PhaseMetrics other) {
+    synchronized (other) {
+      for (int i = 0; i < m_measured.length; i++) {
+        if (other.m_measured[i]) {
+          m_wallNanos[i] += other.m_wallNanos[i];
+          m_cpuNanos[i] = accumulate(m_cpuNanos[i], 0, other.m_cpuNanos[i]);
+          m_allocatedBytes[i] = accumulate(m_allocatedBytes[i], 0, other.m_allocatedBytes[i]);
+          m_measured[i] = true;
+        }
+      }
+    }
+  }
+
+  /**
+   * Get the measurements as output row values: wall time (ms), CPU time (ms) and allocated bytes
+   * for each phase in turn. Phases that were not measured, and values that the JVM does not
+   * support, are null.
+   *
+   * @return the output values
+   */
+  public synchronized Object[] toRowValues() {
+    Object[] values = new Object[m_measured.length * FIELDS_PER_PHASE];
+    for (int i = 0; i < m_measured.length; i++) {
+      if (m_measured[i]) {
+        values[i * FIELDS_PER_PHASE] = m_wallNanos[i] / 1000000L;
+        values[i * FIELDS_PER_PHASE + 1] = m_cpuNanos[i] < 0 ? null : m_cpuNanos[i] / 1000000L;
+        values[i * FIELDS_PER_PHASE + 2] = m_allocatedBytes[i] < 0 ? null : m_allocatedBytes[i];
+      }
+    }
+
+    return values;
+  }
+
+  /**
+   * Record the measurements as metrics on a log channel (if it is gathering metrics) and log a
+   * summary at the detailed level
+   *
+   * @param log the log channel
+   * @param subject the batch or stratum that was measured
+   */
+  public synchronized void logTo(ILogChannel log, String subject) {
+    StringBuilder summary = new StringBuilder();
+    for (Phase phase : Phase.values()) {
+      int i = phase.ordinal();
+      if (!m_measured[i]) {
+        continue;
+      }
+      if (log.isGatheringMetrics()) {
+        log.snap(WALL_TIME_METRICS[i], subject, m_wallNanos[i] / 1000000L);
+        if (m_cpuNanos[i] >= 0) {
+          log.snap(CPU_TIME_METRICS[i], subject, m_cpuNanos[i] / 1000000L);
+        }
+        if (m_allocatedBytes[i] >= 0) {
+          log.snap(ALLOCATED_BYTES_METRICS[i], subject, m_allocatedBytes[i]);
+        }
+      }
+      summary.append(summary.length() > 0 ? ", " : "").append(BaseMessages
+          .getString(PKG, "BasePMIStepData.PhaseMetricsEntry", phase.getCode(),
+              String.valueOf(m_wallNanos[i] / 1000000L),
+              m_cpuNanos[i] < 0 ? "?" : String.valueOf(m_cpuNanos[i] / 1000000L),
+              m_allocatedBytes[i] < 0 ? "?" : String.valueOf(m_allocatedBytes[i] >> 10)));
+    }
+    if (log.isDetailed() && summary.length() > 0) {
+      log.logDetailed(
+          BaseMessages.getString(PKG, "BasePMIStepData.PhaseMetricsSummary", subject,
+              summary.toString()));
+    }
+  }
+
+  protected static long accumulate(long total, long start, long end) {
+    if (total < 0 || start < 0 || end < 0) {
+      return -1;
+    }
+    return total + end - start;
+  }
+
+  protected static long currentThreadCpuTime() {
+    try {
+      if (THREAD_BEAN.isCurrentThreadCpuTimeSupported() && THREAD_BEAN.isThreadCpuTimeEnabled()) {
+        return THREAD_BEAN.getCurrentThreadCpuTime();
+      }
+    } catch (UnsupportedOperationException ex) {
+      // fall through
+    }
+    return -1;
+  }
+
+  protected static long currentThreadAllocatedBytes() {
+    if (THREAD_BEAN instanceof com.sun.management.ThreadMXBean) {
+      com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean) THREAD_BEAN;
+      try {
+        if (bean.isThreadAllocatedMemorySupported() && bean.isThreadAllocatedMemoryEnabled()) {
+          return bean.getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+      } catch (UnsupportedOperationException ex) {
+        // fall through
+      }
+    }
+    return -1;
+  }
+}
@@ -0,0 +1,465 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.phalanxdev.hop.pipeline.transforms.pmi;
+
+import org.apache.hop.core.exception.HopValueException;
+import org.apache.hop.core.row.IRowMeta;
+import org.apache.hop.core.row.IValueMeta;
+import weka.core.Attribute;
+import weka.core.DenseInstance;
+import weka.core.Instance;
+import weka.core.Instances;
+import weka.core.SparseInstance;
+import weka.core.Utils;
+
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Converts incoming Hop rows to Weka instance values for a particular header and input row
+ * structure. Source indexes and a specialised converter for each attribute are determined once, at
+ * construction time, so that converting a row involves no field name lookups, map probes or
+ * attribute type checks.
+ *
+ * @author Mark Hall (mhall{[at]}waikato{[dot]}ac{[dot]}nz)
+ * @version $Revision: $
+ */
+public class RowCodec {
+
+  /**
+   * How converted values are represented as instances
+   */
+  public enum Representation {
+    /**
+     * Sparse when half or fewer of an instance's values are non-zero, dense otherwise
+     */
+    AUTOMATIC,
+
+    /**
+     * Always dense
+     */
+    DENSE,
+
+    /**
+     * Always sparse - only non-zero (and missing) values are held
+     */
+    SPARSE
+  }
+
+  /**
+   * Maximum fraction of non-zero values for which the automatic representation is sparse. A sparse
+   * value costs an index as well as the value itself, and sparse instances are slower to access
+   * by attribute index, so there is little to gain from sparsity above this.
+   */
+  public static final double AUTOMATIC_SPARSE_MAX_DENSITY = 0.5;
+
+  /**
+   * Field is not present in the input - value is always missing
+   */
+  protected static final int CONVERT_ABSENT = 0;
+
+  /**
+   * Numeric attribute from a Number field (normal storage)
+   */
+  protected static final int CONVERT_NUMBER = 1;
+
+  /**
+   * Numeric attribute from an Integer field (normal storage)
+   */
+  protected static final int CONVERT_INTEGER = 2;
+
+  /**
+   * Numeric attribute from a Boolean field (normal storage)
+   */
+  protected static final int CONVERT_BOOLEAN = 3;
+
+  /**
+   * Numeric attribute from a Date field (normal storage)
+   */
+  protected static final int CONVERT_DATE = 4;
+
+  /**
+   * Numeric attribute from any other type/storage - converted via the value meta
+   */
+  protected static final int CONVERT_NUMERIC_GENERIC = 5;
+
+  /**
+   * Nominal attribute from a field with indexed storage - uses a precomputed index lookup
+   */
+  protected static final int CONVERT_NOMINAL_INDEXED = 6;
+
+  /**
+   * Nominal attribute from a String field (normal storage)
+   */
+  protected static final int CONVERT_NOMINAL = 7;
+
+  /**
+   * Nominal attribute from any other type/storage - converted via the value meta
+   */
+  protected static final int CONVERT_NOMINAL_GENERIC = 8;
+
+  /**
+   * String attribute
+   */
+  protected static final int CONVERT_STRING = 9;
+
+  /**
+   * Hashed nominal attribute (see {@code FeatureHasher}) from a field of any type
+   */
+  protected static final int CONVERT_NOMINAL_HASHED = 10;
+
+  /**
+   * The header that this codec was compiled for
+   */
+  protected Instances m_header;
+
+  /**
+   * The input row structure that this codec was compiled for
+   */
+  protected IRowMeta m_rowMeta;
+
+  /**
+   * Index of the incoming field for each attribute (-1 if absent)
+   */
+  protected int[] m_sourceIndexes;
+
+  /**
+   * Converter type for each attribute
+   */
+  protected int[] m_converters;
+
+  /**
+   * Value metas of the incoming field for each attribute
+   */
+  protected IValueMeta[] m_valueMetas;
+
+  /**
+   * Attributes of the header
+   */
+  protected Attribute[] m_attributes;
+
+  /**
+   * For nominal attributes sourced from fields with indexed storage: maps storage index to the
+   * index of the corresponding nominal value (-1 if not a legal value)
+   */
+  protected int[][] m_indexedStorageLookup;
+
+  /**
+   * For hashed nominal attributes: the number of buckets (zero for other attributes)
+   */
+  protected int[] m_hashBuckets;
+
+  /**
+   * Reused buffer for converted values
+   */
+  protected double[] m_vals;
+
+  /**
+   * How converted rows are represented as instances
+   */
+  protected Representation m_representation = Representation.DENSE;
+
+  /**
+   * Constructor
+   *
+   * @param header the header to convert rows for
+   * @param rowMeta the incoming row structure
+   * @param streamFieldLookup lookup from field name to index in the incoming row structure
+   */
+  public RowCodec(Instances header, IRowMeta rowMeta, Map<String, Integer> streamFieldLookup) {
+    m_header = header;
+    m_rowMeta = rowMeta;
+    int numAtts = header.numAttributes();
+    m_sourceIndexes = new int[numAtts];
+    m_converters = new int[numAtts];
+    m_valueMetas = new IValueMeta[numAtts];
+    m_attributes = new Attribute[numAtts];
+    m_indexedStorageLookup = new int[numAtts][];
+    m_hashBuckets = new int[numAtts];
+    m_vals = new double[numAtts];
+
+    for (int i = 0; i < numAtts; i++) {
+      Attribute att = header.attribute(i);
+      m_attributes[i] = att;
+      Integer streamIndex = streamFieldLookup.get(att.name());
+      if (streamIndex == null) {
+        m_sourceIndexes[i] = -1;
+        m_converters[i] = CONVERT_ABSENT;
+        continue;
+      }
+      m_sourceIndexes[i] = streamIndex;
+      IValueMeta vm = rowMeta.getValueMeta(streamIndex);
+      m_valueMetas[i] = vm;
+      m_hashBuckets[i] = FeatureHasher.getNumBuckets(att);
+      m_converters[i] = m_hashBuckets[i] > 0 ? CONVERT_NOMINAL_HASHED : selectConverter(att, vm);
+
+      if (m_converters[i] == CONVERT_NOMINAL_INDEXED) {
+        Object[] index = vm.getIndex();
+        m_indexedStorageLookup[i] = new int[index.length];
+        for (int j = 0; j < index.length; j++) {
+          m_indexedStorageLookup[i][j] =
+              index[j] == null ? -1 : att.indexOfValue(index[j].toString());
+        }
+      }
+    }
+  }
+
+  protected static int selectConverter(Attribute att, IValueMeta vm) {
+    if (att.isString()) {
+      return CONVERT_STRING;
+    }
+
+    if (att.isNominal()) {
+      if (vm.getStorageType() == IValueMeta.STORAGE_TYPE_INDEXED && vm.getIndex() != null) {
+        return CONVERT_NOMINAL_INDEXED;
+      }
+      return vm.isStorageNormal() && vm.getType() == IValueMeta.TYPE_STRING ? CONVERT_NOMINAL
+          : CONVERT_NOMINAL_GENERIC;
+    }
+
+    if (!vm.isStorageNormal()) {
+      return CONVERT_NUMERIC_GENERIC;
+    }
+    switch (vm.getType()) {
+      case IValueMeta.TYPE_NUMBER:
+        return CONVERT_NUMBER;
+      case IValueMeta.TYPE_INTEGER:
+        return CONVERT_INTEGER;
+      case IValueMeta.TYPE_BOOLEAN:
+        return CONVERT_BOOLEAN;
+      case IValueMeta.TYPE_DATE:
+        return CONVERT_DATE;
+      default:
+        return CONVERT_NUMERIC_GENERIC;
+    }
+  }
+
+  /**
+   * Set how converted rows are represented as instances
+   *
+   * @param representation the representation to use
+   */
+  public void setRepresentation(Representation representation) {
+    m_representation = representation;
+  }
+
+  /**
+   * Get how converted rows are represented as instances
+   *
+   * @return the representation in use
+   */
+  public Representation getRepresentation() {
+    return m_representation;
+  }
+
+  /**
+   * Returns true if this codec was compiled for the supplied header and row structure
+   *
+   * @param header the header
+   * @param rowMeta the row structure
+   * @return true if this codec can be used to convert rows for the header/row structure
+   */
+  public boolean isCompiledFor(Instances header, IRowMeta rowMeta) {
+    return m_header == header && m_rowMeta == rowMeta;
+  }
+
+  /**
+   * Convert a row into the reused values buffer. Callers that need to retain the values must take
+   * a copy.
+   *
+   * @param row the row to convert
+   * @return the (reused) array of converted values
+   * @throws HopValueException if a problem occurs
+   */
+  public double[] encode(Object[] row) throws HopValueException {
+    encode(row, m_vals);
+
+    return m_vals;
+  }
+
+  /**
+   * Convert a row into the supplied array
+   *
+   * @param row the row to convert
+   * @param vals the array to hold the converted values
+   * @throws HopValueException if a problem occurs
+   */
+  public void encode(Object[] row, double[] vals) throws HopValueException {
+    for (int i = 0; i < m_converters.length; i++) {
+      int converter = m_converters[i];
+      if (converter == CONVERT_ABSENT) {
+        vals[i] = Utils.missingValue();
+        continue;
+      }
+      Object value = row[m_sourceIndexes[i]];
+      if (value == null) {
+        vals[i] = Utils.missingValue();
+        continue;
+      }
+
+      int nomIndex;
+      switch (converter) {
+        case CONVERT_NUMBER:
+          vals[i] = ((Double) value).doubleValue();
+          break;
+        case CONVERT_INTEGER:
+          vals[i] = ((Long) value).doubleValue();
+          break;
+        case CONVERT_BOOLEAN:
+          vals[i] = ((Boolean) value) ? 1.0 : 0.0;
+          break;
+        case CONVERT_DATE:
+          vals[i] = ((Date) value).getTime();
+          break;
+        case CONVERT_NOMINAL_INDEXED:
+          int storageIndex = ((Integer) value).intValue();
+          int[] lookup = m_indexedStorageLookup[i];
+          nomIndex = storageIndex >= 0 && storageIndex < lookup.length ? lookup[storageIndex] : -1;
+          vals[i] = nomIndex < 0 ? Utils.missingValue() : nomIndex;
+          break;
+        case CONVERT_NOMINAL:
+        case CONVERT_NOMINAL_GENERIC:
+          if (m_valueMetas[i].isNull(value)) {
+            vals[i] = Utils.missingValue();
+          } else {
+            String nomVal = converter == CONVERT_NOMINAL ? (String) value
+                : m_valueMetas[i].getString(value);
+            nomIndex = m_attributes[i].indexOfValue(nomVal);
+            vals[i] = nomIndex < 0 ? Utils.missingValue() : nomIndex;
+          }
+          break;
+        case CONVERT_NOMINAL_HASHED:
+          vals[i] = m_valueMetas[i].isNull(value) ? Utils.missingValue()
+              : FeatureHasher.bucket(m_valueMetas[i].getString(value), m_hashBuckets[i]);
+          break;
+        case CONVERT_STRING:
+          vals[i] = m_valueMetas[i].isNull(value) ? Utils.missingValue()
+              : m_attributes[i].addStringValue(m_valueMetas[i].getString(value));
+          break;
+        default:
+          if (m_valueMetas[i].isNull(value)) {
+            vals[i] = Utils.missingValue();
+          } else {
+            Double number = m_valueMetas[i].getNumber(value);
+            vals[i] = number == null ? Utils.missingValue() : number;
+          }
+      }
+    }
+  }
+
+  /**
+   * Convert a row to an instance
+   *
+   * @param row the row to convert
+   * @return an instance (with its dataset set to the header)
+   * @throws HopValueException if a problem occurs
+   */
+  public Instance toInstance(Object[] row) throws HopValueException {
+    Instance result = createInstance(encode(row), m_representation, true);
+    result.setDataset(m_header);
+
+    return result;
+  }
+
+  /**
+   * Convert a list of rows to an Instances object. Stops at the first null row (reservoir samples
+   * can be padded with nulls).
+   *
+   * @param data the rows to convert
+   * @return an Instances object
+   * @throws HopValueException if a problem occurs
+   */
+  public Instances toInstances(List<Object[]> data) throws HopValueException {
+    Instances dataset = new Instances(m_header, data.size());
+    for (Object[] row : data) {
+      if (row == null) {
+        break;
+      }
+      dataset.add(createInstance(encode(row), m_representation, true));
+    }
+
+    return dataset;
+  }
+
+  /**
+   * Returns true if an instance holding the supplied values should be sparse
+   *
+   * @param vals the (full width) values
+   * @param representation the requested representation
+   * @return true if a sparse instance should be used
+   */
+  public static boolean isSparse(double[] vals, Representation representation) {
+    if (representation != Representation.AUTOMATIC) {
+      return representation == Representation.SPARSE;
+    }
+
+    int maxNonZero = (int) (vals.length * AUTOMATIC_SPARSE_MAX_DENSITY);
+    int nonZero = 0;
+    for (double v : vals) {
+      // missing values (NaN) are non-zero
+      if (v != 0 && ++nonZero > maxNonZero) {
+        return false;
+      }
+    }
+
+    return true;
+  }
+
+  /**
+   * Create a sparse instance holding just the non-zero (and missing) values from the supplied
+   * array. The array is not retained.
+   *
+   * @param vals the (full width) values
+   * @return a sparse instance
+   */
+  public static Instance createSparseInstance(double[] vals) {
+    int nonZero = 0;
+    for (double v : vals) {
+      if (v != 0) {
+        nonZero++;
+      }
+    }
+    double[] values = new double[nonZero];
+    int[] indices = new int[nonZero];
+    for (int i = 0, j = 0; j < nonZero; i++) {
+      if (vals[i] != 0) {
+        values[j] = vals[i];
+        indices[j++] = i;
+      }
+    }
+
+    return new SparseInstance(1.0, values, indices, vals.length);
+  }
+
+  /**
+   * Create an instance holding the supplied values in the requested representation
+   *
+   * @param vals the (full width) values
+   * @param representation the requested representation
+   * @param copy true if the array may be reused by the caller and must be copied if the instance
+   * is dense
+   * @return an instance (without its dataset set)
+   */
+  public static Instance createInstance(double[] vals, Representation representation,
+      boolean copy) {
+    if (isSparse(vals, representation)) {
+      return createSparseInstance(vals);
+    }
+
+    return new DenseInstance(1.0, copy ? vals.clone() : vals);
+  }
+}
@@ -0,0 +1,256 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.phalanxdev.hop.pipeline.transforms.pmi;
+
+import org.apache.hop.core.exception.HopException;
+import org.apache.hop.i18n.BaseMessages;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * A hyperparameter search space over scheme command-line options. The space is specified as one
+ * entry per line (or separated by ';'), each consisting of an option flag followed by either a
+ * comma-separated list of values or a numeric range in the form min:max:step. For example:
+ *
+ * <pre>
+ *   -I 50,100,200
+ *   -depth 0:20:5
+ * </pre>
+ * <p>
+ * Candidates are produced by setting the values of these options in the scheme's base options (any
+ * option not already present is added). Only top-level options (i.e. those before any "--") are
+ * modified, and only options that take a value are supported.
+ *
+ * @author Mark Hall (mhall{[at]}waikato{[dot]}ac{[dot]}nz)
+ * @version $Revision: $
+ */
+public class SearchSpace {
+
+  private static Class<?> PKG = BaseSupervisedPMIData.class;
+
+  /**
+   * Maximum number of candidates that a search can evaluate
+   */
+  public static final int MAX_CANDIDATES = 10000;
+
+  /**
+   * How candidates are selected from the space
+   */
+  public enum SearchMode {
+    Grid, Random
+  }
+
+  /**
+   * The values to try for one option
+   */
+  protected static class Dimension {
+    protected String m_flag;
+    protected List<String> m_values = new ArrayList<>();
+  }
+
+  protected List<Dimension> m_dimensions = new ArrayList<>();
+
+  /**
+   * Parse a search space specification
+   *
+   * @param spec the specification
+   * @return the search space
+   * @throws HopException if the specification is invalid
+   */
+  public static SearchSpace parse(String spec) throws HopException {
+    SearchSpace space = new SearchSpace();
+    for (String entry : spec.split("[;\\r\\n]+")) {
+      entry = entry.trim();
+      if (entry.length() == 0 || entry.startsWith("#")) {
+        continue;
+      }
+      String[] parts = entry.split("\\s+", 2);
+      if (!parts[0].startsWith("-") || parts.length < 2) {
+        throw new HopException(
+            BaseMessages.getString(PKG, "BasePMIStep.Error.InvalidSearchSpaceEntry", entry));
+      }
+      Dimension dimension = new Dimension();
+      dimension.m_flag = parts[0];
+      String values = parts[1].trim();
+      String[] range = values.split(":");
+      if (range.length == 3) {
+        expandRange(dimension, range, entry);
+      } else {
+        for (String value : values.split(",")) {
+          if (value.trim().length() > 0) {
+            dimension.m_values.add(value.trim());
+          }
+        }
+      }
+      if (dimension.m_values.size() == 0) {
+        throw new HopException(
+            BaseMessages.getString(PKG, "BasePMIStep.Error.InvalidSearchSpaceEntry", entry));
+      }
+      space.m_dimensions.add(dimension);
+    }
+
+    return space;
+  }
+
+  protected static void expandRange(Dimension dimension, String[] range, String entry)
+      throws HopException {
+    try {
+      BigDecimal min = new BigDecimal(range[0].trim());
+      BigDecimal max = new BigDecimal(range[1].trim());
+      BigDecimal step = new BigDecimal(range[2].trim());
+      if (step.signum() <= 0 || max.compareTo(min) < 0) {
+        throw new HopException(
+            BaseMessages.getString(PKG, "BasePMIStep.Error.InvalidSearchSpaceEntry", entry));
+      }
+      for (BigDecimal v = min; v.compareTo(max) <= 0; v = v.add(step)) {
+        if (dimension.m_values.size() == MAX_CANDIDATES) {
+          throw new HopException(
+              BaseMessages.getString(PKG, "BasePMIStep.Error.SearchSpaceTooLarge", MAX_CANDIDATES));
+        }
+        dimension.m_values.add(v.stripTrailingZeros().toPlainString());
+      }
+    } catch (NumberFormatException ex) {
+      throw new HopException(
+          BaseMessages.getString(PKG, "BasePMIStep.Error.InvalidSearchSpaceEntry", entry), ex);
+    }
+  }
+
+  /**
+   * Get the total number of option combinations in the space
+   *
+   * @return the number of combinations
+   */
+  public long numCombinations() {
+    long total = 1;
+    for (Dimension d : m_dimensions) {
+      total *= d.m_values.size();
+      if (total > Integer.MAX_VALUE) {
+        return Long.MAX_VALUE;
+      }
+    }
+
+    return m_dimensions.size() > 0 ? total : 0;
+  }
+
+  /**
+   * Get candidate options for every combination in the space
+   *
+   * @param baseOptions the scheme's base options
+   * @return a list of candidate options
+   * @throws HopException if the space is too large for a grid search
+   */
+  public List<String[]> gridCandidates(String[] baseOptions) throws HopException {
+    long total = numCombinations();
+    if (total > MAX_CANDIDATES) {
+      throw new HopException(
+          BaseMessages.getString(PKG, "BasePMIStep.Error.SearchSpaceTooLarge", MAX_CANDIDATES));
+    }
+
+    List<String[]> candidates = new ArrayList<>();
+    int[] indexes = new int[m_dimensions.size()];
+    for (long i = 0; i < total; i++) {
+      candidates.add(candidate(baseOptions, indexes));
+      // advance the last dimension fastest
+      for (int d = indexes.length - 1; d >= 0; d--) {
+        if (++indexes[d] < m_dimensions.get(d).m_values.size()) {
+          break;
+        }
+        indexes[d] = 0;
+      }
+    }
+
+    return candidates;
+  }
+
+  /**
+   * Get candidate options for distinct combinations drawn at random from the space. If the space
+   * contains no more than the requested number of combinations then all of them are returned.
+   *
+   * @param baseOptions the scheme's base options
+   * @param numCandidates the number of candidates to draw
+   * @param random the random number generator to use
+   * @return a list of candidate options
+   * @throws HopException if too many candidates are requested
+   */
+  public List<String[]> randomCandidates(String[] baseOptions, int numCandidates, Random random)
+      throws HopException {
+    if (numCandidates > MAX_CANDIDATES) {
+      throw new HopException(
+          BaseMessages.getString(PKG, "BasePMIStep.Error.SearchSpaceTooLarge", MAX_CANDIDATES));
+    }
+    if (numCombinations() <= numCandidates) {
+      return gridCandidates(baseOptions);
+    }
+
+    List<String[]> candidates = new ArrayList<>();
+    Set<String> seen = new HashSet<>();
+    int[] indexes = new int[m_dimensions.size()];
+    while (candidates.size() < numCandidates) {
+      for (int d = 0; d < indexes.length; d++) {
+        indexes[d] = random.nextInt(m_dimensions.get(d).m_values.size());
+      }
+      if (seen.add(Arrays.toString(indexes))) {
+        candidates.add(candidate(baseOptions, indexes));
+      }
+    }
+
+    return candidates;
+  }
+
+  protected String[] candidate(String[] baseOptions, int[] indexes) {
+    String[] options = baseOptions.clone();
+    for (int d = 0; d < indexes.length; d++) {
+      Dimension dimension = m_dimensions.get(d);
+      options = setOption(options, dimension.m_flag, dimension.m_values.get(indexes[d]));
+    }
+
+    return options;
+  }
+
+  /**
+   * Set the value of a top-level option, adding the option if it is not present
+   *
+   * @param options the options
+   * @param flag the option flag
+   * @param value the value to set
+   * @return the updated options
+   */
+  protected static String[] setOption(String[] options, String flag, String value) {
+    int end = options.length;
+    for (int i = 0; i < options.length; i++) {
+      if (options[i].equals("--")) {
+        end = i;
+        break;
+      }
+      if (options[i].equals(flag) && i + 1 < options.length) {
+        options[i + 1] = value;
+        return options;
+      }
+    }
+
+    List<String> updated = new ArrayList<>(Arrays.asList(options));
+    updated.add(end, value);
+    updated.add(end, flag);
+
+    return updated.toArray(new String[0]);
+  }
+}
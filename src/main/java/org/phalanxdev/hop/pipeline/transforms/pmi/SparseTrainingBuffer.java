@@ -0,0 +1,402 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.phalanxdev.hop.pipeline.transforms.pmi;
+
+import org.apache.hop.core.exception.HopValueException;
+import org.apache.hop.core.row.IRowMeta;
+import org.phalanxdev.hop.utils.ArffMeta;
+import weka.core.Instance;
+import weka.core.Instances;
+import weka.core.SparseInstance;
+import weka.core.Utils;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Row-oriented variant of {@code ColumnarTrainingBuffer} for wide, mostly zero data. Each row holds
+ * just the column indexes and values of its non-zero (and missing) numeric values, so a row costs
+ * space proportional to the number of non-zero values rather than to the number of fields.
+ * Dictionary coded (nominal and string) values are always held, whatever their code, so that an
+ * absent value only ever means numeric zero.
+ *
+ * @author Mark Hall (mhall{[at]}waikato{[dot]}ac{[dot]}nz)
+ * @version $Revision: $
+ */
+public class SparseTrainingBuffer extends ColumnarTrainingBuffer {
+
+  /**
+   * Column indexes of the values held for each row (in ascending order)
+   */
+  protected int[][] m_rowIndexes;
+
+  /**
+   * The values held for each row
+   */
+  protected double[][] m_rowValues;
+
+  /**
+   * Total number of values held over all rows
+   */
+  protected long m_numValues;
+
+  /**
+   * Reused buffers for encoding a row
+   */
+  protected int[] m_scratchIndexes;
+
+  protected double[] m_scratchValues;
+
+  /**
+   * Constructor
+   *
+   * @param fields the model fields to retain, in header order
+   * @param rowMeta the incoming row structure
+   * @param fieldIndexes lookup from model field name to index in the incoming row structure
+   * @param initialCapacity the number of rows to initially allocate storage for
+   */
+  public SparseTrainingBuffer(List<ArffMeta> fields, IRowMeta rowMeta,
+      Map<String, Integer> fieldIndexes, int initialCapacity) {
+    super(fields, rowMeta, fieldIndexes, initialCapacity, false);
+    m_rowIndexes = new int[Math.max(initialCapacity, 1)][];
+    m_rowValues = new double[Math.max(initialCapacity, 1)][];
+    m_scratchIndexes = new int[m_columns.length];
+    m_scratchValues = new double[m_columns.length];
+  }
+
+  @Override
+  public void add(Object[] row) throws HopValueException {
+    ensureCapacity(m_numRows + 1);
+    set(m_numRows, row);
+    m_numRows++;
+  }
+
+  @Override
+  public void set(int index, Object[] row) throws HopValueException {
+    int count = 0;
+    for (int c = 0; c < m_columns.length; c++) {
+      double v = encode(c, row);
+      // missing values (NaN) are non-zero
+      if (v != 0 || m_dictionaryCoded[c]) {
+        m_scratchIndexes[count] = c;
+        m_scratchValues[count++] = v;
+      }
+    }
+
+    if (m_rowIndexes[index] != null) {
+      m_numValues -= m_rowIndexes[index].length;
+    }
+    m_rowIndexes[index] = Arrays.copyOf(m_scratchIndexes, count);
+    m_rowValues[index] = Arrays.copyOf(m_scratchValues, count);
+    m_numValues += count;
+  }
+
+  @Override
+  public void swap(int a, int b) {
+    int[] tmpIndexes = m_rowIndexes[a];
+    m_rowIndexes[a] = m_rowIndexes[b];
+    m_rowIndexes[b] = tmpIndexes;
+    double[] tmpValues = m_rowValues[a];
+    m_rowValues[a] = m_rowValues[b];
+    m_rowValues[b] = tmpValues;
+  }
+
+  @Override
+  public void trimToSize() {
+    m_rowIndexes = Arrays.copyOf(m_rowIndexes, Math.max(m_numRows, 1));
+    m_rowValues = Arrays.copyOf(m_rowValues, Math.max(m_numRows, 1));
+    m_numValues = 0;
+    for (int r = 0; r < m_numRows; r++) {
+      m_numValues += m_rowIndexes[r].length;
+    }
+  }
+
+  @Override
+  public void compactDictionaries() {
+    int[][] remap = new int[m_columns.length][];
+    int[] used = new int[m_columns.length];
+    for (int c = 0; c < m_columns.length; c++) {
+      if (m_dictionaryCoded[c]) {
+        remap[c] = new int[m_dictionaries[c].size()];
+        Arrays.fill(remap[c], -1);
+      }
+    }
+    for (int r = 0; r < m_numRows; r++) {
+      int[] indexes = m_rowIndexes[r];
+      double[] values = m_rowValues[r];
+      for (int j = 0; j < indexes.length; j++) {
+        int c = indexes[j];
+        if (remap[c] == null || Utils.isMissingValue(values[j])) {
+          continue;
+        }
+        if (remap[c][(int) values[j]] < 0) {
+          remap[c][(int) values[j]] = 0;
+          used[c]++;
+        }
+      }
+    }
+
+    boolean changed = false;
+    for (int c = 0; c < m_columns.length; c++) {
+      if (remap[c] == null || used[c] == remap[c].length) {
+        remap[c] = null;
+        continue;
+      }
+      StringInterner dictionary = m_dictionaries[c];
+      StringInterner compacted = new StringInterner();
+      for (int code = 0; code < remap[c].length; code++) {
+        String value = dictionary.get(code);
+        if (remap[c][code] == 0) {
+          remap[c][code] = compacted.intern(value);
+        } else {
+          m_dictionaryBytes -= 2L * value.length() + 56;
+        }
+      }
+      m_dictionaries[c] = compacted;
+      changed = true;
+    }
+    if (!changed) {
+      return;
+    }
+
+    for (int r = 0; r < m_numRows; r++) {
+      int[] indexes = m_rowIndexes[r];
+      double[] values = m_rowValues[r];
+      for (int j = 0; j < indexes.length; j++) {
+        int[] columnRemap = remap[indexes[j]];
+        if (columnRemap != null && !Utils.isMissingValue(values[j])) {
+          values[j] = columnRemap[(int) values[j]];
+        }
+      }
+    }
+  }
+
+  @Override
+  protected void ensureCapacity(int required) {
+    if (required <= m_rowIndexes.length) {
+      return;
+    }
+    int newCapacity = Math.max(required, m_rowIndexes.length + (m_rowIndexes.length >> 1));
+    m_rowIndexes = Arrays.copyOf(m_rowIndexes, newCapacity);
+    m_rowValues = Arrays.copyOf(m_rowValues, newCapacity);
+  }
+
+  /**
+   * Build an Instances object directly from the buffered rows, without expanding them to full
+   * width (unless dense instances are requested). Dictionary codes are remapped to the value
+   * indexes of the corresponding attributes in the supplied header; values not declared in the
+   * header become missing.
+   *
+   * @param header the header to use
+   * @param representation how the rows are to be represented as instances
+   * @return an Instances object containing the buffered rows
+   */
+  @Override
+  public Instances toInstances(Instances header, RowCodec.Representation representation) {
+    Instances dataset = new Instances(header, m_numRows);
+    int numAtts = dataset.numAttributes();
+    int[] columnForAtt = columnsForAttributes(dataset);
+    int[][] codeRemap = codeRemaps(dataset, columnForAtt);
+
+    // attributes are normally in column order, in which case a row's values can be mapped
+    // across in order; otherwise each row is expanded to full width first
+    int[] attForColumn = new int[m_columns.length];
+    Arrays.fill(attForColumn, -1);
+    boolean inOrder = true;
+    int numAbsent = 0;
+    for (int a = 0, previous = -1; a < numAtts; a++) {
+      if (columnForAtt[a] < 0) {
+        numAbsent++;
+        continue;
+      }
+      attForColumn[columnForAtt[a]] = a;
+      inOrder &= columnForAtt[a] > previous;
+      previous = columnForAtt[a];
+    }
+    // attributes not held in this buffer are always missing
+    int[] absentAtts = new int[numAbsent];
+    for (int a = 0, j = 0; a < numAtts; a++) {
+      if (columnForAtt[a] < 0) {
+        absentAtts[j++] = a;
+      }
+    }
+
+    boolean dense = representation == RowCodec.Representation.DENSE;
+    double[] vals = inOrder && !dense ? null : new double[numAtts];
+    int[] indices = new int[numAtts];
+    double[] values = new double[numAtts];
+    for (int r = 0; r < m_numRows; r++) {
+      int[] rowIndexes = m_rowIndexes[r];
+      double[] rowValues = m_rowValues[r];
+
+      if (vals != null) {
+        Arrays.fill(vals, 0);
+        for (int a : absentAtts) {
+          vals[a] = Utils.missingValue();
+        }
+        for (int j = 0; j < rowIndexes.length; j++) {
+          int a = attForColumn[rowIndexes[j]];
+          if (a >= 0) {
+            vals[a] = remap(codeRemap[a], rowValues[j]);
+          }
+        }
+        dataset.add(RowCodec.createInstance(vals, representation, true));
+        continue;
+      }
+
+      // merge the row's values with the always missing attributes
+      int count = 0;
+      int k = 0;
+      for (int j = 0; j < rowIndexes.length; j++) {
+        int a = attForColumn[rowIndexes[j]];
+        if (a < 0) {
+          continue;
+        }
+        while (k < absentAtts.length && absentAtts[k] < a) {
+          indices[count] = absentAtts[k++];
+          values[count++] = Utils.missingValue();
+        }
+        double v = remap(codeRemap[a], rowValues[j]);
+        if (v != 0) {
+          indices[count] = a;
+          values[count++] = v;
+        }
+      }
+      while (k < absentAtts.length) {
+        indices[count] = absentAtts[k++];
+        values[count++] = Utils.missingValue();
+      }
+      dataset.add(createInstance(values, indices, count, numAtts, representation));
+    }
+
+    return dataset;
+  }
+
+  protected static double remap(int[] codeRemap, double v) {
+    if (codeRemap == null || Utils.isMissingValue(v)) {
+      return v;
+    }
+    int index = codeRemap[(int) v];
+
+    return index < 0 ? Utils.missingValue() : index;
+  }
+
+  protected static Instance createInstance(double[] values, int[] indices, int count, int numAtts,
+      RowCodec.Representation representation) {
+    if (representation == RowCodec.Representation.AUTOMATIC
+        && count > numAtts * RowCodec.AUTOMATIC_SPARSE_MAX_DENSITY) {
+      double[] vals = new double[numAtts];
+      for (int j = 0; j < count; j++) {
+        vals[indices[j]] = values[j];
+      }
+      return RowCodec.createInstance(vals, RowCodec.Representation.DENSE, false);
+    }
+
+    return new SparseInstance(1.0, Arrays.copyOf(values, count),
+        Arrays.copyOf(indices, count), numAtts);
+  }
+
+  @Override
+  public long estimateMemoryUsage() {
+    // row references, per-row array headers and 12 bytes per held value
+    return m_rowIndexes.length * 16L + m_numRows * 32L + m_numValues * 12L + m_dictionaryBytes;
+  }
+
+  /**
+   * Write the buffered rows to the supplied output. Each row is written as the number of values
+   * held followed by column index and value pairs. Dictionary coded values are written as strings
+   * so that the rows can be read back into a buffer with different dictionaries.
+   *
+   * @param out the output to write to
+   * @throws IOException if a problem occurs
+   */
+  @Override
+  public void writeRows(DataOutput out) throws IOException {
+    for (int r = 0; r < m_numRows; r++) {
+      int[] indexes = m_rowIndexes[r];
+      double[] values = m_rowValues[r];
+      out.writeInt(indexes.length);
+      for (int j = 0; j < indexes.length; j++) {
+        int c = indexes[j];
+        double v = values[j];
+        out.writeInt(c);
+        if (!m_dictionaryCoded[c]) {
+          out.writeDouble(v);
+        } else if (Utils.isMissingValue(v)) {
+          out.writeInt(-1);
+        } else {
+          byte[] bytes = m_dictionaries[c].get((int) v).getBytes(StandardCharsets.UTF_8);
+          out.writeInt(bytes.length);
+          out.write(bytes);
+        }
+      }
+    }
+  }
+
+  /**
+   * Read rows previously written by {@code writeRows()} (from a sparse buffer with the same fields)
+   * and add them to this buffer
+   *
+   * @param in the input to read from
+   * @param numRows the number of rows to read
+   * @throws IOException if a problem occurs
+   */
+  @Override
+  public void readRows(DataInput in, int numRows) throws IOException {
+    ensureCapacity(m_numRows + numRows);
+    for (int r = 0; r < numRows; r++) {
+      int count = in.readInt();
+      int[] indexes = new int[count];
+      double[] values = new double[count];
+      for (int j = 0; j < count; j++) {
+        int c = in.readInt();
+        indexes[j] = c;
+        if (!m_dictionaryCoded[c]) {
+          values[j] = in.readDouble();
+          continue;
+        }
+        int length = in.readInt();
+        if (length < 0) {
+          values[j] = Utils.missingValue();
+          continue;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        values[j] = intern(c, new String(bytes, StandardCharsets.UTF_8));
+      }
+      m_rowIndexes[m_numRows] = indexes;
+      m_rowValues[m_numRows++] = values;
+      m_numValues += count;
+    }
+  }
+
+  /**
+   * Remove all rows (and dictionary entries) from the buffer. The row reference storage is retained
+   * for reuse.
+   */
+  @Override
+  public void clear() {
+    Arrays.fill(m_rowIndexes, 0, m_numRows, null);
+    Arrays.fill(m_rowValues, 0, m_numRows, null);
+    m_numValues = 0;
+    super.clear();
+  }
+}
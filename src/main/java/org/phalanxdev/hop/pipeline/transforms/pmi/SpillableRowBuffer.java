@@ -0,0 +1,202 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.phalanxdev.hop.pipeline.transforms.pmi;
+
+import org.apache.hop.core.exception.HopException;
+import org.apache.hop.core.row.IRowMeta;
+import org.apache.hop.i18n.BaseMessages;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.SequenceInputStream;
+
+/**
+ * First-in, first-out buffer of raw rows that is filled completely before it is read back. Rows are
+ * serialized with the row structure's binary format as they are added, so a buffered row costs
+ * roughly its serialized size rather than the size of its boxed values. When the serialized rows
+ * held in memory exceed a budget they are appended to a file in a local directory; on read back the
+ * spilled rows are returned first, followed by any still in memory, so arrival order is preserved.
+ *
+ * @author Mark Hall (mhall{[at]}waikato{[dot]}ac{[dot]}nz)
+ * @version $Revision: $
+ */
+public class SpillableRowBuffer {
+
+  private static Class<?> PKG = BaseSupervisedPMIData.class;
+
+  /**
+   * The structure of the buffered rows
+   */
+  protected IRowMeta m_rowMeta;
+
+  /**
+   * Memory budget (in bytes) for serialized rows held in memory. Zero or less means no limit
+   */
+  protected long m_memoryBudget;
+
+  /**
+   * Directory to spill rows to
+   */
+  protected File m_spillDirectory;
+
+  /**
+   * Serialized rows not yet spilled
+   */
+  protected ByteArrayOutputStream m_resident = new ByteArrayOutputStream();
+
+  protected DataOutputStream m_residentOut = new DataOutputStream(m_resident);
+
+  /**
+   * Number of rows held in memory
+   */
+  protected int m_residentRows;
+
+  /**
+   * Spill file (null if nothing has been spilled)
+   */
+  protected File m_spillFile;
+
+  /**
+   * Number of rows in the spill file
+   */
+  protected int m_spilledRows;
+
+  /**
+   * Stream over the spill file and then the resident rows, once reading has started
+   */
+  protected DataInputStream m_in;
+
+  /**
+   * Rows remaining to be read
+   */
+  protected int m_rowsToRead;
+
+  /**
+   * Constructor
+   *
+   * @param rowMeta the structure of the rows to be buffered
+   * @param memoryBudget the memory budget in bytes (zero or less for no limit)
+   * @param spillDirectory the directory to spill rows to
+   */
+  public SpillableRowBuffer(IRowMeta rowMeta, long memoryBudget, File spillDirectory) {
+    m_rowMeta = rowMeta;
+    m_memoryBudget = memoryBudget;
+    m_spillDirectory = spillDirectory;
+  }
+
+  /**
+   * Add a row to the end of the buffer, spilling the rows held in memory to disk if the memory
+   * budget is exceeded
+   *
+   * @param row the row to add
+   * @throws HopException if a problem occurs
+   */
+  public void add(Object[] row) throws HopException {
+    if (m_in != null) {
+      throw new IllegalStateException("Rows cannot be added once reading has started");
+    }
+    m_rowMeta.writeData(m_residentOut, row);
+    m_residentRows++;
+
+    if (m_memoryBudget > 0 && m_resident.size() > m_memoryBudget) {
+      spill();
+    }
+  }
+
+  protected void spill() throws HopException {
+    try {
+      if (m_spillFile == null) {
+        m_spillFile = File.createTempFile("pmi-rows-", ".bin", m_spillDirectory);
+      }
+      try (FileOutputStream out = new FileOutputStream(m_spillFile, true)) {
+        m_resident.writeTo(out);
+      }
+    } catch (IOException ex) {
+      throw new HopException(BaseMessages
+          .getString(PKG, "BasePMIStep.Error.UnableToSpillRows", m_spillDirectory.toString()), ex);
+    }
+    m_spilledRows += m_residentRows;
+    m_residentRows = 0;
+    m_resident.reset();
+  }
+
+  /**
+   * Get the number of rows added to the buffer
+   *
+   * @return the number of rows
+   */
+  public int size() {
+    return m_spilledRows + m_residentRows;
+  }
+
+  /**
+   * Get the next row in arrival order. No more rows may be added once this has been called.
+   *
+   * @return the next row, or null if all rows have been read
+   * @throws HopException if a problem occurs
+   */
+  public Object[] next() throws HopException {
+    try {
+      if (m_in == null) {
+        m_rowsToRead = size();
+        ByteArrayInputStream resident = new ByteArrayInputStream(m_resident.toByteArray());
+        m_resident = null;
+        m_in = new DataInputStream(m_spillFile == null ? resident :
+            new SequenceInputStream(
+                new BufferedInputStream(new FileInputStream(m_spillFile)), resident));
+      }
+      if (m_rowsToRead == 0) {
+        return null;
+      }
+      m_rowsToRead--;
+
+      return m_rowMeta.readData(m_in);
+    } catch (IOException ex) {
+      throw new HopException(BaseMessages.getString(PKG, "BasePMIStep.Error.UnableToReadSpilledRows",
+          m_spillFile != null ? m_spillFile.toString() : ""), ex);
+    }
+  }
+
+  /**
+   * Discard all buffered rows and delete the spill file
+   */
+  public void clear() {
+    if (m_in != null) {
+      try {
+        m_in.close();
+      } catch (IOException ex) {
+        // ignore
+      }
+      m_in = null;
+    }
+    if (m_spillFile != null) {
+      m_spillFile.delete();
+      m_spillFile = null;
+    }
+    m_resident = new ByteArrayOutputStream();
+    m_residentOut = new DataOutputStream(m_resident);
+    m_residentRows = 0;
+    m_spilledRows = 0;
+    m_rowsToRead = 0;
+  }
+}
@@ -0,0 +1,265 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.phalanxdev.hop.pipeline.transforms.pmi;
+
+import org.apache.hop.core.exception.HopException;
+import org.apache.hop.core.row.IRowMeta;
+import org.apache.hop.i18n.BaseMessages;
+import org.phalanxdev.hop.utils.ArffMeta;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Hash-partitioned store of training rows for stratified row handling when the input is not sorted
+ * by the stratification field. Each stratification value gets its own columnar buffer. If the
+ * estimated memory used by the resident buffers exceeds a budget, the least recently used strata
+ * are spilled to files in a local directory; spilled rows are read back (ahead of any rows still in
+ * memory, so arrival order is preserved) when the stratum is removed for training.
+ *
+ * @author Mark Hall (mhall{[at]}waikato{[dot]}ac{[dot]}nz)
+ * @version $Revision: $
+ */
+public class StrataPartitionStore {
+
+  private static Class<?> PKG = BaseSupervisedPMIData.class;
+
+  /**
+   * Initial row capacity of the buffer for a newly seen stratum
+   */
+  protected static final int INITIAL_STRATUM_CAPACITY = 64;
+
+  /**
+   * The model fields, in header order
+   */
+  protected List<ArffMeta> m_fields;
+
+  /**
+   * The incoming row structure
+   */
+  protected IRowMeta m_rowMeta;
+
+  /**
+   * Lookup from model field name to index in the incoming row structure
+   */
+  protected Map<String, Integer> m_fieldIndexes;
+
+  /**
+   * True if strata are buffered sparsely (see {@code SparseTrainingBuffer})
+   */
+  protected boolean m_sparse;
+
+  /**
+   * Memory budget (in bytes) for resident buffers. Zero or less means no limit
+   */
+  protected long m_memoryBudget;
+
+  /**
+   * Directory to spill strata to
+   */
+  protected File m_spillDirectory;
+
+  /**
+   * All strata seen so far, in order of first appearance
+   */
+  protected Set<String> m_strata = new LinkedHashSet<>();
+
+  /**
+   * Resident buffers, in least recently used order
+   */
+  protected LinkedHashMap<String, ColumnarTrainingBuffer> m_resident =
+      new LinkedHashMap<>(16, 0.75f, true);
+
+  /**
+   * Spill files for strata that have been (at least partially) spilled to disk
+   */
+  protected Map<String, File> m_spillFiles = new HashMap<>();
+
+  /**
+   * Number of rows in each spill file
+   */
+  protected Map<String, Integer> m_spilledRowCounts = new HashMap<>();
+
+  /**
+   * Estimated memory used by the resident buffers
+   */
+  protected long m_residentBytes;
+
+  /**
+   * Constructor
+   *
+   * @param fields the model fields, in header order
+   * @param rowMeta the incoming row structure
+   * @param fieldIndexes lookup from model field name to index in the incoming row structure
+   * @param memoryBudget the memory budget in bytes (zero or less for no limit)
+   * @param spillDirectory the directory to spill strata to
+   * @param sparse true to buffer strata sparsely
+   */
+  public StrataPartitionStore(List<ArffMeta> fields, IRowMeta rowMeta,
+      Map<String, Integer> fieldIndexes, long memoryBudget, File spillDirectory, boolean sparse) {
+    m_fields = fields;
+    m_rowMeta = rowMeta;
+    m_fieldIndexes = fieldIndexes;
+    m_sparse = sparse;
+    m_memoryBudget = memoryBudget;
+    m_spillDirectory = spillDirectory;
+  }
+
+  /**
+   * Add a row to the buffer for the given stratum, spilling cold strata to disk if the memory
+   * budget is exceeded
+   *
+   * @param stratum the stratification value of the row
+   * @param row the row to add
+   * @throws HopException if a problem occurs
+   */
+  public void add(String stratum, Object[] row) throws HopException {
+    ColumnarTrainingBuffer buffer = m_resident.get(stratum);
+    if (buffer == null) {
+      buffer = ColumnarTrainingBuffer.newBuffer(m_fields, m_rowMeta, m_fieldIndexes,
+          INITIAL_STRATUM_CAPACITY, m_sparse);
+      m_resident.put(stratum, buffer);
+      m_strata.add(stratum);
+      m_residentBytes += buffer.estimateMemoryUsage();
+    }
+
+    long before = buffer.estimateMemoryUsage();
+    buffer.add(row);
+    m_residentBytes += buffer.estimateMemoryUsage() - before;
+
+    if (m_memoryBudget > 0) {
+      Iterator<Map.Entry<String, ColumnarTrainingBuffer>> coldest =
+          m_resident.entrySet().iterator();
+      while (m_residentBytes > m_memoryBudget && coldest.hasNext()) {
+        Map.Entry<String, ColumnarTrainingBuffer> e = coldest.next();
+        spill(e.getKey(), e.getValue());
+        m_residentBytes -= e.getValue().estimateMemoryUsage();
+        coldest.remove();
+      }
+    }
+  }
+
+  protected void spill(String stratum, ColumnarTrainingBuffer buffer) throws HopException {
+    if (buffer.size() == 0) {
+      return;
+    }
+    try {
+      File spillFile = m_spillFiles.get(stratum);
+      if (spillFile == null) {
+        spillFile = File.createTempFile("pmi-stratum-", ".bin", m_spillDirectory);
+        m_spillFiles.put(stratum, spillFile);
+      }
+      try (DataOutputStream out = new DataOutputStream(
+          new BufferedOutputStream(new FileOutputStream(spillFile, true)))) {
+        buffer.writeRows(out);
+      }
+      m_spilledRowCounts.merge(stratum, buffer.size(), Integer::sum);
+    } catch (IOException ex) {
+      throw new HopException(BaseMessages
+          .getString(PKG, "BasePMIStep.Error.UnableToSpillStratum", stratum,
+              m_spillDirectory.toString()), ex);
+    }
+  }
+
+  /**
+   * Get the strata seen so far, in order of first appearance
+   *
+   * @return a list of stratification values
+   */
+  public List<String> getStrata() {
+    return new ArrayList<>(m_strata);
+  }
+
+  /**
+   * Get the number of strata seen so far
+   *
+   * @return the number of strata
+   */
+  public int numStrata() {
+    return m_strata.size();
+  }
+
+  /**
+   * Remove a stratum from the store, returning all of its rows (including any that have been
+   * spilled to disk)
+   *
+   * @param stratum the stratification value
+   * @return a buffer holding all the rows for the stratum
+   * @throws HopException if a problem occurs
+   */
+  public ColumnarTrainingBuffer remove(String stratum) throws HopException {
+    m_strata.remove(stratum);
+    ColumnarTrainingBuffer buffer = m_resident.remove(stratum);
+    if (buffer != null) {
+      m_residentBytes -= buffer.estimateMemoryUsage();
+    }
+    File spillFile = m_spillFiles.get(stratum);
+    if (spillFile == null) {
+      return buffer != null ? buffer :
+          ColumnarTrainingBuffer.newBuffer(m_fields, m_rowMeta, m_fieldIndexes, 1, m_sparse);
+    }
+
+    // spilled rows came first, so append anything still in memory to the spill file (while it is
+    // still registered for the stratum) and then read the whole lot back in arrival order
+    if (buffer != null) {
+      spill(stratum, buffer);
+    }
+    m_spillFiles.remove(stratum);
+    int numRows = m_spilledRowCounts.remove(stratum);
+    ColumnarTrainingBuffer restored =
+        ColumnarTrainingBuffer.newBuffer(m_fields, m_rowMeta, m_fieldIndexes, numRows, m_sparse);
+    try (DataInputStream in = new DataInputStream(
+        new BufferedInputStream(new FileInputStream(spillFile)))) {
+      restored.readRows(in, numRows);
+    } catch (IOException ex) {
+      throw new HopException(BaseMessages
+          .getString(PKG, "BasePMIStep.Error.UnableToReadSpilledStratum", stratum,
+              spillFile.toString()), ex);
+    } finally {
+      spillFile.delete();
+    }
+
+    return restored;
+  }
+
+  /**
+   * Discard all buffered rows and delete any spill files
+   */
+  public void clear() {
+    for (File f : m_spillFiles.values()) {
+      f.delete();
+    }
+    m_spillFiles.clear();
+    m_spilledRowCounts.clear();
+    m_resident.clear();
+    m_strata.clear();
+    m_residentBytes = 0;
+  }
+}
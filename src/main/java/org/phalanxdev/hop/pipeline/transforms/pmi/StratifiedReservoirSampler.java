@@ -0,0 +1,274 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.phalanxdev.hop.pipeline.transforms.pmi;
+
+import org.apache.hop.core.exception.HopValueException;
+import org.apache.hop.core.row.IRowMeta;
+import org.phalanxdev.hop.utils.ArffMeta;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Maintains a bounded reservoir (Vitter's algorithm R) for every stratification value at the same
+ * time, so input does not need to be sorted by the stratification field. Reservoirs hold encoded
+ * rows in columnar buffers; buffers for strata that have been removed are recycled for new strata.
+ * An optional memory ceiling applies across all reservoirs: when it would be exceeded, the
+ * per-stratum reservoir size is reduced to a fair share of the ceiling and any larger reservoirs are
+ * down-sampled uniformly at random (a random subset of a uniform sample is itself a uniform sample,
+ * so sampling simply continues with the smaller size).
+ *
+ * @author Mark Hall (mhall{[at]}waikato{[dot]}ac{[dot]}nz)
+ * @version $Revision: $
+ */
+public class StratifiedReservoirSampler {
+
+  /**
+   * Maximum number of rows to allocate storage for when a reservoir is created. Reservoirs grow
+   * from here up to the reservoir size
+   */
+  protected static final int MAX_INITIAL_CAPACITY = 1024;
+
+  /**
+   * A reservoir for one stratum
+   */
+  protected static class Reservoir {
+    protected ColumnarTrainingBuffer m_sample;
+    protected Random m_random;
+
+    /**
+     * Number of rows offered to this reservoir so far
+     */
+    protected long m_seen;
+
+    /**
+     * True if rows in the sample have been replaced or discarded
+     */
+    protected boolean m_replaced;
+  }
+
+  protected List<ArffMeta> m_fields;
+  protected IRowMeta m_rowMeta;
+  protected Map<String, Integer> m_fieldIndexes;
+
+  /**
+   * True if samples are buffered sparsely (see {@code SparseTrainingBuffer})
+   */
+  protected boolean m_sparse;
+
+  /**
+   * Requested reservoir size per stratum
+   */
+  protected int m_reservoirSize;
+
+  /**
+   * Current reservoir size per stratum (can be lower than requested due to the memory ceiling)
+   */
+  protected int m_effectiveReservoirSize;
+
+  protected int m_seed;
+
+  /**
+   * Maximum number of sampled rows held across all reservoirs (derived from the memory ceiling).
+   * Zero or less means no limit
+   */
+  protected long m_maxHeldRows;
+
+  /**
+   * Number of sampled rows currently held across all reservoirs
+   */
+  protected long m_heldRows;
+
+  /**
+   * Reservoirs, in order of first appearance of the stratum
+   */
+  protected Map<String, Reservoir> m_reservoirs = new LinkedHashMap<>();
+
+  /**
+   * Buffers available for reuse
+   */
+  protected Deque<ColumnarTrainingBuffer> m_freeBuffers = new ArrayDeque<>();
+
+  /**
+   * Constructor
+   *
+   * @param fields the model fields, in header order
+   * @param rowMeta the incoming row structure
+   * @param fieldIndexes lookup from model field name to index in the incoming row structure
+   * @param reservoirSize the number of rows to sample per stratum
+   * @param seed the random seed (each stratum's reservoir is seeded identically)
+   * @param memoryCeiling the approximate number of bytes that all reservoirs together may use (zero
+   * or less for no limit)
+   * @param sparse true to buffer samples sparsely
+   */
+  public StratifiedReservoirSampler(List<ArffMeta> fields, IRowMeta rowMeta,
+      Map<String, Integer> fieldIndexes, int reservoirSize, int seed, long memoryCeiling,
+      boolean sparse) {
+    m_fields = fields;
+    m_rowMeta = rowMeta;
+    m_fieldIndexes = fieldIndexes;
+    m_sparse = sparse;
+    m_reservoirSize = reservoirSize;
+    m_effectiveReservoirSize = reservoirSize;
+    m_seed = seed;
+    m_maxHeldRows = memoryCeiling > 0 ? memoryCeiling / (Math.max(fields.size(), 1) * 8L) : 0;
+  }
+
+  /**
+   * Offer a row to the reservoir for the given stratum
+   *
+   * @param stratum the stratification value of the row
+   * @param row the row
+   * @throws HopValueException if a problem occurs
+   */
+  public void add(String stratum, Object[] row) throws HopValueException {
+    Reservoir reservoir = m_reservoirs.get(stratum);
+    if (reservoir == null) {
+      reservoir = newReservoir();
+      m_reservoirs.put(stratum, reservoir);
+    }
+
+    ColumnarTrainingBuffer sample = reservoir.m_sample;
+    if (sample.size() < m_effectiveReservoirSize) {
+      sample.add(row);
+      m_heldRows++;
+      if (sample.size() == m_effectiveReservoirSize) {
+        sample.trimToSize();
+      }
+      if (m_maxHeldRows > 0 && m_heldRows > m_maxHeldRows) {
+        enforceCeiling();
+      }
+    } else {
+      long slot = (long) (reservoir.m_random.nextDouble() * (reservoir.m_seen + 1));
+      if (slot < sample.size()) {
+        sample.set((int) slot, row);
+        reservoir.m_replaced = true;
+      }
+    }
+    reservoir.m_seen++;
+  }
+
+  protected Reservoir newReservoir() {
+    Reservoir reservoir = new Reservoir();
+    reservoir.m_sample = m_freeBuffers.poll();
+    if (reservoir.m_sample == null) {
+      reservoir.m_sample = ColumnarTrainingBuffer.newBuffer(m_fields, m_rowMeta, m_fieldIndexes,
+          Math.min(m_effectiveReservoirSize, MAX_INITIAL_CAPACITY), m_sparse);
+    }
+    reservoir.m_random = new Random(m_seed);
+
+    // throw away the first 100 random numbers (as the reservoir sampling step does)
+    for (int i = 0; i < 100; i++) {
+      reservoir.m_random.nextDouble();
+    }
+
+    return reservoir;
+  }
+
+  /**
+   * Reduce the per-stratum reservoir size to a fair share of the ceiling and down-sample any
+   * reservoirs that are larger than this
+   */
+  protected void enforceCeiling() {
+    m_effectiveReservoirSize =
+        (int) Math.max(1, Math.min(m_effectiveReservoirSize, m_maxHeldRows / m_reservoirs.size()));
+    for (Reservoir reservoir : m_reservoirs.values()) {
+      ColumnarTrainingBuffer sample = reservoir.m_sample;
+      if (sample.size() > m_effectiveReservoirSize) {
+        // partial Fisher-Yates shuffle to select a random subset
+        for (int i = 0; i < m_effectiveReservoirSize; i++) {
+          sample.swap(i, i + reservoir.m_random.nextInt(sample.size() - i));
+        }
+        m_heldRows -= sample.size() - m_effectiveReservoirSize;
+        sample.truncate(m_effectiveReservoirSize);
+        reservoir.m_replaced = true;
+      }
+    }
+  }
+
+  /**
+   * Get the strata seen so far (and not yet removed), in order of first appearance
+   *
+   * @return a list of stratification values
+   */
+  public List<String> getStrata() {
+    return new ArrayList<>(m_reservoirs.keySet());
+  }
+
+  /**
+   * Get the number of strata currently being sampled
+   *
+   * @return the number of strata
+   */
+  public int numStrata() {
+    return m_reservoirs.size();
+  }
+
+  /**
+   * Get the current per-stratum reservoir size
+   *
+   * @return the reservoir size
+   */
+  public int getEffectiveReservoirSize() {
+    return m_effectiveReservoirSize;
+  }
+
+  /**
+   * Remove the reservoir for a stratum and return its sample. The returned buffer can be given back
+   * via {@code recycle()} once it is no longer needed.
+   *
+   * @param stratum the stratification value
+   * @return the sample for the stratum (null if the stratum has not been seen)
+   */
+  public ColumnarTrainingBuffer remove(String stratum) {
+    Reservoir reservoir = m_reservoirs.remove(stratum);
+    if (reservoir == null) {
+      return null;
+    }
+    m_heldRows -= reservoir.m_sample.size();
+    if (reservoir.m_replaced) {
+      // drop nominal values that only occurred in rows that have since been replaced
+      reservoir.m_sample.compactDictionaries();
+    }
+
+    return reservoir.m_sample;
+  }
+
+  /**
+   * Return a buffer obtained from {@code remove()} for reuse by a later stratum
+   *
+   * @param buffer the buffer to reuse
+   */
+  public void recycle(ColumnarTrainingBuffer buffer) {
+    buffer.clear();
+    m_freeBuffers.push(buffer);
+  }
+
+  /**
+   * Discard all reservoirs
+   */
+  public void clear() {
+    m_reservoirs.clear();
+    m_freeBuffers.clear();
+    m_heldRows = 0;
+    m_effectiveReservoirSize = m_reservoirSize;
+  }
+}
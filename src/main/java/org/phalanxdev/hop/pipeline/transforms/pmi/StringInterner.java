@@ -0,0 +1,154 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.phalanxdev.hop.pipeline.transforms.pmi;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+
+/**
+ * Compact dictionary that assigns consecutive integer codes to distinct strings, in order of first
+ * occurrence. Uses an open-addressing table of codes (linear probing) over a plain array of values,
+ * so there are no per-entry objects or boxed integers.
+ *
+ * @author Mark Hall (mhall{[at]}waikato{[dot]}ac{[dot]}nz)
+ * @version $Revision: $
+ */
+public class StringInterner {
+
+  /**
+   * Hash table of codes + 1 (0 marks an empty slot). Length is always a power of two
+   */
+  protected int[] m_table = new int[16];
+
+  /**
+   * Values, indexed by code
+   */
+  protected String[] m_values = new String[8];
+
+  /**
+   * Number of distinct values
+   */
+  protected int m_size;
+
+  /**
+   * Get the code for a value, adding it if it has not been seen before
+   *
+   * @param value the value
+   * @return the code for the value
+   */
+  public int intern(String value) {
+    int mask = m_table.length - 1;
+    int slot = mix(value.hashCode()) & mask;
+    while (m_table[slot] != 0) {
+      int code = m_table[slot] - 1;
+      if (m_values[code].equals(value)) {
+        return code;
+      }
+      slot = (slot + 1) & mask;
+    }
+
+    int code = m_size++;
+    if (code == m_values.length) {
+      m_values = Arrays.copyOf(m_values, code * 2);
+    }
+    m_values[code] = value;
+    m_table[slot] = code + 1;
+    if (m_size * 2 > m_table.length) {
+      rehash(m_table.length * 2);
+    }
+
+    return code;
+  }
+
+  /**
+   * Get the code for a value
+   *
+   * @param value the value
+   * @return the code for the value, or -1 if the value has not been seen
+   */
+  public int lookup(String value) {
+    int mask = m_table.length - 1;
+    int slot = mix(value.hashCode()) & mask;
+    while (m_table[slot] != 0) {
+      int code = m_table[slot] - 1;
+      if (m_values[code].equals(value)) {
+        return code;
+      }
+      slot = (slot + 1) & mask;
+    }
+
+    return -1;
+  }
+
+  /**
+   * Get the value for a code
+   *
+   * @param code the code
+   * @return the value
+   */
+  public String get(int code) {
+    return m_values[code];
+  }
+
+  /**
+   * Get the number of distinct values
+   *
+   * @return the number of values
+   */
+  public int size() {
+    return m_size;
+  }
+
+  /**
+   * Get the distinct values in sorted order
+   *
+   * @return a sorted list of the values
+   */
+  public ArrayList<String> sortedValues() {
+    ArrayList<String> sorted = new ArrayList<>(Arrays.asList(m_values).subList(0, m_size));
+    Collections.sort(sorted);
+
+    return sorted;
+  }
+
+  /**
+   * Remove all values
+   */
+  public void clear() {
+    Arrays.fill(m_table, 0);
+    Arrays.fill(m_values, 0, m_size, null);
+    m_size = 0;
+  }
+
+  protected void rehash(int newLength) {
+    int[] table = new int[newLength];
+    int mask = newLength - 1;
+    for (int code = 0; code < m_size; code++) {
+      int slot = mix(m_values[code].hashCode()) & mask;
+      while (table[slot] != 0) {
+        slot = (slot + 1) & mask;
+      }
+      table[slot] = code + 1;
+    }
+    m_table = table;
+  }
+
+  protected static int mix(int hash) {
+    // spread the high bits into the low bits that index the table
+    return hash ^ (hash >>> 16);
+  }
+}
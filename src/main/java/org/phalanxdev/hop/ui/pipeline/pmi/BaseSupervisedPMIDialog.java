@@ -32,6 +32,8 @@ import org.apache.hop.pipeline.transform.ITransformDialog;
 import org.apache.hop.pipeline.transform.TransformMeta;
 import org.phalanxdev.hop.pipeline.transforms.pmi.BaseSupervisedPMIData;
 import org.phalanxdev.hop.pipeline.transforms.pmi.BaseSupervisedPMIMeta;
+import org.phalanxdev.hop.pipeline.transforms.pmi.RowCodec;
+import org.phalanxdev.hop.pipeline.transforms.pmi.SearchSpace;
 import org.phalanxdev.mi.Evaluator;
 import org.phalanxdev.mi.PMIEngine;
 import org.phalanxdev.mi.Scheme;
@@ -111,6 +113,18 @@ public class BaseSupervisedPMIDialog extends BaseTransformDialog implements ITra
   protected Composite m_configureComposite, m_fieldsComposite, m_schemeComposite, m_preprocessingComposite,
       m_evaluationComposite;
 
+  /**
+   * Performance tab - concurrency and memory related settings
+   */
+  protected CTabItem m_performanceTab;
+  protected Composite m_performanceComposite;
+
+  /**
+   * Search tab - hyperparameter search over scheme options
+   */
+  protected CTabItem m_searchTab;
+  protected Composite m_searchComposite;
+
   /**
    * Group for scheme parameter widgets
    */
@@ -151,6 +165,21 @@ public class BaseSupervisedPMIDialog extends BaseTransformDialog implements ITra
    */
   protected TextVar m_reservoirRandomSeedField;
 
+  /**
+   * Unsorted stratification input checkbox
+   */
+  protected Button m_unsortedStratificationBut;
+
+  /**
+   * Memory budget for buffered strata field
+   */
+  protected TextVar m_strataMemoryBudgetField;
+
+  /**
+   * Spill directory for buffered strata field
+   */
+  protected TextVar m_strataSpillDirectoryField;
+
   /**
    * Table for incoming fields & arff types
    */
@@ -255,11 +284,21 @@ public class BaseSupervisedPMIDialog extends BaseTransformDialog implements ITra
    */
   protected TextVar m_percentageSplitField;
 
+  /**
+   * Route rows to the training or test split as they arrive
+   */
+  protected Button m_streamPercentageSplitCheck;
+
   /**
    * Number of cross-validation folds to use
    */
   protected TextVar m_xValFoldsField;
 
+  /**
+   * Cross-validate incrementally trainable schemes on the stream
+   */
+  protected Button m_streamCrossValidationCheck;
+
   /**
    * Random seed to use for percentage split and x-val
    */
@@ -275,6 +314,106 @@ public class BaseSupervisedPMIDialog extends BaseTransformDialog implements ITra
    */
   protected Button m_outputIRMetricsCheck;
 
+  /**
+   * Number of worker threads for concurrent model building/evaluation
+   */
+  protected TextVar m_executionSlotsField;
+
+  /**
+   * Maximum number of cross-validation folds in flight
+   */
+  protected TextVar m_maxFoldsInFlightField;
+
+  /**
+   * Maximum number of strata in flight
+   */
+  protected TextVar m_maxStrataInFlightField;
+
+  /**
+   * Maximum number of batches (batch row handling) training in the background while the next batch is read
+   */
+  protected TextVar m_maxBatchesInFlightField;
+
+  /**
+   * Memory budget for training rows buffered when processing all rows
+   */
+  protected TextVar m_trainingMemoryBudgetField;
+
+  /**
+   * What to do when the training memory budget would be exceeded
+   */
+  protected ComboVar m_memoryBudgetPolicyDropDown;
+
+  /**
+   * Maximum number of training rows to hold per class value when processing all rows
+   */
+  protected TextVar m_classBalanceMaxRowsField;
+
+  /**
+   * Maximum number of training rows per class value, as a multiple of the rarest class
+   */
+  protected TextVar m_classBalanceMaxRatioField;
+
+  /**
+   * Re-weight balanced training instances by the inverse of their class's sampling rate
+   */
+  protected Button m_classBalanceReweightCheck;
+
+  /**
+   * Memory budget for separate test set rows buffered while training
+   */
+  protected TextVar m_testRowsMemoryBudgetField;
+
+  /**
+   * Number of rows per block for incremental training
+   */
+  protected TextVar m_incrementalBlockSizeField;
+
+  /**
+   * Evaluate whole blocks before updating (incremental training)
+   */
+  protected Button m_incrementalBlockEvaluationCheck;
+
+  /**
+   * How rows are represented as instances (automatic, dense or sparse)
+   */
+  protected ComboVar m_instanceRepresentationDropDown;
+
+  /**
+   * Merge duplicate training rows into weighted instances
+   */
+  protected Button m_compactDuplicateRowsCheck;
+
+  /**
+   * Number of iterations between checkpoints (resumable schemes)
+   */
+  protected TextVar m_checkpointIterationsField;
+
+  /**
+   * Output timing and memory metrics for each training phase
+   */
+  protected Button m_outputPhaseMetricsCheck;
+
+  /**
+   * Minimum number of seconds between checkpoints (resumable schemes)
+   */
+  protected TextVar m_checkpointIntervalField;
+
+  /**
+   * Early stopping options (resumable schemes)
+   */
+  protected Button m_earlyStoppingBut;
+  protected TextVar m_earlyStoppingValidationPercentField;
+  protected TextVar m_earlyStoppingIntervalField;
+  protected TextVar m_earlyStoppingPatienceField;
+
+  /**
+   * Hyperparameter search options
+   */
+  protected ComboVar m_searchModeDropDown;
+  protected TextVar m_searchCandidatesField;
+  protected Text m_searchSpaceField;
+
   /**
    * Resample can be supervised or unsupervised - we have to switch based on the selected class type
    */
@@ -377,6 +516,8 @@ public class BaseSupervisedPMIDialog extends BaseTransformDialog implements ITra
     addSchemeTab();
     addPreprocessingTab();
     addEvaluationTab();
+    addPerformanceTab();
+    addSearchTab();
 
     FormData fd = new FormData();
     fd.left = new FormAttachment( 0, 0 );
@@ -448,6 +589,9 @@ public class BaseSupervisedPMIDialog extends BaseTransformDialog implements ITra
     meta.setUseReservoirSampling( m_reservoirSamplingBut.getSelection() );
     meta.setReservoirSize( m_reservoirSizeField.getText() );
     meta.setRandomSeedReservoirSampling( m_reservoirRandomSeedField.getText() );
+    meta.setUnsortedStratification( m_unsortedStratificationBut.getSelection() );
+    meta.setStrataMemoryBudget( m_strataMemoryBudgetField.getText() );
+    meta.setStrataSpillDirectory( m_strataSpillDirectoryField.getText() );
 
     meta.setTrainingStepInputName( m_trainingStepDropDown.getText() );
     if ( m_evalModeDropDown.getText().equalsIgnoreCase( Evaluator.EvalMode.SEPARATE_TEST_SET.toString() ) ) {
@@ -482,10 +626,18 @@ public class BaseSupervisedPMIDialog extends BaseTransformDialog implements ITra
       int hopType = ValueMetaFactory.getIdForValueMeta( item.getText( 2 ) );
       int arffType = getArffTypeInt( item.getText( 3 ) );
       String nomVals = item.getText( 4 );
+      String hashBuckets = item.getText( 5 );
       ArffMeta newArffMeta = new ArffMeta( fieldName, hopType, arffType );
       if ( !org.apache.hop.core.util.Utils.isEmpty( nomVals ) ) {
         newArffMeta.setNominalVals( nomVals );
       }
+      if ( !org.apache.hop.core.util.Utils.isEmpty( hashBuckets ) ) {
+        try {
+          newArffMeta.setHashBuckets( Integer.parseInt( hashBuckets.trim() ) );
+        } catch ( NumberFormatException e ) {
+          // leave at the default
+        }
+      }
       userFields.add( newArffMeta );
     }
     meta.setFieldMetadata( userFields );
@@ -522,11 +674,49 @@ public class BaseSupervisedPMIDialog extends BaseTransformDialog implements ITra
     meta.setEvalMode( toSet );
 
     meta.setXValFolds( m_xValFoldsField.getText() );
+    meta.setStreamCrossValidation( m_streamCrossValidationCheck.getSelection() );
     meta.setPercentageSplit( m_percentageSplitField.getText() );
+    meta.setStreamPercentageSplit( m_streamPercentageSplitCheck.getSelection() );
     meta.setRandomSeed( m_randomSeedField.getText() );
     meta.setOutputAUCMetrics( m_outputAUCMetricsCheck.getSelection() );
     meta.setOutputIRMetrics( m_outputIRMetricsCheck.getSelection() );
 
+    // Performance
+    meta.setNumExecutionSlots( m_executionSlotsField.getText() );
+    meta.setMaxFoldsInFlight( m_maxFoldsInFlightField.getText() );
+    meta.setMaxStrataInFlight( m_maxStrataInFlightField.getText() );
+    meta.setMaxBatchesInFlight( m_maxBatchesInFlightField.getText() );
+    meta.setTrainingMemoryBudget( m_trainingMemoryBudgetField.getText() );
+    for ( BaseSupervisedPMIData.MemoryBudgetPolicy p : BaseSupervisedPMIData.MemoryBudgetPolicy.values() ) {
+      if ( p.toString().equalsIgnoreCase( m_memoryBudgetPolicyDropDown.getText() ) ) {
+        meta.setMemoryBudgetPolicy( p );
+      }
+    }
+    meta.setClassBalanceMaxRows( m_classBalanceMaxRowsField.getText() );
+    meta.setClassBalanceMaxRatio( m_classBalanceMaxRatioField.getText() );
+    meta.setClassBalanceReweight( m_classBalanceReweightCheck.getSelection() );
+    meta.setTestRowsMemoryBudget( m_testRowsMemoryBudgetField.getText() );
+    meta.setIncrementalBlockSize( m_incrementalBlockSizeField.getText() );
+    meta.setIncrementalBlockEvaluation( m_incrementalBlockEvaluationCheck.getSelection() );
+    for ( RowCodec.Representation r : RowCodec.Representation.values() ) {
+      if ( r.toString().equalsIgnoreCase( m_instanceRepresentationDropDown.getText() ) ) {
+        meta.setInstanceRepresentation( r );
+      }
+    }
+    meta.setCompactDuplicateRows( m_compactDuplicateRowsCheck.getSelection() );
+    meta.setOutputPhaseMetrics( m_outputPhaseMetricsCheck.getSelection() );
+    meta.setCheckpointIterations( m_checkpointIterationsField.getText() );
+    meta.setCheckpointInterval( m_checkpointIntervalField.getText() );
+    meta.setEarlyStopping( m_earlyStoppingBut.getSelection() );
+    meta.setEarlyStoppingValidationPercent( m_earlyStoppingValidationPercentField.getText() );
+    meta.setEarlyStoppingInterval( m_earlyStoppingIntervalField.getText() );
+    meta.setEarlyStoppingPatience( m_earlyStoppingPatienceField.getText() );
+
+    // Search
+    meta.setSearchMode( m_searchModeDropDown.getText() );
+    meta.setSearchCandidates( m_searchCandidatesField.getText() );
+    meta.setSearchSpace( m_searchSpaceField.getText() );
+
     // Algorithm options - populates the 'properties' map from the widgets and then sets these
     // values on the scheme itself
     GOEDialog.widgetValuesToPropsMap( m_scheme, m_topLevelSchemeInfo, m_schemeWidgets );
@@ -565,6 +755,9 @@ public class BaseSupervisedPMIDialog extends BaseTransformDialog implements ITra
     if ( arffType.equalsIgnoreCase( "String" ) ) { //$NON-NLS-1$
       return ArffMeta.STRING;
     }
+    if ( arffType.equalsIgnoreCase( "Hashed nominal" ) ) { //$NON-NLS-1$
+      return ArffMeta.HASHED_NOMINAL;
+    }
     return ArffMeta.DATE;
   }
 
@@ -588,6 +781,9 @@ public class BaseSupervisedPMIDialog extends BaseTransformDialog implements ITra
     m_reservoirSamplingBut.setSelection( meta.getUseReservoirSampling() );
     m_reservoirSizeField.setText( meta.getReservoirSize() );
     m_reservoirRandomSeedField.setText( meta.getRandomSeedReservoirSampling() );
+    m_unsortedStratificationBut.setSelection( meta.getUnsortedStratification() );
+    m_strataMemoryBudgetField.setText( meta.getStrataMemoryBudget() );
+    m_strataSpillDirectoryField.setText( meta.getStrataSpillDirectory() );
 
     m_trainingStepDropDown.setText( meta.getTrainingStepInputName() );
     m_testStepDropDown.setText( meta.getTestingStepInputName() );
@@ -606,6 +802,9 @@ public class BaseSupervisedPMIDialog extends BaseTransformDialog implements ITra
         if ( !org.apache.hop.core.util.Utils.isEmpty( m.getNominalVals() ) ) {
           item.setText( 4, m.getNominalVals() );
         }
+        if ( m.getArffType() == ArffMeta.HASHED_NOMINAL ) {
+          item.setText( 5, "" + m.getHashBuckets() );
+        }
       }
 
       m_fieldsTable.removeEmptyRows();
@@ -643,11 +842,39 @@ public class BaseSupervisedPMIDialog extends BaseTransformDialog implements ITra
 
     // Evaluation
     m_xValFoldsField.setText( meta.getXValFolds() );
+    m_streamCrossValidationCheck.setSelection( meta.getStreamCrossValidation() );
     m_percentageSplitField.setText( meta.getPercentageSplit() );
+    m_streamPercentageSplitCheck.setSelection( meta.getStreamPercentageSplit() );
     m_randomSeedField.setText( meta.getRandomSeed() );
     m_outputAUCMetricsCheck.setSelection( meta.getOutputAUCMetrics() );
     m_outputIRMetricsCheck.setSelection( meta.getOutputIRMetrics() );
 
+    // Performance
+    m_executionSlotsField.setText( meta.getNumExecutionSlots() );
+    m_maxFoldsInFlightField.setText( meta.getMaxFoldsInFlight() );
+    m_maxStrataInFlightField.setText( meta.getMaxStrataInFlight() );
+    m_maxBatchesInFlightField.setText( meta.getMaxBatchesInFlight() );
+    m_trainingMemoryBudgetField.setText( meta.getTrainingMemoryBudget() );
+    m_memoryBudgetPolicyDropDown.setText( meta.getMemoryBudgetPolicy().toString().toLowerCase() );
+    m_classBalanceMaxRowsField.setText( meta.getClassBalanceMaxRows() );
+    m_classBalanceMaxRatioField.setText( meta.getClassBalanceMaxRatio() );
+    m_classBalanceReweightCheck.setSelection( meta.getClassBalanceReweight() );
+    m_testRowsMemoryBudgetField.setText( meta.getTestRowsMemoryBudget() );
+    m_incrementalBlockSizeField.setText( meta.getIncrementalBlockSize() );
+    m_incrementalBlockEvaluationCheck.setSelection( meta.getIncrementalBlockEvaluation() );
+    m_instanceRepresentationDropDown.setText( meta.getInstanceRepresentation().toString().toLowerCase() );
+    m_compactDuplicateRowsCheck.setSelection( meta.getCompactDuplicateRows() );
+    m_outputPhaseMetricsCheck.setSelection( meta.getOutputPhaseMetrics() );
+    m_checkpointIterationsField.setText( meta.getCheckpointIterations() );
+    m_checkpointIntervalField.setText( meta.getCheckpointInterval() );
+    m_earlyStoppingBut.setSelection( meta.getEarlyStopping() );
+    m_earlyStoppingValidationPercentField.setText( meta.getEarlyStoppingValidationPercent() );
+    m_earlyStoppingIntervalField.setText( meta.getEarlyStoppingInterval() );
+    m_earlyStoppingPatienceField.setText( meta.getEarlyStoppingPatience() );
+    m_searchModeDropDown.setText( meta.getSearchMode() );
+    m_searchCandidatesField.setText( meta.getSearchCandidates() );
+    m_searchSpaceField.setText( meta.getSearchSpace() );
+
     return engineOK;
   }
 
@@ -799,6 +1026,7 @@ public class BaseSupervisedPMIDialog extends BaseTransformDialog implements ITra
         super.widgetSelected( selectionEvent );
         m_inputMeta.setChanged();
         handleRowsToProcessChange();
+        handleReservoirSamplingChange();
       }
     } );
     m_rowsToProcessDropDown.setLayoutData( getFirstPromptFormData( rowsToProcLab ) );
@@ -875,6 +1103,55 @@ public class BaseSupervisedPMIDialog extends BaseTransformDialog implements ITra
     m_reservoirRandomSeedField.setEnabled( true );
     lastControl = m_reservoirRandomSeedField;
 
+    // unsorted stratification
+    Label unsortedStratificationLab = new Label( rowGroup, SWT.RIGHT );
+    props.setLook( unsortedStratificationLab );
+    unsortedStratificationLab
+        .setText( BaseMessages.getString( PKG, "BasePMIStepDialog.UnsortedStratification.Label" ) );
+    unsortedStratificationLab.setLayoutData( getFirstLabelFormData() );
+
+    m_unsortedStratificationBut = new Button( rowGroup, SWT.CHECK );
+    props.setLook( m_unsortedStratificationBut );
+    fd = getFirstPromptFormData( unsortedStratificationLab );
+    fd.right = null;
+    m_unsortedStratificationBut.setLayoutData( fd );
+    m_unsortedStratificationBut.addSelectionListener( new SelectionAdapter() {
+      @Override public void widgetSelected( SelectionEvent selectionEvent ) {
+        super.widgetSelected( selectionEvent );
+        m_inputMeta.setChanged();
+        m_strataMemoryBudgetField.setEnabled( m_unsortedStratificationBut.getSelection() );
+      }
+    } );
+    m_unsortedStratificationBut
+        .setToolTipText( BaseMessages.getString( PKG, "BasePMIStepDialog.UnsortedStratification.TipText" ) );
+
+    Label strataMemoryBudgetLab = new Label( rowGroup, SWT.RIGHT );
+    props.setLook( strataMemoryBudgetLab );
+    strataMemoryBudgetLab.setText( BaseMessages.getString( PKG, "BasePMIStepDialog.StrataMemoryBudget.Label" ) );
+    strataMemoryBudgetLab.setLayoutData( getSecondLabelFormData( m_unsortedStratificationBut ) );
+
+    m_strataMemoryBudgetField = new TextVar( variables, rowGroup, SWT.SINGLE | SWT.LEFT | SWT.BORDER );
+    props.setLook( m_strataMemoryBudgetField );
+    m_strataMemoryBudgetField
+        .setToolTipText( BaseMessages.getString( PKG, "BasePMIStepDialog.StrataMemoryBudget.TipText" ) );
+    m_strataMemoryBudgetField.setLayoutData( getSecondPromptFormData( strataMemoryBudgetLab ) );
+    m_strataMemoryBudgetField.addModifyListener( m_simpleModifyListener );
+    lastControl = m_strataMemoryBudgetField;
+
+    Label strataSpillDirectoryLab = new Label( rowGroup, SWT.RIGHT );
+    props.setLook( strataSpillDirectoryLab );
+    strataSpillDirectoryLab
+        .setText( BaseMessages.getString( PKG, "BasePMIStepDialog.StrataSpillDirectory.Label" ) );
+    strataSpillDirectoryLab.setLayoutData( getFirstLabelFormData() );
+
+    m_strataSpillDirectoryField = new TextVar( variables, rowGroup, SWT.SINGLE | SWT.LEAD | SWT.BORDER );
+    props.setLook( m_strataSpillDirectoryField );
+    m_strataSpillDirectoryField
+        .setToolTipText( BaseMessages.getString( PKG, "BasePMIStepDialog.StrataSpillDirectory.TipText" ) );
+    m_strataSpillDirectoryField.setLayoutData( getFirstPromptFormData( strataSpillDirectoryLab ) );
+    m_strataSpillDirectoryField.addModifyListener( m_simpleModifyListener );
+    lastControl = m_strataSpillDirectoryField;
+
     fd = new FormData();
     fd.left = new FormAttachment( 0, 0 );
     fd.top = new FormAttachment( 0, 0 );
@@ -1019,15 +1296,20 @@ public class BaseSupervisedPMIDialog extends BaseTransformDialog implements ITra
             new ColumnInfo( BaseMessages.getString( PKG, "BasePMIStepDialog.OutputFieldsColumn.ArffType" ),
                 ColumnInfo.COLUMN_TYPE_CCOMBO, true ),
             new ColumnInfo( BaseMessages.getString( PKG, "BasePMIStepFlowDialog.OutputFieldsColumn.NomVals" ),
+                ColumnInfo.COLUMN_TYPE_TEXT, false ),
+            new ColumnInfo( BaseMessages.getString( PKG, "BasePMIStepDialog.OutputFieldsColumn.HashBuckets" ),
                 ColumnInfo.COLUMN_TYPE_TEXT, false ) };
     colinf[0].setReadOnly( true );
     colinf[1].setReadOnly( true );
     colinf[2].setReadOnly( false );
     colinf[3].setReadOnly( false );
+    colinf[4].setReadOnly( false );
+    colinf[4].setToolTip( BaseMessages.getString( PKG, "BasePMIStepDialog.OutputFieldsColumn.HashBuckets.TipText" ) );
 
     colinf[2].setComboValues( new String[] { BaseMessages.getString( PKG, "PMIScoringDialog.attributeType.Numeric" ),
         BaseMessages.getString( PKG, "PMIScoringDialog.attributeType.Nominal" ),
-        BaseMessages.getString( PKG, "PMIScoringDialog.attributeType.String" ) } );
+        BaseMessages.getString( PKG, "PMIScoringDialog.attributeType.String" ),
+        BaseMessages.getString( PKG, "PMIScoringDialog.attributeType.HashedNominal" ) } );
 
     m_fieldsTable =
         new TableView( variables, m_fieldsComposite, SWT.BORDER | SWT.FULL_SELECTION | SWT.MULTI, colinf, fieldsRows,
@@ -1871,6 +2153,24 @@ public class BaseSupervisedPMIDialog extends BaseTransformDialog implements ITra
     m_xValFoldsField.setLayoutData( getFirstPromptFormData( crossValLabel ) );
     lastControl = m_xValFoldsField;
 
+    Label streamCrossValidationLab = new Label( m_evaluationComposite, SWT.RIGHT );
+    props.setLook( streamCrossValidationLab );
+    streamCrossValidationLab.setText( BaseMessages.getString( PKG, "BasePMIStepDialog.StreamCrossValidation.Label" ) );
+    streamCrossValidationLab
+        .setToolTipText( BaseMessages.getString( PKG, "BasePMIStepDialog.StreamCrossValidation.TipText" ) );
+    streamCrossValidationLab.setLayoutData( getFirstLabelFormData() );
+
+    m_streamCrossValidationCheck = new Button( m_evaluationComposite, SWT.CHECK );
+    props.setLook( m_streamCrossValidationCheck );
+    m_streamCrossValidationCheck.setLayoutData( getFirstPromptFormData( streamCrossValidationLab ) );
+    m_streamCrossValidationCheck.addSelectionListener( new SelectionAdapter() {
+      @Override public void widgetSelected( SelectionEvent selectionEvent ) {
+        super.widgetSelected( selectionEvent );
+        m_inputMeta.setChanged();
+      }
+    } );
+    lastControl = m_streamCrossValidationCheck;
+
     Label percentageSplitLabel = new Label( m_evaluationComposite, SWT.RIGHT );
     props.setLook( percentageSplitLabel );
     percentageSplitLabel.setText( BaseMessages.getString( PKG, "BasePMIStepDialog.PercentageSplit.Label" ) );
@@ -1882,6 +2182,24 @@ public class BaseSupervisedPMIDialog extends BaseTransformDialog implements ITra
     m_percentageSplitField.setLayoutData( getFirstPromptFormData( percentageSplitLabel ) );
     lastControl = m_percentageSplitField;
 
+    Label streamPercentageSplitLab = new Label( m_evaluationComposite, SWT.RIGHT );
+    props.setLook( streamPercentageSplitLab );
+    streamPercentageSplitLab.setText( BaseMessages.getString( PKG, "BasePMIStepDialog.StreamPercentageSplit.Label" ) );
+    streamPercentageSplitLab
+        .setToolTipText( BaseMessages.getString( PKG, "BasePMIStepDialog.StreamPercentageSplit.TipText" ) );
+    streamPercentageSplitLab.setLayoutData( getFirstLabelFormData() );
+
+    m_streamPercentageSplitCheck = new Button( m_evaluationComposite, SWT.CHECK );
+    props.setLook( m_streamPercentageSplitCheck );
+    m_streamPercentageSplitCheck.setLayoutData( getFirstPromptFormData( streamPercentageSplitLab ) );
+    m_streamPercentageSplitCheck.addSelectionListener( new SelectionAdapter() {
+      @Override public void widgetSelected( SelectionEvent selectionEvent ) {
+        super.widgetSelected( selectionEvent );
+        m_inputMeta.setChanged();
+      }
+    } );
+    lastControl = m_streamPercentageSplitCheck;
+
     Label randomSeedLab = new Label( m_evaluationComposite, SWT.RIGHT );
     props.setLook( randomSeedLab );
     randomSeedLab.setText( BaseMessages.getString( PKG, "BasePMIStepDialog.RandomSeed.Label" ) );
@@ -1925,6 +2243,434 @@ public class BaseSupervisedPMIDialog extends BaseTransformDialog implements ITra
     m_evaluationTab.setControl( m_evaluationComposite );
   }
 
+  protected void addPerformanceTab() {
+    m_performanceTab = new CTabItem( m_container, SWT.NONE );
+    m_performanceTab.setText( BaseMessages.getString( PKG, "BasePMIStep.PerformanceTab.Title" ) );
+
+    m_performanceComposite = new Composite( m_container, SWT.NONE );
+    props.setLook( m_performanceComposite );
+
+    FormLayout fl = new FormLayout();
+    fl.marginHeight = 3;
+    fl.marginWidth = 3;
+    m_performanceComposite.setLayout( fl );
+
+    Label executionSlotsLab = new Label( m_performanceComposite, SWT.RIGHT );
+    props.setLook( executionSlotsLab );
+    executionSlotsLab.setText( BaseMessages.getString( PKG, "BasePMIStepDialog.ExecutionSlots.Label" ) );
+    executionSlotsLab.setToolTipText( BaseMessages.getString( PKG, "BasePMIStepDialog.ExecutionSlots.TipText" ) );
+    lastControl = null;
+    executionSlotsLab.setLayoutData( getFirstLabelFormData() );
+
+    m_executionSlotsField = new TextVar( variables, m_performanceComposite, SWT.SINGLE | SWT.LEAD | SWT.BORDER );
+    props.setLook( m_executionSlotsField );
+    m_executionSlotsField.setLayoutData( getFirstPromptFormData( executionSlotsLab ) );
+    m_executionSlotsField.addModifyListener( m_simpleModifyListener );
+    lastControl = m_executionSlotsField;
+
+    Label maxFoldsInFlightLab = new Label( m_performanceComposite, SWT.RIGHT );
+    props.setLook( maxFoldsInFlightLab );
+    maxFoldsInFlightLab.setText( BaseMessages.getString( PKG, "BasePMIStepDialog.MaxFoldsInFlight.Label" ) );
+    maxFoldsInFlightLab.setToolTipText( BaseMessages.getString( PKG, "BasePMIStepDialog.MaxFoldsInFlight.TipText" ) );
+    maxFoldsInFlightLab.setLayoutData( getFirstLabelFormData() );
+
+    m_maxFoldsInFlightField = new TextVar( variables, m_performanceComposite, SWT.SINGLE | SWT.LEAD | SWT.BORDER );
+    props.setLook( m_maxFoldsInFlightField );
+    m_maxFoldsInFlightField.setLayoutData( getFirstPromptFormData( maxFoldsInFlightLab ) );
+    m_maxFoldsInFlightField.addModifyListener( m_simpleModifyListener );
+    lastControl = m_maxFoldsInFlightField;
+
+    Label maxStrataInFlightLab = new Label( m_performanceComposite, SWT.RIGHT );
+    props.setLook( maxStrataInFlightLab );
+    maxStrataInFlightLab.setText( BaseMessages.getString( PKG, "BasePMIStepDialog.MaxStrataInFlight.Label" ) );
+    maxStrataInFlightLab
+        .setToolTipText( BaseMessages.getString( PKG, "BasePMIStepDialog.MaxStrataInFlight.TipText" ) );
+    maxStrataInFlightLab.setLayoutData( getFirstLabelFormData() );
+
+    m_maxStrataInFlightField = new TextVar( variables, m_performanceComposite, SWT.SINGLE | SWT.LEAD | SWT.BORDER );
+    props.setLook( m_maxStrataInFlightField );
+    m_maxStrataInFlightField.setLayoutData( getFirstPromptFormData( maxStrataInFlightLab ) );
+    m_maxStrataInFlightField.addModifyListener( m_simpleModifyListener );
+    lastControl = m_maxStrataInFlightField;
+
+    Label maxBatchesInFlightLab = new Label( m_performanceComposite, SWT.RIGHT );
+    props.setLook( maxBatchesInFlightLab );
+    maxBatchesInFlightLab.setText( BaseMessages.getString( PKG, "BasePMIStepDialog.MaxBatchesInFlight.Label" ) );
+    maxBatchesInFlightLab
+        .setToolTipText( BaseMessages.getString( PKG, "BasePMIStepDialog.MaxBatchesInFlight.TipText" ) );
+    maxBatchesInFlightLab.setLayoutData( getFirstLabelFormData() );
+
+    m_maxBatchesInFlightField = new TextVar( variables, m_performanceComposite, SWT.SINGLE | SWT.LEAD | SWT.BORDER );
+    props.setLook( m_maxBatchesInFlightField );
+    m_maxBatchesInFlightField.setLayoutData( getFirstPromptFormData( maxBatchesInFlightLab ) );
+    m_maxBatchesInFlightField.addModifyListener( m_simpleModifyListener );
+    lastControl = m_maxBatchesInFlightField;
+
+    Label trainingMemoryBudgetLab = new Label( m_performanceComposite, SWT.RIGHT );
+    props.setLook( trainingMemoryBudgetLab );
+    trainingMemoryBudgetLab.setText( BaseMessages.getString( PKG, "BasePMIStepDialog.TrainingMemoryBudget.Label" ) );
+    trainingMemoryBudgetLab
+        .setToolTipText( BaseMessages.getString( PKG, "BasePMIStepDialog.TrainingMemoryBudget.TipText" ) );
+    trainingMemoryBudgetLab.setLayoutData( getFirstLabelFormData() );
+
+    m_trainingMemoryBudgetField =
+        new TextVar( variables, m_performanceComposite, SWT.SINGLE | SWT.LEAD | SWT.BORDER );
+    props.setLook( m_trainingMemoryBudgetField );
+    m_trainingMemoryBudgetField.setLayoutData( getFirstPromptFormData( trainingMemoryBudgetLab ) );
+    m_trainingMemoryBudgetField.addModifyListener( m_simpleModifyListener );
+    lastControl = m_trainingMemoryBudgetField;
+
+    Label memoryBudgetPolicyLab = new Label( m_performanceComposite, SWT.RIGHT );
+    props.setLook( memoryBudgetPolicyLab );
+    memoryBudgetPolicyLab.setText( BaseMessages.getString( PKG, "BasePMIStepDialog.MemoryBudgetPolicy.Label" ) );
+    memoryBudgetPolicyLab
+        .setToolTipText( BaseMessages.getString( PKG, "BasePMIStepDialog.MemoryBudgetPolicy.TipText" ) );
+    memoryBudgetPolicyLab.setLayoutData( getFirstLabelFormData() );
+
+    m_memoryBudgetPolicyDropDown = new ComboVar( variables, m_performanceComposite, SWT.BORDER | SWT.READ_ONLY );
+    props.setLook( m_memoryBudgetPolicyDropDown );
+    for ( BaseSupervisedPMIData.MemoryBudgetPolicy p : BaseSupervisedPMIData.MemoryBudgetPolicy.values() ) {
+      m_memoryBudgetPolicyDropDown.add( p.toString().toLowerCase() );
+    }
+    m_memoryBudgetPolicyDropDown.setLayoutData( getFirstPromptFormData( memoryBudgetPolicyLab ) );
+    m_memoryBudgetPolicyDropDown.addModifyListener( m_simpleModifyListener );
+    lastControl = m_memoryBudgetPolicyDropDown;
+
+    Label classBalanceMaxRowsLab = new Label( m_performanceComposite, SWT.RIGHT );
+    props.setLook( classBalanceMaxRowsLab );
+    classBalanceMaxRowsLab.setText( BaseMessages.getString( PKG, "BasePMIStepDialog.ClassBalanceMaxRows.Label" ) );
+    classBalanceMaxRowsLab
+        .setToolTipText( BaseMessages.getString( PKG, "BasePMIStepDialog.ClassBalanceMaxRows.TipText" ) );
+    classBalanceMaxRowsLab.setLayoutData( getFirstLabelFormData() );
+
+    m_classBalanceMaxRowsField =
+        new TextVar( variables, m_performanceComposite, SWT.SINGLE | SWT.LEAD | SWT.BORDER );
+    props.setLook( m_classBalanceMaxRowsField );
+    m_classBalanceMaxRowsField.setLayoutData( getFirstPromptFormData( classBalanceMaxRowsLab ) );
+    m_classBalanceMaxRowsField.addModifyListener( m_simpleModifyListener );
+    lastControl = m_classBalanceMaxRowsField;
+
+    Label classBalanceMaxRatioLab = new Label( m_performanceComposite, SWT.RIGHT );
+    props.setLook( classBalanceMaxRatioLab );
+    classBalanceMaxRatioLab.setText( BaseMessages.getString( PKG, "BasePMIStepDialog.ClassBalanceMaxRatio.Label" ) );
+    classBalanceMaxRatioLab
+        .setToolTipText( BaseMessages.getString( PKG, "BasePMIStepDialog.ClassBalanceMaxRatio.TipText" ) );
+    classBalanceMaxRatioLab.setLayoutData( getFirstLabelFormData() );
+
+    m_classBalanceMaxRatioField =
+        new TextVar( variables, m_performanceComposite, SWT.SINGLE | SWT.LEAD | SWT.BORDER );
+    props.setLook( m_classBalanceMaxRatioField );
+    m_classBalanceMaxRatioField.setLayoutData( getFirstPromptFormData( classBalanceMaxRatioLab ) );
+    m_classBalanceMaxRatioField.addModifyListener( m_simpleModifyListener );
+    lastControl = m_classBalanceMaxRatioField;
+
+    Label classBalanceReweightLab = new Label( m_performanceComposite, SWT.RIGHT );
+    props.setLook( classBalanceReweightLab );
+    classBalanceReweightLab.setText( BaseMessages.getString( PKG, "BasePMIStepDialog.ClassBalanceReweight.Label" ) );
+    classBalanceReweightLab
+        .setToolTipText( BaseMessages.getString( PKG, "BasePMIStepDialog.ClassBalanceReweight.TipText" ) );
+    classBalanceReweightLab.setLayoutData( getFirstLabelFormData() );
+
+    m_classBalanceReweightCheck = new Button( m_performanceComposite, SWT.CHECK );
+    props.setLook( m_classBalanceReweightCheck );
+    m_classBalanceReweightCheck.setLayoutData( getFirstPromptFormData( classBalanceReweightLab ) );
+    m_classBalanceReweightCheck.addSelectionListener( new SelectionAdapter() {
+      @Override public void widgetSelected( SelectionEvent selectionEvent ) {
+        super.widgetSelected( selectionEvent );
+        m_inputMeta.setChanged();
+      }
+    } );
+    lastControl = m_classBalanceReweightCheck;
+
+    Label testRowsMemoryBudgetLab = new Label( m_performanceComposite, SWT.RIGHT );
+    props.setLook( testRowsMemoryBudgetLab );
+    testRowsMemoryBudgetLab.setText( BaseMessages.getString( PKG, "BasePMIStepDialog.TestRowsMemoryBudget.Label" ) );
+    testRowsMemoryBudgetLab
+        .setToolTipText( BaseMessages.getString( PKG, "BasePMIStepDialog.TestRowsMemoryBudget.TipText" ) );
+    testRowsMemoryBudgetLab.setLayoutData( getFirstLabelFormData() );
+
+    m_testRowsMemoryBudgetField =
+        new TextVar( variables, m_performanceComposite, SWT.SINGLE | SWT.LEAD | SWT.BORDER );
+    props.setLook( m_testRowsMemoryBudgetField );
+    m_testRowsMemoryBudgetField.setLayoutData( getFirstPromptFormData( testRowsMemoryBudgetLab ) );
+    m_testRowsMemoryBudgetField.addModifyListener( m_simpleModifyListener );
+    lastControl = m_testRowsMemoryBudgetField;
+
+    Label incrementalBlockSizeLab = new Label( m_performanceComposite, SWT.RIGHT );
+    props.setLook( incrementalBlockSizeLab );
+    incrementalBlockSizeLab.setText( BaseMessages.getString( PKG, "BasePMIStepDialog.IncrementalBlockSize.Label" ) );
+    incrementalBlockSizeLab
+        .setToolTipText( BaseMessages.getString( PKG, "BasePMIStepDialog.IncrementalBlockSize.TipText" ) );
+    incrementalBlockSizeLab.setLayoutData( getFirstLabelFormData() );
+
+    m_incrementalBlockSizeField =
+        new TextVar( variables, m_performanceComposite, SWT.SINGLE | SWT.LEAD | SWT.BORDER );
+    props.setLook( m_incrementalBlockSizeField );
+    m_incrementalBlockSizeField.setLayoutData( getFirstPromptFormData( incrementalBlockSizeLab ) );
+    m_incrementalBlockSizeField.addModifyListener( m_simpleModifyListener );
+    lastControl = m_incrementalBlockSizeField;
+
+    Label incrementalBlockEvaluationLab = new Label( m_performanceComposite, SWT.RIGHT );
+    props.setLook( incrementalBlockEvaluationLab );
+    incrementalBlockEvaluationLab
+        .setText( BaseMessages.getString( PKG, "BasePMIStepDialog.IncrementalBlockEvaluation.Label" ) );
+    incrementalBlockEvaluationLab
+        .setToolTipText( BaseMessages.getString( PKG, "BasePMIStepDialog.IncrementalBlockEvaluation.TipText" ) );
+    incrementalBlockEvaluationLab.setLayoutData( getFirstLabelFormData() );
+
+    m_incrementalBlockEvaluationCheck = new Button( m_performanceComposite, SWT.CHECK );
+    props.setLook( m_incrementalBlockEvaluationCheck );
+    m_incrementalBlockEvaluationCheck.setLayoutData( getFirstPromptFormData( incrementalBlockEvaluationLab ) );
+    m_incrementalBlockEvaluationCheck.addSelectionListener( new SelectionAdapter() {
+      @Override public void widgetSelected( SelectionEvent selectionEvent ) {
+        super.widgetSelected( selectionEvent );
+        m_inputMeta.setChanged();
+      }
+    } );
+    lastControl = m_incrementalBlockEvaluationCheck;
+
+    Label instanceRepresentationLab = new Label( m_performanceComposite, SWT.RIGHT );
+    props.setLook( instanceRepresentationLab );
+    instanceRepresentationLab
+        .setText( BaseMessages.getString( PKG, "BasePMIStepDialog.InstanceRepresentation.Label" ) );
+    instanceRepresentationLab
+        .setToolTipText( BaseMessages.getString( PKG, "BasePMIStepDialog.InstanceRepresentation.TipText" ) );
+    instanceRepresentationLab.setLayoutData( getFirstLabelFormData() );
+
+    m_instanceRepresentationDropDown =
+        new ComboVar( variables, m_performanceComposite, SWT.BORDER | SWT.READ_ONLY );
+    props.setLook( m_instanceRepresentationDropDown );
+    for ( RowCodec.Representation r : RowCodec.Representation.values() ) {
+      m_instanceRepresentationDropDown.add( r.toString().toLowerCase() );
+    }
+    m_instanceRepresentationDropDown.setLayoutData( getFirstPromptFormData( instanceRepresentationLab ) );
+    m_instanceRepresentationDropDown.addModifyListener( m_simpleModifyListener );
+    lastControl = m_instanceRepresentationDropDown;
+
+    Label compactDuplicateRowsLab = new Label( m_performanceComposite, SWT.RIGHT );
+    props.setLook( compactDuplicateRowsLab );
+    compactDuplicateRowsLab.setText( BaseMessages.getString( PKG, "BasePMIStepDialog.CompactDuplicateRows.Label" ) );
+    compactDuplicateRowsLab
+        .setToolTipText( BaseMessages.getString( PKG, "BasePMIStepDialog.CompactDuplicateRows.TipText" ) );
+    compactDuplicateRowsLab.setLayoutData( getFirstLabelFormData() );
+
+    m_compactDuplicateRowsCheck = new Button( m_performanceComposite, SWT.CHECK );
+    props.setLook( m_compactDuplicateRowsCheck );
+    m_compactDuplicateRowsCheck.setLayoutData( getFirstPromptFormData( compactDuplicateRowsLab ) );
+    m_compactDuplicateRowsCheck.addSelectionListener( new SelectionAdapter() {
+      @Override public void widgetSelected( SelectionEvent selectionEvent ) {
+        super.widgetSelected( selectionEvent );
+        m_inputMeta.setChanged();
+      }
+    } );
+    lastControl = m_compactDuplicateRowsCheck;
+
+    Label outputPhaseMetricsLab = new Label( m_performanceComposite, SWT.RIGHT );
+    props.setLook( outputPhaseMetricsLab );
+    outputPhaseMetricsLab.setText( BaseMessages.getString( PKG, "BasePMIStepDialog.OutputPhaseMetrics.Label" ) );
+    outputPhaseMetricsLab
+        .setToolTipText( BaseMessages.getString( PKG, "BasePMIStepDialog.OutputPhaseMetrics.TipText" ) );
+    outputPhaseMetricsLab.setLayoutData( getFirstLabelFormData() );
+
+    m_outputPhaseMetricsCheck = new Button( m_performanceComposite, SWT.CHECK );
+    props.setLook( m_outputPhaseMetricsCheck );
+    m_outputPhaseMetricsCheck.setLayoutData( getFirstPromptFormData( outputPhaseMetricsLab ) );
+    m_outputPhaseMetricsCheck.addSelectionListener( new SelectionAdapter() {
+      @Override public void widgetSelected( SelectionEvent selectionEvent ) {
+        super.widgetSelected( selectionEvent );
+        m_inputMeta.setChanged();
+      }
+    } );
+    lastControl = m_outputPhaseMetricsCheck;
+
+    Label checkpointIterationsLab = new Label( m_performanceComposite, SWT.RIGHT );
+    props.setLook( checkpointIterationsLab );
+    checkpointIterationsLab.setText( BaseMessages.getString( PKG, "BasePMIStepDialog.CheckpointIterations.Label" ) );
+    checkpointIterationsLab
+        .setToolTipText( BaseMessages.getString( PKG, "BasePMIStepDialog.CheckpointIterations.TipText" ) );
+    checkpointIterationsLab.setLayoutData( getFirstLabelFormData() );
+
+    m_checkpointIterationsField =
+        new TextVar( variables, m_performanceComposite, SWT.SINGLE | SWT.LEAD | SWT.BORDER );
+    props.setLook( m_checkpointIterationsField );
+    m_checkpointIterationsField.setLayoutData( getFirstPromptFormData( checkpointIterationsLab ) );
+    m_checkpointIterationsField.addModifyListener( m_simpleModifyListener );
+    lastControl = m_checkpointIterationsField;
+
+    Label checkpointIntervalLab = new Label( m_performanceComposite, SWT.RIGHT );
+    props.setLook( checkpointIntervalLab );
+    checkpointIntervalLab.setText( BaseMessages.getString( PKG, "BasePMIStepDialog.CheckpointInterval.Label" ) );
+    checkpointIntervalLab
+        .setToolTipText( BaseMessages.getString( PKG, "BasePMIStepDialog.CheckpointInterval.TipText" ) );
+    checkpointIntervalLab.setLayoutData( getFirstLabelFormData() );
+
+    m_checkpointIntervalField = new TextVar( variables, m_performanceComposite, SWT.SINGLE | SWT.LEAD | SWT.BORDER );
+    props.setLook( m_checkpointIntervalField );
+    m_checkpointIntervalField.setLayoutData( getFirstPromptFormData( checkpointIntervalLab ) );
+    m_checkpointIntervalField.addModifyListener( m_simpleModifyListener );
+    lastControl = m_checkpointIntervalField;
+
+    Label earlyStoppingLab = new Label( m_performanceComposite, SWT.RIGHT );
+    props.setLook( earlyStoppingLab );
+    earlyStoppingLab.setText( BaseMessages.getString( PKG, "BasePMIStepDialog.EarlyStopping.Label" ) );
+    earlyStoppingLab.setToolTipText( BaseMessages.getString( PKG, "BasePMIStepDialog.EarlyStopping.TipText" ) );
+    earlyStoppingLab.setLayoutData( getFirstLabelFormData() );
+
+    m_earlyStoppingBut = new Button( m_performanceComposite, SWT.CHECK );
+    props.setLook( m_earlyStoppingBut );
+    FormData fd = getFirstPromptFormData( earlyStoppingLab );
+    fd.right = null;
+    m_earlyStoppingBut.setLayoutData( fd );
+    m_earlyStoppingBut.addSelectionListener( new SelectionAdapter() {
+      @Override public void widgetSelected( SelectionEvent selectionEvent ) {
+        super.widgetSelected( selectionEvent );
+        m_inputMeta.setChanged();
+        checkEarlyStoppingWidgets();
+      }
+    } );
+    m_earlyStoppingBut.setToolTipText( BaseMessages.getString( PKG, "BasePMIStepDialog.EarlyStopping.TipText" ) );
+    lastControl = m_earlyStoppingBut;
+
+    Label validationPercentLab = new Label( m_performanceComposite, SWT.RIGHT );
+    props.setLook( validationPercentLab );
+    validationPercentLab
+        .setText( BaseMessages.getString( PKG, "BasePMIStepDialog.EarlyStoppingValidationPercent.Label" ) );
+    validationPercentLab
+        .setToolTipText( BaseMessages.getString( PKG, "BasePMIStepDialog.EarlyStoppingValidationPercent.TipText" ) );
+    validationPercentLab.setLayoutData( getFirstLabelFormData() );
+
+    m_earlyStoppingValidationPercentField =
+        new TextVar( variables, m_performanceComposite, SWT.SINGLE | SWT.LEAD | SWT.BORDER );
+    props.setLook( m_earlyStoppingValidationPercentField );
+    m_earlyStoppingValidationPercentField.setLayoutData( getFirstPromptFormData( validationPercentLab ) );
+    m_earlyStoppingValidationPercentField.addModifyListener( m_simpleModifyListener );
+    lastControl = m_earlyStoppingValidationPercentField;
+
+    Label earlyStoppingIntervalLab = new Label( m_performanceComposite, SWT.RIGHT );
+    props.setLook( earlyStoppingIntervalLab );
+    earlyStoppingIntervalLab.setText( BaseMessages.getString( PKG, "BasePMIStepDialog.EarlyStoppingInterval.Label" ) );
+    earlyStoppingIntervalLab
+        .setToolTipText( BaseMessages.getString( PKG, "BasePMIStepDialog.EarlyStoppingInterval.TipText" ) );
+    earlyStoppingIntervalLab.setLayoutData( getFirstLabelFormData() );
+
+    m_earlyStoppingIntervalField =
+        new TextVar( variables, m_performanceComposite, SWT.SINGLE | SWT.LEAD | SWT.BORDER );
+    props.setLook( m_earlyStoppingIntervalField );
+    m_earlyStoppingIntervalField.setLayoutData( getFirstPromptFormData( earlyStoppingIntervalLab ) );
+    m_earlyStoppingIntervalField.addModifyListener( m_simpleModifyListener );
+    lastControl = m_earlyStoppingIntervalField;
+
+    Label earlyStoppingPatienceLab = new Label( m_performanceComposite, SWT.RIGHT );
+    props.setLook( earlyStoppingPatienceLab );
+    earlyStoppingPatienceLab.setText( BaseMessages.getString( PKG, "BasePMIStepDialog.EarlyStoppingPatience.Label" ) );
+    earlyStoppingPatienceLab
+        .setToolTipText( BaseMessages.getString( PKG, "BasePMIStepDialog.EarlyStoppingPatience.TipText" ) );
+    earlyStoppingPatienceLab.setLayoutData( getFirstLabelFormData() );
+
+    m_earlyStoppingPatienceField =
+        new TextVar( variables, m_performanceComposite, SWT.SINGLE | SWT.LEAD | SWT.BORDER );
+    props.setLook( m_earlyStoppingPatienceField );
+    m_earlyStoppingPatienceField.setLayoutData( getFirstPromptFormData( earlyStoppingPatienceLab ) );
+    m_earlyStoppingPatienceField.addModifyListener( m_simpleModifyListener );
+    lastControl = m_earlyStoppingPatienceField;
+
+    fd = new FormData();
+    fd.left = new FormAttachment( 0, 0 );
+    fd.top = new FormAttachment( 0, 0 );
+    fd.right = new FormAttachment( 100, -MARGIN * 2 );
+    fd.bottom = new FormAttachment( 100, 0 );
+    m_performanceComposite.setLayoutData( fd );
+    m_performanceComposite.layout();
+
+    m_performanceTab.setControl( m_performanceComposite );
+  }
+
+  protected void addSearchTab() {
+    m_searchTab = new CTabItem( m_container, SWT.NONE );
+    m_searchTab.setText( BaseMessages.getString( PKG, "BasePMIStep.SearchTab.Title" ) );
+
+    m_searchComposite = new Composite( m_container, SWT.NONE );
+    props.setLook( m_searchComposite );
+
+    FormLayout fl = new FormLayout();
+    fl.marginHeight = 3;
+    fl.marginWidth = 3;
+    m_searchComposite.setLayout( fl );
+
+    Label searchModeLab = new Label( m_searchComposite, SWT.RIGHT );
+    props.setLook( searchModeLab );
+    searchModeLab.setText( BaseMessages.getString( PKG, "BasePMIStepDialog.SearchMode.Label" ) );
+    searchModeLab.setToolTipText( BaseMessages.getString( PKG, "BasePMIStepDialog.SearchMode.TipText" ) );
+    lastControl = null;
+    searchModeLab.setLayoutData( getFirstLabelFormData() );
+
+    m_searchModeDropDown = new ComboVar( variables, m_searchComposite, SWT.BORDER | SWT.READ_ONLY );
+    props.setLook( m_searchModeDropDown );
+    for ( SearchSpace.SearchMode mode : SearchSpace.SearchMode.values() ) {
+      m_searchModeDropDown.add( mode.toString() );
+    }
+    m_searchModeDropDown.setLayoutData( getFirstPromptFormData( searchModeLab ) );
+    m_searchModeDropDown.addSelectionListener( new SelectionAdapter() {
+      @Override public void widgetSelected( SelectionEvent selectionEvent ) {
+        super.widgetSelected( selectionEvent );
+        m_inputMeta.setChanged();
+        checkSearchWidgets();
+      }
+    } );
+    lastControl = m_searchModeDropDown;
+
+    Label searchCandidatesLab = new Label( m_searchComposite, SWT.RIGHT );
+    props.setLook( searchCandidatesLab );
+    searchCandidatesLab.setText( BaseMessages.getString( PKG, "BasePMIStepDialog.SearchCandidates.Label" ) );
+    searchCandidatesLab
+        .setToolTipText( BaseMessages.getString( PKG, "BasePMIStepDialog.SearchCandidates.TipText" ) );
+    searchCandidatesLab.setLayoutData( getFirstLabelFormData() );
+
+    m_searchCandidatesField = new TextVar( variables, m_searchComposite, SWT.SINGLE | SWT.LEAD | SWT.BORDER );
+    props.setLook( m_searchCandidatesField );
+    m_searchCandidatesField.setLayoutData( getFirstPromptFormData( searchCandidatesLab ) );
+    m_searchCandidatesField.addModifyListener( m_simpleModifyListener );
+    lastControl = m_searchCandidatesField;
+
+    Label searchSpaceLab = new Label( m_searchComposite, SWT.RIGHT );
+    props.setLook( searchSpaceLab );
+    searchSpaceLab.setText( BaseMessages.getString( PKG, "BasePMIStepDialog.SearchSpace.Label" ) );
+    searchSpaceLab.setToolTipText( BaseMessages.getString( PKG, "BasePMIStepDialog.SearchSpace.TipText" ) );
+    searchSpaceLab.setLayoutData( getFirstLabelFormData() );
+
+    m_searchSpaceField =
+        new Text( m_searchComposite, SWT.MULTI | SWT.LEFT | SWT.BORDER | SWT.V_SCROLL | SWT.H_SCROLL );
+    props.setLook( m_searchSpaceField );
+    FormData fd = getFirstPromptFormData( searchSpaceLab );
+    fd.bottom = new FormAttachment( 100, -MARGIN );
+    m_searchSpaceField.setLayoutData( fd );
+    m_searchSpaceField.setToolTipText( BaseMessages.getString( PKG, "BasePMIStepDialog.SearchSpace.TipText" ) );
+    m_searchSpaceField.addModifyListener( m_simpleModifyListener );
+    lastControl = m_searchSpaceField;
+
+    fd = new FormData();
+    fd.left = new FormAttachment( 0, 0 );
+    fd.top = new FormAttachment( 0, 0 );
+    fd.right = new FormAttachment( 100, -MARGIN * 2 );
+    fd.bottom = new FormAttachment( 100, 0 );
+    m_searchComposite.setLayoutData( fd );
+    m_searchComposite.layout();
+
+    m_searchTab.setControl( m_searchComposite );
+  }
+
+  protected void checkSearchWidgets() {
+    m_searchCandidatesField.setEnabled(
+        m_searchModeDropDown.getText().equalsIgnoreCase( SearchSpace.SearchMode.Random.toString() ) );
+  }
+
+  protected void checkEarlyStoppingWidgets() {
+    boolean enable = m_scheme.supportsResumableTraining() && m_earlyStoppingBut.getSelection();
+    m_earlyStoppingValidationPercentField.setEnabled( enable );
+    m_earlyStoppingIntervalField.setEnabled( enable );
+    m_earlyStoppingPatienceField.setEnabled( enable );
+  }
+
   protected void checkWidgets() {
     handleRowsToProcessChange();
     handleReservoirSamplingChange();
@@ -1992,6 +2738,27 @@ public class BaseSupervisedPMIDialog extends BaseTransformDialog implements ITra
       m_testStepDropDown.setEnabled( false );
     }
 
+    m_maxFoldsInFlightField
+        .setEnabled( currentEvalSetting.equalsIgnoreCase( Evaluator.EvalMode.CROSS_VALIDATION.toString() ) );
+    m_maxStrataInFlightField.setEnabled( m_rowsToProcessDropDown.getText().equals(
+        BaseMessages.getString( PKG, "BasePMIStepDialog.NumberOfRowsToProcess.Dropdown.StratifiedEntry.Label" ) ) );
+    m_maxBatchesInFlightField.setEnabled( m_rowsToProcessDropDown.getText().equals(
+        BaseMessages.getString( PKG, "BasePMIStepDialog.NumberOfRowsToProcess.Dropdown.BatchEntry.Label" ) ) );
+    m_testRowsMemoryBudgetField
+        .setEnabled( currentEvalSetting.equalsIgnoreCase( Evaluator.EvalMode.SEPARATE_TEST_SET.toString() ) );
+    m_streamPercentageSplitCheck
+        .setEnabled( currentEvalSetting.equalsIgnoreCase( Evaluator.EvalMode.PERCENTAGE_SPLIT.toString() ) );
+    m_streamCrossValidationCheck.setEnabled( m_scheme.supportsIncrementalTraining() && currentEvalSetting
+        .equalsIgnoreCase( Evaluator.EvalMode.CROSS_VALIDATION.toString() ) );
+    m_incrementalBlockSizeField.setEnabled( m_scheme.supportsIncrementalTraining() );
+    m_incrementalBlockEvaluationCheck.setEnabled( m_scheme.supportsIncrementalTraining() && currentEvalSetting
+        .equalsIgnoreCase( Evaluator.EvalMode.PREQUENTIAL.toString() ) );
+    m_checkpointIterationsField.setEnabled( m_scheme.supportsResumableTraining() );
+    m_checkpointIntervalField.setEnabled( m_scheme.supportsResumableTraining() );
+    m_earlyStoppingBut.setEnabled( m_scheme.supportsResumableTraining() );
+    checkEarlyStoppingWidgets();
+    checkSearchWidgets();
+
     // Check for IterableClassifier && evaluation mode
     if ( m_scheme.supportsResumableTraining() && m_rowsToProcessDropDown.getText().equalsIgnoreCase( "ALL" ) && (
         currentEvalSetting.equalsIgnoreCase( Evaluator.EvalMode.NONE.toString() ) || currentEvalSetting
@@ -2135,6 +2902,14 @@ public class BaseSupervisedPMIDialog extends BaseTransformDialog implements ITra
       m_stratificationFieldDropDown.setEnabled( true );
       m_stratificationFieldDropDown.setText( m_originalMeta.getStratificationFieldName() );
     }
+
+    boolean stratified = rowsToProcess.equals(
+        BaseMessages.getString( PKG, "BasePMIStepDialog.NumberOfRowsToProcess.Dropdown.StratifiedEntry.Label" ) );
+    m_unsortedStratificationBut.setEnabled( stratified );
+    if ( !stratified ) {
+      m_unsortedStratificationBut.setSelection( false );
+    }
+    m_strataMemoryBudgetField.setEnabled( m_unsortedStratificationBut.getSelection() );
   }
 
   protected List<ArffMeta> getArffMetasForIncomingFields( boolean popupErrorDialogIfNecessary, boolean silent ) {
@@ -2275,6 +3050,16 @@ public class BaseSupervisedPMIDialog extends BaseTransformDialog implements ITra
 
   protected void handleReservoirSamplingChange() {
     m_reservoirSizeField.setEnabled( m_reservoirSamplingBut.getSelection() );
+
+    // the training memory budget and class balancing apply to all rows handling without reservoir sampling
+    boolean trainingBudget = m_rowsToProcessDropDown.getText()
+        .equals( BaseMessages.getString( PKG, "BasePMIStepDialog.NumberOfRowsToProcess.Dropdown.AllEntry.Label" ) )
+        && !m_reservoirSamplingBut.getSelection();
+    m_trainingMemoryBudgetField.setEnabled( trainingBudget );
+    m_memoryBudgetPolicyDropDown.setEnabled( trainingBudget );
+    m_classBalanceMaxRowsField.setEnabled( trainingBudget );
+    m_classBalanceMaxRatioField.setEnabled( trainingBudget );
+    m_classBalanceReweightCheck.setEnabled( trainingBudget );
   }
 
   protected void showMessageDialog( String title, String message, int flags, boolean scroll ) {
@@ -33,10 +33,12 @@ import org.phalanxdev.hop.pipeline.transforms.pmi.PMIScoringClusterer;
 import org.phalanxdev.hop.pipeline.transforms.pmi.PMIScoringData;
 import org.phalanxdev.hop.pipeline.transforms.pmi.PMIScoringMeta;
 import org.phalanxdev.hop.pipeline.transforms.pmi.PMIScoringModel;
+import org.phalanxdev.hop.pipeline.transforms.pmi.RowCodec;
 import org.apache.hop.ui.core.vfs.HopVfsFileDialog;
 import org.apache.hop.ui.core.widget.TextVar;
 import org.apache.hop.ui.pipeline.transform.BaseTransformDialog;
 import org.eclipse.swt.SWT;
+import org.eclipse.swt.custom.CCombo;
 import org.eclipse.swt.custom.CTabFolder;
 import org.eclipse.swt.custom.CTabItem;
 import org.eclipse.swt.events.ModifyEvent;
@@ -137,6 +139,21 @@ public class PMIScoringDialog extends BaseTransformDialog implements ITransformD
    */
   private TextVar m_batchScoringBatchSizeText;
 
+  /**
+   * How incoming rows are represented as instances (automatic, dense or sparse)
+   */
+  private CCombo m_instanceRepresentationCombo;
+
+  /**
+   * TextVar for the number of threads to score blocks of rows with
+   */
+  private TextVar m_scoringThreadsText;
+
+  /**
+   * TextVar for the maximum number of blocks of rows in flight when scoring with multiple threads
+   */
+  private TextVar m_maxScoringBlocksInFlightText;
+
   /**
    * the text area for the model
    */
@@ -470,6 +487,14 @@ public class PMIScoringDialog extends BaseTransformDialog implements ITransformD
     m_inputMeta.setEvaluateRatherThanScore( m_wPerformEvaluation.getSelection() );
     m_inputMeta.setOutputIRMetrics( m_wOutputIRMetrics.getSelection() );
     m_inputMeta.setOutputAUCMetrics( m_wOutputAUCMetrics.getSelection() );
+    for ( RowCodec.Representation r : RowCodec.Representation.values() ) {
+      if ( r.toString().equalsIgnoreCase( m_instanceRepresentationCombo.getText() ) ) {
+        m_inputMeta.setInstanceRepresentation( r );
+      }
+    }
+
+    m_inputMeta.setScoringThreads( m_scoringThreadsText.getText() );
+    m_inputMeta.setMaxScoringBlocksInFlight( m_maxScoringBlocksInFlightText.getText() );
 
     if ( m_inputMeta.getUpdateIncrementalModel() ) {
       if ( !org.apache.hop.core.util.Utils.isEmpty( m_wSaveFilename.getText() ) ) {
@@ -534,6 +559,9 @@ public class PMIScoringDialog extends BaseTransformDialog implements ITransformD
     m_wPerformEvaluation.setSelection( m_inputMeta.getEvaluateRatherThanScore() );
     m_wOutputIRMetrics.setSelection( m_inputMeta.getOutputIRMetrics() );
     m_wOutputAUCMetrics.setSelection( m_inputMeta.getOutputAUCMetrics() );
+    m_instanceRepresentationCombo.setText( m_inputMeta.getInstanceRepresentation().toString().toLowerCase() );
+    m_scoringThreadsText.setText( org.apache.hop.core.Const.NVL( m_inputMeta.getScoringThreads(), "" ) );
+    m_maxScoringBlocksInFlightText.setText( org.apache.hop.core.Const.NVL( m_inputMeta.getMaxScoringBlocksInFlight(), "" ) );
 
     // Grab model if it is available (and we are not reading model file
     // names from a field in the incoming data
@@ -897,7 +925,75 @@ public class PMIScoringDialog extends BaseTransformDialog implements ITransformD
     m_batchScoringBatchSizeText.setLayoutData( fdd );
     m_batchScoringBatchSizeText.setEnabled( false );
 
-    Control lastWidget = m_batchScoringBatchSizeText;
+    // instance representation line
+    Label representationLab = new Label( wFileComp, SWT.RIGHT );
+    representationLab
+        .setText( BaseMessages.getString( PMIScoringMeta.PKG, "PMIScoringDialog.InstanceRepresentation.Label" ) );
+    representationLab.setToolTipText(
+        BaseMessages.getString( PMIScoringMeta.PKG, "PMIScoringDialog.InstanceRepresentation.TipText" ) );
+    props.setLook( representationLab );
+    fdd = new FormData();
+    fdd.left = new FormAttachment( 0, 0 );
+    fdd.top = new FormAttachment( m_batchScoringBatchSizeText, margin );
+    fdd.right = new FormAttachment( middle, -margin );
+    representationLab.setLayoutData( fdd );
+
+    m_instanceRepresentationCombo = new CCombo( wFileComp, SWT.BORDER | SWT.READ_ONLY );
+    props.setLook( m_instanceRepresentationCombo );
+    for ( RowCodec.Representation r : RowCodec.Representation.values() ) {
+      m_instanceRepresentationCombo.add( r.toString().toLowerCase() );
+    }
+    m_instanceRepresentationCombo.addModifyListener( lsMod );
+    fdd = new FormData();
+    fdd.left = new FormAttachment( middle, 0 );
+    fdd.top = new FormAttachment( m_batchScoringBatchSizeText, margin );
+    fdd.right = new FormAttachment( 100, 0 );
+    m_instanceRepresentationCombo.setLayoutData( fdd );
+
+    // scoring threads line
+    Label scoringThreadsLab = new Label( wFileComp, SWT.RIGHT );
+    scoringThreadsLab.setText( BaseMessages.getString( PMIScoringMeta.PKG, "PMIScoringDialog.ScoringThreads.Label" ) );
+    scoringThreadsLab
+        .setToolTipText( BaseMessages.getString( PMIScoringMeta.PKG, "PMIScoringDialog.ScoringThreads.TipText" ) );
+    props.setLook( scoringThreadsLab );
+    fdd = new FormData();
+    fdd.left = new FormAttachment( 0, 0 );
+    fdd.top = new FormAttachment( m_instanceRepresentationCombo, margin );
+    fdd.right = new FormAttachment( middle, -margin );
+    scoringThreadsLab.setLayoutData( fdd );
+
+    m_scoringThreadsText = new TextVar( variables, wFileComp, SWT.SINGLE | SWT.LEFT | SWT.BORDER );
+    props.setLook( m_scoringThreadsText );
+    m_scoringThreadsText.addModifyListener( lsMod );
+    fdd = new FormData();
+    fdd.left = new FormAttachment( middle, 0 );
+    fdd.top = new FormAttachment( m_instanceRepresentationCombo, margin );
+    fdd.right = new FormAttachment( 100, 0 );
+    m_scoringThreadsText.setLayoutData( fdd );
+
+    // maximum blocks in flight line
+    Label maxBlocksInFlightLab = new Label( wFileComp, SWT.RIGHT );
+    maxBlocksInFlightLab
+        .setText( BaseMessages.getString( PMIScoringMeta.PKG, "PMIScoringDialog.MaxScoringBlocksInFlight.Label" ) );
+    maxBlocksInFlightLab.setToolTipText(
+        BaseMessages.getString( PMIScoringMeta.PKG, "PMIScoringDialog.MaxScoringBlocksInFlight.TipText" ) );
+    props.setLook( maxBlocksInFlightLab );
+    fdd = new FormData();
+    fdd.left = new FormAttachment( 0, 0 );
+    fdd.top = new FormAttachment( m_scoringThreadsText, margin );
+    fdd.right = new FormAttachment( middle, -margin );
+    maxBlocksInFlightLab.setLayoutData( fdd );
+
+    m_maxScoringBlocksInFlightText = new TextVar( variables, wFileComp, SWT.SINGLE | SWT.LEFT | SWT.BORDER );
+    props.setLook( m_maxScoringBlocksInFlightText );
+    m_maxScoringBlocksInFlightText.addModifyListener( lsMod );
+    fdd = new FormData();
+    fdd.left = new FormAttachment( middle, 0 );
+    fdd.top = new FormAttachment( m_scoringThreadsText, margin );
+    fdd.right = new FormAttachment( 100, 0 );
+    m_maxScoringBlocksInFlightText.setLayoutData( fdd );
+
+    Control lastWidget = m_maxScoringBlocksInFlightText;
 
     Group evaluationGroup = new Group( wFileComp, SWT.SHADOW_NONE );
     props.setLook( evaluationGroup );
@@ -909,7 +1005,7 @@ public class PMIScoringDialog extends BaseTransformDialog implements ITransformD
     fd = new FormData();
     fd.left = new FormAttachment( 0, 0 );
     fd.right = new FormAttachment( 100, 0 );
-    fd.top = new FormAttachment( m_batchScoringBatchSizeText, margin );
+    fd.top = new FormAttachment( m_maxScoringBlocksInFlightText, margin );
     evaluationGroup.setLayoutData( fd );
 
     // evaluation stuff
@@ -34,6 +34,10 @@ public class ArffMeta implements Cloneable {
   public static final int NOMINAL = 1;
   public static final int DATE = 2;
   public static final int STRING = 3;
+  public static final int HASHED_NOMINAL = 4;
+
+  // default number of buckets for hashed nominal fields
+  public static final int DEFAULT_HASH_BUCKETS = 1024;
 
   // the name of this field
   private final String m_fieldName;
@@ -49,6 +53,9 @@ public class ArffMeta implements Cloneable {
 
   private String m_nominalVals;
 
+  // the number of buckets for hashed nominal fields
+  private int m_hashBuckets = DEFAULT_HASH_BUCKETS;
+
   public static final String XML_TAG = "arff_field";
 
   /**
@@ -89,6 +96,12 @@ public class ArffMeta implements Cloneable {
 
     m_dateFormat = XmlHandler.getTagValue(arffNode, "date_format");
     m_nominalVals = XmlHandler.getTagValue(arffNode, "nominal_vals");
+    temp = XmlHandler.getTagValue(arffNode, "hash_buckets");
+    try {
+      m_hashBuckets = Integer.parseInt(temp);
+    } catch (Exception ex) {
+      // ignore - older field definitions have no bucket count
+    }
   }
 
   /**
@@ -144,6 +157,24 @@ public class ArffMeta implements Cloneable {
     return m_nominalVals;
   }
 
+  /**
+   * Set the number of buckets that the values of a hashed nominal field are mapped to
+   * 
+   * @param buckets the number of buckets
+   */
+  public void setHashBuckets(int buckets) {
+    m_hashBuckets = buckets;
+  }
+
+  /**
+   * Get the number of buckets that the values of a hashed nominal field are mapped to
+   * 
+   * @return the number of buckets
+   */
+  public int getHashBuckets() {
+    return m_hashBuckets;
+  }
+
   /**
    * Make a copy
    * 
@@ -173,6 +204,7 @@ public class ArffMeta implements Cloneable {
     xml += XmlHandler.addTagValue("arff_type", m_arffType);
     xml += XmlHandler.addTagValue("date_format", m_dateFormat);
     xml += XmlHandler.addTagValue("nominal_vals", m_nominalVals);
+    xml += XmlHandler.addTagValue("hash_buckets", m_hashBuckets);
 
     xml += ("</" + XML_TAG + ">");
 
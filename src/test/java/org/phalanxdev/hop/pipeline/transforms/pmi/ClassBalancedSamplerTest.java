@@ -0,0 +1,216 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.phalanxdev.hop.pipeline.transforms.pmi;
+
+import org.apache.hop.core.row.IRowMeta;
+import org.apache.hop.core.row.IValueMeta;
+import org.apache.hop.core.row.RowMeta;
+import org.apache.hop.core.row.value.ValueMetaNumber;
+import org.apache.hop.core.row.value.ValueMetaString;
+import org.junit.Test;
+import org.phalanxdev.hop.utils.ArffMeta;
+import weka.core.Attribute;
+import weka.core.Instance;
+import weka.core.Instances;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@code ClassBalancedSampler}: the number of rows held per class under the per-class
+ * limit and the ratio to the rarest class, the order of the rows kept by {@code finish()}, and the
+ * class totals after re-weighting.
+ * <p>
+ * The stream is 1030 rows with a sequence number field and a class of "b" for every 35th row
+ * (30 rows) and "a" otherwise (1000 rows).
+ *
+ * @author Mark Hall (mhall{[at]}waikato{[dot]}ac{[dot]}nz)
+ * @version $Revision: $
+ */
+public class ClassBalancedSamplerTest {
+
+  protected static final int NUM_ROWS = 1030;
+
+  protected static final int NUM_A = 1000;
+
+  protected static final int NUM_B = 30;
+
+  protected IRowMeta m_rowMeta = new RowMeta();
+
+  protected Map<String, Integer> m_fieldIndexes = new HashMap<>();
+
+  protected List<ArffMeta> m_fields = new ArrayList<>();
+
+  protected Instances m_header;
+
+  public ClassBalancedSamplerTest() {
+    m_rowMeta.addValueMeta(new ValueMetaNumber("seq"));
+    m_rowMeta.addValueMeta(new ValueMetaString("class"));
+    m_fieldIndexes.put("seq", 0);
+    m_fieldIndexes.put("class", 1);
+    m_fields.add(new ArffMeta("seq", IValueMeta.TYPE_NUMBER, ArffMeta.NUMERIC));
+    m_fields.add(new ArffMeta("class", IValueMeta.TYPE_STRING, ArffMeta.NOMINAL));
+
+    ArrayList<Attribute> atts = new ArrayList<>();
+    atts.add(new Attribute("seq"));
+    atts.add(new Attribute("class", Arrays.asList("a", "b")));
+    m_header = new Instances("test", atts, 0);
+    m_header.setClassIndex(1);
+  }
+
+  protected static String classOf(int seq) {
+    return seq % 35 == 0 ? "b" : "a";
+  }
+
+  /**
+   * Stream the rows through a new sampler
+   *
+   * @param buffer the buffer to sample into
+   * @param maxRowsPerClass the per-class limit
+   * @param maxRatio the ratio to the rarest class
+   * @return the sampler
+   * @throws Exception if a problem occurs
+   */
+  protected ClassBalancedSampler sample(ColumnarTrainingBuffer buffer, int maxRowsPerClass,
+      double maxRatio) throws Exception {
+    ClassBalancedSampler sampler = new ClassBalancedSampler(buffer, m_rowMeta.getValueMeta(1), 1,
+        maxRowsPerClass, maxRatio, 1);
+    for (int i = 0; i < NUM_ROWS; i++) {
+      sampler.add(new Object[] { (double) i, classOf(i) });
+    }
+
+    return sampler;
+  }
+
+  protected ColumnarTrainingBuffer newBuffer() {
+    return new ColumnarTrainingBuffer(m_fields, m_rowMeta, m_fieldIndexes, 16);
+  }
+
+  /**
+   * Check that every instance is a distinct row of the stream with its own class, and count the
+   * instances per class
+   *
+   * @param data the instances built from the buffer
+   * @return the number of instances of "a" and of "b"
+   */
+  protected static int[] checkAndCount(Instances data) {
+    int[] counts = new int[2];
+    Set<Integer> seen = new HashSet<>();
+    for (int i = 0; i < data.numInstances(); i++) {
+      Instance inst = data.instance(i);
+      int seq = (int) inst.value(0);
+      assertTrue("row " + seq + " held more than once", seen.add(seq));
+      assertEquals(classOf(seq), inst.stringValue(1));
+      counts[(int) inst.classValue()]++;
+    }
+
+    return counts;
+  }
+
+  @Test
+  public void testPerClassLimit() throws Exception {
+    ColumnarTrainingBuffer buffer = newBuffer();
+    ClassBalancedSampler sampler = sample(buffer, 100, 0);
+    sampler.finish();
+
+    assertEquals(130, buffer.size());
+    int[] counts = checkAndCount(buffer.toInstances(m_header));
+    assertEquals(100, counts[0]);
+    assertEquals(NUM_B, counts[1]);
+
+    assertEquals(100.0 / NUM_A, sampler.getSamplingRates().get("a"), 1e-12);
+    assertEquals(1.0, sampler.getSamplingRates().get("b"), 1e-12);
+    assertEquals(NUM_A, (long) sampler.getRowsSeen().get("a"));
+    assertEquals(NUM_B, (long) sampler.getRowsSeen().get("b"));
+  }
+
+  @Test
+  public void testRatioToRarestClass() throws Exception {
+    ColumnarTrainingBuffer buffer = newBuffer();
+    ClassBalancedSampler sampler = sample(buffer, 0, 2);
+
+    // no limit, so everything is held until the stream ends
+    assertEquals(NUM_ROWS, buffer.size());
+    sampler.finish();
+
+    assertEquals(2 * NUM_B + NUM_B, buffer.size());
+    int[] counts = checkAndCount(buffer.toInstances(m_header));
+    assertEquals(2 * NUM_B, counts[0]);
+    assertEquals(NUM_B, counts[1]);
+    assertEquals(2.0 * NUM_B / NUM_A, sampler.getSamplingRates().get("a"), 1e-12);
+  }
+
+  @Test
+  public void testLimitAndRatio() throws Exception {
+    ColumnarTrainingBuffer buffer = newBuffer();
+    ClassBalancedSampler sampler = sample(buffer, 100, 1.5);
+    sampler.finish();
+
+    // ceil(30 * 1.5) = 45 of the 100 "a" rows held under the limit
+    int[] counts = checkAndCount(buffer.toInstances(m_header));
+    assertEquals(45, counts[0]);
+    assertEquals(NUM_B, counts[1]);
+    assertEquals(45 + NUM_B, buffer.size());
+  }
+
+  @Test
+  public void testFinishPreservesOrder() throws Exception {
+    ColumnarTrainingBuffer buffer = newBuffer();
+    ClassBalancedSampler sampler = sample(buffer, 0, 3);
+    sampler.finish();
+
+    Instances data = buffer.toInstances(m_header);
+    assertEquals(4 * NUM_B, data.numInstances());
+    for (int i = 1; i < data.numInstances(); i++) {
+      assertTrue(data.instance(i - 1).value(0) < data.instance(i).value(0));
+    }
+    // every "b" row is kept
+    for (int seq = 0; seq < NUM_ROWS; seq += 35) {
+      boolean found = false;
+      for (int i = 0; i < data.numInstances() && !found; i++) {
+        found = data.instance(i).value(0) == seq;
+      }
+      assertTrue("b row " + seq + " was dropped", found);
+    }
+  }
+
+  @Test
+  public void testReweightRestoresClassTotals() throws Exception {
+    for (double ratio : new double[] { 0, 1.5 }) {
+      ColumnarTrainingBuffer buffer = newBuffer();
+      ClassBalancedSampler sampler = sample(buffer, 100, ratio);
+      sampler.finish();
+
+      Instances data = buffer.toInstances(m_header);
+      sampler.reweight(data);
+      double[] totals = new double[2];
+      for (int i = 0; i < data.numInstances(); i++) {
+        totals[(int) data.instance(i).classValue()] += data.instance(i).weight();
+      }
+      assertEquals(NUM_A, totals[0], 1e-6);
+      assertEquals(NUM_B, totals[1], 1e-6);
+      assertEquals(NUM_ROWS, data.sumOfWeights(), 1e-6);
+    }
+  }
+}
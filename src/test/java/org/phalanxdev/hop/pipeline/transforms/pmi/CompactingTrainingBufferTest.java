@@ -0,0 +1,210 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.phalanxdev.hop.pipeline.transforms.pmi;
+
+import org.apache.hop.core.row.IRowMeta;
+import org.apache.hop.core.row.IValueMeta;
+import org.apache.hop.core.row.RowMeta;
+import org.apache.hop.core.row.value.ValueMetaNumber;
+import org.apache.hop.core.row.value.ValueMetaString;
+import org.junit.Test;
+import org.phalanxdev.hop.utils.ArffMeta;
+import weka.core.Attribute;
+import weka.core.Instance;
+import weka.core.Instances;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@code CompactingTrainingBuffer}: merging of duplicate rows on add, the effect of
+ * swap/set on weights and on later merges, rehashing as the buffer grows, and the weights of the
+ * instances built from the buffer (and their expansion back into unit weight duplicates).
+ *
+ * @author Mark Hall (mhall{[at]}waikato{[dot]}ac{[dot]}nz)
+ * @version $Revision: $
+ */
+public class CompactingTrainingBufferTest {
+
+  protected IRowMeta m_rowMeta = new RowMeta();
+
+  protected Map<String, Integer> m_fieldIndexes = new HashMap<>();
+
+  protected List<ArffMeta> m_fields = new ArrayList<>();
+
+  protected Instances m_header;
+
+  public CompactingTrainingBufferTest() {
+    m_rowMeta.addValueMeta(new ValueMetaNumber("x"));
+    m_rowMeta.addValueMeta(new ValueMetaString("class"));
+    m_fieldIndexes.put("x", 0);
+    m_fieldIndexes.put("class", 1);
+    m_fields.add(new ArffMeta("x", IValueMeta.TYPE_NUMBER, ArffMeta.NUMERIC));
+    m_fields.add(new ArffMeta("class", IValueMeta.TYPE_STRING, ArffMeta.NOMINAL));
+
+    ArrayList<Attribute> atts = new ArrayList<>();
+    atts.add(new Attribute("x"));
+    atts.add(new Attribute("class", Arrays.asList("a", "b")));
+    m_header = new Instances("test", atts, 0);
+    m_header.setClassIndex(1);
+  }
+
+  protected CompactingTrainingBuffer newBuffer(int initialCapacity) {
+    return new CompactingTrainingBuffer(m_fields, m_rowMeta, m_fieldIndexes, initialCapacity);
+  }
+
+  protected static Object[] row(Double x, String label) {
+    return new Object[] { x, label };
+  }
+
+  protected Instances build(CompactingTrainingBuffer buffer) {
+    return buffer.toInstances(m_header, RowCodec.Representation.DENSE);
+  }
+
+  protected static void assertInstance(Instance inst, double x, String label, double weight) {
+    assertEquals(x, inst.value(0), 0);
+    assertEquals(label, inst.stringValue(1));
+    assertEquals(weight, inst.weight(), 0);
+  }
+
+  @Test
+  public void testAddMergesDuplicates() throws Exception {
+    CompactingTrainingBuffer buffer = newBuffer(10);
+    buffer.add(row(1.0, "a"));
+    buffer.add(row(2.0, "a"));
+    buffer.add(row(1.0, "a"));
+    buffer.add(row(1.0, "b"));
+    buffer.add(row(1.0, "a"));
+
+    assertEquals(3, buffer.size());
+    assertEquals(5, buffer.getRowsAdded());
+
+    Instances data = build(buffer);
+    assertEquals(3, data.numInstances());
+    assertInstance(data.instance(0), 1.0, "a", 3);
+    assertInstance(data.instance(1), 2.0, "a", 1);
+    assertInstance(data.instance(2), 1.0, "b", 1);
+    assertEquals(5, data.sumOfWeights(), 0);
+  }
+
+  @Test
+  public void testMissingValuesMerge() throws Exception {
+    CompactingTrainingBuffer buffer = newBuffer(10);
+    buffer.add(row(null, "a"));
+    buffer.add(row(null, "a"));
+    buffer.add(row(0.0, "a"));
+
+    assertEquals(2, buffer.size());
+    Instances data = build(buffer);
+    assertTrue(data.instance(0).isMissing(0));
+    assertEquals(2, data.instance(0).weight(), 0);
+    assertInstance(data.instance(1), 0.0, "a", 1);
+  }
+
+  @Test
+  public void testSwapKeepsWeightsAndMerges() throws Exception {
+    CompactingTrainingBuffer buffer = newBuffer(10);
+    buffer.add(row(1.0, "a"));
+    buffer.add(row(1.0, "a"));
+    buffer.add(row(2.0, "b"));
+    buffer.swap(0, 1);
+
+    // rows added after the swap still find their (moved) duplicates
+    buffer.add(row(1.0, "a"));
+    buffer.add(row(2.0, "b"));
+
+    assertEquals(2, buffer.size());
+    assertEquals(5, buffer.getRowsAdded());
+    Instances data = build(buffer);
+    assertInstance(data.instance(0), 2.0, "b", 2);
+    assertInstance(data.instance(1), 1.0, "a", 3);
+  }
+
+  @Test
+  public void testSetResetsWeightAndMergesWithNewValue() throws Exception {
+    CompactingTrainingBuffer buffer = newBuffer(10);
+    buffer.add(row(1.0, "a"));
+    buffer.add(row(1.0, "a"));
+    buffer.add(row(2.0, "b"));
+    buffer.set(0, row(3.0, "b"));
+
+    // the replaced row no longer matches its old value, but does match its new one
+    buffer.add(row(1.0, "a"));
+    buffer.add(row(3.0, "b"));
+
+    assertEquals(3, buffer.size());
+    Instances data = build(buffer);
+    assertInstance(data.instance(0), 3.0, "b", 2);
+    assertInstance(data.instance(1), 2.0, "b", 1);
+    assertInstance(data.instance(2), 1.0, "a", 1);
+  }
+
+  @Test
+  public void testRehashAsBufferGrows() throws Exception {
+    CompactingTrainingBuffer buffer = newBuffer(1);
+    int numDistinct = 1000;
+    for (int pass = 0; pass < 3; pass++) {
+      for (int i = 0; i < numDistinct; i++) {
+        buffer.add(row((double) i, i % 2 == 0 ? "a" : "b"));
+      }
+    }
+
+    assertEquals(numDistinct, buffer.size());
+    assertEquals(3L * numDistinct, buffer.getRowsAdded());
+    Instances data = build(buffer);
+    for (int i = 0; i < numDistinct; i++) {
+      assertInstance(data.instance(i), i, i % 2 == 0 ? "a" : "b", 3);
+    }
+
+    // trimming rebuilds the table at the reduced size, and merging carries on as before
+    buffer.trimToSize();
+    buffer.add(row(0.0, "a"));
+    buffer.add(row((double) numDistinct, "a"));
+    assertEquals(numDistinct + 1, buffer.size());
+    data = build(buffer);
+    assertInstance(data.instance(0), 0, "a", 4);
+    assertInstance(data.instance(numDistinct), numDistinct, "a", 1);
+  }
+
+  @Test
+  public void testExpandWeights() throws Exception {
+    CompactingTrainingBuffer buffer = newBuffer(10);
+    buffer.add(row(1.0, "a"));
+    buffer.add(row(2.0, "b"));
+    buffer.add(row(1.0, "a"));
+    buffer.add(row(1.0, "a"));
+    Instances weighted = build(buffer);
+
+    Instances expanded = CompactingTrainingBuffer.expandWeights(weighted);
+    assertEquals(4, expanded.numInstances());
+    assertEquals(4, expanded.sumOfWeights(), 0);
+    for (int i = 0; i < 3; i++) {
+      assertInstance(expanded.instance(i), 1.0, "a", 1);
+    }
+    assertInstance(expanded.instance(3), 2.0, "b", 1);
+
+    // the weighted instances are left as they were
+    assertEquals(2, weighted.numInstances());
+    assertInstance(weighted.instance(0), 1.0, "a", 3);
+    assertInstance(weighted.instance(1), 2.0, "b", 1);
+  }
+}
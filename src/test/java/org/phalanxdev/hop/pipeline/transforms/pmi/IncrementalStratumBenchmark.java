@@ -0,0 +1,190 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.phalanxdev.hop.pipeline.transforms.pmi;
+
+import org.apache.hop.core.row.IRowMeta;
+import org.apache.hop.core.row.RowMeta;
+import org.apache.hop.core.row.value.ValueMetaNumber;
+import org.apache.hop.core.row.value.ValueMetaString;
+import org.phalanxdev.hop.utils.BaseMessagesAdapter;
+import org.phalanxdev.hop.utils.LogAdapter;
+import org.phalanxdev.mi.Evaluator;
+import weka.classifiers.Classifier;
+import weka.classifiers.bayes.NaiveBayesUpdateable;
+import weka.classifiers.functions.SGD;
+import weka.core.Attribute;
+import weka.core.Instances;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Throughput benchmark for the incremental training path. Drives
+ * {@code IncrementalStratum.processRow()} directly with a synthetic stream of Hop rows (ten numeric
+ * fields and a binary nominal class), so no pipeline or Hop runtime is needed. Each scheme is run
+ * with and without prequential evaluation; for each run the rows per second and the bytes allocated
+ * per row (by the benchmark thread, where the JVM supports measuring this) are reported.
+ * <p>
+ * The target is 200,000 rows per second for NaiveBayesUpdateable and SGD, with and without
+ * prequential evaluation; runs that fall short of it are flagged in the output. The allocation and
+ * equivalence properties that the throughput relies on are asserted by
+ * {@code IncrementalStratumTest}.
+ * The allocation figure for training alone covers only what the schemes themselves allocate;
+ * prequential runs also include the copy of each instance that Weka's Evaluation makes.
+ * <p>
+ * Run from the project directory (after {@code mvn test-compile}) with:
+ *
+ * <pre>
+ * mvn exec:java -Dexec.classpathScope=test \
+ *   -Dexec.mainClass=org.phalanxdev.hop.pipeline.transforms.pmi.IncrementalStratumBenchmark \
+ *   -Dexec.args="[rows] [target rows per second]"
+ * </pre>
+ *
+ * @author Mark Hall (mhall{[at]}waikato{[dot]}ac{[dot]}nz)
+ * @version $Revision: $
+ */
+public class IncrementalStratumBenchmark {
+
+  protected static final int NUM_NUMERIC_FIELDS = 10;
+
+  /**
+   * Number of distinct rows generated up front and then cycled through
+   */
+  protected static final int ROW_POOL_SIZE = 1 << 16;
+
+  protected static final int DEFAULT_NUM_ROWS = 2000000;
+
+  protected static final int DEFAULT_TARGET_ROWS_PER_SECOND = 200000;
+
+  protected static final int WARM_UP_ROWS = 200000;
+
+  protected IRowMeta m_rowMeta = new RowMeta();
+
+  protected Map<String, Integer> m_fieldIndexes = new HashMap<>();
+
+  protected Instances m_header;
+
+  protected Object[][] m_rows;
+
+  public IncrementalStratumBenchmark() {
+    ArrayList<Attribute> atts = new ArrayList<>();
+    for (int i = 0; i < NUM_NUMERIC_FIELDS; i++) {
+      String name = "x" + i;
+      m_rowMeta.addValueMeta(new ValueMetaNumber(name));
+      m_fieldIndexes.put(name, i);
+      atts.add(new Attribute(name));
+    }
+    m_rowMeta.addValueMeta(new ValueMetaString("class"));
+    m_fieldIndexes.put("class", NUM_NUMERIC_FIELDS);
+    atts.add(new Attribute("class", Arrays.asList("neg", "pos")));
+    m_header = new Instances("benchmark", atts, 0);
+    m_header.setClassIndex(NUM_NUMERIC_FIELDS);
+
+    // the class depends (noisily) on a linear combination of the fields
+    Random random = new Random(1);
+    m_rows = new Object[ROW_POOL_SIZE][];
+    for (int r = 0; r < ROW_POOL_SIZE; r++) {
+      Object[] row = new Object[NUM_NUMERIC_FIELDS + 1];
+      double sum = 0;
+      for (int i = 0; i < NUM_NUMERIC_FIELDS; i++) {
+        double x = random.nextGaussian();
+        row[i] = x;
+        sum += (i % 2 == 0 ? 1 : -0.5) * x;
+      }
+      row[NUM_NUMERIC_FIELDS] = sum + random.nextGaussian() > 0 ? "pos" : "neg";
+      m_rows[r] = row;
+    }
+  }
+
+  /**
+   * Train (and optionally prequentially evaluate) a model on the synthetic stream
+   *
+   * @param classifier the (unbuilt) updateable scheme
+   * @param prequential true to prequentially evaluate as well as train
+   * @param numRows the number of rows to time (after warming up)
+   * @return the rows per second and the bytes allocated per row (negative if unknown)
+   * @throws Exception if a problem occurs
+   */
+  public double[] run(Classifier classifier, boolean prequential, int numRows) throws Exception {
+    classifier.buildClassifier(new Instances(m_header, 0));
+    Evaluator evaluator = null;
+    if (prequential) {
+      evaluator = new Evaluator(Evaluator.EvalMode.PREQUENTIAL, 1, false, false,
+          new BaseMessagesAdapter(BaseSupervisedPMIMeta.class));
+      evaluator.initializeNoPriors(m_header, classifier);
+    }
+    IncrementalStratum stratum =
+        new IncrementalStratum(null, m_header, classifier, evaluator, m_rowMeta, m_fieldIndexes,
+            new LogAdapter(null));
+
+    for (int r = 0; r < WARM_UP_ROWS; r++) {
+      stratum.processRow(m_rows[r & (ROW_POOL_SIZE - 1)]);
+    }
+
+    long allocatedBefore = allocatedBytes();
+    long start = System.nanoTime();
+    for (int r = 0; r < numRows; r++) {
+      stratum.processRow(m_rows[r & (ROW_POOL_SIZE - 1)]);
+    }
+    long elapsed = System.nanoTime() - start;
+    long allocatedAfter = allocatedBytes();
+
+    double rowsPerSecond = numRows / (elapsed / 1e9);
+    double bytesPerRow = allocatedBefore < 0 || allocatedAfter < 0 ? -1 :
+        (double) (allocatedAfter - allocatedBefore) / numRows;
+
+    return new double[] { rowsPerSecond, bytesPerRow };
+  }
+
+  /**
+   * Get the number of bytes allocated so far by the current thread
+   *
+   * @return the number of bytes allocated, or -1 if the JVM does not support measuring this
+   */
+  protected static long allocatedBytes() {
+    ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+    if (threads instanceof com.sun.management.ThreadMXBean) {
+      return ((com.sun.management.ThreadMXBean) threads)
+          .getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+    return -1;
+  }
+
+  public static void main(String[] args) throws Exception {
+    int numRows = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_NUM_ROWS;
+    int target = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_TARGET_ROWS_PER_SECOND;
+
+    IncrementalStratumBenchmark benchmark = new IncrementalStratumBenchmark();
+    for (boolean prequential : new boolean[] { false, true }) {
+      for (String scheme : new String[] { "NaiveBayesUpdateable", "SGD" }) {
+        Classifier classifier =
+            scheme.equals("SGD") ? new SGD() : new NaiveBayesUpdateable();
+        double[] result = benchmark.run(classifier, prequential, numRows);
+        boolean met = result[0] >= target;
+        System.out.println(String
+            .format("%-20s %-12s %,12.0f rows/s %10s bytes/row  %s", scheme,
+                prequential ? "prequential" : "train only", result[0],
+                result[1] < 0 ? "n/a" : String.format("%.1f", result[1]),
+                met ? "ok" : "BELOW TARGET (" + target + " rows/s)"));
+      }
+    }
+  }
+}
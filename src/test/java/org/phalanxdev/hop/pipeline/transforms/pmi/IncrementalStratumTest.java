@@ -0,0 +1,217 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.phalanxdev.hop.pipeline.transforms.pmi;
+
+import org.junit.Assume;
+import org.junit.Test;
+import org.phalanxdev.hop.utils.BaseMessagesAdapter;
+import org.phalanxdev.hop.utils.LogAdapter;
+import org.phalanxdev.mi.Evaluator;
+import weka.classifiers.AbstractClassifier;
+import weka.classifiers.UpdateableClassifier;
+import weka.classifiers.bayes.NaiveBayesUpdateable;
+import weka.classifiers.evaluation.Evaluation;
+import weka.core.DenseInstance;
+import weka.core.Instance;
+import weka.core.Instances;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@code IncrementalStratum}, using the synthetic stream of {@code
+ * IncrementalStratumBenchmark}. Checks that every row is encoded into the same reused instance,
+ * that training alone allocates nothing per row, and that the models and prequential evaluation
+ * produced match those of a plain path that builds a new instance for each row.
+ *
+ * @author Mark Hall (mhall{[at]}waikato{[dot]}ac{[dot]}nz)
+ * @version $Revision: $
+ */
+public class IncrementalStratumTest {
+
+  protected static final int NUM_ROWS = 5000;
+
+  /**
+   * Updateable scheme that does no work of its own (and allocates nothing) - it just sums the
+   * values of the instances it is updated with and counts how many distinct instance objects it is
+   * given in succession
+   */
+  protected static class RecordingClassifier extends AbstractClassifier
+      implements UpdateableClassifier {
+
+    private static final long serialVersionUID = 4117920570541290351L;
+
+    protected double[] m_sums;
+
+    protected Instance m_last;
+
+    protected int m_instanceChanges;
+
+    protected long m_updates;
+
+    @Override
+    public void buildClassifier(Instances data) {
+      m_sums = new double[data.numAttributes()];
+    }
+
+    @Override
+    public void updateClassifier(Instance instance) {
+      if (instance != m_last) {
+        m_instanceChanges++;
+        m_last = instance;
+      }
+      for (int i = 0; i < m_sums.length; i++) {
+        m_sums[i] += instance.value(i);
+      }
+      m_updates++;
+    }
+
+    @Override
+    public double[] distributionForInstance(Instance instance) {
+      return new double[] { 0.5, 0.5 };
+    }
+  }
+
+  protected IncrementalStratumBenchmark m_stream = new IncrementalStratumBenchmark();
+
+  protected IncrementalStratum newStratum(AbstractClassifier classifier, Evaluator evaluator)
+      throws Exception {
+    classifier.buildClassifier(new Instances(m_stream.m_header, 0));
+
+    return new IncrementalStratum(null, m_stream.m_header, classifier, evaluator,
+        m_stream.m_rowMeta, m_stream.m_fieldIndexes, new LogAdapter(null));
+  }
+
+  protected Evaluator newPrequentialEvaluator(AbstractClassifier classifier) throws Exception {
+    Evaluator evaluator = new Evaluator(Evaluator.EvalMode.PREQUENTIAL, 1, false, false,
+        new BaseMessagesAdapter(BaseSupervisedPMIMeta.class));
+    evaluator.initializeNoPriors(m_stream.m_header, classifier);
+
+    return evaluator;
+  }
+
+  /**
+   * Build a new instance for a row of the stream, as the incremental path did before rows were
+   * encoded into a reused instance
+   *
+   * @param row the row
+   * @return the instance
+   */
+  protected Instance plainInstance(Object[] row) {
+    double[] vals = new double[row.length];
+    for (int i = 0; i < IncrementalStratumBenchmark.NUM_NUMERIC_FIELDS; i++) {
+      vals[i] = (Double) row[i];
+    }
+    vals[vals.length - 1] =
+        m_stream.m_header.classAttribute().indexOfValue((String) row[vals.length - 1]);
+    Instance inst = new DenseInstance(1.0, vals);
+    inst.setDataset(m_stream.m_header);
+
+    return inst;
+  }
+
+  @Test
+  public void testRowsEncodedIntoOneReusedInstance() throws Exception {
+    RecordingClassifier recorder = new RecordingClassifier();
+    IncrementalStratum stratum = newStratum(recorder, null);
+
+    double[] expected = new double[m_stream.m_header.numAttributes()];
+    for (int r = 0; r < NUM_ROWS; r++) {
+      stratum.processRow(m_stream.m_rows[r]);
+      double[] vals = plainInstance(m_stream.m_rows[r]).toDoubleArray();
+      for (int i = 0; i < vals.length; i++) {
+        expected[i] += vals[i];
+      }
+    }
+
+    assertEquals(NUM_ROWS, recorder.m_updates);
+    assertEquals(1, recorder.m_instanceChanges);
+    assertArrayEquals(expected, recorder.m_sums, 1e-9);
+  }
+
+  @Test
+  public void testTrainingAllocatesNothingPerRow() throws Exception {
+    Assume.assumeTrue(IncrementalStratumBenchmark.allocatedBytes() >= 0);
+    IncrementalStratum stratum = newStratum(new RecordingClassifier(), null);
+    int poolMask = IncrementalStratumBenchmark.ROW_POOL_SIZE - 1;
+    for (int r = 0; r < IncrementalStratumBenchmark.WARM_UP_ROWS; r++) {
+      stratum.processRow(m_stream.m_rows[r & poolMask]);
+    }
+
+    int numRows = 500000;
+    long before = IncrementalStratumBenchmark.allocatedBytes();
+    for (int r = 0; r < numRows; r++) {
+      stratum.processRow(m_stream.m_rows[r & poolMask]);
+    }
+    long allocated = IncrementalStratumBenchmark.allocatedBytes() - before;
+
+    // allow for the measurement itself, but nothing that scales with the number of rows
+    assertTrue(allocated + " bytes allocated for " + numRows + " rows", allocated < numRows / 10);
+  }
+
+  @Test
+  public void testMatchesPlainInstancePath() throws Exception {
+    NaiveBayesUpdateable model = new NaiveBayesUpdateable();
+    Evaluator evaluator = newPrequentialEvaluator(model);
+    IncrementalStratum stratum = newStratum(model, evaluator);
+
+    NaiveBayesUpdateable plainModel = new NaiveBayesUpdateable();
+    plainModel.buildClassifier(new Instances(m_stream.m_header, 0));
+    Evaluation plainEval = new Evaluation(m_stream.m_header);
+    plainEval.useNoPriors();
+
+    for (int r = 0; r < NUM_ROWS; r++) {
+      stratum.processRow(m_stream.m_rows[r]);
+      Instance inst = plainInstance(m_stream.m_rows[r]);
+      plainEval.evaluateModelOnce(plainModel, inst);
+      plainModel.updateClassifier(inst);
+    }
+
+    Evaluation eval = evaluator.getEvaluation();
+    assertEquals(plainEval.numInstances(), eval.numInstances(), 0);
+    assertEquals(plainEval.correct(), eval.correct(), 0);
+    assertEquals(plainEval.meanAbsoluteError(), eval.meanAbsoluteError(), 1e-12);
+    for (int r = NUM_ROWS; r < NUM_ROWS + 100; r++) {
+      Instance inst = plainInstance(m_stream.m_rows[r]);
+      assertArrayEquals(plainModel.distributionForInstance(inst),
+          model.distributionForInstance(inst), 1e-12);
+    }
+  }
+
+  @Test
+  public void testBlocksMatchRowByRow() throws Exception {
+    NaiveBayesUpdateable rowModel = new NaiveBayesUpdateable();
+    IncrementalStratum rowByRow = newStratum(rowModel, null);
+    NaiveBayesUpdateable blockModel = new NaiveBayesUpdateable();
+    IncrementalStratum blocks = newStratum(blockModel, null);
+    blocks.setBlockSize(64, false, false);
+
+    // not a multiple of the block size, so the last block is only flushed at the end
+    int numRows = NUM_ROWS + 17;
+    for (int r = 0; r < numRows; r++) {
+      rowByRow.processRow(m_stream.m_rows[r]);
+      blocks.processRow(m_stream.m_rows[r]);
+    }
+    blocks.flush();
+
+    for (int r = numRows; r < numRows + 100; r++) {
+      Instance inst = plainInstance(m_stream.m_rows[r]);
+      assertArrayEquals(rowModel.distributionForInstance(inst),
+          blockModel.distributionForInstance(inst), 1e-12);
+    }
+  }
+}
@@ -0,0 +1,187 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.phalanxdev.hop.pipeline.transforms.pmi;
+
+import org.apache.hop.core.row.IRowMeta;
+import org.apache.hop.core.row.IValueMeta;
+import org.apache.hop.core.row.RowMeta;
+import org.apache.hop.core.row.value.ValueMetaNumber;
+import org.apache.hop.core.row.value.ValueMetaString;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.phalanxdev.hop.utils.ArffMeta;
+import weka.core.Attribute;
+import weka.core.Instances;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@code StrataPartitionStore}. Rows (a sequence number and a nominal label) are dealt
+ * round robin to a number of strata under memory budgets small enough to force strata to be spilled
+ * and then added to again; each stratum must come back from {@code remove()} with exactly its own
+ * rows, in arrival order, and no spill files may be left behind.
+ *
+ * @author Mark Hall (mhall{[at]}waikato{[dot]}ac{[dot]}nz)
+ * @version $Revision: $
+ */
+public class StrataPartitionStoreTest {
+
+  protected static final int NUM_STRATA = 4;
+
+  protected static final int ROWS_PER_STRATUM = 100;
+
+  protected static final String[] LABELS = { "p", "q", "r" };
+
+  @Rule
+  public TemporaryFolder m_spillDirectory = new TemporaryFolder();
+
+  protected IRowMeta m_rowMeta = new RowMeta();
+
+  protected Map<String, Integer> m_fieldIndexes = new HashMap<>();
+
+  protected List<ArffMeta> m_fields = new ArrayList<>();
+
+  protected Instances m_header;
+
+  public StrataPartitionStoreTest() {
+    m_rowMeta.addValueMeta(new ValueMetaNumber("seq"));
+    m_rowMeta.addValueMeta(new ValueMetaString("label"));
+    m_fieldIndexes.put("seq", 0);
+    m_fieldIndexes.put("label", 1);
+    m_fields.add(new ArffMeta("seq", IValueMeta.TYPE_NUMBER, ArffMeta.NUMERIC));
+    m_fields.add(new ArffMeta("label", IValueMeta.TYPE_STRING, ArffMeta.NOMINAL));
+
+    ArrayList<Attribute> atts = new ArrayList<>();
+    atts.add(new Attribute("seq"));
+    atts.add(new Attribute("label", Arrays.asList(LABELS)));
+    m_header = new Instances("test", atts, 0);
+  }
+
+  protected static String stratumOf(int seq) {
+    return "s" + (seq % NUM_STRATA);
+  }
+
+  /**
+   * Deal the rows round robin to the strata of a new store
+   *
+   * @param memoryBudget the memory budget in bytes
+   * @return the store
+   * @throws Exception if a problem occurs
+   */
+  protected StrataPartitionStore fill(long memoryBudget) throws Exception {
+    StrataPartitionStore store =
+        new StrataPartitionStore(m_fields, m_rowMeta, m_fieldIndexes, memoryBudget,
+            m_spillDirectory.getRoot(), false);
+    for (int i = 0; i < NUM_STRATA * ROWS_PER_STRATUM; i++) {
+      store.add(stratumOf(i), new Object[] { (double) i, LABELS[i % LABELS.length] });
+    }
+
+    return store;
+  }
+
+  /**
+   * Remove each stratum and check that it holds exactly its own rows, in arrival order
+   *
+   * @param store the store
+   * @throws Exception if a problem occurs
+   */
+  protected void removeAndCheck(StrataPartitionStore store) throws Exception {
+    assertEquals(NUM_STRATA, store.numStrata());
+    for (int s = 0; s < NUM_STRATA; s++) {
+      ColumnarTrainingBuffer buffer = store.remove("s" + s);
+      assertEquals(ROWS_PER_STRATUM, buffer.size());
+      Instances data = buffer.toInstances(m_header);
+      for (int j = 0; j < ROWS_PER_STRATUM; j++) {
+        int seq = s + j * NUM_STRATA;
+        assertEquals(seq, data.instance(j).value(0), 0);
+        assertEquals(LABELS[seq % LABELS.length], data.instance(j).stringValue(1));
+      }
+    }
+    assertEquals(0, store.numStrata());
+    assertEquals(0, spillFiles().length);
+  }
+
+  protected File[] spillFiles() {
+    return m_spillDirectory.getRoot().listFiles();
+  }
+
+  @Test
+  public void testNoBudgetNeverSpills() throws Exception {
+    StrataPartitionStore store = fill(0);
+    assertEquals(0, spillFiles().length);
+    assertEquals(Arrays.asList("s0", "s1", "s2", "s3"), store.getStrata());
+    removeAndCheck(store);
+  }
+
+  @Test
+  public void testEveryRowSpilled() throws Exception {
+    // a budget smaller than an empty buffer spills every stratum as soon as it is added to
+    StrataPartitionStore store = fill(1);
+    assertEquals(NUM_STRATA, spillFiles().length);
+    assertTrue(store.m_resident.isEmpty());
+    for (int s = 0; s < NUM_STRATA; s++) {
+      assertEquals(ROWS_PER_STRATUM, (int) store.m_spilledRowCounts.get("s" + s));
+    }
+    removeAndCheck(store);
+  }
+
+  @Test
+  public void testSpilledStrataAddedToAgain() throws Exception {
+    // room for roughly two resident strata, so each stratum is spilled, re-created and spilled
+    // again as the rows arrive round robin, and some finish with rows both on disk and in memory
+    long bufferBytes = ColumnarTrainingBuffer.newBuffer(m_fields, m_rowMeta, m_fieldIndexes,
+        StrataPartitionStore.INITIAL_STRATUM_CAPACITY, false).estimateMemoryUsage();
+    StrataPartitionStore store = fill(2 * bufferBytes + 200);
+
+    assertEquals(NUM_STRATA, spillFiles().length);
+    boolean splitStratum = false;
+    for (int s = 0; s < NUM_STRATA; s++) {
+      String stratum = "s" + s;
+      int spilled = store.m_spilledRowCounts.get(stratum);
+      ColumnarTrainingBuffer resident = store.m_resident.get(stratum);
+      int residentRows = resident == null ? 0 : resident.size();
+      assertEquals(ROWS_PER_STRATUM, spilled + residentRows);
+      splitStratum |= spilled > 0 && residentRows > 0;
+    }
+    assertTrue(splitStratum);
+    removeAndCheck(store);
+  }
+
+  @Test
+  public void testRemoveUnknownStratum() throws Exception {
+    StrataPartitionStore store = fill(1);
+    assertEquals(0, store.remove("missing").size());
+    assertEquals(NUM_STRATA, store.numStrata());
+  }
+
+  @Test
+  public void testClearDeletesSpillFiles() throws Exception {
+    StrataPartitionStore store = fill(1);
+    assertEquals(NUM_STRATA, spillFiles().length);
+    store.clear();
+    assertEquals(0, store.numStrata());
+    assertEquals(0, spillFiles().length);
+  }
+}